@@ -53,6 +53,11 @@ public final class C1XCompilation {
     public final RiRegisterConfig registerConfig;
     public final CiStatistics stats;
     public final int osrBCI;
+
+    /**
+     * The profiling instrumentation to insert into the compiled code or {@code null} if none is requested.
+     */
+    public final RiProfilingProbes probes;
     public final CiAssumptions assumptions = new CiAssumptions();
     public final FrameState placeholderState;
 
@@ -83,6 +88,19 @@ public final class C1XCompilation {
      * @param stats externally supplied statistics object to be used if not {@code null}
      */
     public C1XCompilation(C1XCompiler compiler, RiResolvedMethod method, int osrBCI, CiStatistics stats, DebugInfoLevel debugInfoLevel) {
+        this(compiler, method, osrBCI, null, stats, debugInfoLevel);
+    }
+
+    /**
+     * Creates a new compilation for the specified method and runtime.
+     *
+     * @param compiler the compiler
+     * @param method the method to be compiled or {@code null} if generating code for a stub
+     * @param osrBCI the bytecode index for on-stack replacement, if requested
+     * @param probes the profiling instrumentation to insert into the compiled code, if requested
+     * @param stats externally supplied statistics object to be used if not {@code null}
+     */
+    public C1XCompilation(C1XCompiler compiler, RiResolvedMethod method, int osrBCI, RiProfilingProbes probes, CiStatistics stats, DebugInfoLevel debugInfoLevel) {
         this.parent = currentCompilation.get();
         currentCompilation.set(this);
         this.compiler = compiler;
@@ -90,6 +108,7 @@ public final class C1XCompilation {
         this.runtime = compiler.runtime;
         this.method = method;
         this.osrBCI = osrBCI;
+        this.probes = probes;
         this.stats = stats == null ? new CiStatistics() : stats;
         this.registerConfig = method == null ? compiler.compilerStubRegisterConfig : runtime.getRegisterConfig(method);
         this.placeholderState = debugInfoLevel == DebugInfoLevel.REF_MAPS ? new MutableFrameState(new IRScope(null, null, method, -1), 0, 0, 0) : null;
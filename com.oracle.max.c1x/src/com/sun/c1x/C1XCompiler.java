@@ -29,6 +29,7 @@ import com.sun.c1x.observer.ObservableCompiler;
 import com.sun.c1x.stub.CompilerStub;
 import com.sun.c1x.target.Backend;
 import com.sun.cri.ci.*;
+import com.sun.cri.ri.RiProfilingProbes;
 import com.sun.cri.ri.RiRegisterConfig;
 import com.sun.cri.ri.RiResolvedMethod;
 import com.sun.cri.ri.RiRuntime;
@@ -83,6 +84,15 @@ public class C1XCompiler extends ObservableCompiler implements CiCompiler {
     }
 
     public CiResult compileMethod(RiResolvedMethod method, int osrBCI, CiStatistics stats, DebugInfoLevel debugInfoLevel) {
+        return compileMethod(method, osrBCI, null, stats, debugInfoLevel);
+    }
+
+    /**
+     * Compiles a method, inserting profiling instrumentation into the compiled code.
+     *
+     * @param probes the profiling instrumentation to insert or {@code null} if none is to be inserted
+     */
+    public CiResult compileMethod(RiResolvedMethod method, int osrBCI, RiProfilingProbes probes, CiStatistics stats, DebugInfoLevel debugInfoLevel) {
         if (C1XOptions.PrintCFGToFile && cfgPrinterObserver == null) {
             synchronized (this) {
                 if (cfgPrinterObserver == null) {
@@ -102,7 +112,7 @@ public class C1XCompiler extends ObservableCompiler implements CiCompiler {
 
         CiResult result = null;
         TTY.Filter filter = new TTY.Filter(C1XOptions.PrintFilter, method);
-        C1XCompilation compilation = new C1XCompilation(this, method, osrBCI, stats, debugInfoLevel);
+        C1XCompilation compilation = new C1XCompilation(this, method, osrBCI, probes, stats, debugInfoLevel);
         try {
             result = compilation.compile();
         } finally {
@@ -40,6 +40,7 @@ public class C1XMetrics {
     public static int InlineForcedMethods;
     public static int InlineForbiddenMethods;
     public static int InlinedJsrs;
+    public static int SpeculativelyDevirtualizedCalls;
     public static int NullCheckIterations;
     public static int NullCheckEliminations;
     public static int NullChecksRedundant;
@@ -53,6 +54,9 @@ public class C1XMetrics {
     public static int BlocksSkipped;
     public static int BlocksDeleted;
     public static int DeadCodeEliminated;
+    public static int EliminatedAllocations;
+    public static int EliminatedMonitors;
+    public static int LoopInvariantsHoisted;
     public static int ResolveCPEAttempts;
     public static int BytecodesCompiled;
     public static int CodeBytesEmitted;
@@ -85,6 +85,9 @@ public final class C1XOptions {
     public static boolean TraceAssembler                     = ____;
     public static int     TraceBytecodeParserLevel           = 0;
     public static boolean PrintAssumptions                   = ____;
+    public static boolean PrintSpeculativeDevirtualization   = ____;
+    public static boolean PrintEscapeAnalysis                = ____;
+    public static boolean PrintLoopOptimizations             = ____;
     public static boolean PrintInlinedIntrinsics             = ____;
     public static boolean OmmitAssembly                      = false;
 
@@ -120,9 +123,15 @@ public final class C1XOptions {
     public static boolean OptDeadCodeElimination2;
     public static boolean OptControlFlow;
     public static boolean OptMoveElimination;
+    public static boolean OptEscapeAnalysis;
+    public static int     EscapeAnalysisMaxArrayLength       = 8;
+    public static boolean OptLoopOptimizations;
 
     // optimistic optimization settings
     public static boolean UseAssumptions                = true;
+    public static boolean OptSpeculativeDevirtualization = ____;
+    public static int     SpeculativeDevirtualizationMinCount = 100;
+    public static float   SpeculativeDevirtualizationMinProbability = 0.99f;
 
     // state merging settings
     public static boolean AssumeVerifiedBytecode        = ____;
@@ -229,11 +238,14 @@ public final class C1XOptions {
         OptInlineSynchronized           = lll;
         UseStackMapTableLiveness        = lll;
         UseAssumptions                  = lll;
+        OptSpeculativeDevirtualization  = lll;
         OptIterativeNCE                 = lll;
         OptFlowSensitiveNCE             = lll;
         OptDeadCodeElimination1         = lll;
         OptDeadCodeElimination2         = lll;
         OptGlobalValueNumbering         = lll;
+        OptEscapeAnalysis               = lll;
+        OptLoopOptimizations            = lll;
         OptDiamondElimination           = lll;
         OptCEElimination                = lll;
         OptBlockSkipping                = lll;
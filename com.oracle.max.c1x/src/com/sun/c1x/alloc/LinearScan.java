@@ -2136,20 +2136,25 @@ public final class LinearScan {
         }
     }
 
-    CiFrame computeFrameForState(int opId, FrameState state, CiBitMap frameRefMap) {
+    CiFrame computeFrameForState(int opId, FrameState state, FrameState topState, CiBitMap frameRefMap) {
         CiFrame callerFrame = null;
 
         FrameState callerState = state.callerState();
         if (callerState != null) {
             // process recursively to compute outermost scope first
-            callerFrame = computeFrameForState(opId, callerState, frameRefMap);
+            callerFrame = computeFrameForState(opId, callerState, topState, frameRefMap);
         }
 
         CiValue[] values = new CiValue[state.valuesSize() + state.locksSize()];
         int valueIndex = 0;
 
         for (int i = 0; i < state.valuesSize(); i++) {
-            values[valueIndex++] = toCiValue(opId, state.valueAt(i));
+            Value value = state.valueAt(i);
+            if (value instanceof VirtualObject) {
+                values[valueIndex++] = toCiVirtualObject(opId, (VirtualObject) value, topState);
+            } else {
+                values[valueIndex++] = toCiValue(opId, value);
+            }
         }
 
         for (int i = 0; i < state.locksSize(); i++) {
@@ -2173,6 +2178,25 @@ public final class LinearScan {
         return new CiFrame(callerFrame, state.scope().method, state.bci, false, values, state.localsSize(), state.stackSize(), state.locksSize());
     }
 
+    /**
+     * Describes a scalar replaced object by the locations of its field values at a given operation.
+     *
+     * @param topState the frame state of the operation, used to select the field values of {@code object}
+     */
+    private CiVirtualObject toCiVirtualObject(int opId, VirtualObject object, FrameState topState) {
+        Value[] fieldValues = object.fieldValuesAt(topState);
+        CiValue[] values = new CiValue[fieldValues.length];
+        for (int i = 0; i < fieldValues.length; i++) {
+            Value fieldValue = fieldValues[i];
+            if (fieldValue instanceof Constant) {
+                values[i] = fieldValue.asConstant();
+            } else {
+                values[i] = toCiValue(opId, fieldValue);
+            }
+        }
+        return CiVirtualObject.get(object.type(), values, object.objectId());
+    }
+
     private void computeDebugInfo(IntervalWalker iw, LIRInstruction op) {
         assert iw != null : "interval walker needed for debug information";
         computeDebugInfo(iw, op, op.info);
@@ -2203,7 +2227,7 @@ public final class LinearScan {
         if (C1XOptions.TraceLinearScanLevel >= 3) {
             TTY.println("creating debug information at opId %d", opId);
         }
-        return computeFrameForState(opId, state, frameRefMap);
+        return computeFrameForState(opId, state, state, frameRefMap);
     }
 
     private void assignLocations(List<LIRInstruction> instructions, IntervalWalker iw) {
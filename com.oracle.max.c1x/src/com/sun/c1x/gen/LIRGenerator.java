@@ -433,7 +433,7 @@ public abstract class LIRGenerator extends ValueVisitor {
         if (currentBlock.next() instanceof OsrEntry) {
             // need to free up storage used for OSR entry point
             CiValue osrBuffer = currentBlock.next().operand();
-            callRuntime(CiRuntimeCall.OSRMigrationEnd, null, osrBuffer);
+            callRuntime(CiRuntimeCall.OSRMigrationEnd, stateFor(x, x.stateAfter()), osrBuffer);
             emitXir(xir.genSafepointPoll(site(x)), x, stateFor(x, x.stateAfter()), null, false);
         } else if (x.isSafepointPoll()) {
             emitXir(xir.genSafepointPoll(site(x)), x, stateFor(x, x.stateAfter()), null, false);
@@ -897,6 +897,11 @@ public abstract class LIRGenerator extends ValueVisitor {
         Util.shouldNotReachHere();
     }
 
+    @Override
+    public void visitVirtualObject(VirtualObject i) {
+        Util.shouldNotReachHere();
+    }
+
     @Override
     public void visitReturn(Return x) {
         if (x.kind.isVoid()) {
@@ -1871,7 +1876,7 @@ public abstract class LIRGenerator extends ValueVisitor {
             return;
         }
         for (int index = 0; index < state.stackSize(); index++) {
-            walkStateValue(state.stackAt(index));
+            walkStateValue(state, state.stackAt(index));
         }
         FrameState s = state;
         int bci = x.bci();
@@ -1889,7 +1894,7 @@ public abstract class LIRGenerator extends ValueVisitor {
                 final Value value = s.localAt(index);
                 if (value != null) {
                     if (!value.isIllegal()) {
-                        walkStateValue(value);
+                        walkStateValue(state, value);
                     }
                 }
             }
@@ -1898,11 +1903,16 @@ public abstract class LIRGenerator extends ValueVisitor {
         }
     }
 
-    private void walkStateValue(Value value) {
+    private void walkStateValue(FrameState state, Value value) {
         if (value != null) {
             assert !value.hasSubst() : "missed substitution";
             assert value.isLive() : "value must be marked live in frame state";
-            if (value instanceof Phi && !value.isIllegal()) {
+            if (value instanceof VirtualObject) {
+                // the field values of a scalar replaced object are needed to rematerialize it
+                for (Value fieldValue : ((VirtualObject) value).fieldValuesAt(state)) {
+                    walkStateValue(state, fieldValue);
+                }
+            } else if (value instanceof Phi && !value.isIllegal()) {
                 // phi's are special
                 operandForPhi((Phi) value);
             } else if (value.operand().isIllegal() && !(value instanceof UnsafeCast)) {
@@ -2153,4 +2163,10 @@ public abstract class LIRGenerator extends ValueVisitor {
         lir.cmp(typeEqualityCheck.condition.negate(), leftValue, rightValue);
         emitGuard(typeEqualityCheck);
     }
+
+    @Override
+    public void visitTypeGuard(TypeGuard x) {
+        XirSnippet snippet = xir.genTypeCheck(site(x), toXirArgument(x.object()), toXirArgument(x.hub()), x.type());
+        emitXir(snippet, x, stateFor(x), null, false);
+    }
 }
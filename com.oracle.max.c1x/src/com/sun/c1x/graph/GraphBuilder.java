@@ -120,7 +120,13 @@ public final class GraphBuilder {
         // 2. compute the block map and get the entrypoint(s)
         BlockMap blockMap = compilation.getBlockMap(scope.method, compilation.osrBCI);
         BlockBegin stdEntry = blockMap.get(0);
-        BlockBegin osrEntry = compilation.osrBCI < 0 ? null : blockMap.get(compilation.osrBCI);
+        BlockBegin osrEntry = null;
+        if (compilation.osrBCI >= 0) {
+            // the OSR entry block is filled in when the loop header at the OSR bci is parsed
+            osrEntry = new BlockBegin(compilation.osrBCI, ir.nextBlockNumber());
+            osrEntry.setOsrEntry(true);
+            ir.osrEntryBlock = osrEntry;
+        }
         pushRootScope(scope, blockMap, startBlock);
         MutableFrameState initialState = stateAtEntry(rootMethod);
         startBlock.mergeOrClone(initialState);
@@ -132,6 +138,12 @@ public final class GraphBuilder {
         lastInstr.setNext(null, -1);
         curState = initialState;
 
+        if (isProbed()) {
+            // 3A. count the invocation of the root method
+            Value receiver = isStatic(rootMethod.accessFlags()) ? appendWithoutOptimization(Constant.forObject(null), Instruction.SYNCHRONIZATION_ENTRY_BCI) : initialState.localAt(0);
+            appendProbe(compilation.probes.entryProbe(), initialState.immutableCopy(Instruction.SYNCHRONIZATION_ENTRY_BCI), receiver);
+        }
+
         if (isSynchronized(rootMethod.accessFlags())) {
             // 4A.1 add a monitor enter to the start block
             rootMethodSynchronizedObject = synchronizedObject(initialState, compilation.method);
@@ -202,12 +214,8 @@ public final class GraphBuilder {
             fillSyncHandler(rootMethodSynchronizedObject, syncHandler, false);
         }
 
-        if (compilation.osrBCI >= 0) {
-            BlockBegin osrBlock = blockMap.get(compilation.osrBCI);
-            assert osrBlock.wasVisited();
-            if (!osrBlock.stateBefore().stackEmpty()) {
-                throw new CiBailout("cannot OSR with non-empty stack");
-            }
+        if (osrEntry != null && osrEntry.end() == null) {
+            throw new CiBailout("OSR bci " + compilation.osrBCI + " is not reachable");
         }
     }
 
@@ -688,6 +696,9 @@ public final class GraphBuilder {
     void genGoto(int fromBCI, int toBCI) {
         boolean isSafepointPoll = !scopeData.noSafepointPolls() && toBCI <= fromBCI;
         FrameState stateBefore = curState.immutableCopy(bci());
+        if (toBCI <= fromBCI) {
+            genBackwardBranchProbe(toBCI, stateBefore);
+        }
         append(new Goto(blockAt(toBCI), stateBefore, isSafepointPoll));
     }
 
@@ -696,6 +707,10 @@ public final class GraphBuilder {
         BlockBegin fsucc = blockAt(stream().nextBCI());
         int bci = stream().currentBCI();
         boolean isSafepointPoll = !scopeData.noSafepointPolls() && tsucc.bci() <= bci || fsucc.bci() <= bci;
+        if (tsucc.bci() <= bci) {
+            // counted whether or not the branch is taken, which only adds one count per loop exit
+            genBackwardBranchProbe(tsucc.bci(), stateBefore);
+        }
         append(new If(x, cond, false, y, tsucc, fsucc, isSafepointPoll ? stateBefore : null, isSafepointPoll));
     }
 
@@ -921,9 +936,10 @@ public final class GraphBuilder {
         if (target == null) {
             return;
         }
+        FrameState stateBefore = useProfiledReceiverTypes() ? curState.immutableCopy(bci()) : null;
         Value[] args = curState.popArguments(target.signature().argumentSlots(true));
         if (!tryRemoveCall(target, args, false)) {
-            genInvokeIndirect(INVOKEINTERFACE, target, args, cpi, constantPool);
+            genInvokeIndirect(INVOKEINTERFACE, target, args, stateBefore, cpi, constantPool);
         }
     }
 
@@ -932,9 +948,10 @@ public final class GraphBuilder {
         if (target == null) {
             return;
         }
+        FrameState stateBefore = useProfiledReceiverTypes() ? curState.immutableCopy(bci()) : null;
         Value[] args = curState.popArguments(target.signature().argumentSlots(true));
         if (!tryRemoveCall(target, args, false)) {
-            genInvokeIndirect(INVOKEVIRTUAL, target, args, cpi, constantPool);
+            genInvokeIndirect(INVOKEVIRTUAL, target, args, stateBefore, cpi, constantPool);
         }
     }
 
@@ -997,7 +1014,14 @@ public final class GraphBuilder {
         return false;
     }
 
-    private void genInvokeIndirect(int opcode, RiMethod target, Value[] args, int cpi, RiConstantPool constantPool) {
+    /**
+     * Generates an indirect call, devirtualizing it if possible.
+     *
+     * @param stateBefore the state before the call with its arguments still on the stack, if the call may be
+     *            devirtualized on the basis of profiled receiver types (see {@link #useProfiledReceiverTypes()});
+     *            otherwise {@code null}
+     */
+    private void genInvokeIndirect(int opcode, RiMethod target, Value[] args, FrameState stateBefore, int cpi, RiConstantPool constantPool) {
         Value receiver = args[0];
 
         assert target.holder().kind(false) == CiKind.Object;
@@ -1007,6 +1031,7 @@ public final class GraphBuilder {
             invokeDirect(target, args, null, cpi, constantPool);
             return;
         }
+        genReceiverProbe(receiver);
 
         // attempt to devirtualize the call
         if (target instanceof RiResolvedMethod) {
@@ -1056,12 +1081,114 @@ public final class GraphBuilder {
                 assert result : "Inlining must succeed";
                 return;
             }
+            // 4. speculate on the receiver type that dominates the profile of the call site
+            if (stateBefore != null && trySpeculativeDevirtualization(resolvedTarget, args, stateBefore, cpi, constantPool)) {
+                return;
+            }
         }
 
         // devirtualization failed, produce an actual invokevirtual
         appendInvoke(opcode, target, args, false, cpi, constantPool);
     }
 
+    /**
+     * Appends a call to a {@linkplain RiProfilingProbes profiling probe}, passing the profile as first argument.
+     */
+    private void appendProbe(RiResolvedMethod probe, FrameState stateBefore, Value... args) {
+        Value[] probeArgs = new Value[args.length + 1];
+        probeArgs[0] = appendWithoutOptimization(Constant.forObject(compilation.probes.profile()), stateBefore.bci);
+        System.arraycopy(args, 0, probeArgs, 1, args.length);
+        RiType returnType = probe.signature().returnType(compilation.method.holder());
+        appendWithoutOptimization(new Invoke(INVOKESTATIC, CiKind.Void, probeArgs, true, probe, returnType, stateBefore), stateBefore.bci);
+    }
+
+    /**
+     * Checks whether bytecodes being parsed are to be instrumented, i.e. profiling is requested and they belong to the root method.
+     */
+    private boolean isProbed() {
+        return compilation.probes != null && scopeData.parent == null && !compilation.isOsrCompilation();
+    }
+
+    private void genBackwardBranchProbe(int targetBCI, FrameState stateBefore) {
+        if (isProbed()) {
+            appendProbe(compilation.probes.backwardBranchProbe(), stateBefore, appendConstant(CiConstant.forInt(targetBCI)));
+        }
+    }
+
+    private void genReceiverProbe(Value receiver) {
+        if (isProbed()) {
+            int index = compilation.probes.receiverProfileIndex(bci());
+            if (index >= 0) {
+                appendProbe(compilation.probes.receiverProbe(), curState.immutableCopy(bci()), receiver, appendConstant(CiConstant.forInt(index)));
+            }
+        }
+    }
+
+    /**
+     * Determines if the code may be specialized on assumptions about the class hierarchy. Profiled code is not: it
+     * must never be invalidated while it is executing a probe, as a probe call has no bytecode to resume at.
+     */
+    private boolean useAssumptions() {
+        return C1XOptions.UseAssumptions && compilation.probes == null;
+    }
+
+    /**
+     * Determines if indirect calls may be devirtualized for the receiver types recorded in profiles. Like any
+     * speculation, this depends on deoptimization and is therefore subject to the same conditions as the use of
+     * assumptions.
+     */
+    private boolean useProfiledReceiverTypes() {
+        return C1XOptions.OptSpeculativeDevirtualization && useAssumptions();
+    }
+
+    /**
+     * Devirtualizes an indirect call for the receiver type that dominates the profile of the call site. A
+     * {@link TypeGuard} checks that the receiver is exactly of that type and otherwise deoptimizes to the state before
+     * the call, so that the call is re-executed by baseline code. The devirtualized call is inlined if possible.
+     *
+     * @return {@code true} if the call was devirtualized
+     */
+    private boolean trySpeculativeDevirtualization(RiResolvedMethod target, Value[] args, FrameState stateBefore, int cpi, RiConstantPool constantPool) {
+        RiTypeProfile profile = scope().method.typeProfile(bci());
+        if (profile == null || profile.count < C1XOptions.SpeculativeDevirtualizationMinCount) {
+            return false;
+        }
+        RiResolvedType dominant = null;
+        float probability = 0;
+        for (int i = 0; i < profile.types.length; i++) {
+            if (profile.probabilities[i] > probability) {
+                dominant = profile.types[i];
+                probability = profile.probabilities[i];
+            }
+        }
+        if (dominant == null || probability < C1XOptions.SpeculativeDevirtualizationMinProbability) {
+            return false;
+        }
+        if (dominant.isInterface() || isAbstract(dominant.accessFlags()) || !dominant.isSubtypeOf(target.holder())) {
+            return false;
+        }
+        RiResolvedMethod impl = dominant.resolveMethodImpl(target);
+        if (impl == null || isAbstract(impl.accessFlags())) {
+            return false;
+        }
+
+        Value receiver = args[0];
+        if (!receiver.isNonNull()) {
+            receiver = append(new NullCheck(receiver, null));
+            args[0] = receiver;
+        }
+        Value hub = appendConstant(dominant.getEncoding(Representation.ObjectHub));
+        append(new TypeGuard(receiver, hub, dominant, stateBefore));
+
+        C1XMetrics.SpeculativelyDevirtualizedCalls++;
+        if (C1XOptions.PrintSpeculativeDevirtualization) {
+            TTY.println("Speculatively devirtualized call to " + target + " at bci " + bci() + " in " + scope().method +
+                            " for receiver type " + dominant.name() + " (probability " + probability + ")");
+        }
+        invokeDirect(impl, args, dominant, cpi, constantPool);
+        return true;
+    }
+
     private CiKind returnKind(RiMethod target) {
         return target.signature().returnKind(false);
     }
@@ -1103,7 +1230,7 @@ public final class GraphBuilder {
             return type;
         }
         RiResolvedType assumed = null;
-        if (C1XOptions.UseAssumptions  && (type.canUseAssumptions(compilation.method))) {
+        if (useAssumptions() && (type.canUseAssumptions(compilation.method))) {
             assumed = type.uniqueConcreteSubtype();
             if (assumed != null) {
                 if (C1XOptions.PrintAssumptions) {
@@ -2052,8 +2179,10 @@ public final class GraphBuilder {
         while ((b = scopeData.removeFromWorkList()) != null) {
             if (!b.wasVisited()) {
                 if (b.isOsrEntry()) {
-                    // OSR not yet supported
-                    Util.shouldNotReachHere();
+                    // the block map flags the loop header at the OSR bci; it becomes an ordinary
+                    // block with the synthetic OSR entry block as an additional predecessor
+                    b.setOsrEntry(false);
+                    setupOsrEntryBlock(ir.osrEntryBlock, b);
                 }
                 b.setWasVisited(true);
                 // now parse the block
@@ -2068,6 +2197,66 @@ public final class GraphBuilder {
         }
     }
 
+    /**
+     * Fills in the block that enters the method at the OSR bci. The block loads the values of the live locals of
+     * {@code target} from the OSR buffer and jumps to {@code target}, which must not have been parsed yet so that the
+     * merge can insert phis for the locals whose values now also come from the buffer. The buffer holds one word per
+     * local variable slot.
+     *
+     * @param osrBlock the OSR entry block, a successor of the start block
+     * @param target the block at the OSR bci
+     */
+    private void setupOsrEntryBlock(BlockBegin osrBlock, BlockBegin target) {
+        FrameState targetState = target.stateBefore();
+        if (!targetState.stackEmpty()) {
+            throw new CiBailout("cannot OSR with non-empty stack");
+        }
+        if (targetState.locksSize() > 0) {
+            throw new CiBailout("cannot OSR with locked monitors");
+        }
+
+        BlockBegin origBlock = curBlock;
+        MutableFrameState origState = curState;
+        Instruction origLast = lastInstr;
+
+        osrBlock.mergeOrClone(ir.startBlock.end().stateAfter());
+        osrBlock.setWasVisited(true);
+        killMemoryMap();
+        curBlock = osrBlock;
+        curState = osrBlock.stateBefore().copy();
+        lastInstr = osrBlock;
+        osrBlock.setNext(null, -1);
+
+        int bci = compilation.osrBCI;
+        int wordSize = compilation.target.wordSize;
+        Value buffer = appendWithoutOptimization(new OsrEntry(), bci);
+        for (int i = 0; i < targetState.localsSize(); i++) {
+            Value x = targetState.localAt(i);
+            if (x == null) {
+                curState.invalidateLocal(i);
+            } else {
+                CiKind kind = x.kind;
+                if (kind == CiKind.Jsr) {
+                    throw new CiBailout("cannot OSR with a return address in a local");
+                }
+                Value offset = appendWithoutOptimization(Constant.forInt(i * wordSize), bci);
+                Value value = appendWithoutOptimization(new LoadPointer(compilation.runtime.asRiType(kind), buffer, null, offset, null, false), bci);
+                curState.storeLocal(i, value);
+            }
+        }
+
+        Goto end = new Goto(target, null, false);
+        lastInstr = lastInstr.setNext(end, bci);
+        osrBlock.setEnd(end);
+        FrameState stateAfter = curState.immutableCopy(bci);
+        end.setStateAfter(stateAfter);
+        target.mergeOrClone(stateAfter);
+
+        curBlock = origBlock;
+        curState = origState;
+        lastInstr = origLast;
+    }
+
     private void popScope() {
         int maxLocks = scope().maxLocks();
         scopeData = scopeData.parent;
@@ -2490,7 +2679,7 @@ public final class GraphBuilder {
             return true;
         }
 
-        if (C1XOptions.UseAssumptions && (type.canUseAssumptions(compilation.method))) {
+        if (useAssumptions() && (type.canUseAssumptions(compilation.method))) {
             RiResolvedType assumed = type.uniqueConcreteSubtype();
             if (assumed != null && assumed == type) {
                 if (C1XOptions.PrintAssumptions) {
@@ -2511,7 +2700,7 @@ public final class GraphBuilder {
                 return resolvedMethod;
             }
 
-            if (C1XOptions.UseAssumptions && (resolvedMethod.holder().canUseAssumptions(compilation.method))) {
+            if (useAssumptions() && (resolvedMethod.holder().canUseAssumptions(compilation.method))) {
                 RiResolvedMethod concrete = resolvedMethod.holder().uniqueConcreteMethod(resolvedMethod);
                 if (concrete != null) {
                     if (C1XOptions.PrintAssumptions) {
@@ -63,6 +63,11 @@ public class IR {
      */
     private List<BlockBegin> orderedBlocks;
 
+    /**
+     * The natural loops of this IR, innermost loops first.
+     */
+    private List<Loop> loops;
+
     /**
      * Creates a new IR instance for the specified compilation.
      * @param compilation the compilation
@@ -151,6 +156,7 @@ public class IR {
             finder.splitCriticalEdges();
             ComputeLinearScanOrder computeLinearScanOrder = new ComputeLinearScanOrder(compilation.stats.blockCount, startBlock);
             orderedBlocks = computeLinearScanOrder.linearScanOrder();
+            loops = computeLinearScanOrder.loops();
             compilation.stats.loopCount = computeLinearScanOrder.numLoops();
             computeLinearScanOrder.printBlocks();
         }
@@ -163,6 +169,15 @@ public class IR {
             new GlobalValueNumberer(this);
             observeCompilationEvent("After global value numbering");
         }
+        if (C1XOptions.OptLoopOptimizations) {
+            makeLinearScanOrder();
+            new LoopOptimizer(this);
+            observeCompilationEvent("After loop optimizations");
+        }
+        if (C1XOptions.OptEscapeAnalysis) {
+            new EscapeAnalyzer(this);
+            observeCompilationEvent("After escape analysis");
+        }
         if (C1XOptions.OptDeadCodeElimination2) {
             new LivenessMarker(this).removeDeadCode();
             observeCompilationEvent("After dead code elimination 2");
@@ -178,6 +193,15 @@ public class IR {
         return orderedBlocks;
     }
 
+    /**
+     * Gets the natural loops of this IR, innermost loops first. Only available once
+     * the linear scan order has been computed.
+     * @return the loops of this IR
+     */
+    public List<Loop> loops() {
+        return loops;
+    }
+
     private void print(boolean cfgOnly) {
         if (!TTY.isSuppressed()) {
             TTY.println("IR for " + compilation.method);
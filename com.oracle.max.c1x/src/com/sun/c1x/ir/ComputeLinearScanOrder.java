@@ -107,6 +107,37 @@ public final class ComputeLinearScanOrder {
         return numLoops;
     }
 
+    /**
+     * Gets the natural loops of the method, innermost loops first. Loops that were
+     * found to be non-natural are not included.
+     * @return the list of natural loops
+     */
+    public List<Loop> loops() {
+        List<Loop> loops = new ArrayList<Loop>(numLoops);
+        if (numLoops == 0) {
+            return loops;
+        }
+        // the blocks of a loop are contiguous in linear scan order, starting with the loop header
+        Loop[] byIndex = new Loop[numLoops];
+        for (BlockBegin cur : linearScanOrder) {
+            for (int loopIdx = 0; loopIdx < numLoops; loopIdx++) {
+                if (isBlockInLoop(loopIdx, cur)) {
+                    if (byIndex[loopIdx] == null) {
+                        assert cur.checkBlockFlag(BlockBegin.BlockFlag.LinearScanLoopHeader) : "first block of a loop must be its header";
+                        byIndex[loopIdx] = new Loop(loopIdx, cur, maxBlockId);
+                    }
+                    byIndex[loopIdx].add(cur);
+                }
+            }
+        }
+        for (Loop loop : byIndex) {
+            if (loop != null) {
+                loops.add(loop);
+            }
+        }
+        return loops;
+    }
+
     public ComputeLinearScanOrder(int maxBlockId, BlockBegin startBlock) {
 
         this.maxBlockId = maxBlockId;
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.ir;
+
+import java.util.*;
+
+import com.sun.cri.ci.*;
+
+/**
+ * A natural loop as detected by {@link ComputeLinearScanOrder}.
+ */
+public final class Loop {
+
+    /**
+     * The index of this loop. Inner loops have a lower index than the loops enclosing them.
+     */
+    public final int index;
+
+    /**
+     * The loop header, which dominates all the blocks of the loop.
+     */
+    public final BlockBegin header;
+
+    /**
+     * The blocks of this loop, including the header, in linear scan order.
+     */
+    public final List<BlockBegin> blocks;
+
+    private final CiBitMap blockMap;
+
+    Loop(int index, BlockBegin header, int maxBlockId) {
+        this.index = index;
+        this.header = header;
+        this.blocks = new ArrayList<BlockBegin>();
+        this.blockMap = new CiBitMap(maxBlockId);
+    }
+
+    void add(BlockBegin block) {
+        blocks.add(block);
+        blockMap.set(block.blockID);
+    }
+
+    /**
+     * Checks whether the specified block belongs to this loop.
+     * @param block the block to check
+     * @return {@code true} if the block is part of this loop
+     */
+    public boolean contains(BlockBegin block) {
+        return block.blockID < blockMap.size() && blockMap.get(block.blockID);
+    }
+
+    @Override
+    public String toString() {
+        return "loop " + index + " (header B" + header.blockID + ", " + blocks.size() + " blocks)";
+    }
+}
@@ -26,7 +26,8 @@ import com.oracle.max.criutils.*;
 import com.sun.cri.ci.*;
 
 /**
- * The {@code OsrEntry} instruction represents the buffer for an OSR.
+ * The {@code OsrEntry} instruction represents the buffer for an OSR. The buffer holds one word per local variable slot
+ * of the frame being migrated, in local variable order.
  */
 public final class OsrEntry extends Instruction {
 
@@ -34,8 +35,8 @@ public final class OsrEntry extends Instruction {
      * Constructs a new OsrEntry instruction.
      */
     public OsrEntry() {
-        // TODO: this should be a CiKind.Word
-        super(CiKind.Jsr);
+        super(CiKind.Long);
+        setFlag(Flag.LiveSideEffect); // the buffer must be freed by the OSR migration end call
     }
 
     @Override
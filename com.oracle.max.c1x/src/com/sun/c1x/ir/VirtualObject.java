@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.ir;
+
+import java.util.*;
+
+import com.oracle.max.criutils.*;
+import com.sun.c1x.value.*;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
+/**
+ * The {@code VirtualObject} value stands for an allocation that was removed by escape analysis.
+ * It only ever appears in {@linkplain FrameState frame states}, where it describes the contents
+ * the object would have had so that deoptimization can rematerialize it.
+ */
+public final class VirtualObject extends Value {
+
+    private final RiResolvedType type;
+    private final int objectId;
+
+    /**
+     * The field (or element) values of the object at the end of the block that allocated it.
+     */
+    private final Value[] fieldValues;
+
+    /**
+     * The field values of the object for the frame states recorded before the end of the allocating block.
+     */
+    private final IdentityHashMap<FrameState, Value[]> fieldValuesByState;
+
+    /**
+     * Creates a new virtual object.
+     *
+     * @param type the exact type of the removed allocation
+     * @param objectId the id of the object, unique within the compilation
+     * @param fieldValues the field values of the object at the end of the allocating block
+     * @param fieldValuesByState the field values of the object for states recorded within the allocating block
+     */
+    public VirtualObject(RiResolvedType type, int objectId, Value[] fieldValues, IdentityHashMap<FrameState, Value[]> fieldValuesByState) {
+        super(CiKind.Object);
+        this.type = type;
+        this.objectId = objectId;
+        this.fieldValues = fieldValues;
+        this.fieldValuesByState = fieldValuesByState;
+        setFlag(Flag.NonNull);
+    }
+
+    /**
+     * Gets the exact type of the object.
+     */
+    public RiResolvedType type() {
+        return type;
+    }
+
+    /**
+     * Gets the id of this object, unique within the compilation.
+     */
+    public int objectId() {
+        return objectId;
+    }
+
+    /**
+     * Gets the field values of this object as seen by a given frame state. The values are ordered as
+     * the fields {@linkplain RiResolvedType#declaredFields() declared} by the type and its super types,
+     * starting with the top most type, or by index for an array.
+     *
+     * @param state the outermost frame state of an instruction referencing this object
+     */
+    public Value[] fieldValuesAt(FrameState state) {
+        Value[] values = fieldValuesByState.get(state);
+        return values == null ? fieldValues : values;
+    }
+
+    @Override
+    public BlockBegin block() {
+        return null;
+    }
+
+    @Override
+    public RiResolvedType declaredType() {
+        return type;
+    }
+
+    @Override
+    public RiResolvedType exactType() {
+        return type;
+    }
+
+    @Override
+    public void inputValuesDo(ValueClosure closure) {
+        for (int i = 0; i < fieldValues.length; i++) {
+            fieldValues[i] = closure.apply(fieldValues[i]);
+        }
+        for (Value[] values : fieldValuesByState.values()) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = closure.apply(values[i]);
+            }
+        }
+    }
+
+    @Override
+    public void accept(ValueVisitor v) {
+        v.visitVirtualObject(this);
+    }
+
+    @Override
+    public void print(LogStream out) {
+        out.print("virtual object ").print(objectId).print(' ').print(CiUtil.toJavaName(type));
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.opt;
+
+import java.util.*;
+
+import com.oracle.max.criutils.*;
+import com.sun.c1x.*;
+import com.sun.c1x.graph.*;
+import com.sun.c1x.ir.*;
+import com.sun.c1x.value.*;
+import com.sun.c1x.value.FrameState.*;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
+/**
+ * This class implements a block local escape analysis and replaces allocations that do not escape
+ * with their field values. An allocation is scalar replaced if it is only accessed by field loads and stores,
+ * constant index array accesses, array length queries and monitor operations in the block that allocates it,
+ * and is not referenced by phis or exception handler states. Monitor operations on such an object are removed.
+ *
+ * A removed allocation may still be referenced by frame states, both within and after the allocating block.
+ * These references are replaced by a {@link VirtualObject} that records the field values of the object at
+ * each of these states so that deoptimization can rematerialize it. Frame states recorded after the end of
+ * the allocating block all see the same field values as no access to the object happens outside that block.
+ * This does not hold for exception handlers entered from within the block, so allocations in blocks
+ * covered by an exception handler cannot be referenced outside of their block.
+ */
+public final class EscapeAnalyzer {
+
+    /**
+     * An allocation that is a candidate for scalar replacement.
+     */
+    private static final class Candidate {
+        final Instruction allocation;
+        final BlockBegin block;
+        final RiResolvedType type;
+
+        /**
+         * The instance fields of the allocated object, or {@code null} for an array.
+         */
+        final RiResolvedField[] fields;
+
+        /**
+         * The kind of each field or array element.
+         */
+        final CiKind[] kinds;
+
+        boolean escapes;
+        boolean referencedOutsideBlock;
+
+        Candidate(Instruction allocation, BlockBegin block, RiResolvedType type, RiResolvedField[] fields, CiKind[] kinds) {
+            this.allocation = allocation;
+            this.block = block;
+            this.type = type;
+            this.fields = fields;
+            this.kinds = kinds;
+        }
+
+        int fieldIndex(RiField field) {
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i] == field) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    final IR ir;
+    final InstructionSubstituter subst;
+    final IdentityHashMap<Value, Candidate> candidates = new IdentityHashMap<Value, Candidate>();
+    final HashSet<Instruction> removed = new HashSet<Instruction>();
+    final List<VirtualObject> virtualObjects = new ArrayList<VirtualObject>();
+    int eliminatedMonitors;
+
+    /**
+     * Creates a new escape analyzer and scalar replaces non-escaping allocations of the given IR.
+     * @param ir the IR to optimize
+     */
+    public EscapeAnalyzer(IR ir) {
+        this.ir = ir;
+        this.subst = new InstructionSubstituter(ir);
+        findCandidates();
+        if (candidates.isEmpty()) {
+            return;
+        }
+        removeNullChecks();
+        findEscapes();
+        for (Candidate c : candidates.values()) {
+            if (!c.escapes && c.referencedOutsideBlock && c.block.numberOfExceptionHandlers() > 0) {
+                c.escapes = true;
+            }
+        }
+        for (Candidate c : candidates.values()) {
+            if (!c.escapes) {
+                scalarReplace(c);
+            }
+        }
+        if (virtualObjects.isEmpty()) {
+            return;
+        }
+        removeInstructions();
+        subst.finish();
+        for (VirtualObject object : virtualObjects) {
+            // the recorded field values may themselves have been replaced
+            object.inputValuesDo(subst);
+        }
+
+        C1XMetrics.EliminatedAllocations += virtualObjects.size();
+        C1XMetrics.EliminatedMonitors += eliminatedMonitors;
+        if (C1XOptions.PrintEscapeAnalysis) {
+            TTY.println("Scalar replaced " + virtualObjects.size() + " allocation(s) and removed " + eliminatedMonitors +
+                            " monitor operation(s) in " + CiUtil.format("%H.%n(%p)", ir.compilation.method));
+        }
+    }
+
+    private void findCandidates() {
+        ir.startBlock.iteratePreOrder(new BlockClosure() {
+            public void apply(BlockBegin block) {
+                for (Instruction i = block.next(); i != null; i = i.next()) {
+                    Candidate c = null;
+                    if (i instanceof NewInstance) {
+                        c = instanceCandidate((NewInstance) i, block);
+                    } else if (i instanceof NewTypeArray) {
+                        NewTypeArray x = (NewTypeArray) i;
+                        c = arrayCandidate(x, block, x.exactType(), x.elementKind());
+                    } else if (i instanceof NewObjectArray) {
+                        NewObjectArray x = (NewObjectArray) i;
+                        c = arrayCandidate(x, block, x.exactType(), CiKind.Object);
+                    }
+                    if (c != null) {
+                        candidates.put(i, c);
+                    }
+                }
+            }
+        });
+    }
+
+    private static Candidate instanceCandidate(NewInstance x, BlockBegin block) {
+        RiType type = x.instanceClass();
+        if (!(type instanceof RiResolvedType)) {
+            return null;
+        }
+        RiResolvedType resolvedType = (RiResolvedType) type;
+        // the allocation must not have the side effect of initializing the class or registering a finalizer
+        if (!resolvedType.isInstanceClass() || !resolvedType.isInitialized() || resolvedType.hasFinalizer()) {
+            return null;
+        }
+        RiResolvedField[] fields = instanceFields(resolvedType);
+        CiKind[] kinds = new CiKind[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            kinds[i] = fields[i].kind(true);
+        }
+        return new Candidate(x, block, resolvedType, fields, kinds);
+    }
+
+    private static Candidate arrayCandidate(NewArray x, BlockBegin block, RiResolvedType type, CiKind elementKind) {
+        if (type == null || !x.length().isConstant()) {
+            return null;
+        }
+        int length = x.length().asConstant().asInt();
+        if (length < 0 || length > C1XOptions.EscapeAnalysisMaxArrayLength) {
+            return null;
+        }
+        CiKind[] kinds = new CiKind[length];
+        Arrays.fill(kinds, elementKind);
+        return new Candidate(x, block, type, null, kinds);
+    }
+
+    /**
+     * Gets the instance fields of a given type, including inherited fields. The fields of a super type
+     * precede those of its sub types and the fields of each type are in {@linkplain RiResolvedType#declaredFields() declaration} order.
+     */
+    public static RiResolvedField[] instanceFields(RiResolvedType type) {
+        ArrayList<RiResolvedType> hierarchy = new ArrayList<RiResolvedType>();
+        for (RiResolvedType t = type; t != null; t = t.superType()) {
+            hierarchy.add(0, t);
+        }
+        ArrayList<RiResolvedField> fields = new ArrayList<RiResolvedField>();
+        for (RiResolvedType t : hierarchy) {
+            fields.addAll(Arrays.asList(t.declaredFields()));
+        }
+        return fields.toArray(new RiResolvedField[fields.size()]);
+    }
+
+    /**
+     * Replaces null checks of candidates with the candidates themselves, as an allocation is never null.
+     */
+    private void removeNullChecks() {
+        final boolean[] found = {false};
+        ir.startBlock.iteratePreOrder(new BlockClosure() {
+            public void apply(BlockBegin block) {
+                for (Instruction i = block.next(); i != null; i = i.next()) {
+                    if (i instanceof NullCheck && candidates.containsKey(((NullCheck) i).object())) {
+                        subst.setSubst(i, ((NullCheck) i).object());
+                        found[0] = true;
+                    }
+                }
+            }
+        });
+        if (found[0]) {
+            subst.finish();
+        }
+    }
+
+    private void findEscapes() {
+        ir.startBlock.iteratePreOrder(new BlockClosure() {
+            public void apply(final BlockBegin block) {
+                if (block.exceptionHandlerStates() != null) {
+                    for (FrameState state : block.exceptionHandlerStates()) {
+                        markStateReferences(state, null, block, true);
+                    }
+                }
+                block.stateBefore().forEachPhi(block, new PhiProcedure() {
+                    public boolean doPhi(Phi phi) {
+                        for (int j = 0; j < phi.inputCount(); j++) {
+                            Candidate c = candidates.get(phi.inputAt(j));
+                            if (c != null) {
+                                c.escapes = true;
+                            }
+                        }
+                        return true;
+                    }
+                });
+                for (Instruction i = block; i != null; i = i.next()) {
+                    final Instruction instr = i;
+                    instr.inputValuesDo(new ValueClosure() {
+                        public Value apply(Value input) {
+                            Candidate c = candidates.get(input);
+                            if (c != null && !isScalarAccess(instr, block, c)) {
+                                c.escapes = true;
+                            }
+                            return input;
+                        }
+                    });
+                    Candidate accessed = accessedCandidate(instr, block);
+                    if (instr.stateBefore() != null) {
+                        markStateReferences(instr.stateBefore(), accessed, block, false);
+                    }
+                    if (instr.stateAfter() != null) {
+                        markStateReferences(instr.stateAfter(), accessed, block, false);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Records the references from a frame state to candidates.
+     *
+     * @param accessed the candidate accessed by the instruction owning the state, whose monitor may be held
+     * @param block the block of the instruction owning the state
+     * @param mustEscape specifies if all candidates referenced by the state escape
+     */
+    private void markStateReferences(FrameState state, Candidate accessed, BlockBegin block, boolean mustEscape) {
+        for (FrameState s = state; s != null; s = s.callerState()) {
+            for (int i = 0; i < s.valuesSize(); i++) {
+                Candidate c = candidates.get(s.valueAt(i));
+                if (c != null) {
+                    if (mustEscape) {
+                        c.escapes = true;
+                    } else if (block != c.block) {
+                        c.referencedOutsideBlock = true;
+                    }
+                }
+            }
+            for (int i = 0; i < s.locksSize(); i++) {
+                Candidate c = candidates.get(s.lockAt(i));
+                if (c != null && c != accessed) {
+                    // a lock held across an instruction that remains cannot be elided
+                    c.escapes = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the candidate accessed by a given instruction if the access can be scalar replaced.
+     */
+    private Candidate accessedCandidate(Instruction instr, BlockBegin block) {
+        Value object;
+        if (instr instanceof AccessField) {
+            object = ((AccessField) instr).object();
+        } else if (instr instanceof AccessArray) {
+            object = ((AccessArray) instr).array();
+        } else if (instr instanceof AccessMonitor) {
+            object = ((AccessMonitor) instr).object();
+        } else {
+            return null;
+        }
+        Candidate c = candidates.get(object);
+        if (c != null && isScalarAccess(instr, block, c)) {
+            return c;
+        }
+        return null;
+    }
+
+    /**
+     * Determines if a given instruction using a candidate can be replaced by operations on the field values of the candidate.
+     */
+    private static boolean isScalarAccess(Instruction instr, BlockBegin block, Candidate c) {
+        if (block != c.block) {
+            return false;
+        }
+        Value object = c.allocation;
+        if (instr instanceof AccessField) {
+            AccessField x = (AccessField) instr;
+            if (x.object() != object || x.isStatic() || !x.isLoaded() || c.fields == null || c.fieldIndex(x.field()) < 0) {
+                return false;
+            }
+            return !(x instanceof StoreField) || ((StoreField) x).value() != object;
+        }
+        if (instr instanceof AccessIndexed) {
+            AccessIndexed x = (AccessIndexed) instr;
+            if (x.array() != object || c.fields != null || elementIndex(x, c) < 0) {
+                return false;
+            }
+            if (x instanceof StoreIndexed) {
+                StoreIndexed store = (StoreIndexed) x;
+                return store.value() != object && !store.needsStoreCheck();
+            }
+            return true;
+        }
+        if (instr instanceof ArrayLength) {
+            return ((ArrayLength) instr).array() == object;
+        }
+        if (instr instanceof AccessMonitor) {
+            return ((AccessMonitor) instr).object() == object;
+        }
+        return false;
+    }
+
+    private static int elementIndex(AccessIndexed x, Candidate c) {
+        if (!x.index().isConstant()) {
+            return -1;
+        }
+        int index = x.index().asConstant().asInt();
+        return index >= 0 && index < c.kinds.length ? index : -1;
+    }
+
+    /**
+     * Replaces the accesses to a non-escaping candidate in its block by the field values they load or store,
+     * recording the field values seen by each frame state of the block that refers to the candidate.
+     */
+    private void scalarReplace(Candidate c) {
+        Value[] values = new Value[c.kinds.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new Constant(CiConstant.defaultValue(c.kinds[i]));
+        }
+        IdentityHashMap<FrameState, Value[]> valuesByState = new IdentityHashMap<FrameState, Value[]>();
+
+        for (Instruction i = c.allocation.next(); i != null; i = i.next()) {
+            Candidate accessed = accessedCandidate(i, c.block);
+            if (accessed == c) {
+                if (i instanceof LoadField) {
+                    subst.setSubst(i, values[c.fieldIndex(((LoadField) i).field())]);
+                } else if (i instanceof StoreField) {
+                    values[c.fieldIndex(((StoreField) i).field())] = ((StoreField) i).value();
+                    removed.add(i);
+                } else if (i instanceof LoadIndexed) {
+                    subst.setSubst(i, values[elementIndex((LoadIndexed) i, c)]);
+                } else if (i instanceof StoreIndexed) {
+                    values[elementIndex((StoreIndexed) i, c)] = ((StoreIndexed) i).value();
+                    removed.add(i);
+                } else if (i instanceof ArrayLength) {
+                    subst.setSubst(i, ((NewArray) c.allocation).length());
+                } else {
+                    assert i instanceof AccessMonitor;
+                    removed.add(i);
+                    eliminatedMonitors++;
+                }
+            } else {
+                recordFieldValues(c, i.stateBefore(), values, valuesByState);
+                recordFieldValues(c, i.stateAfter(), values, valuesByState);
+            }
+        }
+
+        VirtualObject object = new VirtualObject(c.type, virtualObjects.size(), values, valuesByState);
+        subst.setSubst(c.allocation, object);
+        virtualObjects.add(object);
+    }
+
+    private static void recordFieldValues(Candidate c, FrameState state, Value[] values, IdentityHashMap<FrameState, Value[]> valuesByState) {
+        if (state == null || valuesByState.containsKey(state)) {
+            return;
+        }
+        for (FrameState s = state; s != null; s = s.callerState()) {
+            for (int i = 0; i < s.valuesSize(); i++) {
+                if (s.valueAt(i) == c.allocation) {
+                    valuesByState.put(state, values.clone());
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the stores and monitor operations on scalar replaced objects from their blocks.
+     */
+    private void removeInstructions() {
+        ir.startBlock.iteratePreOrder(new BlockClosure() {
+            public void apply(BlockBegin block) {
+                Instruction prev = block;
+                for (Instruction i = block.next(); i != null; i = i.next()) {
+                    if (removed.contains(i)) {
+                        prev.resetNext(i.next());
+                    } else {
+                        prev = i;
+                    }
+                }
+            }
+        });
+    }
+}
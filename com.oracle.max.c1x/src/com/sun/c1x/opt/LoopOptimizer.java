@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.opt;
+
+import java.util.*;
+
+import com.oracle.max.criutils.*;
+import com.sun.c1x.*;
+import com.sun.c1x.graph.*;
+import com.sun.c1x.ir.*;
+import com.sun.c1x.value.*;
+import com.sun.cri.bytecode.*;
+import com.sun.cri.ci.*;
+
+/**
+ * This class implements optimizations on the natural loops found while computing the
+ * {@linkplain ComputeLinearScanOrder linear scan order}. Loops are processed innermost first.
+ *
+ * Loop invariant computations that cannot trap are moved to the end of the loop preheader, i.e.
+ * the only block outside of the loop that branches to the loop header. Moved computations include
+ * arithmetic, logic and comparison operations, the length of non-null arrays and loads of
+ * non-volatile fields of non-null objects that are not overwritten within the loop.
+ *
+ * Bounds checks are removed from array accesses indexed by a loop counter if the loop header
+ * checks the counter against the length of the accessed array. The counter must be a phi of the
+ * loop header that starts at a non-negative constant and is only ever incremented by one, so that it
+ * cannot overflow before failing the check.
+ */
+public final class LoopOptimizer {
+
+    final IR ir;
+    int hoisted;
+    int boundsChecksEliminated;
+
+    /**
+     * Set while checking the inputs of an instruction if any of them is defined in the current loop.
+     */
+    boolean isInvariant;
+
+    /**
+     * Creates a new loop optimizer and optimizes the loops of the given IR.
+     * @param ir the IR to optimize
+     */
+    public LoopOptimizer(IR ir) {
+        this.ir = ir;
+        for (Loop loop : ir.loops()) {
+            hoistInvariants(loop);
+            eliminateBoundsChecks(loop);
+        }
+        if (C1XOptions.PrintLoopOptimizations && (hoisted > 0 || boundsChecksEliminated > 0)) {
+            TTY.println("Loop optimizations in %s: %d invariants hoisted, %d bounds checks removed", ir.compilation.method, hoisted, boundsChecksEliminated);
+        }
+        if (C1XOptions.PrintMetrics) {
+            C1XMetrics.LoopInvariantsHoisted += hoisted;
+            C1XMetrics.BoundsChecksElminations += boundsChecksEliminated;
+        }
+    }
+
+    /**
+     * Gets the preheader of a loop, i.e. its header's only predecessor outside of the loop,
+     * if it ends with an unconditional jump to the header.
+     */
+    private static BlockBegin preheader(Loop loop) {
+        BlockBegin header = loop.header;
+        if (header.isExceptionEntry()) {
+            return null;
+        }
+        BlockBegin result = null;
+        for (BlockBegin pred : header.predecessors()) {
+            if (!loop.contains(pred)) {
+                if (result != null && result != pred) {
+                    return null;
+                }
+                result = pred;
+            }
+        }
+        if (result == null || !(result.end() instanceof Goto)) {
+            return null;
+        }
+        return result;
+    }
+
+    private void hoistInvariants(Loop loop) {
+        BlockBegin preheader = preheader(loop);
+        if (preheader == null) {
+            return;
+        }
+
+        // collect the values defined in the loop and whether the loop may write to memory
+        final Set<Value> variant = Collections.newSetFromMap(new IdentityHashMap<Value, Boolean>());
+        final Set<Object> storedFields = new HashSet<Object>();
+        boolean killsMemory = false;
+        for (BlockBegin block : loop.blocks) {
+            for (Instruction i = block.next(); i != null; i = i.next()) {
+                variant.add(i);
+                if (i instanceof StoreField) {
+                    StoreField store = (StoreField) i;
+                    if (store.needsPatching() || !store.isLoaded()) {
+                        killsMemory = true;
+                    }
+                    storedFields.add(store.field());
+                } else if (killsMemory(i)) {
+                    killsMemory = true;
+                }
+            }
+        }
+        FrameState.PhiProcedure addPhi = new FrameState.PhiProcedure() {
+            public boolean doPhi(Phi phi) {
+                variant.add(phi);
+                return true;
+            }
+        };
+        for (BlockBegin block : loop.blocks) {
+            if (block.stateBefore() != null) {
+                block.stateBefore().forEachPhi(block, addPhi);
+            }
+        }
+
+        ValueClosure checkInputs = new ValueClosure() {
+            public Value apply(Value v) {
+                if (variant.contains(v)) {
+                    isInvariant = false;
+                }
+                return v;
+            }
+        };
+
+        // visiting the blocks in linear scan order visits definitions before their uses
+        BlockEnd preheaderEnd = preheader.end();
+        Instruction last = preheaderEnd.prev(preheader);
+        for (BlockBegin block : loop.blocks) {
+            Instruction prev = block;
+            Instruction i = block.next();
+            while (i != null) {
+                Instruction next = i.next();
+                if (canHoist(i, killsMemory, storedFields)) {
+                    isInvariant = true;
+                    i.inputValuesDo(checkInputs);
+                    if (isInvariant) {
+                        prev.resetNext(next);
+                        last.setNext(i, i.bci());
+                        i.setNext(preheaderEnd, preheaderEnd.bci());
+                        last = i;
+                        variant.remove(i);
+                        hoisted++;
+                        if (C1XOptions.PrintLoopOptimizations) {
+                            TTY.println("Hoisted %s%d from B%d to B%d", i.name(), i.id(), block.blockID, preheader.blockID);
+                        }
+                        i = next;
+                        continue;
+                    }
+                }
+                prev = i;
+                i = next;
+            }
+        }
+    }
+
+    private static boolean canHoist(Instruction i, boolean killsMemory, Set<Object> storedFields) {
+        if (i instanceof BlockEnd || i.stateBefore() != null || i.stateAfter() != null || i.canTrap()) {
+            return false;
+        }
+        if (i instanceof ArithmeticOp || i instanceof LogicOp || i instanceof ShiftOp || i instanceof Convert ||
+            i instanceof CompareOp || i instanceof NegateOp || i instanceof IfOp) {
+            return true;
+        }
+        if (i instanceof ArrayLength) {
+            return ((ArrayLength) i).array().isNonNull();
+        }
+        if (i instanceof LoadField) {
+            LoadField load = (LoadField) i;
+            return !killsMemory && !load.isStatic() && load.isLoaded() && !load.isVolatile() && !load.needsPatching() &&
+                   load.object().isNonNull() && !storedFields.contains(load.field());
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether an instruction may modify any field, either directly or by running arbitrary code.
+     */
+    private static boolean killsMemory(Instruction i) {
+        if (i instanceof Invoke || i instanceof Intrinsic || i instanceof NativeCall || i instanceof AccessMonitor ||
+            i instanceof CompareAndSwap || i instanceof MemoryBarrier || i instanceof ArrayCopy || i instanceof StorePointer ||
+            i instanceof StoreRegister || i instanceof UnsafePutRaw || i instanceof UnsafePutObject) {
+            return true;
+        }
+        if (i instanceof AccessField) {
+            return ((AccessField) i).needsPatching();
+        }
+        // other instructions calling into the runtime may load and initialize classes
+        return i.stateBefore() != null && !(i instanceof AccessArray || i instanceof NullCheck || i instanceof ArithmeticOp || i instanceof BoundsCheck);
+    }
+
+    private void eliminateBoundsChecks(Loop loop) {
+        BlockBegin header = loop.header;
+        if (!(header.end() instanceof If)) {
+            return;
+        }
+        If ifNode = (If) header.end();
+        boolean trueInLoop = loop.contains(ifNode.trueSuccessor());
+        boolean falseInLoop = loop.contains(ifNode.falseSuccessor());
+        if (trueInLoop == falseInLoop) {
+            return;
+        }
+        BlockBegin body = trueInLoop ? ifNode.trueSuccessor() : ifNode.falseSuccessor();
+
+        // normalize the condition under which the loop is entered to "x cond y"
+        Condition cond = trueInLoop ? ifNode.condition() : ifNode.condition().negate();
+        Value x = ifNode.x();
+        Value y = ifNode.y();
+        if (y instanceof Phi) {
+            Value t = x;
+            x = y;
+            y = t;
+            cond = cond.mirror();
+        }
+        if (cond != Condition.LT || !(y instanceof ArrayLength) || !isIncrementingCounter(x, loop)) {
+            return;
+        }
+        Value array = ((ArrayLength) y).array();
+        for (BlockBegin block : loop.blocks) {
+            if (!isDominatedBy(block, body)) {
+                continue;
+            }
+            for (Instruction i = block.next(); i != null; i = i.next()) {
+                if (i instanceof AccessIndexed) {
+                    AccessIndexed access = (AccessIndexed) i;
+                    if (access.array() == array && access.index() == x && access.needsBoundsCheck()) {
+                        access.eliminateBoundsCheck();
+                        boundsChecksEliminated++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a value is an int phi of the loop header that starts at a non-negative
+     * constant when entering the loop and is incremented by one on every back edge.
+     */
+    private static boolean isIncrementingCounter(Value value, Loop loop) {
+        if (!(value instanceof Phi) || value.kind != CiKind.Int) {
+            return false;
+        }
+        Phi phi = (Phi) value;
+        if (phi.block() != loop.header || phi.isDeadPhi()) {
+            return false;
+        }
+        for (int j = 0; j < phi.inputCount(); j++) {
+            Value input = phi.inputAt(j);
+            if (loop.contains(loop.header.predecessors().get(j))) {
+                if (!(input instanceof ArithmeticOp)) {
+                    return false;
+                }
+                ArithmeticOp add = (ArithmeticOp) input;
+                if (add.opcode != Bytecodes.IADD || !(isOne(add.x()) && add.y() == phi || isOne(add.y()) && add.x() == phi)) {
+                    return false;
+                }
+            } else if (!input.isConstant() || input.asConstant().asInt() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOne(Value value) {
+        return value.isConstant() && value.kind == CiKind.Int && value.asConstant().asInt() == 1;
+    }
+
+    private static boolean isDominatedBy(BlockBegin block, BlockBegin dominator) {
+        for (BlockBegin b = block; b != null; b = b.dominator()) {
+            if (b == dominator) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -76,7 +76,20 @@ public final class AMD64LIRAssembler extends LIRAssembler {
 
     @Override
     protected void emitOsrEntry() {
-        throw Util.unimplemented();
+        // The OSR buffer is in rax and rsp points at the return address of the migrated frame,
+        // so the frame is built here exactly as the standard prologue would have built it.
+        tasm.targetMethod.setOsrEntryOffset(codePos());
+        int frameSize = initialFrameSizeInBytes();
+        int lastFramePage = frameSize / target.pageSize;
+        for (int i = 0; i <= lastFramePage; i++) {
+            int offset = (i + C1XOptions.StackShadowPages) * target.pageSize;
+            bangStackWithOffset(offset - frameSize);
+        }
+        masm.decrementq(AMD64.rsp, frameSize);
+        CiCalleeSaveLayout csl = compilation.registerConfig.getCalleeSaveLayout();
+        if (csl != null && csl.size != 0) {
+            masm.save(csl, frameMap.offsetToCalleeSaveAreaStart());
+        }
     }
 
     @Override
@@ -680,7 +680,8 @@ public class AMD64LIRGenerator extends LIRGenerator {
 
     @Override
     protected CiValue osrBufferPointer() {
-        return Util.nonFatalUnimplemented(null);
+        // the VM enters the OSR code with the buffer in the return register
+        return AMD64.rax.asValue(CiKind.Long);
     }
 
     @Override
@@ -549,6 +549,7 @@ public abstract class FrameState {
 
     /**
      * Traverses all {@linkplain Value#isLive() live values} of this frame state and it's callers.
+     * The field values of a {@linkplain VirtualObject virtual object} are traversed in place of the object.
      *
      * @param proc the call back called to process each live value traversed
      */
@@ -558,7 +559,13 @@ public abstract class FrameState {
             final int max = state.valuesSize();
             for (int i = 0; i < max; i++) {
                 Value value = state.values[i];
-                if (value != null && value.isLive()) {
+                if (value instanceof VirtualObject) {
+                    for (Value fieldValue : ((VirtualObject) value).fieldValuesAt(this)) {
+                        if (fieldValue.isLive()) {
+                            proc.doValue(fieldValue);
+                        }
+                    }
+                } else if (value != null && value.isLive()) {
                     proc.doValue(value);
                 }
             }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.cri.ri;
+
+/**
+ * The profiling instrumentation a runtime asks a compiler to insert into optimized code so that the code keeps updating
+ * a profile maintained by the runtime, e.g. for an intermediate tier of tiered compilation. Each probe is a static method
+ * whose first parameter receives {@link #profile()} as a constant. A probe is only inserted for bytecodes of the method
+ * being compiled, not for those of methods inlined into it.
+ */
+public interface RiProfilingProbes {
+
+    /**
+     * Gets the profile object passed to the probes.
+     */
+    Object profile();
+
+    /**
+     * Gets the probe called on method entry, taking the profile and the receiver ({@code null} for a static method).
+     */
+    RiResolvedMethod entryProbe();
+
+    /**
+     * Gets the probe called before a backward branch, taking the profile and the bci of the branch target.
+     */
+    RiResolvedMethod backwardBranchProbe();
+
+    /**
+     * Gets the probe called before a virtual or interface call that is dispatched dynamically, taking the profile, the
+     * receiver and the value returned by {@link #receiverProfileIndex(int)} for the call.
+     */
+    RiResolvedMethod receiverProbe();
+
+    /**
+     * Gets the index of the receiver type profile of the call at a given bci.
+     *
+     * @return a negative value if no receiver types are to be recorded for the call at {@code bci}
+     */
+    int receiverProfileIndex(int bci);
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.hotpath;
+
+/*
+ * Tests on-stack replacement of a loop carrying long values.
+ *
+ * @Harness: java
+ * @Runs: 0 = 4294967297L; 100000 = -7479655903039487L
+ */
+public class HP_osr01 {
+
+    public static long test(int count) {
+        long sum = 0x100000000L;
+        int k = 7;
+        long hash = 1;
+        for (int i = 0; i < count; i++) {
+            sum += i;
+            hash = hash * 31 + (i ^ k);
+        }
+        return sum ^ hash;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.hotpath;
+
+/*
+ * Tests on-stack replacement of a loop carrying object references, some of them allocated by the loop.
+ *
+ * @Harness: java
+ * @Runs: 0 = 3; 100000 = 149331
+ */
+public class HP_osr03 {
+
+    static final class Cell {
+        final int value;
+
+        Cell(int value) {
+            this.value = value;
+        }
+    }
+
+    public static int test(int count) {
+        int[] counts = new int[4];
+        String label = "osr";
+        Cell last = new Cell(0);
+        for (int i = 0; i < count; i++) {
+            counts[i & 3]++;
+            if ((i & 1023) == 0) {
+                last = new Cell(i);
+            }
+        }
+        return counts[0] + counts[3] + label.length() + last.value;
+    }
+}
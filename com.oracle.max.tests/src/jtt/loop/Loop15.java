@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.loop;
+
+/*
+ * Tests a counted loop whose array, a local variable, is replaced by a shorter one in the loop body.
+ *
+ * @Harness: java
+ * @Runs: 10=45; 5=10; 3=!java.lang.ArrayIndexOutOfBoundsException
+ */
+public class Loop15 {
+
+    public static int test(int arg) {
+        int[] a = new int[10];
+        int[] shorter = new int[arg];
+        int r = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (i == 4) {
+                a = shorter;
+            }
+            a[i] = i;
+            r += a[i];
+        }
+        return r;
+    }
+}
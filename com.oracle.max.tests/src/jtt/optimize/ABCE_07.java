@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * Tests a counted loop accessing the array at an offset from the index, including offsets out of range.
+ *
+ * @Harness: java
+ * @Runs: 0=55; 1=!java.lang.ArrayIndexOutOfBoundsException; -1=!java.lang.ArrayIndexOutOfBoundsException;
+ * @Runs: 2147483647=!java.lang.ArrayIndexOutOfBoundsException; -2147483648=!java.lang.ArrayIndexOutOfBoundsException
+ */
+public class ABCE_07 {
+    public static int[] array = new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    public static int test(int arg) {
+        int r = 0;
+        for (int i = 0; i < array.length; i++) {
+            r += array[i + arg];
+        }
+        return r;
+    }
+}
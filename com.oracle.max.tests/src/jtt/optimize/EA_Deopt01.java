@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * Tests deoptimization at a failing type guard while scalar replaced objects referring to each other are live:
+ * the objects must be rematerialized with the field values they had at the guard.
+ *
+ * @Harness: java
+ * @Runs: 0 = 0; 20000 = 31853648
+ */
+public class EA_Deopt01 {
+
+    static final class Point {
+        int x;
+        int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    static final class Segment {
+        Point from;
+        Point to;
+
+        Segment(Point from, Point to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    abstract static class Metric {
+        abstract int weight(int x);
+    }
+
+    static final class Unit extends Metric {
+        @Override
+        int weight(int x) {
+            return 1;
+        }
+    }
+
+    static final class Square extends Metric {
+        @Override
+        int weight(int x) {
+            return x * x;
+        }
+    }
+
+    static int length(Metric metric, int x) {
+        Point from = new Point(x, x + 1);
+        Segment segment = new Segment(from, new Point(x * 2, 3));
+        segment.to.y += metric.weight(x);
+        from.x--;
+        return segment.from.x + segment.from.y + segment.to.x + segment.to.y + (segment.from == from ? 1 : 0);
+    }
+
+    public static int test(int count) {
+        Metric unit = new Unit();
+        Metric square = new Square();
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += length(unit, i & 63);
+        }
+        for (int i = 0; i < count; i++) {
+            sum += length(square, i & 63);
+        }
+        return sum;
+    }
+}
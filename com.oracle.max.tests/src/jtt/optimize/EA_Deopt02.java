@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * Tests allocations that only escape on a path that is never taken while the method warms up: taking the path
+ * afterwards must publish completely initialized objects.
+ *
+ * @Harness: java
+ * @Runs: 0 = 0; 20000 = 11389252
+ */
+public class EA_Deopt02 {
+
+    static final class Box {
+        int value;
+        int[] history;
+
+        Box(int value) {
+            this.value = value;
+            this.history = new int[] {value, value + 1};
+        }
+    }
+
+    static Box escaped;
+
+    static int update(int x, boolean slow) {
+        Box box = new Box(x);
+        box.value += 5;
+        box.history[1] += box.value;
+        if (slow) {
+            escaped = box;
+        }
+        return box.value + box.history[0] + box.history[1];
+    }
+
+    public static int test(int count) {
+        escaped = null;
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += update(i & 127, false);
+        }
+        for (int i = 0; i < count; i++) {
+            sum += update(i & 127, (i & 7) == 0);
+            if (escaped != null) {
+                sum += escaped.value * 3 + escaped.history[1];
+                escaped = null;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * Tests branches that always go the same way while they warm up and then go the other way.
+ *
+ * @Harness: java
+ * @Runs: 0 = 0; 20000 = 40419808
+ */
+public class Spec_Branch01 {
+
+    static int select(int x, boolean flag, int limit) {
+        int result;
+        if (flag) {
+            result = x + 1;
+        } else {
+            result = x * 3;
+        }
+        if (x < limit) {
+            result ^= 0x55;
+        }
+        return result;
+    }
+
+    public static int test(int count) {
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += select(i & 1023, true, Integer.MAX_VALUE);
+        }
+        for (int i = 0; i < count; i++) {
+            sum += select(i & 1023, false, 0);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * Tests a virtual call site that only sees one receiver type while it warms up and then sees another one:
+ * the speculatively devirtualized call must deoptimize and the method must be recompiled without the speculation.
+ *
+ * @Harness: java
+ * @Runs: 0 = 0; 20000 = 1850000
+ */
+public class Spec_Receiver01 {
+
+    abstract static class Shape {
+        abstract int area(int x);
+    }
+
+    static final class Square extends Shape {
+        @Override
+        int area(int x) {
+            return x * x;
+        }
+    }
+
+    static final class Twice extends Shape {
+        @Override
+        int area(int x) {
+            return 2 * x;
+        }
+    }
+
+    static int dispatch(Shape shape, int x) {
+        return shape.area(x);
+    }
+
+    public static int test(int count) {
+        Shape square = new Square();
+        Shape twice = new Twice();
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += dispatch(square, i & 15);
+        }
+        for (int i = 0; i < count; i++) {
+            sum += dispatch(twice, i & 15);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package jtt.optimize;
+
+/*
+ * Tests an interface call site that only sees one receiver type while it warms up, then alternates between two
+ * other ones: the speculatively devirtualized call must deoptimize and the method must be recompiled without the
+ * speculation.
+ *
+ * @Harness: java
+ * @Runs: 0 = 0; 20000 = 6411040
+ */
+public class Spec_Receiver02 {
+
+    interface Op {
+        int apply(int x);
+    }
+
+    static final class Inc implements Op {
+        public int apply(int x) {
+            return x + 1;
+        }
+    }
+
+    static final class Neg implements Op {
+        public int apply(int x) {
+            return -x;
+        }
+    }
+
+    static final class Shift implements Op {
+        public int apply(int x) {
+            return x << 2;
+        }
+    }
+
+    static int dispatch(Op op, int x) {
+        return op.apply(x);
+    }
+
+    public static int test(int count) {
+        Op[] others = {new Neg(), new Shift()};
+        Op inc = new Inc();
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += dispatch(inc, i & 255);
+        }
+        for (int i = 0; i < count; i++) {
+            sum += dispatch(others[i & 1], i & 255);
+        }
+        return sum;
+    }
+}
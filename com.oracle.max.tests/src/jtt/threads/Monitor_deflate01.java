@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+/*
+ * Inflates a number of monitors, lets them go idle so that the monitor deflater
+ * (-XX:+AsyncMonitorDeflation) can deflate them, and then contends for them again.
+ *
+ * @Harness: java
+ * @Runs: 0 = true
+ */
+package jtt.threads;
+
+public final class Monitor_deflate01 implements Runnable {
+
+    static final int THREADS = 4;
+    static final int ITERATIONS = 300;
+
+    static final Object[] locks = new Object[8];
+    static final int[] hashCodes = new int[locks.length];
+    static final int[] counts = new int[locks.length];
+
+    public static boolean test(int i) throws InterruptedException {
+        for (int j = 0; j < locks.length; j++) {
+            locks[j] = new Object();
+            hashCodes[j] = System.identityHashCode(locks[j]);
+            counts[j] = 0;
+            synchronized (locks[j]) {
+                // waiting inflates the monitor
+                locks[j].wait(1);
+            }
+        }
+        final Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(new Monitor_deflate01());
+            threads[t].start();
+        }
+        for (int t = 0; t < THREADS; t++) {
+            threads[t].join();
+        }
+        for (int j = 0; j < locks.length; j++) {
+            if (counts[j] != THREADS * ITERATIONS || System.identityHashCode(locks[j]) != hashCodes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void run() {
+        for (int n = 0; n < ITERATIONS; n++) {
+            for (int j = 0; j < locks.length; j++) {
+                synchronized (locks[j]) {
+                    counts[j]++;
+                }
+            }
+            if (n % 3 == 0) {
+                // leave the monitors idle for a while
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+/**
+ * A GC test that repeatedly grows the live data set, drops it and leaves the heap idle for a while, so that the heap
+ * is resized up and down and idle heap memory gets uncommitted. The data retained across the idle periods is checked
+ * once the heap has grown again.
+ */
+public class GCTest10 {
+
+    static final int CHUNK_SIZE = 256 * 1024;
+
+    public static void main(String[] args) throws InterruptedException {
+        int megabytes = 48;
+        if (args.length > 0) {
+            megabytes = Integer.parseInt(args[0]);
+        }
+        final int[] retained = new int[CHUNK_SIZE];
+        fill(retained, -1);
+        for (int cycle = 0; cycle < 4; cycle++) {
+            int[][] chunks = new int[megabytes * 1024 * 1024 / (CHUNK_SIZE * 4)][];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = new int[CHUNK_SIZE];
+                fill(chunks[i], cycle + i);
+            }
+            System.gc();
+            boolean ok = check(retained, -1);
+            for (int i = 0; i < chunks.length; i++) {
+                ok &= check(chunks[i], cycle + i);
+            }
+            System.out.println("Cycle " + cycle + ": " + chunks.length + " chunks " + (ok ? "ok" : "corrupted"));
+            chunks = null;
+            System.gc();
+            // leave the heap idle
+            Thread.sleep(300);
+        }
+        System.out.println(GCTest10.class.getSimpleName() + " done.");
+    }
+
+    private static void fill(int[] chunk, int seed) {
+        for (int i = 0; i < chunk.length; i += 1024) {
+            chunk[i] = seed + i;
+        }
+    }
+
+    private static boolean check(int[] chunk, int seed) {
+        for (int i = 0; i < chunk.length; i += 1024) {
+            if (chunk[i] != seed + i) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+/**
+ * A multi-threaded GC stress test. Each thread keeps a long-lived graph that it keeps updating with references to
+ * newly allocated objects, while it also allocates short-lived objects and large arrays, half of which it retains.
+ * This exercises parallel and concurrent marking (references are overwritten while the heap is being marked), the
+ * evacuation of the young objects referenced from old ones, the card table write barrier, sweeping and compaction of
+ * fragmented regions.
+ */
+public class GCTest9 {
+
+    static final int NODES = 2000;
+    static final int ROUNDS = 60;
+    static final int LARGE_ARRAYS = 8;
+
+    static final class Node {
+        final int value;
+        Node next;
+        Object payload;
+
+        Node(int value, Node next) {
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    static final class Mutator extends Thread {
+        final Node[] graph = new Node[NODES];
+        final int[][] largeArrays = new int[LARGE_ARRAYS][];
+        int seed;
+        long checksum;
+
+        Mutator(int id) {
+            seed = id + 1;
+            for (int i = 0; i < NODES; i++) {
+                graph[i] = new Node(i, i == 0 ? null : graph[i - 1]);
+            }
+        }
+
+        int nextRandom() {
+            seed = seed * 1103515245 + 12345;
+            return (seed >>> 8) & 0x7FFFFF;
+        }
+
+        @Override
+        public void run() {
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < NODES; i++) {
+                    final int r = nextRandom();
+                    final Node node = graph[r % NODES];
+                    // overwrite a reference of an old object with a young object
+                    node.next = new Node(r, graph[i]);
+                    node.payload = new int[r % 64];
+                    if ((r & 7) == 0) {
+                        // replace an old object altogether
+                        graph[i] = new Node(i, node);
+                    }
+                }
+                Object garbage = null;
+                for (int i = 0; i < 1000; i++) {
+                    garbage = new Object[] {garbage, new byte[i % 100]};
+                    if (i % 100 == 0) {
+                        garbage = null;
+                    }
+                }
+                final int size = 1024 + nextRandom() % (64 * 1024);
+                final int[] large = new int[size];
+                large[size - 1] = round;
+                if ((round & 1) == 0) {
+                    // retain every other large array so that the heap gets fragmented
+                    largeArrays[(round / 2) % LARGE_ARRAYS] = large;
+                }
+            }
+            long sum = 0;
+            for (int i = 0; i < NODES; i++) {
+                for (Node node = graph[i]; node != null && node.value != i; node = node.next) {
+                    sum += node.value + (node.payload == null ? 0 : ((int[]) node.payload).length);
+                }
+                sum = sum * 31 + graph[i].value;
+            }
+            for (int[] large : largeArrays) {
+                sum += large.length + large[large.length - 1];
+            }
+            checksum = sum;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = 4;
+        if (args.length > 0) {
+            threads = Integer.parseInt(args[0]);
+        }
+        final Mutator[] mutators = new Mutator[threads];
+        for (int i = 0; i < threads; i++) {
+            mutators[i] = new Mutator(i);
+        }
+        for (Mutator mutator : mutators) {
+            mutator.start();
+        }
+        for (int i = 0; i < threads; i++) {
+            mutators[i].join();
+            System.out.println("Mutator " + i + ": " + mutators[i].checksum);
+        }
+        System.out.println(GCTest9.class.getSimpleName() + " done.");
+    }
+}
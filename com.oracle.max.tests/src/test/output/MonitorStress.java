@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+import java.util.concurrent.*;
+
+/**
+ * A monitor stress test. It contends for short critical sections (spinning on thin locks and inflated monitors),
+ * hands biased objects over from live threads to others (single revocations, bulk rebiasing and bulk revocation),
+ * passes items through a bounded buffer with wait and notify, and leaves inflated monitors idle between bursts of
+ * contention so that they can be deflated.
+ */
+public class MonitorStress {
+
+    static final int THREADS = 4;
+
+    static final class Counter {
+        int count;
+    }
+
+    static final class Biased {
+        int count;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        contention();
+        biasHandover();
+        producerConsumer();
+        idleMonitors();
+        System.out.println(MonitorStress.class.getSimpleName() + " done.");
+    }
+
+    private static void runAll(Runnable runnable) throws InterruptedException {
+        final Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(runnable);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static void contention() throws InterruptedException {
+        final Counter[] counters = {new Counter(), new Counter(), new Counter(), new Counter()};
+        runAll(new Runnable() {
+            public void run() {
+                for (int i = 0; i < 20000; i++) {
+                    final Counter counter = counters[i % counters.length];
+                    synchronized (counter) {
+                        counter.count++;
+                    }
+                }
+            }
+        });
+        int total = 0;
+        for (Counter counter : counters) {
+            total += counter.count;
+        }
+        System.out.println("Contention: " + total);
+    }
+
+    private static void biasHandover() throws InterruptedException {
+        final Biased[] objects = new Biased[100];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = new Biased();
+        }
+        final int rounds = 3;
+        for (int round = 0; round < rounds; round++) {
+            final CountDownLatch biased = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(1);
+            final Thread owner = new Thread() {
+                @Override
+                public void run() {
+                    for (Biased object : objects) {
+                        synchronized (object) {
+                            object.count++;
+                        }
+                    }
+                    biased.countDown();
+                    // stay alive so that the biases are revoked while this thread runs
+                    try {
+                        done.await();
+                    } catch (InterruptedException e) {
+                    }
+                }
+            };
+            owner.start();
+            biased.await();
+            for (Biased object : objects) {
+                synchronized (object) {
+                    object.count++;
+                }
+            }
+            done.countDown();
+            owner.join();
+        }
+        boolean ok = true;
+        for (Biased object : objects) {
+            ok &= object.count == 2 * rounds;
+        }
+        System.out.println("Bias handover: " + (ok ? "ok" : "wrong counts"));
+    }
+
+    private static void producerConsumer() throws InterruptedException {
+        final int items = 2000;
+        final int[] buffer = new int[8];
+        final int[] state = new int[3]; // count, put index, take index
+        final long[] sum = new long[1];
+        final Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final boolean producer = (t & 1) == 0;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < items; i++) {
+                        synchronized (buffer) {
+                            try {
+                                if (producer) {
+                                    while (state[0] == buffer.length) {
+                                        buffer.wait();
+                                    }
+                                    buffer[state[1]] = i;
+                                    state[1] = (state[1] + 1) % buffer.length;
+                                    state[0]++;
+                                } else {
+                                    while (state[0] == 0) {
+                                        buffer.wait();
+                                    }
+                                    sum[0] += buffer[state[2]];
+                                    state[2] = (state[2] + 1) % buffer.length;
+                                    state[0]--;
+                                }
+                            } catch (InterruptedException e) {
+                            }
+                            buffer.notifyAll();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println("Producer consumer: " + sum[0]);
+    }
+
+    private static void idleMonitors() throws InterruptedException {
+        final Object[] locks = new Object[16];
+        final int[] hashCodes = new int[locks.length];
+        final int[] counts = new int[locks.length];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+            hashCodes[i] = System.identityHashCode(locks[i]);
+            synchronized (locks[i]) {
+                // waiting inflates the monitor
+                locks[i].wait(1);
+            }
+        }
+        runAll(new Runnable() {
+            public void run() {
+                for (int burst = 0; burst < 10; burst++) {
+                    for (int n = 0; n < 100; n++) {
+                        for (int i = 0; i < locks.length; i++) {
+                            synchronized (locks[i]) {
+                                counts[i]++;
+                            }
+                        }
+                    }
+                    // leave the monitors idle
+                    try {
+                        Thread.sleep(30);
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        });
+        boolean ok = true;
+        for (int i = 0; i < locks.length; i++) {
+            ok &= counts[i] == THREADS * 1000 && System.identityHashCode(locks[i]) == hashCodes[i];
+        }
+        System.out.println("Idle monitors: " + (ok ? "ok" : "wrong counts or hash codes"));
+    }
+}
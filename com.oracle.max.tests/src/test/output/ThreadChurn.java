@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package test.output;
+
+/**
+ * A thread churn test. Several threads start and join short-lived threads as fast as they can while the main thread
+ * keeps asking for the running threads and their stack traces and triggers garbage collections, so that thread
+ * registration and tear down race with thread walks and VM operations.
+ */
+public class ThreadChurn {
+
+    static final int STARTERS = 8;
+    static final int THREADS_PER_STARTER = 200;
+
+    static volatile boolean churning = true;
+
+    static final class ShortLived extends Thread {
+        int result;
+
+        ShortLived(int i) {
+            setDaemon((i & 1) == 0);
+        }
+
+        @Override
+        public void run() {
+            final int[] work = new int[64];
+            for (int i = 0; i < work.length; i++) {
+                work[i] = i;
+            }
+            synchronized (ThreadChurn.class) {
+                result = work[work.length - 1];
+            }
+        }
+    }
+
+    static final class Starter extends Thread {
+        int completed;
+
+        @Override
+        public void run() {
+            for (int i = 0; i < THREADS_PER_STARTER; i++) {
+                final ShortLived thread = new ShortLived(i);
+                thread.start();
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                }
+                if (thread.result == 63) {
+                    completed++;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final Starter[] starters = new Starter[STARTERS];
+        for (int i = 0; i < STARTERS; i++) {
+            starters[i] = new Starter();
+            starters[i].start();
+        }
+        final Thread walker = new Thread() {
+            @Override
+            public void run() {
+                int walks = 0;
+                while (churning) {
+                    if (Thread.getAllStackTraces().isEmpty() || Thread.activeCount() == 0) {
+                        System.out.println("No threads found");
+                    }
+                    if (++walks % 50 == 0) {
+                        System.gc();
+                    }
+                }
+            }
+        };
+        walker.start();
+        int completed = 0;
+        for (Starter starter : starters) {
+            starter.join();
+            completed += starter.completed;
+        }
+        churning = false;
+        walker.join();
+        System.out.println("Completed threads: " + completed);
+        System.out.println(ThreadChurn.class.getSimpleName() + " done.");
+    }
+}
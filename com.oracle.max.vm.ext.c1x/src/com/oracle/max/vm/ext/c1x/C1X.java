@@ -51,13 +51,14 @@ import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.compiler.deopt.*;
 import com.sun.max.vm.compiler.deps.*;
 import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.thread.*;
 
 /**
  * Integration of the C1X compiler into Maxine's compilation framework.
  */
-public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCompiler {
+public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCompiler, RuntimeCompiler.OSRCompiler, RuntimeCompiler.ProfilingCompiler {
 
     /**
      * The Maxine specific implementation of the {@linkplain RiRuntime runtime interface} needed by C1X.
@@ -124,6 +125,21 @@ public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCo
 
             map.put("UseStackMapTableLiveness", "Use liveness information derived from StackMapTable class file attribute.");
 
+            map.put("OptSpeculativeDevirtualization",
+                            "Devirtualize and inline calls for the receiver type dominating the profile of the call site, " + "deoptimizing if another receiver type is seen.");
+
+            map.put("SpeculativeDevirtualizationMinCount", "Minimum number of receivers a call site profile must have recorded to be used for speculative devirtualization.");
+
+            map.put("SpeculativeDevirtualizationMinProbability", "Minimum probability of the dominant receiver type of a call site for speculative devirtualization.");
+
+            map.put("OptEscapeAnalysis",
+                            "Replace allocations that do not escape the block allocating them by their field values, " + "rematerializing the objects on deoptimization.");
+
+            map.put("EscapeAnalysisMaxArrayLength", "Maximum length of an array allocation considered for scalar replacement by escape analysis.");
+
+            map.put("OptLoopOptimizations",
+                            "Hoist loop invariant computations out of loops and remove the bounds checks of array accesses " + "indexed by a loop counter that is checked against the array length.");
+
             for (String name : map.keySet()) {
                 try {
                     C1XOptions.class.getField(name);
@@ -251,17 +267,33 @@ public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCo
     }
 
     public TargetMethod compile(final ClassMethodActor method, boolean isDeopt, boolean install, CiStatistics stats) {
+        return compile(method, -1, null, install, stats);
+    }
+
+    public TargetMethod compileOSR(ClassMethodActor method, int osrBCI) {
+        try {
+            return compile(method, osrBCI, null, true, null);
+        } catch (CiBailout bailout) {
+            return null;
+        }
+    }
+
+    public TargetMethod compileProfiled(ClassMethodActor method, MethodProfile profile) {
+        return compile(method, -1, new ProfilingProbes(profile), true, null);
+    }
+
+    private TargetMethod compile(final ClassMethodActor method, int osrBCI, ProfilingProbes probes, boolean install, CiStatistics stats) {
         CiTargetMethod compiledMethod;
         do {
             DebugInfoLevel debugInfoLevel = method.isTemplate() ? DebugInfoLevel.REF_MAPS : DebugInfoLevel.FULL;
-            compiledMethod = compiler().compileMethod(method, -1, stats, debugInfoLevel).targetMethod();
+            compiledMethod = compiler().compileMethod(method, osrBCI, probes, stats, debugInfoLevel).targetMethod();
 
             Dependencies deps = Dependencies.validateDependencies(compiledMethod.assumptions());
             if (deps != Dependencies.INVALID) {
                 if (C1XOptions.PrintTimers) {
                     C1XTimers.INSTALL.start();
                 }
-                MaxTargetMethod maxTargetMethod = new MaxTargetMethod(method, compiledMethod, install);
+                MaxTargetMethod maxTargetMethod = new MaxTargetMethod(method, compiledMethod, install, probes == null ? null : probes.profile());
                 if (C1XOptions.PrintTimers) {
                     C1XTimers.INSTALL.stop();
                 }
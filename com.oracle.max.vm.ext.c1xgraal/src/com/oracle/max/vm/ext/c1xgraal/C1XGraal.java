@@ -36,13 +36,14 @@ import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.*;
 
 /**
  * Integration of the C1X + Graal compiler into Maxine's compilation framework.
  * This umbrella compiler chooses C1X or Graal depending on context.
  */
-public class C1XGraal implements RuntimeCompiler {
+public class C1XGraal implements RuntimeCompiler, RuntimeCompiler.ProfilingCompiler {
 
     static boolean FailOverToC1X = true;
     static {
@@ -140,6 +141,13 @@ public class C1XGraal implements RuntimeCompiler {
         return result;
     }
 
+    /**
+     * The profiled tier is always compiled by C1X, leaving Graal to compile the final tier with the resulting profile.
+     */
+    public TargetMethod compileProfiled(ClassMethodActor method, MethodProfile profile) {
+        return c1x.compileProfiled(method, profile);
+    }
+
     public Nature nature() {
         return Nature.OPT;
     }
@@ -42,8 +42,11 @@ import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.compiler.target.TargetMethod.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.object.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.type.*;
 
 /**
  * The debug info for the safepoints in a {@link MaxTargetMethod}.
@@ -251,7 +254,7 @@ public final class DebugInfo {
             out.encodeUInt(frame.rethrowException ? 1 : 0);
 
             for (CiValue value : frame.values) {
-                if (isHosted()) {
+                if (isHosted() && !(value instanceof CiVirtualObject)) {
                     // Test codec while offline
                     CiValue v = testCodec(value);
                     if (!value.equalsIgnoringKind(v)) {
@@ -384,7 +387,8 @@ public final class DebugInfo {
         int fpt = (tm.totalRefMapSize()) * tm.safepoints().size();
         CiBitMap regRefMap = regRefMapAt(index);
         CiBitMap frameRefMap = frameRefMapAt(index);
-        CiFrame frame = decodeFrame(in, fpt, index, fa, regRefMap, frameRefMap, stackSlotAsAddress);
+        HashMap<Integer, Object> virtualObjects = fa == null ? null : new HashMap<Integer, Object>();
+        CiFrame frame = decodeFrame(in, fpt, index, fa, virtualObjects, regRefMap, frameRefMap, stackSlotAsAddress);
         return new CiDebugInfo(frame, regRefMap, frameRefMap);
     }
 
@@ -417,10 +421,11 @@ public final class DebugInfo {
      * Decodes a frame denoted by a given frame index.
      * @param fpt the position of the FPT in {@link #data}
      * @param frameIndex the index of an entry in the FPT
+     * @param virtualObjects the objects rematerialized so far, keyed by {@linkplain CiVirtualObject#id() id} (ignored if {@code fa == null})
      * @param stackSlotAsAddress translate stack slots to stack addresses
      * @return the decoded frame
      */
-    CiFrame decodeFrame(DecodingStream in, int fpt, int frameIndex, FrameAccess fa, CiBitMap regRefMap, CiBitMap frameRefMap, boolean stackSlotAsAddress) {
+    CiFrame decodeFrame(DecodingStream in, int fpt, int frameIndex, FrameAccess fa, HashMap<Integer, Object> virtualObjects, CiBitMap regRefMap, CiBitMap frameRefMap, boolean stackSlotAsAddress) {
         int framePos = framePos(fpt, frameIndex);
         if (framePos == 0) {
             return null;
@@ -454,7 +459,7 @@ public final class DebugInfo {
         for (int i = 0; i < n; i++) {
             CiValue value = readValue(in, regRefMap, frameRefMap);
             if (fa != null) {
-                value = toLiveSlot(fa, value);
+                value = toLiveSlot(fa, value, virtualObjects);
             } else {
                 if (stackSlotAsAddress && value != null && value.isStackSlot()) {
                     CiStackSlot ss = (CiStackSlot) value;
@@ -486,13 +491,15 @@ public final class DebugInfo {
         if (encCallerIndex != NO_FRAME) {
             int callerIndex = encCallerIndex - FIRST_FRAME;
             assert frameIndex != callerIndex;
-            caller = decodeFrame(in, fpt, callerIndex, fa, regRefMap, frameRefMap, stackSlotAsAddress);
+            caller = decodeFrame(in, fpt, callerIndex, fa, virtualObjects, regRefMap, frameRefMap, stackSlotAsAddress);
         }
         return new CiFrame(caller, method, bci, rethrowException, values, numLocals, numStack, numLocks);
     }
 
-    private static CiValue toLiveSlot(FrameAccess fa, CiValue value) {
-        if (value.isRegister()) {
+    private static CiValue toLiveSlot(FrameAccess fa, CiValue value, HashMap<Integer, Object> virtualObjects) {
+        if (value instanceof CiVirtualObject) {
+            value = CiConstant.forObject(materialize(fa, (CiVirtualObject) value, virtualObjects));
+        } else if (value.isRegister()) {
             CiRegister reg = value.asRegister();
             CiCalleeSaveLayout csl = fa.csl;
             assert csl != null : "cannot recover value for " + reg;
@@ -534,6 +541,74 @@ public final class DebugInfo {
         return value;
     }
 
+    /**
+     * Allocates and initializes an object whose allocation was removed by escape analysis. An object referenced
+     * several times by the frames of one safepoint is only allocated once.
+     */
+    private static Object materialize(FrameAccess fa, CiVirtualObject virtualObject, HashMap<Integer, Object> virtualObjects) {
+        Object object = virtualObjects.get(virtualObject.id());
+        if (object != null) {
+            return object;
+        }
+        ClassActor type = (ClassActor) virtualObject.type();
+        CiValue[] values = virtualObject.values();
+        if (type.isArrayClass()) {
+            object = Heap.createArray(type.dynamicHub(), values.length);
+            virtualObjects.put(virtualObject.id(), object);
+            Kind<?> elementKind = type.componentClassActor().kind;
+            for (int i = 0; i < values.length; i++) {
+                CiConstant c = (CiConstant) toLiveSlot(fa, values[i], virtualObjects);
+                // Checkstyle: stop
+                switch (elementKind.asEnum) {
+                    case BYTE:      ArrayAccess.setByte(object, i, (byte) c.asPrimitive()); break;
+                    case BOOLEAN:   ArrayAccess.setBoolean(object, i, c.asPrimitive() != 0); break;
+                    case SHORT:     ArrayAccess.setShort(object, i, (short) c.asPrimitive()); break;
+                    case CHAR:      ArrayAccess.setChar(object, i, (char) c.asPrimitive()); break;
+                    case INT:       ArrayAccess.setInt(object, i, (int) c.asPrimitive()); break;
+                    case FLOAT:     ArrayAccess.setFloat(object, i, Float.intBitsToFloat((int) c.asPrimitive())); break;
+                    case LONG:      ArrayAccess.setLong(object, i, c.asPrimitive()); break;
+                    case DOUBLE:    ArrayAccess.setDouble(object, i, Double.longBitsToDouble(c.asPrimitive())); break;
+                    case WORD:      ArrayAccess.setWord(object, i, Address.fromLong(c.asPrimitive())); break;
+                    case REFERENCE: ArrayAccess.setObject(object, i, c.asObject()); break;
+                    default:        throw FatalError.unexpected("Unexpected array element kind: " + elementKind);
+                }
+                // Checkstyle: resume
+            }
+        } else {
+            object = Heap.createTuple(type.dynamicHub());
+            virtualObjects.put(virtualObject.id(), object);
+            // the field values are ordered as the instance fields of the type's hierarchy, starting with the top most type
+            ArrayList<ClassActor> hierarchy = new ArrayList<ClassActor>();
+            for (ClassActor c = type; c != null; c = c.superClassActor) {
+                hierarchy.add(0, c);
+            }
+            int i = 0;
+            for (ClassActor c : hierarchy) {
+                for (RiResolvedField field : c.declaredFields()) {
+                    FieldActor fieldActor = (FieldActor) field;
+                    CiConstant value = (CiConstant) toLiveSlot(fa, values[i++], virtualObjects);
+                    int offset = fieldActor.offset();
+                    // Checkstyle: stop
+                    switch (fieldActor.kind.asEnum) {
+                        case BYTE:      TupleAccess.writeByte(object, offset, (byte) value.asPrimitive()); break;
+                        case BOOLEAN:   TupleAccess.writeBoolean(object, offset, value.asPrimitive() != 0); break;
+                        case SHORT:     TupleAccess.writeShort(object, offset, (short) value.asPrimitive()); break;
+                        case CHAR:      TupleAccess.writeChar(object, offset, (char) value.asPrimitive()); break;
+                        case INT:       TupleAccess.writeInt(object, offset, (int) value.asPrimitive()); break;
+                        case FLOAT:     TupleAccess.writeFloat(object, offset, Float.intBitsToFloat((int) value.asPrimitive())); break;
+                        case LONG:      TupleAccess.writeLong(object, offset, value.asPrimitive()); break;
+                        case DOUBLE:    TupleAccess.writeDouble(object, offset, Double.longBitsToDouble(value.asPrimitive())); break;
+                        case WORD:      TupleAccess.writeWord(object, offset, Address.fromLong(value.asPrimitive())); break;
+                        case REFERENCE: TupleAccess.writeObject(object, offset, value.asObject()); break;
+                        default:        throw FatalError.unexpected("Unexpected field kind: " + fieldActor.kind);
+                    }
+                    // Checkstyle: resume
+                }
+            }
+            assert i == values.length : "field values do not match the fields of " + type;
+        }
+        return object;
+    }
 
     @Override
     public String toString() {
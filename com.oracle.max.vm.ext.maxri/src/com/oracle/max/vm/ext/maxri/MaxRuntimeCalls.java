@@ -28,6 +28,7 @@ import java.lang.reflect.*;
 
 import com.sun.cri.ci.*;
 import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.ClassActor;
 import com.sun.max.vm.actor.member.*;
@@ -173,7 +174,8 @@ public class MaxRuntimeCalls {
     }
 
     @MAX_RUNTIME_ENTRYPOINT(runtimeCall = CiRuntimeCall.OSRMigrationEnd)
-    public static void runtimeOSRMigrationEnd() {
+    public static void runtimeOSRMigrationEnd(Pointer buffer) {
+        OnStackReplacement.migrationEnd(buffer);
         verifyRefMaps();
     }
 
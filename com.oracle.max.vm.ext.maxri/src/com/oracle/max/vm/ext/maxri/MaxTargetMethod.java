@@ -53,6 +53,7 @@ import com.sun.max.vm.compiler.target.aarch64.Aarch64TargetMethodUtil;
 import com.sun.max.vm.compiler.target.amd64.*;
 import com.sun.max.vm.compiler.target.arm.*;
 import com.sun.max.vm.object.*;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.stack.*;
 import com.sun.max.vm.thread.*;
@@ -106,19 +107,41 @@ public class MaxTargetMethod extends TargetMethod implements Cloneable {
 
     private final CodeAnnotation[] annotations;
 
+    /**
+     * The profile updated by this method if it was compiled with {@linkplain ProfilingProbes profiling probes}.
+     */
+    private MethodProfile profile;
+
     @HOSTED_ONLY
     private CiTargetMethod bootstrappingCiTargetMethod;
 
     private CiTargetMethod debugCiTargetMethod;
 
     public MaxTargetMethod(ClassMethodActor classMethodActor, CiTargetMethod ciTargetMethod, boolean install) {
+        this(classMethodActor, ciTargetMethod, install, null);
+    }
+
+    /**
+     * Creates a target method that, if {@code profile} is non-null, was compiled with the {@linkplain ProfilingProbes
+     * probes} for that profile. It then becomes the method containing the probes of the profile.
+     */
+    public MaxTargetMethod(ClassMethodActor classMethodActor, CiTargetMethod ciTargetMethod, boolean install, MethodProfile profile) {
         super(classMethodActor, CallEntryPoint.OPTIMIZED_ENTRY_POINT);
         assert classMethodActor != null;
         List<CodeAnnotation> annotations = ciTargetMethod.annotations();
         this.annotations = annotations == null ? null : annotations.toArray(new CodeAnnotation[annotations.size()]);
+        if (profile != null) {
+            this.profile = profile;
+            profile.method = this;
+        }
         init(ciTargetMethod, install);
     }
 
+    @Override
+    public MethodProfile profile() {
+        return profile;
+    }
+
     private void init(CiTargetMethod ciTargetMethod, boolean install) {
 
         if (isHosted()) {
@@ -161,7 +184,7 @@ public class MaxTargetMethod extends TargetMethod implements Cloneable {
 
     @Override
     public Lifespan lifespan() {
-        return Lifespan.LONG;
+        return profile != null ? Lifespan.MEDIUM : Lifespan.LONG;
     }
 
     @Override
@@ -125,6 +125,7 @@ public class MaxXirGenerator implements RiXirGenerator {
 
     private XirPair invokeVirtualTemplates;
     private XirPair invokeInterfaceTemplates;
+    private XirTemplate invokeInterfaceInlineCacheTemplate;
     private InvokeSpecialTemplates invokeSpecialTemplates;
     private XirPair invokeStaticTemplates;
     private XirPair[] newArrayTemplates;
@@ -186,6 +187,16 @@ public class MaxXirGenerator implements RiXirGenerator {
         return FieldActor.findInstance(ClassActor.fromJava(Hub.class), "mTableLength").offset();
     }
 
+    @HOSTED_ONLY
+    int offsetOfInlineCacheField(String name) {
+        return FieldActor.findInstance(ClassActor.fromJava(InlineCache.class), name).offset();
+    }
+
+    @HOSTED_ONLY
+    int offsetOfInlineCacheEntryField(String name) {
+        return FieldActor.findInstance(ClassActor.fromJava(InlineCache.Entry.class), name).offset();
+    }
+
     @FOLD
     int offsetOfTupleSize() {
         return FieldActor.findInstance(ClassActor.fromJava(Hub.class), "tupleSize").offset();
@@ -271,6 +282,7 @@ public class MaxXirGenerator implements RiXirGenerator {
 
         invokeVirtualTemplates = buildInvokeVirtual();
         invokeInterfaceTemplates = buildInvokeInterface();
+        invokeInterfaceInlineCacheTemplate = buildInvokeInterfaceInlineCache();
         invokeSpecialTemplates = buildInvokeSpecial();
         invokeStaticTemplates = buildInvokeStatic();
 
@@ -381,6 +393,11 @@ public class MaxXirGenerator implements RiXirGenerator {
         XirPair pair = invokeInterfaceTemplates;
         if (method instanceof RiResolvedMethod) {
             InterfaceMethodActor methodActor = (InterfaceMethodActor) method;
+            if (InlineCache.UseInlineCaches) {
+                XirArgument inlineCache = XirArgument.forObject(new InlineCache(methodActor));
+                return new XirSnippet(invokeInterfaceInlineCacheTemplate, receiver, inlineCache, XirArgument.forInt(methodActor.holder().id),
+                                XirArgument.forInt(methodActor.iIndexInInterface()));
+            }
             XirArgument interfaceID = XirArgument.forInt(methodActor.holder().id);
             XirArgument methodIndex = XirArgument.forInt(methodActor.iIndexInInterface());
             return new XirSnippet(pair.resolved, receiver, interfaceID, methodIndex);
@@ -777,7 +794,7 @@ public class MaxXirGenerator implements RiXirGenerator {
         asm.bindInline(store);
         int elemSize = target().sizeInBytes(kind);
         if (genWriteBarrier) {
-            writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.ARRAY_PRE_BARRIER).genWriteBarrier(asm, array, index);
+            writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.ARRAY_PRE_BARRIER).genWriteBarrier(asm, array, index, value);
         }
         asm.pstore(kind, array, index, value, offsetOfFirstArrayElement(), Scale.fromInt(elemSize), !genBoundsCheck && !genStoreCheck);
         if (genWriteBarrier) {
@@ -920,6 +937,63 @@ public class MaxXirGenerator implements RiXirGenerator {
         return new XirPair(resolved, unresolved);
     }
 
+    /**
+     * Builds the template for a resolved interface call site with an {@linkplain InlineCache inline cache}. The
+     * receiver's hub is compared with the hubs of the two cache entries. A hit loads the entry point from the word of
+     * the hub recorded in the entry. A miss calls into the runtime, which selects the method and updates the cache,
+     * unless the cache is megamorphic, in which case the mtable is searched inline as in {@link #buildInvokeInterface()}.
+     */
+    @HOSTED_ONLY
+    private XirTemplate buildInvokeInterfaceInlineCache() {
+        asm.restart();
+        XirParameter receiver = asm.createInputParameter("receiver", CiKind.Object);
+        XirParameter inlineCache = asm.createConstantInputParameter("inlineCache", CiKind.Object);
+        XirParameter interfaceID = asm.createConstantInputParameter("interfaceID", CiKind.Int);
+        XirParameter methodIndex = asm.createConstantInputParameter("methodIndex", CiKind.Int);
+        XirOperand hub = asm.createTemp("hub", CiKind.Object);
+        XirOperand entry = asm.createTemp("entry", CiKind.Object);
+        XirOperand entryHub = asm.createTemp("entryHub", CiKind.Object);
+        XirOperand a = asm.createTemp("a", CiKind.Int);
+        XirOperand result = asm.createTemp("result", WordUtil.archKind());
+
+        XirLabel load = asm.createInlineLabel("load");
+        XirLabel probeSecond = asm.createOutOfLineLabel("probeSecond");
+        XirLabel miss = asm.createOutOfLineLabel("miss");
+        XirLabel megamorphic = asm.createOutOfLineLabel("megamorphic");
+
+        asm.pload(CiKind.Object, hub, receiver, asm.i(hubOffset()), true);
+        asm.pload(CiKind.Object, entry, inlineCache, asm.i(offsetOfInlineCacheField("first")), false);
+        asm.pload(CiKind.Object, entryHub, entry, asm.i(offsetOfInlineCacheEntryField("hub")), false);
+        asm.jneq(probeSecond, entryHub, hub);
+        asm.pload(CiKind.Int, a, entry, asm.i(offsetOfInlineCacheEntryField("wordIndex")), false);
+        asm.bindInline(load);
+        asm.pload(WordUtil.archKind(), result, hub, a, offsetOfFirstArrayElement(), Scale.fromInt(Word.size()), false);
+
+        asm.bindOutOfLine(probeSecond);
+        asm.pload(CiKind.Object, entry, inlineCache, asm.i(offsetOfInlineCacheField("second")), false);
+        asm.pload(CiKind.Object, entryHub, entry, asm.i(offsetOfInlineCacheEntryField("hub")), false);
+        asm.jneq(miss, entryHub, hub);
+        asm.pload(CiKind.Int, a, entry, asm.i(offsetOfInlineCacheEntryField("wordIndex")), false);
+        asm.jmp(load);
+
+        asm.bindOutOfLine(miss);
+        asm.pload(CiKind.Int, a, inlineCache, asm.i(offsetOfInlineCacheField("megamorphic")), false);
+        asm.jneq(megamorphic, a, asm.i(0));
+        callRuntimeThroughStub(asm, "inlineCacheMiss", a, inlineCache, hub);
+        asm.jmp(load);
+
+        asm.bindOutOfLine(megamorphic);
+        XirOperand mtableLengthOrStartIndex = asm.createTemp("mtableLength/StartIndex", CiKind.Int);
+        asm.pload(CiKind.Int, mtableLengthOrStartIndex, hub, asm.i(offsetOfMTableLength()), false);
+        asm.mod(a, interfaceID, mtableLengthOrStartIndex);
+        asm.pload(CiKind.Int, mtableLengthOrStartIndex, hub, asm.i(offsetOfMTableStartIndex()), false);
+        asm.add(a, a, mtableLengthOrStartIndex);
+        asm.pload(CiKind.Int, a, hub, a, offsetOfFirstArrayElement(), Scale.Times4, false);
+        asm.add(a, a, methodIndex);
+        asm.jmp(load);
+        return finishTemplate(asm, result, "invokeinterface-inline-cache");
+    }
+
     @HOSTED_ONLY
     private XirPair buildInvokeVirtual() {
         XirTemplate resolved;
@@ -1366,7 +1440,7 @@ public class MaxXirGenerator implements RiXirGenerator {
             XirParameter value = asm.createInputParameter("value", kind);
             XirParameter fieldOffset = asm.createConstantInputParameter("fieldOffset", CiKind.Int);
             if (genWriteBarrier) {
-                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object);
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object, fieldOffset, value);
             }
             asm.pstore(kind, object, fieldOffset, value, true);
             if (genWriteBarrier) {
@@ -1385,6 +1459,9 @@ public class MaxXirGenerator implements RiXirGenerator {
             } else {
                 callRuntimeThroughStub(asm, "resolvePutField", fieldOffset, guard);
             }
+            if (genWriteBarrier) {
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object, fieldOffset, value);
+            }
             asm.pstore(kind, object, fieldOffset, value, true);
             if (genWriteBarrier) {
                 writeBarrier(asm, object, null, value);
@@ -1945,6 +2022,10 @@ public class MaxXirGenerator implements RiXirGenerator {
             return Snippets.resolveInterfaceMethod(guard).holder().id;
         }
 
+        public static int inlineCacheMiss(InlineCache inlineCache, Hub hub) {
+            return inlineCache.miss(hub);
+        }
+
         public static Object allocatePrimitiveArray(DynamicHub hub, int length) {
             if (length < 0) {
                 throw new NegativeArraySizeException(String.valueOf(length));
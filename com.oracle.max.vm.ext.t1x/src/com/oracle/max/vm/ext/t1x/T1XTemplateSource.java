@@ -71,10 +71,10 @@ public class T1XTemplateSource {
     }
 
     @T1X_TEMPLATE(PROFILE_BACKWARD_BRANCH)
-    public static void profileBackwardBranch(MethodProfile mpo) {
+    public static void profileBackwardBranch(MethodProfile mpo, int targetBCI) {
         // entrypoint counters count down to zero ("overflow")
-        // Currently, there is no reason to use a separate counter for backward branches.
-        MethodInstrumentation.recordBackwardBranch(mpo);
+        // Backward branches share the counter; a loop that keeps running past zero triggers OSR.
+        MethodInstrumentation.recordBackwardBranch(mpo, targetBCI);
     }
 
     @T1X_TEMPLATE(PROFILE_TAKEN_BRANCH)
@@ -625,7 +625,7 @@ public class AMD64T1XCompilation extends T1XCompilation {
             // Compute relative offset
             final int target = bciToPos[targetBCI];
             if (cc == null) {
-                do_profileBackwardBranch();
+                do_profileBackwardBranch(targetBCI);
                 do_safepointAtBackwardBranch(bci);
                 asm.jmp(target, false);
             } else {
@@ -639,7 +639,7 @@ public class AMD64T1XCompilation extends T1XCompilation {
                 assert buf.position() - jumpNotTakenPos == 2;
 
                 // Start of "taken" code
-                do_profileBackwardBranch();
+                do_profileBackwardBranch(targetBCI);
                 do_safepointAtBackwardBranch(bci);
                 asm.jmp(target, false);
 
@@ -38,6 +38,10 @@
 #include <sys/sysctl.h>
 #endif
 
+#if os_LINUX
+#include <sys/syscall.h>
+#endif
+
 /* There is a problem binding these identifiers in RedHat's include files, so we fake them: */
 #if os_LINUX
 #   ifndef MAP_ANONYMOUS
@@ -310,3 +314,78 @@ Address virtualMemory_pageAlign(Address address) {
     long alignment = virtualMemory_getPageSize() - 1;
     return ((long)(address + alignment) & ~alignment);
 }
+
+/* NUMA support. The memory policy system calls are invoked directly so as not to depend on libnuma. */
+#if os_LINUX
+#define NUMA_MPOL_PREFERRED         1
+#define NUMA_MPOL_F_MEMS_ALLOWED    (1 << 2)
+#define NUMA_MAX_NODES              1024
+#define NUMA_BITS_PER_MASK_WORD     (8 * sizeof(unsigned long))
+#endif
+
+static int numaNodeCount = 0;
+
+/*
+ * Returns the number of NUMA nodes memory can be allocated from, i.e., one more than the highest node allowed to the process.
+ * Returns 1 if the platform doesn't support NUMA.
+ */
+int virtualMemory_numaNodeCount(void) {
+    if (numaNodeCount == 0) {
+        numaNodeCount = 1;
+#if os_LINUX && defined(SYS_get_mempolicy)
+        unsigned long nodeMask[NUMA_MAX_NODES / NUMA_BITS_PER_MASK_WORD];
+        memset(nodeMask, 0, sizeof(nodeMask));
+        if (syscall(SYS_get_mempolicy, NULL, nodeMask, (unsigned long) NUMA_MAX_NODES, NULL, NUMA_MPOL_F_MEMS_ALLOWED) == 0) {
+            int node;
+            for (node = 0; node < NUMA_MAX_NODES; node++) {
+                if ((nodeMask[node / NUMA_BITS_PER_MASK_WORD] & (1UL << (node % NUMA_BITS_PER_MASK_WORD))) != 0) {
+                    numaNodeCount = node + 1;
+                }
+            }
+        }
+#endif
+    }
+    return numaNodeCount;
+}
+
+/*
+ * Returns the NUMA node of the CPU the current thread runs on, or 0 if it cannot be determined.
+ */
+int virtualMemory_currentNumaNode(void) {
+#if os_LINUX && defined(SYS_getcpu)
+    unsigned int cpu;
+    unsigned int node;
+    if (syscall(SYS_getcpu, &cpu, &node, NULL) == 0) {
+        return (int) node;
+    }
+#endif
+    return 0;
+}
+
+/*
+ * Sets the memory policy of a page-aligned range of virtual memory so that its pages are allocated from the specified NUMA node.
+ * The preferred policy is used rather than a strict binding, so that pages are allocated from other nodes when the specified node
+ * runs out of memory instead of failing the allocation.
+ * The policy is attached to the mapping: it must be set again after the range is remapped (e.g., when committed again after being uncommitted).
+ */
+boolean virtualMemory_bindToNumaNode(Address address, Size size, int node) {
+#if os_LINUX && defined(SYS_mbind)
+    unsigned long nodeMask[NUMA_MAX_NODES / NUMA_BITS_PER_MASK_WORD];
+    c_ASSERT(virtualMemory_pageAlign(address) == address);
+    if (node < 0 || node >= NUMA_MAX_NODES) {
+        return false;
+    }
+    memset(nodeMask, 0, sizeof(nodeMask));
+    nodeMask[node / NUMA_BITS_PER_MASK_WORD] = 1UL << (node % NUMA_BITS_PER_MASK_WORD);
+    /* The kernel ignores the last bit of the mask, hence the extra node. */
+    if (syscall(SYS_mbind, (void *) address, (unsigned long) size, NUMA_MPOL_PREFERRED, nodeMask, (unsigned long) NUMA_MAX_NODES + 1, 0) != 0) {
+#if log_MMAP
+        log_println("virtualMemory_bindToNumaNode(address=%p, size=%p, node=%d) failed: %s", address, size, node, strerror(errno));
+#endif
+        return false;
+    }
+    return true;
+#else
+    return false;
+#endif
+}
@@ -51,4 +51,8 @@ extern Address virtualMemory_pageAlign(Address address);
 
 extern void virtualMemory_protectPages(Address address, int count);
 extern void virtualMemory_unprotectPages(Address address, int count);
+
+extern int virtualMemory_numaNodeCount(void);
+extern int virtualMemory_currentNumaNode(void);
+extern boolean virtualMemory_bindToNumaNode(Address address, Size size, int node);
 #endif /*__virtualMemory_h__*/
@@ -366,6 +366,24 @@ public class MaxineTesterConfiguration {
         // Configuration to test methodhandles implementation
         maxvmConfig("jsr292", "-XX:RCT=0");
 
+        // Configurations turning on GC options, to be run with an image built with the matching heap scheme, e.g.
+        // "-image-configs=msecm -maxvm-configs=cm -tests=output:GCTest9,output:GCTest10"
+        maxvmConfig("pargc", "-Xmx256m", "-XX:ParallelGCThreads=4", "-XX:+UseParallelMarking", "-XX:+ParallelSweep");
+        maxvmConfig("parevac", "-Xmx256m", "-XX:ParallelGCThreads=4", "-XX:+UseParallelEvacuation");
+        maxvmConfig("lazysweep", "-Xmx256m", "-XX:+LazySweep");
+        maxvmConfig("compact", "-Xmx256m", "-XX:+UseRegionCompaction", "-XX:CompactionFragmentationThreshold=10");
+        maxvmConfig("cm", "-Xmx256m", "-XX:+UseConcurrentMarking", "-XX:ConcurrentMarkingTriggerPercent=20", "-XX:ParallelGCThreads=4", "-XX:+LazySweep");
+        maxvmConfig("dcq", "-Xmx256m", "-XX:+UseDirtyCardQueues", "-XX:DirtyCardRefinementInterval=1");
+        maxvmConfig("numa", "-Xmx256m", "-XX:+UseNUMA");
+        maxvmConfig("atlab", "-Xmx256m", "-XX:+UseAdaptiveTLAB");
+        maxvmConfig("ergo", "-Xmx256m", "-XX:+UseErgonomicHeapSizing", "-XX:MaxGCPauseMillis=5");
+        maxvmConfig("uncommit", "-Xmx256m", "-XX:+UncommitIdleHeap", "-XX:HeapUncommitDelay=100");
+
+        // Configurations turning on monitor options, e.g. "-image-configs=biased -maxvm-configs=bulkbias -tests=output:MonitorStress"
+        maxvmConfig("monspin", "-XX:MonitorSpinLimit=100000");
+        maxvmConfig("deflate", "-XX:+AsyncMonitorDeflation", "-XX:MonitorDeflationInterval=10");
+        maxvmConfig("bulkbias", "-XX:BiasedLockingBulkRebiasThreshold=5", "-XX:BiasedLockingBulkRevokeThreshold=10", "-XX:BiasedLockingDecayTime=10");
+
         imageConfig("baseline-c1x0", "--C1X:OptLevel=0");
         imageConfig("baseline-c1x1", "--C1X:OptLevel=1");
         imageConfig("baseline-c1x2", "--C1X:OptLevel=2");
@@ -393,6 +411,10 @@ public class MaxineTesterConfiguration {
         imageConfig("mse", opt_c1x, "-run=java", "-heap=gcx.mse");
         imageConfig("gmse", opt_c1x, "-run=java", "-heap=gcx.gen.mse");
         imageConfig("gmsed", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "-build=DEBUG");
+        imageConfig("msecm", opt_c1x, "-run=java", "-heap=gcx.mse", "-concurrent-marking");
+        imageConfig("gmsedcq", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "-dirty-card-queues");
+        // Alternate monitor configurations
+        imageConfig("biased", opt_c1x, "-run=java", "-monitor=modal.schemes.epochbiased_thin_inflated");
 
         // VMA configurations
         final String vmaT1X = "com.oracle.max.vm.ext.t1x.vma.VMAT1X";
@@ -358,6 +358,10 @@ public class JTConfig {
         jtt.hotpath.HP_life.class,
         jtt.hotpath.HP_nest01.class,
         jtt.hotpath.HP_nest02.class,
+        jtt.hotpath.HP_osr01.class,
+        jtt.hotpath.HP_osr02.class,
+        jtt.hotpath.HP_osr03.class,
+        jtt.hotpath.HP_osr04.class,
         jtt.hotpath.HP_scope01.class,
         jtt.hotpath.HP_scope02.class,
         jtt.hotpath.HP_series.class,
@@ -514,6 +518,8 @@ public class JTConfig {
         jtt.loop.Loop12.class,
         jtt.loop.Loop13.class,
         jtt.loop.Loop14.class,
+        jtt.loop.Loop15.class,
+        jtt.loop.Loop16.class,
         jtt.loop.LoopInline.class,
         jtt.loop.LoopNewInstance.class,
         jtt.loop.LoopPhi.class,
@@ -558,6 +564,10 @@ public class JTConfig {
         jtt.optimize.ABCE_01.class,
         jtt.optimize.ABCE_02.class,
         jtt.optimize.ABCE_03.class,
+        jtt.optimize.ABCE_04.class,
+        jtt.optimize.ABCE_05.class,
+        jtt.optimize.ABCE_06.class,
+        jtt.optimize.ABCE_07.class,
         jtt.optimize.ArrayCopy01.class,
         jtt.optimize.ArrayLength01.class,
         jtt.optimize.BC_idiv_16.class,
@@ -577,6 +587,8 @@ public class JTConfig {
         jtt.optimize.Conditional01.class,
         jtt.optimize.DeadCode01.class,
         jtt.optimize.DeadCode02.class,
+        jtt.optimize.EA_Deopt01.class,
+        jtt.optimize.EA_Deopt02.class,
         jtt.optimize.Fold_Cast01.class,
         jtt.optimize.Fold_Convert01.class,
         jtt.optimize.Fold_Convert02.class,
@@ -633,6 +645,9 @@ public class JTConfig {
         jtt.optimize.Reduce_Long04.class,
         jtt.optimize.Reduce_LongShift01.class,
         jtt.optimize.Reduce_LongShift02.class,
+        jtt.optimize.Spec_Branch01.class,
+        jtt.optimize.Spec_Receiver01.class,
+        jtt.optimize.Spec_Receiver02.class,
         jtt.optimize.Switch01.class,
         jtt.optimize.Switch02.class,
         jtt.optimize.TypeCastElem.class,
@@ -713,6 +728,7 @@ public class JTConfig {
         jtt.reflect.Method_getReturnType01.class,
         jtt.reflect.Reflection_getCallerClass01.class,
         jtt.threads.Monitor_contended01.class,
+        jtt.threads.Monitor_deflate01.class,
         jtt.threads.Monitor_notowner01.class,
         jtt.threads.Monitorenter01.class,
         jtt.threads.Monitorenter02.class,
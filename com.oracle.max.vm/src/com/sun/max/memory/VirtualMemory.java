@@ -238,6 +238,52 @@ public final class VirtualMemory {
     @C_FUNCTION
     private static native Size virtualMemory_getPhysicalMemorySize();
 
+    /* NUMA methods */
+
+    /**
+     * Return the number of NUMA nodes memory can be allocated from.
+     * @return a number of nodes, 1 if the underlying platform isn't NUMA or doesn't support NUMA memory policies
+     */
+    public static int numaNodeCount() {
+        return virtualMemory_numaNodeCount();
+    }
+
+    /**
+     * Return the NUMA node of the processor the current thread runs on.
+     * The thread may be migrated to another node at any time, so the result is only a hint.
+     * @return a node number, 0 if it cannot be determined
+     */
+    @INLINE
+    public static int currentNumaNode() {
+        return virtualMemory_currentNumaNode();
+    }
+
+    /**
+     * Set the memory policy of a range of virtual memory so that its physical pages are allocated from the specified NUMA node.
+     * The policy is lost when the range is remapped, e.g., when {@linkplain #uncommitMemory(Address, Size, Type) uncommitted}
+     * and committed again.
+     *
+     * @param address page aligned start of the range
+     * @param size size of the range
+     * @param node a NUMA node
+     * @return true if the policy was set
+     */
+    public static boolean bindToNumaNode(Address address, Size size, int node) {
+        if (TraceAnonOperations) {
+            traceRange("bindToNumaNode", address, size);
+        }
+        return virtualMemory_bindToNumaNode(address, size, node);
+    }
+
+    @C_FUNCTION
+    private static native int virtualMemory_numaNodeCount();
+
+    @C_FUNCTION
+    private static native int virtualMemory_currentNumaNode();
+
+    @C_FUNCTION
+    private static native boolean virtualMemory_bindToNumaNode(Address address, Size size, int node);
+
     /* Page protection methods */
 
     /**
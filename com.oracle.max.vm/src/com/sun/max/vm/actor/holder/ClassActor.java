@@ -54,6 +54,7 @@ import com.sun.max.vm.heap.*;
 import com.sun.max.vm.heap.gcx.*;
 import com.sun.max.vm.hosted.*;
 import com.sun.max.vm.layout.*;
+import com.sun.max.vm.monitor.modal.modehandlers.lightweight.biased.*;
 import com.sun.max.vm.object.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
@@ -1357,6 +1358,31 @@ public abstract class ClassActor extends Actor implements RiResolvedType {
         return staticHub;
     }
 
+    @CONSTANT_WHEN_NOT_ZERO
+    private BiasedLockRevocationHeuristics biasedLockRevocationHeuristics;
+
+    /**
+     * Gets the statistics that drive bulk rebiasing and bulk revocation of the biased locks of this class's instances.
+     * @return the heuristics, or {@code null} if no biased lock of an instance of this class has been revoked yet
+     */
+    @INLINE
+    public final BiasedLockRevocationHeuristics biasedLockRevocationHeuristics() {
+        return biasedLockRevocationHeuristics;
+    }
+
+    /**
+     * Atomically sets the biased lock revocation heuristics of this class unless another thread already set them.
+     *
+     * @return the heuristics of this class, i.e. either {@code revocationHeuristics} or those set by another thread
+     */
+    public final BiasedLockRevocationHeuristics publishBiasedLockRevocationHeuristics(BiasedLockRevocationHeuristics revocationHeuristics) {
+        final Reference oldValue = Reference.fromJava(this).compareAndSwapReference(ClassActor_biasedLockRevocationHeuristics.offset(), null, Reference.fromJava(revocationHeuristics));
+        if (oldValue == null) {
+            return revocationHeuristics;
+        }
+        return (BiasedLockRevocationHeuristics) oldValue.toJava();
+    }
+
     public Size dynamicTupleSize() {
         return dynamicHub.tupleSize;
     }
@@ -1825,6 +1851,12 @@ public abstract class ClassActor extends Actor implements RiResolvedType {
     @INSPECTED
     public byte[] classfile;
 
+    /**
+     * Hash of the class file this class was defined from at runtime, used to validate saved profiles of its methods.
+     * This is 0 if the class was not defined at runtime or no {@linkplain com.sun.max.vm.profile.ProfileCache profile cache} is in use.
+     */
+    public int classfileHash;
+
     public int[] iToV() {
         return iToV;
     }
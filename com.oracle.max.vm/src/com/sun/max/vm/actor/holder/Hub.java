@@ -190,18 +190,6 @@ public abstract class Hub extends Hybrid {
         return iTableStartIndex - vTableStartIndex();
     }
 
-    @CONSTANT_WHEN_NOT_ZERO
-    private BiasedLockRevocationHeuristics biasedLockRevocationHeuristics;
-
-    @INLINE
-    public final BiasedLockRevocationHeuristics biasedLockRevocationHeuristics() {
-        return biasedLockRevocationHeuristics;
-    }
-
-    public void setBiasedLockRevocationHeuristics(BiasedLockRevocationHeuristics biasedLockRevocationHeuristics) {
-        this.biasedLockRevocationHeuristics = biasedLockRevocationHeuristics;
-    }
-
     private int getITableLength(int[] superClassActorIds, Iterable<InterfaceActor> allInterfaceActors) {
         int result = 1 + superClassActorIds.length;
         if (classActor.isReferenceClassActor()) {
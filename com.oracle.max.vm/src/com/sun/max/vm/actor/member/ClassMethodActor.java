@@ -41,6 +41,7 @@ import com.sun.max.vm.compiler.RuntimeCompiler.*;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.jni.*;
 import com.sun.max.vm.object.ObjectAccess;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.FatalError;
 import com.sun.max.vm.type.*;
 import com.sun.max.vm.verifier.*;
@@ -405,6 +406,24 @@ public abstract class ClassMethodActor extends MethodActor {
         return Compilations.currentTargetMethod(compiledState, null);
     }
 
+    /**
+     * Gets the receiver types recorded at {@code bci} in the profile of the baseline version of this method.
+     * No profile is reported once optimized code that speculated on this method's profile has hit an uncommon
+     * trap, so that recompilations do not repeat the failed speculation.
+     */
+    @Override
+    public RiTypeProfile typeProfile(int bci) {
+        if (isHosted()) {
+            return null;
+        }
+        TargetMethod baseline = Compilations.currentTargetMethod(compiledState, Nature.BASELINE);
+        MethodProfile profile = baseline == null ? null : baseline.profile();
+        if (profile == null || profile.getDeoptimizationCount(MethodProfile.UNCOMMON_TRAP_DEOPTIMIZATION_REASON_ID) > 0) {
+            return null;
+        }
+        return profile.typeProfile(bci);
+    }
+
     /**
      * Records if this object returned {@code true} for a call to {@link #canBePermanentlyLinked()} during
      * boot image building.
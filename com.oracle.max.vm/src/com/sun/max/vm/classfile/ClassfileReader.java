@@ -54,6 +54,7 @@ import com.sun.max.vm.hosted.*;
 import com.sun.max.vm.instrument.*;
 import com.sun.max.vm.intrinsics.*;
 import com.sun.max.vm.jdk.*;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.ti.*;
 import com.sun.max.vm.type.*;
@@ -1676,6 +1677,9 @@ public final class ClassfileReader {
         final ClassfileReader classfileReader = new ClassfileReader(classfileStream, classLoader);
         ClassActor classActor = classfileReader.loadClass(name, source, isRemote);
         classActor.setProtectionDomain(protectionDomain);
+        if (ProfileCache.isEnabled()) {
+            classActor.classfileHash = ProfileCache.classfileHash(bytes, offset, length);
+        }
 
         final ClassActor definedClassActor = ClassRegistry.define(classActor);
 
@@ -85,6 +85,8 @@ public final class CodeCacheMetricsPrinter {
     public void printTo(PrintStream out) {
         final CodeManager codeManager = Code.getCodeManager();
         printRegionTo(codeManager.getRuntimeBaselineCodeRegion(), out);
+        printRegionTo(codeManager.getRuntimeStubCodeRegion(), out);
+        printRegionTo(codeManager.getRuntimeProfiledCodeRegion(), out);
         printRegionTo(codeManager.getRuntimeOptCodeRegion(), out);
     }
 
@@ -189,7 +189,7 @@ public final class CodeCacheValidation extends VmOperation {
 
     private void validateDirectCalls() {
         CodeManager.runtimeBaselineCodeRegion.doNewTargetMethods(directCallValidator);
-        CodeManager.runtimeOptCodeRegion.doAllTargetMethods(directCallValidator);
+        CodeManager.doUnmovedRuntimeTargetMethods(directCallValidator);
         Code.bootCodeRegion().doAllTargetMethods(directCallValidator);
     }
 
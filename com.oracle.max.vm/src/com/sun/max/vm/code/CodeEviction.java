@@ -798,7 +798,7 @@ public final class CodeEviction extends VmOperation {
         tInvalidateCallsBaseline = timerEnd();
 
         timerStart();
-        CodeManager.runtimeOptCodeRegion.doAllTargetMethods(invalidateOptDirectCalls);
+        CodeManager.doUnmovedRuntimeTargetMethods(invalidateOptDirectCalls);
         tInvalidateCallsOpt = timerEnd();
 
         timerStart();
@@ -908,7 +908,7 @@ public final class CodeEviction extends VmOperation {
 
         timerStart();
         optFixCalls.fixed = 0;
-        CodeManager.runtimeOptCodeRegion.doAllTargetMethods(optFixCalls);
+        CodeManager.doUnmovedRuntimeTargetMethods(optFixCalls);
         nCallOpt = optFixCalls.fixed;
         tFixCallsOpt = timerEnd();
 
@@ -1178,7 +1178,7 @@ public final class CodeEviction extends VmOperation {
     private void dumpDirectCalls() {
         s2 = "@";
         CodeManager.runtimeBaselineCodeRegion.doNewTargetMethods(dumpDirectCalls);
-        CodeManager.runtimeOptCodeRegion.doAllTargetMethods(dumpDirectCalls);
+        CodeManager.doUnmovedRuntimeTargetMethods(dumpDirectCalls);
         Code.bootCodeRegion().doAllTargetMethods(dumpDirectCalls);
     }
 
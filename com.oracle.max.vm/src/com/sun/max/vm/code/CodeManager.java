@@ -66,6 +66,22 @@ public abstract class CodeManager {
         register(new VMSizeOption("-XX:ReservedOptCodeCacheSize=", Size.M.times(16),
             "Memory allocated for runtime code region cache."), MaxineVM.Phase.PRISTINE);
 
+    /**
+     * VM option for specifying the amount of memory to be reserved for the runtime profiled code region cache.
+     */
+    public static final VMSizeOption runtimeProfiledCodeRegionSize =
+        register(new VMSizeOption("-XX:ReservedProfiledCodeCacheSize=", Size.M.times(8),
+            "Memory allocated for runtime code region cache of methods compiled with profiling probes."), MaxineVM.Phase.PRISTINE);
+
+    /**
+     * VM option for specifying the amount of memory to be reserved for the runtime stub code region cache.
+     * Stubs and adapters are small and their number is bounded by the number of method signatures, so this
+     * region is the smallest.
+     */
+    public static final VMSizeOption runtimeStubCodeRegionSize =
+        register(new VMSizeOption("-XX:ReservedStubCodeCacheSize=", Size.M.times(4),
+            "Memory allocated for runtime code region cache of stubs and adapters."), MaxineVM.Phase.PRISTINE);
+
     private int nAllocations = 0;
 
     private int lastSurvivorSize;
@@ -111,10 +127,18 @@ public abstract class CodeManager {
          * Methods that will likely be removed after some time (e.g., compiled by a baseline compiler).
          */
         SHORT,
+        /**
+         * Methods that stay until they are recompiled (e.g., compiled by an optimizing compiler with profiling probes).
+         */
+        MEDIUM,
         /**
          * Methods that stay (e.g., compiled by an optimizing compiler).
          */
-        LONG;
+        LONG,
+        /**
+         * Code that is never removed (e.g., adapters and trampolines).
+         */
+        PERMANENT;
     }
 
     /**
@@ -124,10 +148,22 @@ public abstract class CodeManager {
     protected static final SemiSpaceCodeRegion runtimeBaselineCodeRegion = new SemiSpaceCodeRegion("Code-Runtime-Baseline");
 
     /**
-     * The opt code region contains machine code generated by the optimising compiler as well as adapters and trampolines.
+     * The stub code region contains adapters and trampolines.
      */
     @INSPECTED
-    protected static final CodeRegion runtimeOptCodeRegion = new CodeRegion("Code-Runtime-Opt");
+    protected static final CodeRegion runtimeStubCodeRegion = new CodeRegion("Code-Runtime-Stubs");
+
+    /**
+     * The profiled code region contains machine code generated by the optimising compiler with profiling probes.
+     */
+    @INSPECTED
+    protected static final SweptCodeRegion runtimeProfiledCodeRegion = new SweptCodeRegion("Code-Runtime-Profiled");
+
+    /**
+     * The opt code region contains machine code generated by the optimising compiler.
+     */
+    @INSPECTED
+    protected static final SweptCodeRegion runtimeOptCodeRegion = new SweptCodeRegion("Code-Runtime-Opt");
 
     /**
      * Get the runtime baseline code region.
@@ -141,10 +177,36 @@ public abstract class CodeManager {
      * Get the runtime opt code region.
      * @return the runtime baseline code region
      */
-    public CodeRegion getRuntimeOptCodeRegion() {
+    public SweptCodeRegion getRuntimeOptCodeRegion() {
         return runtimeOptCodeRegion;
     }
 
+    /**
+     * Get the runtime profiled code region.
+     * @return the runtime profiled code region
+     */
+    public SweptCodeRegion getRuntimeProfiledCodeRegion() {
+        return runtimeProfiledCodeRegion;
+    }
+
+    /**
+     * Get the runtime stub code region.
+     * @return the runtime stub code region
+     */
+    public CodeRegion getRuntimeStubCodeRegion() {
+        return runtimeStubCodeRegion;
+    }
+
+    /**
+     * Process each target method in the runtime code regions whose code never moves, i.e. all runtime code regions but
+     * the baseline code region.
+     */
+    static void doUnmovedRuntimeTargetMethods(TargetMethod.Closure c) {
+        runtimeStubCodeRegion.doAllTargetMethods(c);
+        runtimeProfiledCodeRegion.doAllTargetMethods(c);
+        runtimeOptCodeRegion.doAllTargetMethods(c);
+    }
+
     /**
      * Initialize this code manager.
      */
@@ -154,7 +216,7 @@ public abstract class CodeManager {
     private static int BOOT_TO_BASELINE_INITIAL_SIZE = 10;
 
     /**
-     * Records all direct call links from the boot code region to the baseline code region.
+     * Records all direct call links from the boot code region to the baseline code region and the swept code regions.
      */
     private static TargetMethod[] bootToBaseline = new TargetMethod[BOOT_TO_BASELINE_INITIAL_SIZE];
 
@@ -196,6 +258,10 @@ public abstract class CodeManager {
      * @param inHeap specifies if the memory should be allocated in a code region or on the heap
      */
     synchronized void allocate(TargetBundleLayout targetBundleLayout, TargetMethod targetMethod, boolean inHeap, Lifespan lifespan) {
+        if (!inHeap && !isHosted() && (lifespan == Lifespan.MEDIUM || lifespan == Lifespan.LONG)) {
+            CodeSweeper.notifyAllocation();
+        }
+
         final Size bundleSize = targetBundleLayout.bundleSize();
         int codeLength = targetBundleLayout.length(ArrayField.code);
         int scalarLiteralsLength = targetBundleLayout.length(ArrayField.scalarLiterals);
@@ -222,10 +288,18 @@ public abstract class CodeManager {
                 // The allocation and initialization of objects in a code region must be atomic with respect to garbage collection.
                 mustReenableSafepoints = !SafepointPoll.disable();
                 Heap.disableAllocationForCurrentThread();
-                if (lifespan == Lifespan.LONG) {
-                    currentCodeRegion = runtimeOptCodeRegion;
-                } else {
-                    currentCodeRegion = runtimeBaselineCodeRegion;
+                switch (lifespan) {
+                    case PERMANENT:
+                        currentCodeRegion = runtimeStubCodeRegion;
+                        break;
+                    case MEDIUM:
+                        currentCodeRegion = runtimeProfiledCodeRegion;
+                        break;
+                    case LONG:
+                        currentCodeRegion = runtimeOptCodeRegion;
+                        break;
+                    default:
+                        currentCodeRegion = runtimeBaselineCodeRegion;
                 }
             } else {
                 currentCodeRegion = Code.bootCodeRegion();
@@ -246,6 +320,15 @@ public abstract class CodeManager {
                     CodeEviction.codeEvictionLogger.logStats_Surviving(lastSurvivorSize, largestSurvivorSize);
                 }
             }
+
+            // Allocation in a swept code region may take up to two sweeps upon contention: one retiring cold methods
+            // and one reclaiming them once they are no longer on any stack.
+            if (start.isZero() && currentCodeRegion instanceof SweptCodeRegion) {
+                for (int sweep = 0; sweep < 2 && start.isZero(); sweep++) {
+                    CodeSweeper.run((SweptCodeRegion) currentCodeRegion);
+                    start = currentCodeRegion.allocate(allocationSize, false);
+                }
+            }
         }
 
         traceChunkAllocation(allocationTraceDescription, allocationSize, start, inHeap);
@@ -259,6 +342,10 @@ public abstract class CodeManager {
                 Log.println(" - try larger value for " + runtimeBaselineCodeRegionSize.toString() + "<n>");
             } else if (currentCodeRegion == runtimeOptCodeRegion) {
                 Log.println(" - try larger value for " + runtimeOptCodeRegionSize.toString() + "<n>");
+            } else if (currentCodeRegion == runtimeProfiledCodeRegion) {
+                Log.println(" - try larger value for " + runtimeProfiledCodeRegionSize.toString() + "<n>");
+            } else if (currentCodeRegion == runtimeStubCodeRegion) {
+                Log.println(" - try larger value for " + runtimeStubCodeRegionSize.toString() + "<n>");
             }
             MaxineVM.exit(11);
         }
@@ -308,6 +395,9 @@ public abstract class CodeManager {
         }
 
         if (currentCodeRegion != null) {
+            if (currentCodeRegion instanceof SweptCodeRegion) {
+                targetMethod.setLastActiveSweep(CodeSweeper.sweepCount());
+            }
             currentCodeRegion.add(targetMethod);
         }
     }
@@ -379,6 +469,12 @@ public abstract class CodeManager {
         if (runtimeBaselineCodeRegion.contains(codePointer)) {
             return runtimeBaselineCodeRegion;
         }
+        if (runtimeStubCodeRegion.contains(codePointer)) {
+            return runtimeStubCodeRegion;
+        }
+        if (runtimeProfiledCodeRegion.contains(codePointer)) {
+            return runtimeProfiledCodeRegion;
+        }
         if (runtimeOptCodeRegion.contains(codePointer)) {
             return runtimeOptCodeRegion;
         }
@@ -413,6 +509,8 @@ public abstract class CodeManager {
             visitAllIn(cellVisitor, Code.bootCodeRegion());
         }
         visitAllIn(cellVisitor, runtimeBaselineCodeRegion);
+        visitAllIn(cellVisitor, runtimeStubCodeRegion);
+        visitAllIn(cellVisitor, runtimeProfiledCodeRegion);
         visitAllIn(cellVisitor, runtimeOptCodeRegion);
     }
 
@@ -446,6 +544,22 @@ public abstract class CodeManager {
         return runtimeOptCodeRegionSize.getValue();
     }
 
+    /**
+     * Return size of runtime profiled code region.
+     * @return size of runtime profiled code region
+     */
+    public Size getRuntimeProfiledCodeRegionSize() {
+        return runtimeProfiledCodeRegionSize.getValue();
+    }
+
+    /**
+     * Return size of runtime stub code region.
+     * @return size of runtime stub code region
+     */
+    public Size getRuntimeStubCodeRegionSize() {
+        return runtimeStubCodeRegionSize.getValue();
+    }
+
     /**
      * By definition, short-lived methods go to the baseline code region.
      */
@@ -453,6 +567,14 @@ public abstract class CodeManager {
         return runtimeBaselineCodeRegion.contains(tm.start());
     }
 
+    /**
+     * Determines if the code at a given address may be removed from the code cache, either by {@linkplain CodeEviction
+     * code eviction} or by the {@linkplain CodeSweeper code sweeper}.
+     */
+    public static boolean isEvictable(Address codePointer) {
+        return runtimeBaselineCodeRegion.contains(codePointer) || runtimeProfiledCodeRegion.contains(codePointer) || runtimeOptCodeRegion.contains(codePointer);
+    }
+
     /**
      * A collection of methods that support certain inspection services.
      * The public methods are to be called by all implementations when
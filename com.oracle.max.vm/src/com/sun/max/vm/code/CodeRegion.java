@@ -177,7 +177,8 @@ public class CodeRegion extends LinearAllocatorRegion {
             targetMethods = Arrays.copyOf(targetMethods, newCapacity);
         }
         int insertionPoint;
-        if (length == 0 || COMPARATOR.compare(targetMethods[length - 1], targetMethod) < 0) {
+        boolean append = length == 0 || COMPARATOR.compare(targetMethods[length - 1], targetMethod) < 0;
+        if (append) {
             // follows any existing entries in the array so it can simply be appended.
             insertionPoint = length;
         } else {
@@ -191,6 +192,12 @@ public class CodeRegion extends LinearAllocatorRegion {
         length++;
         additionCompletedCount++;       // The array becomes once again inspectable
 
+        if (!append) {
+            // the indexes of all the methods following the insertion point have changed
+            rebuildFindIndex();
+            return;
+        }
+
         assert start().alignUp(FIND_INDEX_ALIGN).equals(start());
         int startIdx = targetMethod.start().plus(FIND_INDEX_ALIGN - 1).minus(start()).unsignedShiftedRight(FIND_INDEX_ALIGN_SHIFT).toInt();
         int endIdx = targetMethod.end().minus(1).minus(start()).unsignedShiftedRight(FIND_INDEX_ALIGN_SHIFT).toInt();
@@ -203,6 +210,40 @@ public class CodeRegion extends LinearAllocatorRegion {
         }
     }
 
+    /**
+     * Removes a target method from this sorted list of target methods. The memory occupied by the method is not
+     * reclaimed by this operation.
+     */
+    public void remove(TargetMethod targetMethod) {
+        int index = Arrays.binarySearch(targetMethods, 0, length, targetMethod, COMPARATOR);
+        assert index >= 0 && targetMethods[index] == targetMethod : targetMethod + " is not in " + regionName();
+        additionStartedCount++;         // The array becomes not inspectable
+        System.arraycopy(targetMethods, index + 1, targetMethods, index, length - index - 1);
+        length--;
+        targetMethods[length] = null;
+        additionCompletedCount++;       // The array becomes once again inspectable
+        rebuildFindIndex();
+    }
+
+    /**
+     * Recomputes the {@link #findIndex} from scratch. A page whose beginning is not covered by any method (i.e. lies in
+     * a gap between two methods) is mapped to the first method following the gap.
+     */
+    protected void rebuildFindIndex() {
+        assert start().alignUp(FIND_INDEX_ALIGN).equals(start());
+        Arrays.fill(findIndex, 0);
+        int page = 0;
+        for (int i = 0; i < length; i++) {
+            int endIdx = targetMethods[i].end().minus(1).minus(start()).unsignedShiftedRight(FIND_INDEX_ALIGN_SHIFT).toInt();
+            if (endIdx >= findIndex.length) {
+                findIndex = Arrays.copyOf(findIndex, (endIdx * 3) / 2 + 1);
+            }
+            while (page <= endIdx) {
+                findIndex[page++] = i;
+            }
+        }
+    }
+
     /**
      * Looks up the target method containing a particular address, using the index.
      *
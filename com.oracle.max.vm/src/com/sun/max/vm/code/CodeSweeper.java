@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.code;
+
+import static com.sun.max.platform.Platform.*;
+import static com.sun.max.vm.MaxineVM.*;
+
+import java.util.*;
+
+import com.sun.max.lang.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.compiler.target.aarch64.*;
+import com.sun.max.vm.compiler.target.amd64.*;
+import com.sun.max.vm.compiler.target.arm.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.stack.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Reclaims methods from the {@linkplain SweptCodeRegion swept code regions}, i.e. the regions holding code produced by
+ * the optimizing compiler with and without profiling probes.
+ * <p>
+ * Unlike {@linkplain CodeEviction baseline code eviction}, sweeping never moves code and therefore never patches
+ * stacks. A method is reclaimed in two steps, each performed by a separate sweep:
+ * <ol>
+ * <li>The method is <i>retired</i>: it is {@linkplain TargetMethod#makeNotEntrant() made not entrant} by removing it
+ * from the compiled state of its method actor and by redirecting its entry point to the static trampoline. A method is
+ * retired if it is not on any stack during the sweep and it has been superseded (e.g. profiled code that has been
+ * recompiled by the optimizing compiler, or deoptimized code). With {@code -XX:CodeSweepColdSweeps=<n>}, a method that
+ * has not been seen on a stack for {@code n} sweeps is retired as well. When a region is short of space, the least
+ * recently active methods of that region are retired too.</li>
+ * <li>The method is freed by a later sweep that does not find it on any stack, after all dispatch table entries and
+ * direct call sites referring to it have been reset to trampolines.</li>
+ * </ol>
+ * Each sweep is a single {@linkplain VmOperation VM operation} whose only stack walk is a read-only one recording which
+ * methods are active. The invocation recency of a method is approximated by the last sweep that found it on a stack.
+ * This is a weak signal: a short method invoked all the time is rarely caught on a stack, so retiring cold methods is
+ * off by default, as retiring a hot method costs a recompilation.
+ */
+public final class CodeSweeper extends VmOperation {
+
+    /**
+     * Number of allocations in the swept code regions between two sweeps.
+     */
+    private static int CodeSweepInterval = 500;
+
+    /**
+     * Number of consecutive sweeps that must not find an optimized method on a stack before it is retired, or 0 if
+     * methods are not retired for being cold.
+     */
+    private static int CodeSweepColdSweeps = 0;
+
+    /**
+     * Prints statistics after each sweep.
+     */
+    private static boolean TraceCodeSweeps;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "CodeSweepInterval", CodeSweeper.class,
+            "Sweep the optimized code regions after every <n> method allocations in these regions. " +
+            "A value of 0 only sweeps when a region is full.", MaxineVM.Phase.STARTING);
+        VMOptions.addFieldOption("-XX:", "CodeSweepColdSweeps", CodeSweeper.class,
+            "Retire optimized methods that no stack has referred to for <n> code sweeps. " +
+            "A value of 0 only retires superseded methods.", MaxineVM.Phase.STARTING);
+        VMOptions.addFieldOption("-XX:", "TraceCodeSweeps", CodeSweeper.class,
+            "Print statistics about each code sweep.", MaxineVM.Phase.STARTING);
+    }
+
+    /**
+     * Fraction of the occupied space of a full region that is retired by a sweep on contention.
+     */
+    private static final int CONTENTION_RETIREMENT_DIVISOR = 4;
+
+    private static int sweepCount;
+
+    private static int allocationCount;
+
+    private static final CodeSweeper codeSweeper = new CodeSweeper();
+
+    /**
+     * The region that is out of space, if this sweep is run on contention.
+     */
+    private SweptCodeRegion contendedRegion;
+
+    private int nRetired;
+    private int nFreed;
+    private Size freedBytes;
+
+    private CodeSweeper() {
+        super("code sweeper", null, Mode.Safepoint);
+    }
+
+    /**
+     * Gets the number of sweeps performed so far.
+     */
+    public static int sweepCount() {
+        return sweepCount;
+    }
+
+    /**
+     * Notification that a method is about to be allocated in a swept code region. Runs a sweep every
+     * {@link #CodeSweepInterval} such allocations.
+     */
+    static void notifyAllocation() {
+        if (CodeSweepInterval > 0 && ++allocationCount % CodeSweepInterval == 0 && MaxineVM.isRunning()) {
+            run(null);
+        }
+    }
+
+    /**
+     * Runs a code sweep.
+     *
+     * @param contendedRegion the region in which an allocation failed, or {@code null} if this is a periodic sweep
+     */
+    static void run(SweptCodeRegion contendedRegion) {
+        codeSweeper.contendedRegion = contendedRegion;
+        codeSweeper.submit();
+        codeSweeper.contendedRegion = null;
+    }
+
+    @Override
+    protected void doIt() {
+        ++sweepCount;
+        nRetired = 0;
+        nFreed = 0;
+        freedBytes = Size.zero();
+
+        // Record the methods that are active, i.e. on some stack
+        doAllThreads();
+
+        // Retired methods no longer on any stack are freed after the references to them have been reset
+        final ArrayList<TargetMethod> doomed = new ArrayList<TargetMethod>();
+        collectDoomed(CodeManager.runtimeProfiledCodeRegion, doomed);
+        collectDoomed(CodeManager.runtimeOptCodeRegion, doomed);
+
+        retireSupersededAndCold(CodeManager.runtimeProfiledCodeRegion);
+        retireSupersededAndCold(CodeManager.runtimeOptCodeRegion);
+        if (contendedRegion != null) {
+            retireLeastRecentlyActive(contendedRegion);
+        }
+
+        if (!doomed.isEmpty() || nRetired > 0) {
+            ClassActor.allClassesDo(dispatchTableResetter);
+            CodeManager.runtimeBaselineCodeRegion.doAllTargetMethods(directCallResetter);
+            CodeManager.doUnmovedRuntimeTargetMethods(directCallResetter);
+            CodeManager.bootToBaselineDo(directCallResetter);
+        }
+
+        if (!doomed.isEmpty()) {
+            CodeManager.Inspect.notifyEvictionStarted(CodeManager.runtimeProfiledCodeRegion);
+            CodeManager.Inspect.notifyEvictionStarted(CodeManager.runtimeOptCodeRegion);
+            for (TargetMethod tm : doomed) {
+                free(tm);
+            }
+            CodeManager.Inspect.notifyEvictionCompleted(CodeManager.runtimeProfiledCodeRegion);
+            CodeManager.Inspect.notifyEvictionCompleted(CodeManager.runtimeOptCodeRegion);
+        }
+
+        if (TraceCodeSweeps) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Code sweep ");
+            Log.print(sweepCount);
+            Log.print(contendedRegion != null ? " (contention in " + contendedRegion.regionName() + ")" : "");
+            Log.print(": retired ");
+            Log.print(nRetired);
+            Log.print(" methods, freed ");
+            Log.print(nFreed);
+            Log.print(" methods (");
+            Log.print(freedBytes.toLong());
+            Log.println(" bytes)");
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+
+    @Override
+    protected void doThread(VmThread vmThread, Pointer ip, Pointer sp, Pointer fp) {
+        // bail out if the thread was stopped in native code before invoking any Java method
+        if (ip.isZero() && sp.isZero() && fp.isZero()) {
+            return;
+        }
+        walker.setTLA(vmThread.tla());
+        walker.inspect(ip, sp, fp, activeMethodsMarker);
+    }
+
+    private final VmStackFrameWalker walker = new VmStackFrameWalker(Pointer.zero());
+
+    /**
+     * Records the current sweep as the last one in which the methods on the stack were active.
+     */
+    final class ActiveMethodsMarker extends RawStackFrameVisitor {
+        @Override
+        public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
+            final TargetMethod tm = current.targetMethod();
+            if (tm != null && isSwept(tm.start())) {
+                tm.setLastActiveSweep(sweepCount);
+            }
+            return true;
+        }
+    }
+
+    private final ActiveMethodsMarker activeMethodsMarker = new ActiveMethodsMarker();
+
+    private static boolean isSwept(Address address) {
+        return CodeManager.runtimeOptCodeRegion.contains(address) || CodeManager.runtimeProfiledCodeRegion.contains(address);
+    }
+
+    /**
+     * Determines if a method is on a stack in the current sweep.
+     */
+    private static boolean isActive(TargetMethod tm) {
+        return tm.lastActiveSweep() == sweepCount;
+    }
+
+    /**
+     * Determines if a method was on a stack in the current or the previous sweep, or has been installed since the
+     * previous sweep. Such a method may be in the process of being linked or installed and is never retired.
+     */
+    private static boolean isRecentlyActive(TargetMethod tm) {
+        return sweepCount - tm.lastActiveSweep() <= 1;
+    }
+
+    /**
+     * Determines if a method has not been on a stack for {@link #CodeSweepColdSweeps} sweeps.
+     */
+    private static boolean isCold(TargetMethod tm) {
+        return CodeSweepColdSweeps > 0 && sweepCount - tm.lastActiveSweep() >= CodeSweepColdSweeps;
+    }
+
+    private void collectDoomed(SweptCodeRegion region, final ArrayList<TargetMethod> doomed) {
+        region.doAllTargetMethods(new TargetMethod.Closure() {
+            @Override
+            public boolean doTargetMethod(TargetMethod tm) {
+                if (tm.isNotEntrant() && !isActive(tm)) {
+                    doomed.add(tm);
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Retires the methods of a region that are inactive and either superseded by another compilation or, if
+     * {@link #CodeSweepColdSweeps} is positive, cold.
+     */
+    private void retireSupersededAndCold(SweptCodeRegion region) {
+        region.doAllTargetMethods(new TargetMethod.Closure() {
+            @Override
+            public boolean doTargetMethod(TargetMethod tm) {
+                if (!tm.isNotEntrant() && !isRecentlyActive(tm) && (isSuperseded(tm) || isCold(tm))) {
+                    retire(tm);
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Retires the least recently active methods of a region that is out of space, until a fraction of its occupied space
+     * will be freed by the next sweep.
+     */
+    private void retireLeastRecentlyActive(SweptCodeRegion region) {
+        final ArrayList<TargetMethod> candidates = new ArrayList<TargetMethod>();
+        final Size[] retiring = {Size.zero()};
+        region.doAllTargetMethods(new TargetMethod.Closure() {
+            @Override
+            public boolean doTargetMethod(TargetMethod tm) {
+                if (tm.isNotEntrant()) {
+                    retiring[0] = retiring[0].plus(tm.size());
+                } else if (!isRecentlyActive(tm)) {
+                    candidates.add(tm);
+                }
+                return true;
+            }
+        });
+        Collections.sort(candidates, new Comparator<TargetMethod>() {
+            @Override
+            public int compare(TargetMethod tm1, TargetMethod tm2) {
+                return tm1.lastActiveSweep() - tm2.lastActiveSweep();
+            }
+        });
+        final Size target = region.occupied().dividedBy(CONTENTION_RETIREMENT_DIVISOR);
+        for (int i = 0; i < candidates.size() && retiring[0].lessThan(target); i++) {
+            final TargetMethod tm = candidates.get(i);
+            if (retire(tm)) {
+                retiring[0] = retiring[0].plus(tm.size());
+            }
+        }
+    }
+
+    /**
+     * Determines if a method can no longer be reached through its method actor, either because it has been recompiled
+     * or because it has been deoptimized.
+     */
+    private static boolean isSuperseded(TargetMethod tm) {
+        if (tm.invalidated() != null) {
+            return true;
+        }
+        if (tm.osrEntryOffset() >= 0) {
+            // on-stack replacement code is never installed in its method actor
+            return false;
+        }
+        final Object compiledState = tm.classMethodActor.compiledState;
+        if (compiledState instanceof Compilations) {
+            final Compilations compilations = (Compilations) compiledState;
+            return compilations.optimized != tm && compilations.baseline != tm;
+        }
+        // being recompiled: the method may still be in use as one of the previous compilations
+        return false;
+    }
+
+    /**
+     * Makes a method not entrant, unless its method actor is being recompiled.
+     *
+     * @return {@code true} if the method was retired
+     */
+    private boolean retire(TargetMethod tm) {
+        if (tm.invalidated() == null && tm.osrEntryOffset() < 0) {
+            final ClassMethodActor cma = tm.classMethodActor;
+            final Object compiledState = cma.compiledState;
+            if (!(compiledState instanceof Compilations)) {
+                return false;
+            }
+            final Compilations compilations = (Compilations) compiledState;
+            if (compilations.optimized == tm) {
+                cma.compiledState = compilations.baseline == null ? Compilations.EMPTY : new Compilations(compilations.baseline, null);
+            }
+            // Direct callers that have not been reset yet are re-linked through the static trampoline
+            tm.redirectTo(vm().stubs.staticTrampoline());
+        }
+        tm.makeNotEntrant();
+        nRetired++;
+        return true;
+    }
+
+    private void free(TargetMethod tm) {
+        nFreed++;
+        freedBytes = freedBytes.plus(tm.size());
+        assert CodeEviction.invalidateCode(tm.code());
+        tm.wipe();
+        ((SweptCodeRegion) Code.getCodeManager().codePointerToCodeRegion(tm.start())).free(tm);
+    }
+
+    /**
+     * Gets the method denoted by a code address if it is a retired method in a swept code region.
+     */
+    private static TargetMethod retiredMethodAt(Address address) {
+        if (isSwept(address)) {
+            final TargetMethod tm = Code.getCodeManager().codePointerToTargetMethod(address);
+            if (tm != null && tm.isNotEntrant()) {
+                return tm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resets the dispatch table entries that refer to a retired method to the respective trampolines.
+     */
+    final class DispatchTableResetter implements ClassActor.Closure {
+        @Override
+        public boolean doClass(ClassActor classActor) {
+            final DynamicHub dhub = classActor.dynamicHub();
+            if (dhub != null) {
+                resetHub(dhub, DynamicHub.vTableStartIndex(), true);
+            }
+            final StaticHub shub = classActor.staticHub();
+            if (shub != null) {
+                resetHub(shub, Hub.vTableStartIndex(), !(classActor.isInterface() || classActor.isPrimitiveClassActor()));
+            }
+            return true;
+        }
+
+        private void resetHub(Hub hub, int vstart, boolean hasVtable) {
+            if (hasVtable) {
+                final int vend = vstart + hub.vTableLength();
+                for (int i = vstart; i < vend; ++i) {
+                    if (retiredMethodAt(hub.getWord(i).asAddress()) != null) {
+                        hub.resetVTableEntry(i);
+                    }
+                }
+            }
+            final int istart = hub.iTableStartIndex;
+            final int iend = istart + hub.iTableLength;
+            for (int i = istart + 1; i < iend; ++i) { // the first entry is null
+                if (retiredMethodAt(hub.getWord(i).asAddress()) != null) {
+                    hub.setWord(i, vm().stubs.interfaceTrampoline(i - istart).toAddress());
+                }
+            }
+        }
+    }
+
+    private final DispatchTableResetter dispatchTableResetter = new DispatchTableResetter();
+
+    /**
+     * Resets the direct call sites that call a retired method to the static trampoline.
+     */
+    final class DirectCallResetter implements TargetMethod.Closure {
+        @Override
+        public boolean doTargetMethod(TargetMethod tm) {
+            if (tm.isWiped()) {
+                return true;
+            }
+            final Safepoints safepoints = tm.safepoints();
+            int dcIndex = 0;
+            for (int spi = safepoints.nextDirectCall(0); spi >= 0; spi = safepoints.nextDirectCall(spi + 1), dcIndex++) {
+                final int callPos = safepoints.causePosAt(spi);
+                final CodePointer target;
+                if (platform().isa == ISA.AMD64) {
+                    target = AMD64TargetMethodUtil.readCall32Target(tm, callPos);
+                } else if (platform().isa == ISA.ARM) {
+                    target = ARMTargetMethodUtil.readCall32Target(tm, callPos);
+                } else if (platform().isa == ISA.Aarch64) {
+                    target = Aarch64TargetMethodUtil.readCall32Target(tm, callPos);
+                } else {
+                    throw FatalError.unimplemented("com.sun.max.vm.code.CodeSweeper.DirectCallResetter");
+                }
+                if (retiredMethodAt(target.toAddress()) != null) {
+                    tm.resetDirectCall(spi, dcIndex);
+                }
+            }
+            return true;
+        }
+    }
+
+    private final DirectCallResetter directCallResetter = new DirectCallResetter();
+}
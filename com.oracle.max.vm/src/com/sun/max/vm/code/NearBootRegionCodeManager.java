@@ -29,7 +29,7 @@ import com.sun.max.vm.heap.*;
 
 /**
  * A code manager that reserves and allocates virtual memory immediately after the boot region.
- * Specifically, the code manager allocates two page-aligned contiguous ranges of virtual memory immediately (one for each of the baseline and optimized code regions) after the
+ * Specifically, the code manager allocates page-aligned contiguous ranges of virtual memory immediately (one for each of the baseline, stub, profiled and optimized code regions) after the
  * first virtual memory page next to the boot heap region highest address.
  * It relies on cooperation with the HeapScheme to reserve up to 1 G of space next to the boot heap region.
  * This guarantees that (1) virtual memory can be allocated at that address, and (2) all code allocated from the code manager will be within a 32-bit displacement from
@@ -45,7 +45,11 @@ public class NearBootRegionCodeManager extends CodeManager {
     void initialize() {
         final Address baselineAddress = Code.bootCodeRegion().end().alignUp(Platform.platform().pageSize);
         tryAllocate(runtimeBaselineCodeRegionSize, runtimeBaselineCodeRegion, baselineAddress);
-        final Address optAddress = runtimeBaselineCodeRegion.end().alignUp(Platform.platform().pageSize);
+        final Address stubAddress = runtimeBaselineCodeRegion.end().alignUp(Platform.platform().pageSize);
+        tryAllocate(runtimeStubCodeRegionSize, runtimeStubCodeRegion, stubAddress);
+        final Address profiledAddress = runtimeStubCodeRegion.end().alignUp(Platform.platform().pageSize);
+        tryAllocate(runtimeProfiledCodeRegionSize, runtimeProfiledCodeRegion, profiledAddress);
+        final Address optAddress = runtimeProfiledCodeRegion.end().alignUp(Platform.platform().pageSize);
         tryAllocate(runtimeOptCodeRegionSize, runtimeOptCodeRegion, optAddress);
     }
 
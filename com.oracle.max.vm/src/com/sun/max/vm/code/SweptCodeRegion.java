@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.code;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.heap.*;
+
+/**
+ * A code region whose methods never move and are reclaimed one at a time by the {@linkplain CodeSweeper code sweeper}.
+ * The space of a reclaimed method is left as a gap between its neighbours, formatted as a dead object so that the region
+ * can still be walked as a sequence of well-formed cells. Allocation bumps the allocation mark as long as the region has
+ * space left beyond it, and then reuses the first gap that fits.
+ */
+public final class SweptCodeRegion extends CodeRegion {
+
+    public SweptCodeRegion(String description) {
+        super(description);
+    }
+
+    @Override
+    public Pointer allocate(Size size, boolean adjustForDebugTag) {
+        Pointer cell = super.allocate(size, adjustForDebugTag);
+        if (cell.isZero() && !adjustForDebugTag) {
+            cell = allocateInGap(size);
+        }
+        return cell;
+    }
+
+    /**
+     * Allocates space from the first gap between two methods that can hold {@code size} bytes. What is left of the gap
+     * must either be empty or large enough to be formatted as a dead object.
+     */
+    private Pointer allocateInGap(Size size) {
+        Address gapStart = start();
+        for (int i = 0; i < length; i++) {
+            final TargetMethod tm = targetMethods[i];
+            final Size gap = tm.start().minus(gapStart).asSize();
+            if (gap.equals(size)) {
+                return gapStart.asPointer();
+            }
+            if (gap.greaterThan(size) && gap.minus(size).greaterEqual(HeapSchemeAdaptor.minObjectSize())) {
+                HeapSchemeAdaptor.fillWithDeadObject(gapStart.plus(size), tm.start());
+                return gapStart.asPointer();
+            }
+            gapStart = tm.end();
+        }
+        return Pointer.zero();
+    }
+
+    /**
+     * Removes a method from this region and reclaims the space it occupies. The caller must ensure that the method can
+     * no longer be executed, i.e. that it has no activations left and that no call site or dispatch table entry refers
+     * to it.
+     */
+    public void free(TargetMethod targetMethod) {
+        remove(targetMethod);
+        if (targetMethod.end().greaterEqual(getAllocationMark())) {
+            // the method was the last one allocated: give its space (and any gap preceding it) back to the bump allocator
+            setMark(length == 0 ? start() : targetMethods[length - 1].end());
+        } else {
+            HeapSchemeAdaptor.fillWithDeadObject(targetMethod.start(), targetMethod.end());
+        }
+    }
+
+    /**
+     * Gets the number of bytes in this region that are occupied by methods.
+     */
+    public Size occupied() {
+        Size occupied = Size.zero();
+        for (int i = 0; i < length; i++) {
+            occupied = occupied.plus(targetMethods[i].size());
+        }
+        return occupied;
+    }
+}
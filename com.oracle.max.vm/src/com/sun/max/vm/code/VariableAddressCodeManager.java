@@ -46,6 +46,8 @@ public class VariableAddressCodeManager extends CodeManager {
     @Override
     void initialize() {
         tryAllocate(runtimeBaselineCodeRegionSize, runtimeBaselineCodeRegion);
+        tryAllocate(runtimeStubCodeRegionSize, runtimeStubCodeRegion);
+        tryAllocate(runtimeProfiledCodeRegionSize, runtimeProfiledCodeRegion);
         tryAllocate(runtimeOptCodeRegionSize, runtimeOptCodeRegion);
     }
 
@@ -67,9 +67,11 @@ public class CompilationBroker {
     private static int RCT = 5000;
 
     /**
-     * A queue of pending compilations.
+     * A bounded queue of pending background recompilations. It is kept unordered; the compilation threads
+     * take the {@linkplain CompilationRequest#hotness() hottest} request out of it, as hotness keeps
+     * changing while requests wait in the queue.
      */
-    protected final LinkedList<Compilation> pending = new LinkedList<Compilation>();
+    protected final LinkedList<CompilationRequest> pending = new LinkedList<CompilationRequest>();
 
     /**
      * The baseline compiler.
@@ -92,6 +94,22 @@ public class CompilationBroker {
     private static boolean VMExtOpt;
     static int PrintCodeCacheMetrics;
 
+    /**
+     * Recompile hot methods in {@linkplain CompilationThread background threads} instead of in the mutator
+     * thread that overflowed the method's invocation counter.
+     */
+    private static boolean BackgroundCompilation;
+    private static int CompilationThreads = 1;
+    private static int CompilationQueueSize = 64;
+
+    /**
+     * Replace the frame of a baseline method that keeps running a hot loop by an optimized frame entered at the loop
+     * header, once the method's counter has dropped {@link #OSRThreshold} below zero without the method being
+     * re-entered.
+     */
+    private static boolean UseOnStackReplacement;
+    private static int OSRThreshold = 10000;
+
     private static boolean offline = false;
     private static boolean simulateAdapter = false;
 
@@ -106,8 +124,23 @@ public class CompilationBroker {
         addFieldOption("-XX:", "PrintCodeCacheMetrics", CompilationBroker.class, "Print code cache metrics (0 = disabled, 1 = summary, 2 = verbose).");
         addFieldOption("-XX:", "VMExtOpt", CompilationBroker.class, "Compile VM extensions with optimizing compiler (default: false");
         addFieldOption("-XX:", "AddCompiler", CompilationBroker.class, "Add a compiler, Name:Class");
+        addFieldOption("-XX:", "BackgroundCompilation", CompilationBroker.class, "Recompile hot methods in background compilation threads.");
+        addFieldOption("-XX:", "CompilationThreads", CompilationBroker.class, "Number of background compilation threads (default: " + CompilationThreads + ").");
+        addFieldOption("-XX:", "CompilationQueueSize", CompilationBroker.class, "Maximum number of pending background compilations (default: " + CompilationQueueSize + ").");
+        addFieldOption("-XX:", "UseOnStackReplacement", CompilationBroker.class, "Migrate baseline frames running hot loops to optimized code.");
+        addFieldOption("-XX:", "OSRThreshold", CompilationBroker.class, "Number of backward branches past the recompilation threshold that trigger on-stack replacement (default: " + OSRThreshold + ").");
     }
 
+    public static final VMBooleanOption PrintCompilationQueueStatsOption = register(new VMBooleanOption("-XX:-PrintCompilationQueueStats",
+            "Report background compilation queue length and wait time statistics.") {
+        @Override
+        protected void beforeExit() {
+            if (getValue() && BackgroundCompilation) {
+                singleton.printCompilationQueueStats();
+            }
+        }
+    }, MaxineVM.Phase.STARTING);
+
     @RESET
     static String CompileCommand;
 
@@ -164,7 +197,10 @@ public class CompilationBroker {
      */
     private RuntimeCompiler defaultCompiler;
 
-    private static final boolean BACKGROUND_COMPILATION = false;
+    /**
+     * The policy choosing the compiler of a recompilation, created when the VM starts.
+     */
+    private TierPolicy tierPolicy;
 
     public boolean needsAdapters() {
         return baselineCompiler != null;
@@ -293,6 +329,9 @@ public class CompilationBroker {
     public String mode() {
         if (RCT != 0) {
             if (defaultCompiler == baselineCompiler) {
+                if (tierPolicy != null && tierPolicy.isTiered()) {
+                    return "mixed mode, tiered";
+                }
                 return "mixed mode, baseline-compile first";
             }
             return "mixed mode, optimize first";
@@ -338,28 +377,40 @@ public class CompilationBroker {
         }
 
         if (isHosted()) {
-            if (BACKGROUND_COMPILATION) {
-                // launch a compiler thread if background compilation is supported (currently no)
-                final CompilationThread compilationThread = new CompilationThread();
-                compilationThread.setDaemon(true);
-                compilationThread.start();
-            }
+            // nothing more to do while building the boot image
         } else if (phase == MaxineVM.Phase.STARTING) {
             if (opt) {
                 defaultCompiler = optimizingCompiler;
             }
 
+            tierPolicy = new TierPolicy(optimizingCompiler, baselineCompiler == null ? 0 : RCT);
             if (RCT != 0 && baselineCompiler != null) {
-                MethodInstrumentation.enable(RCT);
+                MethodInstrumentation.enable(tierPolicy.baselineThreshold(RCT));
             }
 
-            if (BACKGROUND_COMPILATION) {
-                // launch a compiler thread if background compilation is supported (currently no)
-                final CompilationThread compilationThread = new CompilationThread();
-                compilationThread.setDaemon(true);
-                compilationThread.start();
+            if (UseOnStackReplacement && RCT != 0 && baselineCompiler != null && optimizingCompiler instanceof OSRCompiler && platform().isa == ISA.AMD64) {
+                if (OSRThreshold < 1) {
+                    throw FatalError.unexpected("-XX:OSRThreshold must be positive");
+                }
+                MethodInstrumentation.enableOSR(OSRThreshold);
+            } else {
+                UseOnStackReplacement = false;
+            }
+
+            if (BackgroundCompilation && RCT != 0 && baselineCompiler != null) {
+                if (CompilationThreads < 1 || CompilationQueueSize < 1) {
+                    throw FatalError.unexpected("-XX:CompilationThreads and -XX:CompilationQueueSize must be positive");
+                }
+                for (int i = 0; i < CompilationThreads; i++) {
+                    new CompilationThread(i).start();
+                }
+            } else {
+                BackgroundCompilation = false;
             }
         } else if (phase == Phase.RUNNING) {
+            if (RCT != 0 && baselineCompiler != null) {
+                ProfileCache.initialize();
+            }
             if (PrintCodeCacheMetrics != 0) {
                 Runtime.getRuntime().addShutdownHook(new Thread("CodeCacheMetricsPrinter") {
                     @Override
@@ -545,7 +596,7 @@ public class CompilationBroker {
                 assert compiler != null;
             } else if (nature == Nature.OPT) {
                 reason = "nature:opt";
-                compiler = optimizingCompiler;
+                compiler = tierPolicy == null ? optimizingCompiler : tierPolicy.optimizingCompilerFor(cma);
             } else {
                 // The -XX:CompileCommand is only considered if a specific nature was not specified
                 String compilerName = compilerFor(cma);
@@ -661,6 +712,12 @@ public class CompilationBroker {
         TargetMethod newMethod = Compilations.currentTargetMethod(cma.compiledState, null);
 
         if (oldMethod == newMethod || newMethod == null) {
+            if (BackgroundCompilation && !(cma.compiledState instanceof Compilation)) {
+                // Hand the recompilation to a compilation thread and continue in the baseline method. Once the
+                // optimized method is installed, the next counter overflow patches the dispatch tables to it.
+                vm().compilationBroker.enqueue(mpo);
+                return;
+            }
             if (!(cma.compiledState instanceof Compilation)) {
                 // There is no newer compiled version available yet that we could just patch to, so recompile
                 logCounterOverflow(mpo, "");
@@ -685,6 +742,9 @@ public class CompilationBroker {
         } else {
             assert newMethod != null : oldMethod;
             logPatching(cma, oldMethod, newMethod);
+            if (!newMethod.isBaseline()) {
+                ProfileCache.recordOptimized(mpo);
+            }
             mpo.entryBackedgeCount = 0;
 
             if (receiver != null) {
@@ -720,6 +780,158 @@ public class CompilationBroker {
         }
     }
 
+    /**
+     * Handles a counter overflow upon a backward branch in a profiled baseline method that has not been re-entered
+     * since its counter reached zero. The method's frame is replaced by a frame of an optimized variant entered at
+     * the loop header if possible, in which case this method does not return.
+     * This method must be called on the thread that overflowed the counter.
+     *
+     * @param mpo profiling object (including the method itself)
+     * @param targetBCI the bci of the loop header the backward branch jumps to
+     */
+    @NEVER_INLINE
+    public static void backedgeCounterOverflow(MethodProfile mpo, int targetBCI) {
+        // The next entry of the method triggers its regular recompilation
+        mpo.entryBackedgeCount = 0;
+        if (!UseOnStackReplacement || mpo.compilationDisabled || !mpo.method.isBaseline()) {
+            return;
+        }
+        if (Heap.isAllocationDisabledForCurrentThread() || Compilation.isCompilationRunningInCurrentThread()) {
+            return;
+        }
+        TargetMethod osrMethod = OnStackReplacement.osrMethodFor(mpo, targetBCI);
+        if (osrMethod == null) {
+            logCounterOverflow(mpo, "No OSR method, staying with baseline method");
+            return;
+        }
+        logCounterOverflow(mpo, "Migrating to OSR method");
+        OnStackReplacement.migrate(mpo.method, osrMethod);
+    }
+
+    /**
+     * Counter value a queued method's {@linkplain MethodProfile#entryBackedgeCount invocation counter} is reset to.
+     * The number of invocations since then is a measure of how hot the method still is.
+     */
+    private static final int QUEUED_COUNTER_RESET = 10000;
+
+    /**
+     * A request for the background recompilation of a baseline method with the optimizing compiler.
+     */
+    protected static final class CompilationRequest {
+        final MethodProfile profile;
+
+        /**
+         * Time in nanoseconds at which the request was queued.
+         */
+        final long queuedTime;
+
+        /**
+         * Invocations accumulated by earlier counter overflows while the request was queued.
+         */
+        long bankedCount;
+
+        CompilationRequest(MethodProfile profile) {
+            this.profile = profile;
+            this.queuedTime = System.nanoTime();
+        }
+
+        /**
+         * Gets the number of invocations and backward branches of the method since the request was queued.
+         */
+        long hotness() {
+            return bankedCount + QUEUED_COUNTER_RESET - profile.entryBackedgeCount;
+        }
+    }
+
+    /**
+     * Background compilation queue statistics, updated with the {@link #pending} lock held.
+     */
+    private long queuedCount;
+    private long rejectedCount;
+    private long dequeuedCount;
+    private int maxQueueLength;
+    private long totalWaitTime;
+    private long maxWaitTime;
+
+    /**
+     * Queues the recompilation of the method a profile belongs to, unless it is already queued or the queue is full.
+     * Either way, the method's counter is reset so that it keeps running the baseline code for a while.
+     *
+     * @param mpo the profile of the baseline method that overflowed its invocation counter
+     */
+    protected void enqueue(MethodProfile mpo) {
+        synchronized (pending) {
+            for (CompilationRequest request : pending) {
+                if (request.profile == mpo) {
+                    request.bankedCount += QUEUED_COUNTER_RESET - mpo.entryBackedgeCount;
+                    mpo.entryBackedgeCount = QUEUED_COUNTER_RESET;
+                    return;
+                }
+            }
+            mpo.entryBackedgeCount = QUEUED_COUNTER_RESET;
+            if (pending.size() >= CompilationQueueSize) {
+                rejectedCount++;
+                logCounterOverflow(mpo, "Compilation queue full, staying with baseline method");
+                return;
+            }
+            logCounterOverflow(mpo, "Queued for background compilation");
+            pending.add(new CompilationRequest(mpo));
+            queuedCount++;
+            if (pending.size() > maxQueueLength) {
+                maxQueueLength = pending.size();
+            }
+            pending.notify();
+        }
+    }
+
+    /**
+     * Removes the hottest request from the compilation queue, waiting for one if the queue is empty.
+     */
+    protected CompilationRequest dequeue() throws InterruptedException {
+        synchronized (pending) {
+            while (pending.isEmpty()) {
+                pending.wait();
+            }
+            CompilationRequest hottest = null;
+            long maxHotness = Long.MIN_VALUE;
+            for (CompilationRequest request : pending) {
+                long hotness = request.hotness();
+                if (hotness > maxHotness) {
+                    maxHotness = hotness;
+                    hottest = request;
+                }
+            }
+            pending.remove(hottest);
+            long waitTime = System.nanoTime() - hottest.queuedTime;
+            dequeuedCount++;
+            totalWaitTime += waitTime;
+            if (waitTime > maxWaitTime) {
+                maxWaitTime = waitTime;
+            }
+            return hottest;
+        }
+    }
+
+    private void printCompilationQueueStats() {
+        synchronized (pending) {
+            Log.print("Background compilation queue: queued ");
+            Log.print(queuedCount);
+            Log.print(", rejected ");
+            Log.print(rejectedCount);
+            Log.print(", compiled ");
+            Log.print(dequeuedCount);
+            Log.print(", pending ");
+            Log.print(pending.size());
+            Log.print(", max length ");
+            Log.println(maxQueueLength);
+            Log.print("Background compilation wait time: average ");
+            Log.print(dequeuedCount == 0 ? 0L : totalWaitTime / dequeuedCount / 1000000L);
+            Log.print("ms, max ");
+            Log.print(maxWaitTime / 1000000L);
+            Log.println("ms");
+        }
+    }
+
     public static void logCounterOverflow(MethodProfile mpo, String msg) {
         if (VMOptions.verboseOption.verboseCompilation) {
             boolean lockDisabledSafepoints = Log.lock();
@@ -799,15 +1011,15 @@ public class CompilationBroker {
      */
     protected class CompilationThread extends Thread {
 
-        protected CompilationThread() {
-            super("compile");
+        protected CompilationThread(int id) {
+            super(VmThread.systemThreadGroup, "compile-" + id);
             setDaemon(true);
         }
 
         /**
-         * The current compilation being performed by this thread.
+         * The current request being compiled by this thread.
          */
-        Compilation compilation;
+        CompilationRequest request;
 
         /**
          * Continuously polls the compilation queue for work, performing compilations as they are removed from the
@@ -821,8 +1033,8 @@ public class CompilationBroker {
                 } catch (InterruptedException e) {
                     // do nothing.
                 } catch (Throwable t) {
-                    Log.print("Exception during compilation of " + compilation.classMethodActor);
-                    t.printStackTrace();
+                    Log.println("Exception during compilation of " + request.profile.method.classMethodActor);
+                    t.printStackTrace(Log.out);
                 }
             }
         }
@@ -833,21 +1045,31 @@ public class CompilationBroker {
          * @throws InterruptedException if the thread was interrupted waiting on the queue
          */
         void compileOne() throws InterruptedException {
-            compilation = null;
-            synchronized (pending) {
-                while (compilation == null) {
-                    compilation = pending.poll();
-                    if (compilation == null) {
-                        pending.wait();
-                    }
-                }
+            request = dequeue();
+            MethodProfile mpo = request.profile;
+            TargetMethod oldMethod = mpo.method;
+            ClassMethodActor cma = oldMethod.classMethodActor;
+            if (mpo.compilationDisabled || Compilations.currentTargetMethod(cma.compiledState, null) != oldMethod) {
+                // the method was recompiled or invalidated while queued
+                return;
             }
-            compilation.compilingThread = Thread.currentThread();
             if (GCOnRecompilation) {
                 System.gc();
             }
-            compilation.compile();
-            compilation = null;
+            final TargetMethod newMethod;
+            try {
+                newMethod = compile(cma, Nature.OPT);
+            } catch (Throwable t) {
+                // Stay with the baseline method for good, rather than failing again once the reset counter overflows.
+                mpo.compilationDisabled = true;
+                throw t;
+            }
+            if (newMethod != null && newMethod != oldMethod && !newMethod.isBaseline()) {
+                ProfileCache.recordOptimized(mpo);
+                // Overflow the counter on the next entry of the baseline method so that it gets patched promptly.
+                mpo.entryBackedgeCount = 0;
+            }
+            request = null;
         }
     }
 
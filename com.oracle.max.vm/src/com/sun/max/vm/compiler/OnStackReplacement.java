@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.compiler;
+
+import static com.sun.max.vm.MaxineVM.*;
+import static com.sun.max.vm.intrinsics.Infopoints.*;
+
+import java.util.*;
+
+import com.sun.cri.ci.*;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.RuntimeCompiler.OSRCompiler;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.compiler.target.TargetMethod.FrameAccess;
+import com.sun.max.vm.profile.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.stack.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * On-stack replacement (OSR) of a baseline frame that is executing a hot loop by a frame of an optimized variant of
+ * the same method that is entered at the loop header.
+ * <p>
+ * The transfer is the reverse of {@linkplain com.sun.max.vm.compiler.deopt.Deoptimization deoptimization}. The
+ * values of the local variables of the baseline frame are copied into a native buffer holding one word per local
+ * variable slot. The baseline frame is then discarded and execution continues at the
+ * {@linkplain TargetMethod#osrEntry() OSR entry} of the optimized method, which builds its own frame in place of the
+ * baseline frame, loads the locals from the buffer and releases the buffer by calling {@link #migrationEnd(Pointer)}.
+ * Safepoints are disabled from the time the locals are copied into the buffer until the optimized frame is complete,
+ * as the buffer is not scanned by the GC. Everything the migration allocates is allocated before safepoints are
+ * disabled.
+ */
+public final class OnStackReplacement {
+
+    private OnStackReplacement() {
+    }
+
+    /**
+     * The optimized variants compiled so far, per profile of a baseline method and bci of the loop header. A
+     * {@code null} value records that the method cannot be compiled for OSR at the bci.
+     */
+    private static final HashMap<MethodProfile, HashMap<Integer, TargetMethod>> osrMethods = new HashMap<MethodProfile, HashMap<Integer, TargetMethod>>();
+
+    /**
+     * Gets the optimized variant of a baseline method that is entered at a given loop header, compiling it if
+     * necessary.
+     *
+     * @param mpo the profile of the baseline method
+     * @param osrBCI the bci of the loop header
+     * @return {@code null} if the method cannot be compiled for OSR at {@code osrBCI}
+     */
+    static TargetMethod osrMethodFor(MethodProfile mpo, int osrBCI) {
+        synchronized (osrMethods) {
+            HashMap<Integer, TargetMethod> methods = osrMethods.get(mpo);
+            if (methods != null && methods.containsKey(osrBCI)) {
+                TargetMethod osrMethod = methods.get(osrBCI);
+                if (osrMethod == null || !osrMethod.isNotEntrant()) {
+                    return osrMethod;
+                }
+                // retired by the code sweeper, compile it again
+            }
+        }
+        ClassMethodActor cma = mpo.method.classMethodActor;
+        TargetMethod osrMethod = null;
+        try {
+            osrMethod = ((OSRCompiler) vm().compilationBroker.optimizingCompiler).compileOSR(cma, osrBCI);
+        } catch (InternalError e) {
+            if (VMOptions.verboseOption.verboseCompilation) {
+                e.printStackTrace(Log.out);
+            }
+        }
+        if (osrMethod != null && osrMethod.osrEntryOffset() < 0) {
+            // the compiler was unable to produce an entry at the loop header
+            osrMethod = null;
+        }
+        synchronized (osrMethods) {
+            HashMap<Integer, TargetMethod> methods = osrMethods.get(mpo);
+            if (methods == null) {
+                methods = new HashMap<Integer, TargetMethod>();
+                osrMethods.put(mpo, methods);
+            }
+            methods.put(osrBCI, osrMethod);
+        }
+        return osrMethod;
+    }
+
+    /**
+     * Locates the frame of the baseline method that is migrated and the frame of its caller.
+     */
+    static final class FrameFinder extends RawStackFrameVisitor {
+        final TargetMethod baselineMethod;
+        CodePointer ip;
+        Pointer sp;
+        Pointer fp;
+        Pointer callerSP;
+        Pointer callerFP;
+
+        /**
+         * The return address in the baseline frame. This differs from the address the stack walker reports for the
+         * caller if the caller is marked for deoptimization.
+         */
+        Word returnAddress;
+
+        FrameFinder(TargetMethod baselineMethod) {
+            this.baselineMethod = baselineMethod;
+        }
+
+        @Override
+        public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
+            if (current.isTopFrame() || callee.targetMethod() != baselineMethod) {
+                return true;
+            }
+            ip = callee.vmIP();
+            sp = callee.sp();
+            fp = callee.fp();
+            callerSP = current.sp();
+            callerFP = current.fp();
+            returnAddress = baselineMethod.returnAddressPointer(callee).readWord(0);
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the frame of a baseline method that called this method from a loop by a frame of an optimized variant
+     * of the method. This method does not return if the migration succeeds.
+     *
+     * @param baselineMethod the baseline method whose frame is the caller of this method's caller
+     * @param osrMethod the optimized variant of {@code baselineMethod} to continue in
+     */
+    @NEVER_INLINE
+    static void migrate(TargetMethod baselineMethod, TargetMethod osrMethod) {
+        if (SafepointPoll.isDisabled()) {
+            // the baseline code runs with safepoints disabled; the migration end would wrongly enable them
+            return;
+        }
+        // The baseline frame cannot move while this thread runs, and a GC updates the references the debug info
+        // reads from it: locating the frame and reading its locals is done with safepoints enabled.
+        FrameFinder finder = new FrameFinder(baselineMethod);
+        new VmStackFrameWalker(VmThread.current().tla()).inspect(Pointer.fromLong(here()),
+                                                                 VMRegister.getCpuStackPointer(),
+                                                                 VMRegister.getCpuFramePointer(),
+                                                                 finder);
+        FatalError.check(finder.callerSP != null, "Frame to be replaced by OSR not found");
+        int safepointIndex = baselineMethod.findSafepointIndex(finder.ip);
+        if (safepointIndex < 0) {
+            return;
+        }
+        FrameAccess fa = new FrameAccess(null, Pointer.zero(), finder.sp, finder.fp, finder.callerSP, finder.callerFP);
+        CiFrame frame = baselineMethod.debugInfoAt(safepointIndex, fa).frame();
+        int numLocals = frame.numLocals;
+        Pointer buffer = Memory.allocate(Size.fromInt(Math.max(numLocals, 1) * Word.size()));
+
+        // No allocation from here on: the buffer holds raw references
+        SafepointPoll.disable();
+        for (int i = 0; i < numLocals; i++) {
+            CiValue value = frame.getLocalValue(i);
+            if (!(value instanceof CiConstant)) {
+                continue;
+            }
+            CiConstant c = (CiConstant) value;
+            if (c.kind.isObject()) {
+                buffer.writeWord(i * Word.size(), Reference.fromJava(c.asObject()).toOrigin());
+            } else {
+                buffer.writeLong(i * Word.size(), c.asLong());
+            }
+        }
+
+        // The baseline code pops its stack parameters on return, the optimized code does not.
+        // Moving the return address to the top of the caller's frame makes the optimized code
+        // return with the stack pointer the caller expects.
+        Pointer returnAddressSlot = finder.callerSP.minus(Word.size());
+        returnAddressSlot.writeWord(0, finder.returnAddress);
+        Stubs.unwindLong(osrMethod.osrEntry().toAddress(), returnAddressSlot, finder.callerFP, buffer.toLong());
+    }
+
+    /**
+     * Called by the OSR entry code of an optimized method once the locals have been loaded from the buffer.
+     *
+     * @param buffer the buffer holding the locals of the replaced baseline frame
+     */
+    public static void migrationEnd(Pointer buffer) {
+        Memory.deallocate(buffer);
+        SafepointPoll.enable();
+    }
+}
@@ -32,6 +32,7 @@ import com.sun.max.program.option.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.profile.*;
 
 /**
  * The interface implemented by a compiler that translates {@link ClassMethodActor}s into {@link TargetMethod}s.
@@ -128,6 +129,40 @@ public interface RuntimeCompiler {
      */
     String name(ClassMethodActor classMethodActor);
 
+    /**
+     * Implemented by an optimizing compiler that can produce methods entered by on-stack replacement in the middle of
+     * a loop of a baseline compiled frame.
+     */
+    interface OSRCompiler {
+        /**
+         * Compiles a variant of a method with an additional entry point at a given loop header. The entry point expects
+         * a buffer holding the values of the method's local variables, one word per local variable slot. The returned
+         * method is installed in the code cache but is not made the method's current target method.
+         *
+         * @param classMethodActor the method to compile
+         * @param osrBCI the bci of the loop header at which the method is entered
+         * @return the compiled method or {@code null} if the method cannot be compiled for OSR at {@code osrBCI}
+         */
+        TargetMethod compileOSR(ClassMethodActor classMethodActor, int osrBCI);
+    }
+
+    /**
+     * Implemented by an optimizing compiler that can produce the profiled tier of {@linkplain TierPolicy tiered
+     * compilation}: optimized code that keeps updating a method's profile.
+     */
+    interface ProfilingCompiler {
+        /**
+         * Compiles a method with the {@linkplain ProfilingProbes probes} for a given profile and installs it in the code
+         * cache.
+         *
+         * @param classMethodActor the method to compile
+         * @param profile the profile to be updated by the compiled code
+         * @return the compiled method, whose {@linkplain TargetMethod#profile() profile} and whose profile's
+         *         {@linkplain MethodProfile#method method} are set
+         */
+        TargetMethod compileProfiled(ClassMethodActor classMethodActor, MethodProfile profile);
+    }
+
     abstract class DefaultNameAdapter implements RuntimeCompiler {
         public String name(ClassMethodActor classMethodActor) {
             return getClass().getSimpleName();
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.compiler;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.cri.ci.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.RuntimeCompiler.ProfilingCompiler;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.profile.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Decides which compiler produces the next version of a method whose invocation counter overflowed. Without tiered
+ * compilation, a method moves from baseline code straight to optimized code after {@code -XX:RCT} invocations and
+ * backward branches. With tiered compilation there are three tiers:
+ * <ol start="0">
+ * <li>Baseline code, which maintains the method's {@link MethodProfile}.</li>
+ * <li>Optimized code compiled with {@linkplain ProfilingProbes probes} that keep updating the counters of the baseline
+ * profile, so that a hot method leaves the baseline code quickly.</li>
+ * <li>Optimized code without instrumentation, compiled with the profile gathered by both previous tiers.</li>
+ * </ol>
+ * A method is promoted to tier 1 after {@link #Tier1Threshold} invocations and backward branches in tier 0, and to tier 2
+ * after {@link #Tier2Threshold} more in tier 1.
+ */
+public final class TierPolicy {
+
+    private static boolean TieredCompilation;
+    private static int Tier1Threshold = 1500;
+    private static int Tier2Threshold = 10000;
+
+    static {
+        addFieldOption("-XX:", "TieredCompilation", TierPolicy.class, "Compile hot baseline methods with profiling before compiling them fully optimized.");
+        addFieldOption("-XX:", "Tier1Threshold", TierPolicy.class, "Invocations and backward branches in baseline code before profiled optimization (default: " + Tier1Threshold + ").");
+        addFieldOption("-XX:", "Tier2Threshold", TierPolicy.class, "Invocations and backward branches in profiled code before full optimization (default: " + Tier2Threshold + ").");
+    }
+
+    public static final int BASELINE_TIER = 0;
+    public static final int PROFILED_TIER = 1;
+    public static final int OPTIMIZED_TIER = 2;
+
+    private final RuntimeCompiler optimizingCompiler;
+
+    /**
+     * The compiler of the profiled tier or {@code null} if tiered compilation is disabled.
+     */
+    private final RuntimeCompiler profiledTier;
+
+    /**
+     * Creates the policy in effect for the VM run.
+     *
+     * @param optimizingCompiler the compiler of the final tier
+     * @param recompilationThreshold the recompilation threshold from baseline code if tiered compilation is disabled;
+     *            {@code 0} if recompilation is disabled
+     */
+    TierPolicy(RuntimeCompiler optimizingCompiler, int recompilationThreshold) {
+        this.optimizingCompiler = optimizingCompiler;
+        if (TieredCompilation && recompilationThreshold != 0) {
+            if (Tier1Threshold < 1 || Tier2Threshold < 1) {
+                throw FatalError.unexpected("-XX:Tier1Threshold and -XX:Tier2Threshold must be positive");
+            }
+            if (optimizingCompiler instanceof ProfilingCompiler) {
+                profiledTier = new ProfiledTier((ProfilingCompiler) optimizingCompiler);
+            } else {
+                Log.println("WARNING: " + optimizingCompiler + " cannot produce profiled code, tiered compilation disabled");
+                profiledTier = null;
+            }
+        } else {
+            profiledTier = null;
+        }
+    }
+
+    public boolean isTiered() {
+        return profiledTier != null;
+    }
+
+    /**
+     * Gets the number of invocations and backward branches after which baseline code is recompiled.
+     */
+    int baselineThreshold(int recompilationThreshold) {
+        return isTiered() ? Tier1Threshold : recompilationThreshold;
+    }
+
+    /**
+     * Gets the tier of a compiled method.
+     */
+    public static int tierOf(TargetMethod tm) {
+        if (tm.isBaseline()) {
+            return BASELINE_TIER;
+        }
+        return tm.profile() != null ? PROFILED_TIER : OPTIMIZED_TIER;
+    }
+
+    /**
+     * Gets the compiler of the next optimized version of a method, according to the tier of its current version.
+     */
+    RuntimeCompiler optimizingCompilerFor(ClassMethodActor cma) {
+        if (profiledTier != null) {
+            TargetMethod current = Compilations.currentTargetMethod(cma.compiledState, null);
+            if (current != null && tierOf(current) == BASELINE_TIER && current.profile() != null) {
+                return profiledTier;
+            }
+        }
+        return optimizingCompiler;
+    }
+
+    /**
+     * Adapts a {@link ProfilingCompiler} to compile the profiled tier through the {@link CompilationBroker}.
+     */
+    static final class ProfiledTier implements RuntimeCompiler {
+
+        private final ProfilingCompiler compiler;
+
+        ProfiledTier(ProfilingCompiler compiler) {
+            this.compiler = compiler;
+        }
+
+        public void initialize(MaxineVM.Phase phase) {
+        }
+
+        public void deoptimize(ClassMethodActor classMethodActor) {
+        }
+
+        public TargetMethod compile(ClassMethodActor classMethodActor, boolean isDeopt, boolean install, CiStatistics stats) {
+            TargetMethod baseline = Compilations.currentTargetMethod(classMethodActor.compiledState, Nature.BASELINE);
+            MethodProfile mpo = baseline == null ? null : baseline.profile();
+            if (mpo == null || !install) {
+                // nothing to profile into, produce the final tier
+                return ((RuntimeCompiler) compiler).compile(classMethodActor, isDeopt, install, stats);
+            }
+            return compiler.compileProfiled(classMethodActor, mpo.derive(Tier2Threshold));
+        }
+
+        public Nature nature() {
+            return Nature.OPT;
+        }
+
+        public boolean matches(String compilerName) {
+            return ((RuntimeCompiler) compiler).matches(compilerName);
+        }
+
+        public String name(ClassMethodActor classMethodActor) {
+            return ((RuntimeCompiler) compiler).name(classMethodActor) + "(profiled)";
+        }
+
+        @Override
+        public String toString() {
+            return compiler + "(profiled)";
+        }
+    }
+}
@@ -31,6 +31,7 @@ import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.code.*;
+import com.sun.max.vm.compiler.RuntimeCompiler.Nature;
 import com.sun.max.vm.compiler.WordUtil;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.compiler.target.TargetMethod.FrameAccess;
@@ -105,8 +106,15 @@ public class Deoptimization extends VmOperation {
      */
     public static int DeoptimizeALot;
 
+    /**
+     * Option for invalidating an optimized method when it reaches an uncommon trap.
+     */
+    public static boolean InvalidateAtUncommonTrap = true;
+
     static {
         VMOptions.addFieldOption("-XX:", "UseDeopt", Deoptimization.class, "Enable deoptimization.");
+        VMOptions.addFieldOption("-XX:", "InvalidateAtUncommonTrap", Deoptimization.class,
+                                 "Invalidate optimized methods that reach an uncommon trap, e.g. a failed speculative type guard.");
         VMOptions.addFieldOption("-XX:", "DeoptimizeALot", Deoptimization.class,
                                  "Invalidate and deoptimize a selection of executing optimized methods every <n> milliseconds. " +
                                  "A value of 0 disables this mechanism.");
@@ -172,7 +180,13 @@ public class Deoptimization extends VmOperation {
                 deoptLogger.logDoIt("processing ", tm, true);
             }
             // marks method as invalidated
-            if (!tm.invalidate(new InvalidationMarker(tm))) {
+            if (tm.isWiped()) {
+                // the method has been reclaimed by the code sweeper and can no longer be executing
+                methods.remove(i);
+                if (deoptLogger.enabled()) {
+                    deoptLogger.logDoIt("ignoring reclaimed method ", tm, true);
+                }
+            } else if (!tm.invalidate(new InvalidationMarker(tm))) {
                 methods.remove(i);
                 if (deoptLogger.enabled()) {
                     deoptLogger.logDoIt("ignoring previously invalidated method ", tm, true);
@@ -502,7 +516,8 @@ public class Deoptimization extends VmOperation {
         public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
             TargetMethod tm = current.targetMethod();
             TargetMethod calleeTM = callee.targetMethod();
-            boolean deopt = methods.contains(tm);
+            // a frame calling the uncommon trap stub is deoptimized by the trap itself
+            boolean deopt = methods.contains(tm) && (calleeTM == null || calleeTM.stubType() != UncommonTrapStub);
             if (calleeTM != null && calleeTM.classMethodActor != null) {
                 lastCalleeMethod = calleeTM.classMethodActor;
             }
@@ -924,9 +939,40 @@ public class Deoptimization extends VmOperation {
      */
     public static void uncommonTrap(Pointer csa, Pointer ip, Pointer sp, Pointer fp) {
         FatalError.check(!csa.isZero(), "callee save area expected for uncommon trap");
+        if (InvalidateAtUncommonTrap) {
+            invalidateAtUncommonTrap(CodePointer.from(ip));
+        }
         deoptimize(CodePointer.from(ip), sp, fp, csa, vm().registerConfigs.uncommonTrapStub.getCalleeSaveLayout(), null);
     }
 
+    /**
+     * Invalidates the optimized method executing an uncommon trap so that later invocations do not repeat the failed
+     * speculation, and records the trap in the profile of the (possibly inlined) method containing the trapping
+     * bytecode so that recompilations do not speculate on that profile again. Methods in the boot code region are
+     * left alone as the deoptimization machinery may depend on them.
+     *
+     * @param ip the address of the uncommon trap
+     */
+    private static void invalidateAtUncommonTrap(CodePointer ip) {
+        TargetMethod tm = Code.codePointerToTargetMethod(ip.toPointer());
+        if (tm == null || tm.invalidated() != null || tm.isInBootCodeRegion()) {
+            return;
+        }
+        int safepointIndex = tm.findSafepointIndex(ip);
+        if (safepointIndex >= 0) {
+            CiFrame frame = tm.debugInfoAt(safepointIndex, null).frame();
+            if (frame != null && frame.method != tm.classMethodActor) {
+                TargetMethod baseline = Compilations.currentTargetMethod(((ClassMethodActor) frame.method).compiledState, Nature.BASELINE);
+                if (baseline != null && baseline.profile() != null) {
+                    baseline.profile().incrementDeoptimizationCount(MethodProfile.UNCOMMON_TRAP_DEOPTIMIZATION_REASON_ID);
+                }
+            }
+        }
+        ArrayList<TargetMethod> invalidated = new ArrayList<TargetMethod>(1);
+        invalidated.add(tm);
+        new Deoptimization(invalidated, MethodProfile.UNCOMMON_TRAP_DEOPTIMIZATION_REASON_ID).go();
+    }
+
     @NEVER_INLINE // makes inspecting easier
     static void logPatchITable(ClassActor classActor, int iIndex) {
         if (deoptLogger.enabled()) {
@@ -127,7 +127,7 @@ public abstract class Adapter extends TargetMethod {
 
     @Override
     public Lifespan lifespan() {
-        return Lifespan.LONG;
+        return Lifespan.PERMANENT;
     }
 
     @Override
@@ -74,7 +74,7 @@ public class Compilations {
             } else if (nature == Nature.OPT) {
                 tm = optimized;
             }
-            if (tm != null && tm.invalidated() == null) {
+            if (tm != null && tm.invalidated() == null && !tm.isNotEntrant()) {
                 return tm;
             } else {
                 return null;
@@ -82,7 +82,7 @@ public class Compilations {
         }
 
         // Always prefer optimized version if no specific version was requested
-        if (optimized != null && optimized.invalidated() == null) {
+        if (optimized != null && optimized.invalidated() == null && !optimized.isNotEntrant()) {
             return optimized;
         }
         return baseline;
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.compiler.target;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * The state of the inline cache of a single interface call site in optimized code.
+ * <p>
+ * Dispatching an interface call without a cache requires an mtable search in the receiver's hub that involves a
+ * division. A call site that only ever sees a few receiver types caches, per receiver hub, the word index in that hub
+ * of the entry point of the selected method. The compiled call site compares the receiver's hub with the cached
+ * hubs and on a hit loads the entry point directly from the hub. Entry points are always read from the hub, so the
+ * cache never refers to code and does not need to be cleaned when the selected methods are recompiled or their code
+ * is evicted.
+ * <p>
+ * A cache goes through the following states:
+ * <ul>
+ * <li><i>monomorphic</i>: the {@linkplain #first first} entry is filled by the first {@linkplain #miss(Hub) miss}.</li>
+ * <li><i>polymorphic</i>: the {@linkplain #second second} entry is filled by the second miss.</li>
+ * <li><i>megamorphic</i>: on the next miss the site is saturated. Call sites test {@link #megamorphic} before
+ * calling into the runtime and perform the full mtable search inline from then on.</li>
+ * </ul>
+ * Entries are immutable and each entry field is written at most once, so a racing reader observes either the
+ * empty entry or a completely initialized one.
+ * <p>
+ * Inline caches are only generated by the C1X-based optimizing compilers, through
+ * {@code com.oracle.max.vm.ext.maxri.MaxXirGenerator}. Interface call sites compiled by Graal do not use them.
+ */
+public final class InlineCache {
+
+    /**
+     * Enables inline caches at interface call sites compiled by the optimizing compiler. The option decides whether a
+     * call site is compiled with a cache, so code in the boot image has caches if they were enabled when the image was
+     * built. Such a call site checks the option on its first {@linkplain #miss(Hub) miss} and, if caches are disabled
+     * at runtime, becomes megamorphic right away.
+     */
+    public static boolean UseInlineCaches = true;
+
+    /**
+     * Logs the state transitions of inline caches.
+     */
+    private static boolean TraceInlineCaches;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "UseInlineCaches", InlineCache.class,
+            "Use inline caches at interface call sites in optimized code (not in code compiled by Graal).", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceInlineCaches", InlineCache.class,
+            "Trace the state transitions of inline caches.", MaxineVM.Phase.PRISTINE);
+    }
+
+    /**
+     * An immutable (receiver hub, method word index) pair.
+     */
+    public static final class Entry {
+        /**
+         * The receiver hub this entry matches, or {@code null} for the {@linkplain InlineCache#EMPTY empty} entry.
+         */
+        public final Hub hub;
+
+        /**
+         * Index of the word in {@link #hub} holding the entry point of the selected method.
+         */
+        public final int wordIndex;
+
+        Entry(Hub hub, int wordIndex) {
+            this.hub = hub;
+            this.wordIndex = wordIndex;
+        }
+    }
+
+    /**
+     * The entry of an unfilled cache slot. Its hub never matches a receiver hub.
+     */
+    public static final Entry EMPTY = new Entry(null, 0);
+
+    /**
+     * The interface method called by the call site.
+     */
+    public final InterfaceMethodActor interfaceMethod;
+
+    public Entry first = EMPTY;
+
+    public Entry second = EMPTY;
+
+    /**
+     * Non-zero once the call site has seen more receiver types than the cache has entries.
+     */
+    public int megamorphic;
+
+    public InlineCache(InterfaceMethodActor interfaceMethod) {
+        this.interfaceMethod = interfaceMethod;
+    }
+
+    /**
+     * Handles a miss at the call site owning this cache by selecting the method for {@code hub} and recording
+     * the selection in the cache if it is not saturated yet.
+     *
+     * @param hub the hub of the receiver that missed in the cache
+     * @return the index of the word in {@code hub} holding the entry point of the selected method
+     */
+    @NEVER_INLINE
+    public int miss(Hub hub) {
+        final int wordIndex = hub.getITableIndex(interfaceMethod.holder().id) + interfaceMethod.iIndexInInterface();
+        if (megamorphic != 0) {
+            return wordIndex;
+        }
+        if (!UseInlineCaches) {
+            // a call site compiled into the boot image while caches were enabled
+            megamorphic = 1;
+            return wordIndex;
+        }
+        synchronized (this) {
+            if (first == EMPTY) {
+                first = new Entry(hub, wordIndex);
+                trace("monomorphic", hub);
+            } else if (second == EMPTY && first.hub != hub) {
+                second = new Entry(hub, wordIndex);
+                trace("polymorphic", hub);
+            } else if (first.hub != hub && second.hub != hub) {
+                megamorphic = 1;
+                trace("megamorphic", hub);
+            }
+        }
+        return wordIndex;
+    }
+
+    private void trace(String state, Hub hub) {
+        if (TraceInlineCaches) {
+            boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Inline cache for ");
+            Log.printMethod(interfaceMethod, false);
+            Log.print(" became ");
+            Log.print(state);
+            Log.print(" with receiver ");
+            Log.println(hub.classActor.name());
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+}
@@ -216,7 +216,7 @@ public final class Stub extends TargetMethod {
 
     @Override
     public Lifespan lifespan() {
-        return Lifespan.LONG;
+        return Lifespan.PERMANENT;
     }
 
     @Override
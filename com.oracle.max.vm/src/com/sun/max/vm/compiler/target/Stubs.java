@@ -374,8 +374,8 @@ public class Stubs {
 
         CodePointer adjustedEntryPoint = adjustEntryPointForCaller(vtableEntryPoint, caller);
 
-        // remember calls from boot code region to baseline code cache
-        if (Code.bootCodeRegion().contains(cpCallSite.toAddress()) && Code.getCodeManager().getRuntimeBaselineCodeRegion().contains(adjustedEntryPoint.toAddress())) {
+        // remember calls from boot code region to code that may be evicted
+        if (Code.bootCodeRegion().contains(cpCallSite.toAddress()) && CodeManager.isEvictable(adjustedEntryPoint.toAddress())) {
             CodeManager.recordBootToBaselineCaller(caller);
         }
 
@@ -405,8 +405,8 @@ public class Stubs {
 
         CodePointer adjustedEntryPoint = adjustEntryPointForCaller(itableEntryPoint, caller);
 
-        // remember calls from boot code region to baseline code cache
-        if (Code.bootCodeRegion().contains(cpCallSite.toAddress()) && Code.getCodeManager().getRuntimeBaselineCodeRegion().contains(adjustedEntryPoint.toAddress())) {
+        // remember calls from boot code region to code that may be evicted
+        if (Code.bootCodeRegion().contains(cpCallSite.toAddress()) && CodeManager.isEvictable(adjustedEntryPoint.toAddress())) {
             CodeManager.recordBootToBaselineCaller(caller);
         }
 
@@ -774,8 +774,8 @@ public class Stubs {
         final CodePointer calleeEntryPoint = callee.makeTargetMethod(caller).getEntryPoint(caller.callEntryPoint);
         ARMTargetMethodUtil.mtSafePatchCallDisplacement(caller, cpCallSite, calleeEntryPoint);
 
-        // remember calls from boot code region to baseline code cache
-        if (Code.bootCodeRegion().contains(cpCallSite.toAddress()) && Code.getCodeManager().getRuntimeBaselineCodeRegion().contains(calleeEntryPoint.toAddress())) {
+        // remember calls from boot code region to code that may be evicted
+        if (Code.bootCodeRegion().contains(cpCallSite.toAddress()) && CodeManager.isEvictable(calleeEntryPoint.toAddress())) {
             CodeManager.recordBootToBaselineCaller(caller);
         }
     }
@@ -789,8 +789,8 @@ public class Stubs {
 
         AMD64TargetMethodUtil.mtSafePatchCallDisplacement(caller, cpCallSite, calleeEntryPoint);
 
-        // remember calls from boot code region to baseline code cache
-        if (Code.bootCodeRegion().contains(cpCallSite.toAddress()) && Code.getCodeManager().getRuntimeBaselineCodeRegion().contains(calleeEntryPoint.toAddress())) {
+        // remember calls from boot code region to code that may be evicted
+        if (Code.bootCodeRegion().contains(cpCallSite.toAddress()) && CodeManager.isEvictable(calleeEntryPoint.toAddress())) {
             CodeManager.recordBootToBaselineCaller(caller);
         }
     }
@@ -805,8 +805,8 @@ public class Stubs {
         final CodePointer calleeEntryPoint = callee.makeTargetMethod(caller).getEntryPoint(caller.callEntryPoint);
         Aarch64TargetMethodUtil.mtSafePatchCallDisplacement(caller, cpCallSite, calleeEntryPoint);
 
-        // remember calls from boot code region to baseline code cache
-        if (Code.bootCodeRegion().contains(cpCallSite.toAddress()) && Code.getCodeManager().getRuntimeBaselineCodeRegion().contains(calleeEntryPoint.toAddress())) {
+        // remember calls from boot code region to code that may be evicted
+        if (Code.bootCodeRegion().contains(cpCallSite.toAddress()) && CodeManager.isEvictable(calleeEntryPoint.toAddress())) {
             CodeManager.recordBootToBaselineCaller(caller);
         }
     }
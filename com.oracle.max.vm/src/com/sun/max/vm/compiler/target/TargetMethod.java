@@ -171,6 +171,23 @@ public abstract class TargetMethod extends MemoryRegion {
      */
     private int registerRestoreEpilogueOffset = -1;
 
+    /**
+     * The offset of the code entered when a baseline frame is migrated into this method by on-stack replacement.
+     * A value of {@code -1} means this method was not compiled for OSR.
+     */
+    private int osrEntryOffset = -1;
+
+    /**
+     * The number of the last {@linkplain CodeSweeper code sweep} that found this method on a stack, or that preceded
+     * its installation. Only maintained for methods in a {@linkplain SweptCodeRegion swept} code region.
+     */
+    private int lastActiveSweep;
+
+    /**
+     * Set by the {@linkplain CodeSweeper code sweeper} once no new activations of this method can be created.
+     */
+    private boolean notEntrant;
+
     public TargetMethod(String description, CallEntryPoint callEntryPoint) {
         assert this instanceof Stub || this instanceof Adapter;
         this.classMethodActor = null;
@@ -195,6 +212,37 @@ public abstract class TargetMethod extends MemoryRegion {
         registerRestoreEpilogueOffset = x;
     }
 
+    public int osrEntryOffset() {
+        return osrEntryOffset;
+    }
+
+    /**
+     * Gets the address of the on-stack replacement entry point of this method, or zero if it has none.
+     */
+    public CodePointer osrEntry() {
+        return osrEntryOffset < 0 ? CodePointer.zero() : codeAt(osrEntryOffset);
+    }
+
+    public final int lastActiveSweep() {
+        return lastActiveSweep;
+    }
+
+    public final void setLastActiveSweep(int sweep) {
+        lastActiveSweep = sweep;
+    }
+
+    /**
+     * Determines if this method has been retired by the {@linkplain CodeSweeper code sweeper}. Such a method is no
+     * longer reachable from dispatch tables or its method actor and is reclaimed once it has no activations left.
+     */
+    public final boolean isNotEntrant() {
+        return notEntrant;
+    }
+
+    public final void makeNotEntrant() {
+        notEntrant = true;
+    }
+
     public final ClassMethodActor classMethodActor() {
         return classMethodActor;
     }
@@ -510,8 +558,9 @@ public abstract class TargetMethod extends MemoryRegion {
     /**
      * Gets this method's life span, i.e., a value indicating how long the machine code is expected to live. For
      * baseline methods, this is short - they might be evicted once the code cache meets contention. Class initialisers
-     * are run only once, they have a one-shot life span. Optimised methods, adapters, and stubs are expected to live
-     * for a long time.
+     * are run only once, they have a one-shot life span. Methods compiled with profiling probes live until they are
+     * recompiled by the optimizing compiler. Optimised methods are expected to live for a long time, and adapters and
+     * stubs for as long as the VM.
      */
     public abstract Lifespan lifespan();
 
@@ -539,7 +588,7 @@ public abstract class TargetMethod extends MemoryRegion {
         setData(literals.scalars, literals.objects, ciTargetMethod.targetCode());
 
         // Patch relative instructions in the code buffer
-        assert lifespan() == Lifespan.LONG : "code may move: must protect direct code pointers";
+        assert lifespan() != Lifespan.SHORT && lifespan() != Lifespan.ONE_SHOT : "code may move: must protect direct code pointers";
         patchInstructions(targetBundleLayout, ciTargetMethod, literals);
     }
 
@@ -740,6 +789,7 @@ public abstract class TargetMethod extends MemoryRegion {
     protected void initFrameLayout(CiTargetMethod ciTargetMethod) {
         this.setFrameSize(ciTargetMethod.frameSize());
         this.setRegisterRestoreEpilogueOffset(ciTargetMethod.registerRestoreEpilogueOffset());
+        this.osrEntryOffset = ciTargetMethod.osrEntryOffset();
     }
 
     protected CiDebugInfo[] initSafepoints(CiTargetMethod ciTargetMethod) {
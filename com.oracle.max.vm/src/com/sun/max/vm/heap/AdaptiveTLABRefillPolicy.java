@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+
+/**
+ * A TLAB refill policy that sizes each thread's TLABs after the thread's own allocation rate.
+ *
+ * The policy accumulates the space a thread allocates from its TLABs between two GCs (an allocation epoch). When the TLAB is
+ * reset at the beginning of a GC, the epoch's allocation is folded into an exponentially weighted moving average, and the size
+ * of the thread's next TLABs is chosen so that the thread would refill its TLAB {@link #TLABRefillsPerGC} times per epoch if it
+ * allocates at its average rate. Fast allocating threads thus get large TLABs, and idle ones small TLABs that waste little
+ * space.
+ *
+ * Refill decisions follow a waste limit proportional to the TLAB size: an allocation failure smaller than the limit causes a
+ * refill, whereas a larger one is satisfied outside of the TLAB and bumps the limit, so that repeated failures eventually cause a
+ * refill. Space left unused in the TLABs retired by a refill is accounted as waste and reported to {@link TLABLog}.
+ */
+public class AdaptiveTLABRefillPolicy extends TLABRefillPolicy {
+    /**
+     * Number of TLAB refills a thread should perform per GC epoch when allocating at its average rate.
+     */
+    static int TLABRefillsPerGC = 50;
+
+    /**
+     * Weight, in percent, of the last epoch's allocation in the thread's average allocation per epoch.
+     */
+    static int TLABAllocationWeight = 35;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "TLABRefillsPerGC", AdaptiveTLABRefillPolicy.class,
+                        "Number of TLAB refills per GC targeted by the adaptive TLAB refill policy.", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABAllocationWeight", AdaptiveTLABRefillPolicy.class,
+                        "Weight (in percent) of the last GC epoch in the averaged allocation rate of a thread.", Phase.PRISTINE);
+    }
+
+    /**
+     * Lower bound of the TLAB size.
+     */
+    private final Size minSize;
+
+    /**
+     * Upper bound of the TLAB size.
+     */
+    private final Size maxSize;
+
+    /**
+     * Size the TLAB should have on next refill.
+     */
+    private Size nextSize;
+
+    /**
+     * Size of the TLAB the thread is currently allocating from. Zero if the thread has no TLAB.
+     */
+    private Size currentSize;
+
+    /**
+     * Threshold below which an allocation failure causes a refill of the TLAB.
+     */
+    private Size refillWasteLimit;
+
+    /**
+     * Average number of bytes allocated from TLABs per GC epoch.
+     */
+    private long averageAllocation;
+
+    /**
+     * Number of bytes allocated from TLABs since the beginning of the current epoch.
+     */
+    private long allocatedSinceGC;
+
+    /**
+     * Number of bytes wasted by TLAB refills since the beginning of the current epoch.
+     */
+    private long wasteSinceGC;
+
+    /**
+     * Number of TLAB refills since the beginning of the current epoch.
+     */
+    private int refillsSinceGC;
+
+    /**
+     * Creates a policy for a thread whose first TLAB has just been allocated.
+     * @param initialTLABSize size of the thread's first TLAB
+     * @param minTLABSize lower bound of the TLAB size
+     * @param maxTLABSize upper bound of the TLAB size
+     */
+    public AdaptiveTLABRefillPolicy(Size initialTLABSize, Size minTLABSize, Size maxTLABSize) {
+        minSize = minTLABSize;
+        maxSize = maxTLABSize;
+        nextSize = initialTLABSize;
+        currentSize = initialTLABSize;
+        averageAllocation = initialTLABSize.toLong() * TLABRefillsPerGC;
+        allocatedSinceGC = 0L;
+        wasteSinceGC = 0L;
+        refillsSinceGC = 0;
+        resetRefillWasteLimit();
+    }
+
+    private void resetRefillWasteLimit() {
+        refillWasteLimit = nextSize.dividedBy(SimpleTLABRefillPolicy.TLAB_REFILL_RATIO);
+    }
+
+    /**
+     * Accounts for the space used in the TLAB being retired.
+     */
+    private void retireCurrentTLAB(Size leftover) {
+        if (currentSize.greaterThan(leftover)) {
+            allocatedSinceGC += currentSize.minus(leftover).toLong();
+        }
+    }
+
+    @Override
+    public boolean shouldRefill(Size size, Pointer allocationMark) {
+        if (allocationMark.isZero()) {
+            // No TLAB. Refill whatsoever
+            return true;
+        }
+        if (size.lessThan(refillWasteLimit)) {
+            return true;
+        }
+        // Allocate outside of the TLAB, but raise the limit so that a thread repeatedly failing on the same TLAB eventually refills it.
+        refillWasteLimit = refillWasteLimit.plus(nextSize.dividedBy(SimpleTLABRefillPolicy.TLAB_REFILL_RATIO * SimpleTLABRefillPolicy.TLAB_NUM_ALLOCATION_FAILURES_PER_MARK));
+        return false;
+    }
+
+    @Override
+    public Size nextTlabSize() {
+        return nextSize;
+    }
+
+    @Override
+    public void doOnRefill(Size leftover) {
+        retireCurrentTLAB(leftover);
+        wasteSinceGC += leftover.toLong();
+        refillsSinceGC++;
+        currentSize = nextSize;
+        resetRefillWasteLimit();
+    }
+
+    @Override
+    public void doOnReset(Pointer etla, Size leftover) {
+        if (currentSize.isZero() && refillsSinceGC == 0) {
+            // The thread hasn't allocated from a TLAB during this epoch. Keep its current estimate.
+            return;
+        }
+        retireCurrentTLAB(leftover);
+        averageAllocation = (TLABAllocationWeight * allocatedSinceGC + (100 - TLABAllocationWeight) * averageAllocation) / 100;
+        Size size = Size.fromLong(averageAllocation / TLABRefillsPerGC).alignUp(Word.size()).asSize();
+        if (size.lessThan(minSize)) {
+            size = minSize;
+        } else if (size.greaterThan(maxSize)) {
+            size = maxSize;
+        }
+        TLABLog.doOnResizeTLAB(etla, allocatedSinceGC, wasteSinceGC, refillsSinceGC, nextSize, size);
+        nextSize = size;
+        currentSize = Size.zero();
+        allocatedSinceGC = 0L;
+        wasteSinceGC = 0L;
+        refillsSinceGC = 0;
+        resetRefillWasteLimit();
+    }
+}
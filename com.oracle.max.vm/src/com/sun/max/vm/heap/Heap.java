@@ -459,6 +459,7 @@ public final class Heap {
         if (verbose()) {
             VmThread.current().gcRequest.printAfterGC(result);
         }
+        HeapUncommitter.notifyCollection(VmThread.current().gcRequest.explicit && !VmThread.current().isVmOperationThread());
         return result;
     }
 
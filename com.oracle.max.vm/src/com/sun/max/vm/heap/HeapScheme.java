@@ -277,6 +277,17 @@ public interface HeapScheme extends VMScheme {
      */
     boolean increaseMemory(Size amount);
 
+    /**
+     * Give back to the operating system the backing storage of heap memory that holds no live objects, e.g., free regions or an
+     * evacuated semi-space. Unlike {@link #decreaseMemory(Size)}, this doesn't reduce the capacity the heap is sized at: the memory
+     * is transparently committed again when needed.
+     * Must be called by the {@link VmOperationThread} at a safepoint (see {@link HeapUncommitter}).
+     * This interface is optional and a default implementation can just return zero.
+     *
+     * @return the number of bytes uncommitted
+     */
+    Size uncommitUnusedMemory();
+
     /**
      * Disables heap allocation on the current thread. This state is recursive. That is,
      * allocation is only re-enabled once {@link #enableAllocationForCurrentThread()} is
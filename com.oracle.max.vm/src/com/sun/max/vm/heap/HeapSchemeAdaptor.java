@@ -242,6 +242,10 @@ public abstract class HeapSchemeAdaptor extends AbstractVMScheme implements Heap
         return false;
     }
 
+    public Size uncommitUnusedMemory() {
+        return Size.zero();
+    }
+
     public void disableAllocationForCurrentThread() {
         FatalError.unimplemented();
     }
@@ -380,6 +384,8 @@ public abstract class HeapSchemeAdaptor extends AbstractVMScheme implements Heap
         Address startOfReservedVirtualSpaceSize = Heap.bootHeapRegion.start();
         Address endOfReservedVirtualSpaceSize = startOfReservedVirtualSpaceSize.plus(reservedVirtualSpaceSize);
         checkRuntimeCodeRegion(startOfReservedVirtualSpaceSize, endOfReservedVirtualSpaceSize, Code.getCodeManager().getRuntimeBaselineCodeRegion());
+        checkRuntimeCodeRegion(startOfReservedVirtualSpaceSize, endOfReservedVirtualSpaceSize, Code.getCodeManager().getRuntimeStubCodeRegion());
+        checkRuntimeCodeRegion(startOfReservedVirtualSpaceSize, endOfReservedVirtualSpaceSize, Code.getCodeManager().getRuntimeProfiledCodeRegion());
         checkRuntimeCodeRegion(startOfReservedVirtualSpaceSize, endOfReservedVirtualSpaceSize, Code.getCodeManager().getRuntimeOptCodeRegion());
         Address startOfUnusedVirtualSpace = Code.getCodeManager().getRuntimeOptCodeRegion().end().alignUp(Platform.platform().pageSize);
         Size unusedVirtualSpaceSize = endOfReservedVirtualSpaceSize.minus(startOfUnusedVirtualSpace).asSize();
@@ -105,6 +105,22 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
     private static final VMSizeOption tlabSizeOption = register(new VMSizeOption("-XX:TLABSize=", Size.K.times(64),
         "The size of thread-local allocation buffers."), MaxineVM.Phase.PRISTINE);
 
+    /**
+     * A VM option for sizing TLABs after the allocation rate of each thread (see {@link AdaptiveTLABRefillPolicy}).
+     */
+    public static boolean UseAdaptiveTLAB = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "UseAdaptiveTLAB", HeapSchemeWithTLAB.class, "Size TLABs after the allocation rate of each thread", MaxineVM.Phase.PRISTINE);
+    }
+
+    /**
+     * VM options bounding the size of TLABs when these are adaptively sized.
+     */
+    private static final VMSizeOption minTlabSizeOption = register(new VMSizeOption("-XX:MinTLABSize=", Size.K.times(2),
+        "The minimum size of adaptively sized thread-local allocation buffers."), MaxineVM.Phase.PRISTINE);
+    private static final VMSizeOption maxTlabSizeOption = register(new VMSizeOption("-XX:MaxTLABSize=", Size.K.times(512),
+        "The maximum size of adaptively sized thread-local allocation buffers."), MaxineVM.Phase.PRISTINE);
+
     /**
      * The top of the current thread-local allocation buffer. This will remain zero if TLABs are not
      * {@linkplain #useTLAB enabled}.
@@ -161,16 +177,19 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             if (logTLAB()) {
                 logger.logReset(UnsafeCast.asVmThread(VM_THREAD.loadRef(etla).toJava()), tlabTop, tlabMark);
             }
+            final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
             if (tlabTop.equals(Address.zero())) {
                 // TLAB's top can be null in only two cases:
                 // (1) it has never been filled, in which case it's allocation mark is null too
                 if (tlabMark.equals(Address.zero()))  {
-                    // No TLABs, so nothing to reset.
+                    // No TLABs, so nothing to reset. The thread's allocation epoch ends nonetheless.
+                    if (refillPolicy != null) {
+                        refillPolicy.doOnReset(etla, Size.zero());
+                    }
                     return;
                 }
                 // (2) allocation has been disabled for the thread.
                 FatalError.check(!ALLOCATION_DISABLED.load(currentTLA()).isZero(), "inconsistent TLAB state");
-                TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
                 if (refillPolicy != null) {
                     // Go fetch the actual TLAB top in case the heap scheme needs it for its doBeforeReset handler.
                     tlabTop = refillPolicy.getSavedTlabTop().asPointer();
@@ -178,6 +197,9 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
                     refillPolicy.saveTlabTop(Address.zero());
                 }
             }
+            if (refillPolicy != null) {
+                refillPolicy.doOnReset(etla, tlabTop.greaterThan(tlabMark) ? tlabTop.minus(tlabMark).asSize() : Size.zero());
+            }
             doBeforeReset(etla, tlabMark, tlabTop);
             TLAB_TOP.store(etla, Address.zero());
             TLAB_MARK.store(etla, Address.zero());
@@ -216,6 +238,12 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
      */
     private Size initialTlabSize;
 
+    /**
+     * Bounds of the size of TLABs when these are adaptively sized.
+     */
+    private Size minTlabSize;
+    private Size maxTlabSize;
+
     /*
      * TLAB statistics. For now, something simple shared by all threads without synchronization.
      * Will need to get per-thread, with statistics gathered globally at safepoint,
@@ -279,11 +307,17 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             if (initialTlabSize.lessThan(0)) {
                 FatalError.unexpected("Specified TLAB size is too small");
             }
+            minTlabSize = minTlabSizeOption.getValue();
+            maxTlabSize = maxTlabSizeOption.getValue();
+            if (UseAdaptiveTLAB && (minTlabSize.greaterThan(initialTlabSize) || maxTlabSize.lessThan(initialTlabSize))) {
+                FatalError.unexpected("TLAB size must be between the minimum and maximum TLAB sizes");
+            }
         } else if (phase == MaxineVM.Phase.RUNNING) {
             HeapSchemeWithTLAB.setTraceTLAB(false);
         } else if (phase == MaxineVM.Phase.TERMINATING) {
             if (PrintTLABStats) {
                 globalTlabStats.printTLABStats();
+                TLABLog.printSizingStatistics();
             }
         }
     }
@@ -358,6 +392,32 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         initialTlabSize = size;
     }
 
+    public Size maxTlabSize() {
+        return maxTlabSize;
+    }
+
+    protected void setMaxTlabSize(Size size) {
+        maxTlabSize = size;
+        if (minTlabSize.greaterThan(size)) {
+            minTlabSize = size;
+        }
+    }
+
+    /**
+     * Creates the refill policy of a thread whose first TLAB has just been allocated, as selected by the {@link #UseAdaptiveTLAB}
+     * option. Sub-classes must call this on first TLAB refill, after allocating the first TLAB of the thread, so that the policy
+     * is allocated from it.
+     *
+     * @param tlabSize the size of the first TLAB of the thread
+     * @return a new TLAB refill policy for the thread
+     */
+    protected TLABRefillPolicy createTLABRefillPolicy(Size tlabSize) {
+        if (UseAdaptiveTLAB) {
+            return new AdaptiveTLABRefillPolicy(tlabSize, minTlabSize, maxTlabSize);
+        }
+        return new SimpleTLABRefillPolicy(tlabSize);
+    }
+
     public void refillTLAB(Pointer tlab, Size size) {
         final Pointer etla = ETLA.load(currentTLA());
         refillTLAB(etla, tlab, size);
@@ -376,15 +436,23 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
     public void refillTLAB(Pointer etla, Pointer tlab, Size size) {
         final Pointer tlabTop = tlab.plus(size); // top of the new TLAB
         final Pointer allocationMark = TLAB_MARK.load(etla);
+        Size leftover = Size.zero();
         if (!allocationMark.isZero()) {
             final Pointer oldTop = TLAB_TOP.load(etla);
-            globalTlabStats.leftover += oldTop.minus(allocationMark).toLong();
+            if (oldTop.greaterThan(allocationMark)) {
+                leftover = oldTop.minus(allocationMark).asSize();
+            }
+            globalTlabStats.leftover += leftover.toLong();
             // It is a refill, not an initial fill. So invoke handler.
             doBeforeTLABRefill(allocationMark, oldTop);
         } else {
             ProgramError.check(CUSTOM_ALLOCATION_ENABLED.load(etla).isZero(),
                 "Must not refill TLAB when in custom allocator is set");
         }
+        final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
+        if (refillPolicy != null) {
+            refillPolicy.doOnRefill(leftover);
+        }
 
         TLAB_TOP.store(etla, tlabTop);
         TLAB_MARK.store(etla, tlab);
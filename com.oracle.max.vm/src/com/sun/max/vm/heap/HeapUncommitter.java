@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import static com.sun.max.vm.VMConfiguration.*;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Gives the memory of an idle heap back to the operating system.
+ * <p>
+ * With {@code -XX:+UncommitIdleHeap}, a daemon thread checks every {@code -XX:HeapUncommitDelay} milliseconds whether a garbage collection
+ * took place since its last check. If none did, the heap is deemed idle and the heap scheme is requested to
+ * {@linkplain HeapScheme#uncommitUnusedMemory() uncommit} the memory it doesn't need, at most once per idle period.
+ * The same request is issued at the end of every explicit collection, as applications typically request these when they go idle.
+ */
+public final class HeapUncommitter extends Thread {
+    static boolean UncommitIdleHeap = false;
+
+    static int HeapUncommitDelay = 10000;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "UncommitIdleHeap", HeapUncommitter.class,
+            "Give heap memory back to the operating system when the heap is idle, or after an explicit GC", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "HeapUncommitDelay", HeapUncommitter.class,
+            "Number of milliseconds without a GC after which the heap is deemed idle", Phase.PRISTINE);
+    }
+
+    /**
+     * Count of collections, used for detecting idle periods.
+     */
+    private static volatile int collectionCount;
+
+    private static final UncommitOperation uncommitOperation = new UncommitOperation();
+
+    /**
+     * Operation requesting the heap scheme to uncommit unused memory while mutators are stopped.
+     */
+    private static final class UncommitOperation extends VmOperation {
+        private Size uncommitted = Size.zero();
+
+        UncommitOperation() {
+            super("UncommitUnusedHeapMemory", null, Mode.Safepoint);
+        }
+
+        @Override
+        protected void doIt() {
+            uncommitted = vmConfig().heapScheme().uncommitUnusedMemory();
+        }
+    }
+
+    /**
+     * Start the daemon thread watching for idle periods of the heap if {@code -XX:+UncommitIdleHeap} is specified.
+     */
+    public static void startIfEnabled() {
+        if (UncommitIdleHeap) {
+            if (HeapUncommitDelay <= 0) {
+                Log.println("-XX:HeapUncommitDelay must be positive");
+                MaxineVM.native_exit(1);
+            }
+            new HeapUncommitter().start();
+        }
+    }
+
+    private HeapUncommitter() {
+        super("HeapUncommitter");
+        setDaemon(true);
+    }
+
+    /**
+     * Notification that a collection requested via {@link Heap#collectGarbage()} completed.
+     * Must be called with the {@link Heap#HEAP_LOCK} held.
+     *
+     * @param explicit true if the collection was requested by {@link java.lang.Runtime#gc()}
+     */
+    static void notifyCollection(boolean explicit) {
+        collectionCount++;
+        if (explicit && UncommitIdleHeap) {
+            uncommit();
+        }
+    }
+
+    private static void uncommit() {
+        uncommitOperation.submit();
+        if (Heap.verbose()) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("--Uncommitted ");
+            Log.print(uncommitOperation.uncommitted.toLong());
+            Log.println(" bytes of heap memory--");
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+
+    @Override
+    public void run() {
+        int lastCollectionCount = collectionCount;
+        boolean uncommitted = false;
+        while (true) {
+            try {
+                Thread.sleep(HeapUncommitDelay);
+            } catch (InterruptedException e) {
+            }
+            synchronized (Heap.HEAP_LOCK) {
+                if (collectionCount != lastCollectionCount) {
+                    // Not idle. Wait for a whole period without collection.
+                    lastCollectionCount = collectionCount;
+                    uncommitted = false;
+                } else if (!uncommitted) {
+                    uncommit();
+                    uncommitted = true;
+                }
+            }
+        }
+    }
+}
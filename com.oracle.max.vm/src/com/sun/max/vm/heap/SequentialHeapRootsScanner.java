@@ -43,8 +43,24 @@ public class SequentialHeapRootsScanner {
     }
 
     final class VmThreadLocalsScanner implements Pointer.Procedure {
+        private int partition = 0;
+        private int numPartitions = 1;
+        private int threadIndex;
+
+        void setPartition(int partition, int numPartitions) {
+            this.partition = partition;
+            this.numPartitions = numPartitions;
+            threadIndex = 0;
+        }
 
         public void run(Pointer tla) {
+            if (numPartitions > 1 && threadIndex++ % numPartitions != partition) {
+                return;
+            }
+            if (VmThread.fromTLA(tla).isGCWorkerThread()) {
+                // GC workers aren't stopped for GC and only ever refer to immortal or boot heap objects.
+                return;
+            }
             if (Heap.logGCPhases()) {
                 Heap.phaseLogger.logScanningThreadRoots(VmThread.fromTLA(tla));
             }
@@ -59,4 +75,21 @@ public class SequentialHeapRootsScanner {
         vmConfig().monitorScheme().scanReferences(pointerIndexVisitor);
     }
 
+    /**
+     * Scan the share of the GC roots assigned to one of several partitions, so that several GC workers, each with its own scanner,
+     * can scan the roots concurrently. Threads are assigned to partitions round-robin, in the order they are iterated over.
+     * References held by the monitor scheme are scanned with partition 0.
+     *
+     * @param partition the partition to scan, between 0 and {@code numPartitions - 1}
+     * @param numPartitions number of partitions the roots are split into
+     */
+    public void run(int partition, int numPartitions) {
+        tlaScanner.setPartition(partition, numPartitions);
+        VmThreadMap.ACTIVE.forAllThreadLocals(null, tlaScanner);
+        tlaScanner.setPartition(0, 1);
+        if (partition == 0) {
+            vmConfig().monitorScheme().scanReferences(pointerIndexVisitor);
+        }
+    }
+
 }
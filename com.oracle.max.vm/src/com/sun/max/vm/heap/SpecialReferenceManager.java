@@ -339,6 +339,20 @@ public class SpecialReferenceManager {
         } while (true);
     }
 
+    /**
+     * Empties the list of discovered special references without processing them, e.g., when the GC abandons
+     * a marking in progress. References on the list will be discovered again by the next marking.
+     */
+    public static void discardDiscoveredSpecialReferences() {
+        java.lang.ref.Reference<?> ref = discoveredList;
+        while (ref != sentinel) {
+            JLRRAlias refAlias = asJLRRAlias(ref);
+            ref = refAlias.discovered;
+            refAlias.discovered = null;
+        }
+        discoveredList = sentinel;
+    }
+
     @ALIAS(declaringClassName = "java.lang.ref.Finalizer")
     private static native void register(Object finalizee);
 
@@ -51,6 +51,21 @@ public final class TLABLog {
         VMOptions.addFieldOption("-XX:", "TraceTLABAllocation", TLABLog.class, "Trace every allocation from TLABs when in DEBUG mode", Phase.STARTING);
     }
 
+    public static boolean TraceTLABSizing = false;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "TraceTLABSizing", TLABLog.class, "Trace the per-thread TLAB sizing decisions of adaptive TLAB refill policies", Phase.STARTING);
+    }
+
+    /*
+     * Totals of the per-thread allocation epochs reported by adaptive TLAB refill policies.
+     * Shared by all threads without synchronization, like the other TLAB statistics.
+     */
+    private static volatile long totalResizes;
+    private static volatile long totalRefills;
+    private static volatile long totalAllocated;
+    private static volatile long totalWaste;
+
     /**
      * Tail of the thread-local log buffer of a thread. If zero, logging is disabled,or the thread wasn't allocated a log yet.
      */
@@ -105,6 +120,60 @@ public final class TLABLog {
         TLAB_LOG_TAIL.store(etla, logTail.isZero() ?  allocate(etla) : logStart(logTail));
     }
 
+    /**
+     * Records the end of the allocation epoch of a thread whose TLABs are sized by an adaptive policy.
+     *
+     * @param etla the thread whose TLAB was resized
+     * @param allocated number of bytes the thread allocated from TLABs during the epoch
+     * @param waste number of bytes left unused in the TLABs the thread retired on refill during the epoch
+     * @param refills number of TLAB refills during the epoch
+     * @param oldSize TLAB size during the epoch
+     * @param newSize TLAB size for the next epoch
+     */
+    public static void doOnResizeTLAB(Pointer etla, long allocated, long waste, int refills, Size oldSize, Size newSize) {
+        totalResizes++;
+        totalRefills += refills;
+        totalAllocated += allocated;
+        totalWaste += waste;
+        if (TraceTLABSizing) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("TLAB sizing for ");
+            Log.printThread(VmThread.fromTLA(etla), false);
+            Log.print(": allocated = ");
+            Log.print(allocated);
+            Log.print(", waste = ");
+            Log.print(waste);
+            Log.print(", refills = ");
+            Log.print(refills);
+            Log.print(", size = ");
+            Log.print(oldSize.toLong());
+            Log.print(" -> ");
+            Log.println(newSize.toLong());
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+
+    /**
+     * Print the totals of the TLAB sizing epochs recorded so far.
+     */
+    public static void printSizingStatistics() {
+        if (totalResizes == 0L) {
+            return;
+        }
+        Log.print("   adaptive TLAB epochs              :");
+        Log.println(totalResizes);
+        Log.print("   refills during these epochs       :");
+        Log.println(totalRefills);
+        Log.print("   allocated from TLABs              :");
+        Log.print(totalAllocated >> 10);
+        Log.println(" K");
+        Log.print("   wasted on refill                  :");
+        Log.print(totalWaste >> 10);
+        Log.print(" K (");
+        Log.print(totalAllocated == 0L ? 0L : (totalWaste * 100) / totalAllocated);
+        Log.println("%)");
+    }
+
     @INLINE
     public static void record(Pointer etla, Pointer allocationSite, Pointer allocatedCell, Size cellSize) {
         Pointer logTail = TLAB_LOG_TAIL.load(etla);
@@ -65,6 +65,22 @@ public abstract class TLABRefillPolicy {
      */
     public abstract Size nextTlabSize();
 
+    /**
+     * Notification that the TLAB of the thread has just been refilled. Default is to do nothing.
+     * @param leftover space left unused at the end of the retired TLAB (zero if the thread had no TLAB)
+     */
+    public void doOnRefill(Size leftover) {
+    }
+
+    /**
+     * Notification that the TLAB of the thread is being reset, typically because a GC is starting. This marks the end of the
+     * thread's allocation epoch. Default is to do nothing.
+     * @param etla the thread whose TLAB is reset
+     * @param leftover space left unused at the end of the TLAB (zero if the thread had no TLAB)
+     */
+    public void doOnReset(Pointer etla, Size leftover) {
+    }
+
     @INTRINSIC(UNSAFE_CAST)
     private static native TLABRefillPolicy asTLABRefillPolicy(Object object);
 
@@ -76,9 +76,17 @@ public interface WriteBarrierSpecification {
          */
         NEEDS_NEW_VALUE;
     }
-    IntBitSet<WriteBarrierSpec> TUPLE_PRE_BARRIER = new IntBitSet<WriteBarrierSpec>().set(WriteBarrierSpec.TUPLE_CELL).set(WriteBarrierSpec.PRE_WRITE);
+    /**
+     * Barrier generated before a store to a reference field of a tuple. Generators are passed the tuple, the field offset and the new value.
+     */
+    IntBitSet<WriteBarrierSpec> TUPLE_PRE_BARRIER = new IntBitSet<WriteBarrierSpec>().set(WriteBarrierSpec.TUPLE_CELL).set(WriteBarrierSpec.PRE_WRITE).
+        set(WriteBarrierSpec.NEEDS_FIELD_OFFSET).set(WriteBarrierSpec.NEEDS_NEW_VALUE);
     IntBitSet<WriteBarrierSpec> TUPLE_POST_BARRIER = new IntBitSet<WriteBarrierSpec>().set(WriteBarrierSpec.TUPLE_CELL).set(WriteBarrierSpec.POST_WRITE);
-    IntBitSet<WriteBarrierSpec> ARRAY_PRE_BARRIER = new IntBitSet<WriteBarrierSpec>().set(WriteBarrierSpec.ARRAY_CELL).set(WriteBarrierSpec.PRE_WRITE);
+    /**
+     * Barrier generated before a store to an element of a reference array. Generators are passed the array, the element index and the new value.
+     */
+    IntBitSet<WriteBarrierSpec> ARRAY_PRE_BARRIER = new IntBitSet<WriteBarrierSpec>().set(WriteBarrierSpec.ARRAY_CELL).set(WriteBarrierSpec.PRE_WRITE).
+        set(WriteBarrierSpec.NEEDS_ARRAY_INDEX).set(WriteBarrierSpec.NEEDS_NEW_VALUE);
     IntBitSet<WriteBarrierSpec> ARRAY_POST_BARRIER = new IntBitSet<WriteBarrierSpec>().set(WriteBarrierSpec.ARRAY_CELL).set(WriteBarrierSpec.POST_WRITE);
 
 }
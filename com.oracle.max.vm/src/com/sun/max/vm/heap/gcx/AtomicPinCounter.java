@@ -38,6 +38,10 @@ public final class AtomicPinCounter {
         return ClassActor.fromJava(AtomicPinCounter.class).findLocalInstanceFieldActor("pinnedCounter").offset();
     }
 
+    public boolean hasPinnedObjects() {
+        return pinnedCounter > 0;
+    }
+
     public void increment() {
         int newValue;
         int oldValue;
@@ -24,6 +24,8 @@ package com.sun.max.vm.heap.gcx;
 
 import static com.sun.max.platform.Platform.*;
 
+import java.lang.management.*;
+
 import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
@@ -142,6 +144,36 @@ public class ContiguousHeapSpace extends MemoryRegion implements EvacuatingSpace
         return false;
     }
 
+    /**
+     * Give the physical memory backing the committed space back to the operating system. The space stays committed, but its
+     * content is lost: it reads as zeros afterwards. Must only be used on a space that holds no live objects, e.g., an evacuated
+     * semi-space.
+     *
+     * @return true if the memory was given back
+     */
+    public boolean discardCommittedSpace() {
+        final Size committedSize = committedSize();
+        if (committedSize.isZero() || Heap.AvoidsAnonOperations) {
+            return false;
+        }
+        if (!VirtualMemory.uncommitMemory(start, committedSize, VirtualMemory.Type.HEAP)) {
+            return false;
+        }
+        final boolean committed = VirtualMemory.commitMemory(start, committedSize, VirtualMemory.Type.HEAP);
+        FatalError.check(committed, "Failed to recommit discarded space");
+        return true;
+    }
+
+    /**
+     * Reports the committed space as used, since the space doesn't know what part of it is allocated.
+     * Owners of the space that do should report a more precise usage.
+     */
+    @Override
+    public MemoryUsage getUsage() {
+        final long committed = committedSize().toLong();
+        return new MemoryUsage(-1L, committed, committed, size.toLong());
+    }
+
     public void walkCommittedSpace(CellVisitor cellVisitor) {
         Pointer p = start.asPointer();
         while (p.lessThan(committedEnd)) {
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.profile.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.heap.*;
+
+/**
+ * Heap resizing policy driven by a maximum GC pause goal and a GC time ratio goal, instead of fixed ratios of free space.
+ *
+ * The policy measures the pause time of each collection and the mutator time elapsed since the previous one, and keeps exponentially
+ * weighted averages of both. After each collection, goals are considered in order:
+ * <ol>
+ * <li>If the average pause exceeds {@link #MaxGCPauseMillis}, the heap (or the young generation of a generational heap) is shrunk,
+ * as pause time grows with the amount of space to collect.</li>
+ * <li>Otherwise, if the time spent in GC exceeds <code>1 / (1 + {@link #GCTimeRatio})</code> of the total time, the heap
+ * (or the young generation) is grown to collect less often.</li>
+ * <li>Otherwise, if the time spent in GC is well below that goal, the heap is shrunk to reduce the footprint.</li>
+ * </ol>
+ * Growth and shrinkage are done in steps of {@link #GROWTH_PERCENT} and {@link #SHRINK_PERCENT} of the current size. Decisions never
+ * let free space drop below the minimum free space ratio of {@link HeapResizingPolicy}, nor the old generation of a generational heap
+ * lose its evacuation reserve. Shrinking returns memory to the OS via {@link ResizableSpace#decreaseSize(Size)}.
+ */
+public class ErgonomicHeapResizingPolicy extends HeapResizingPolicy {
+    /**
+     * Maximum GC pause goal, in milliseconds. Zero means no pause goal.
+     */
+    static int MaxGCPauseMillis = 200;
+
+    /**
+     * GC time ratio goal: the time spent in GC should not exceed <code>1 / (1 + GCTimeRatio)</code> of the total time.
+     */
+    static int GCTimeRatio = 99;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "MaxGCPauseMillis", ErgonomicHeapResizingPolicy.class,
+                        "Maximum GC pause goal (in milliseconds) of the ergonomic heap sizing policy", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "GCTimeRatio", ErgonomicHeapResizingPolicy.class,
+                        "GC time goal of the ergonomic heap sizing policy, as the ratio of mutator time to GC time", Phase.PRISTINE);
+    }
+
+    /**
+     * Percentage of the current size a space grows by when the GC time goal isn't met.
+     */
+    static final int GROWTH_PERCENT = 20;
+
+    /**
+     * Percentage of the current size a space shrinks by when the pause goal isn't met, or to reduce footprint.
+     */
+    static final int SHRINK_PERCENT = 5;
+
+    /**
+     * Weight, in percent, of the last collection in the averages.
+     */
+    static final int AVERAGE_WEIGHT = 30;
+
+    /**
+     * Number of collections to measure before taking decisions based on goals.
+     */
+    static final int MIN_SAMPLES = 3;
+
+    /**
+     * The GC time is considered well below the goal when lower than the goal divided by this factor.
+     */
+    static final int FOOTPRINT_FACTOR = 4;
+
+    static final int KEEP = 0;
+    static final int GROW = 1;
+    static final int SHRINK = 2;
+
+    private static final Clock clock = Clock.SYSTEM_NANOSECONDS;
+
+    private long collectionStart;
+    private long lastCollectionEnd;
+    private long averagePause;
+    private long averageInterval;
+    private int numSamples;
+
+    public ErgonomicHeapResizingPolicy() {
+        lastCollectionEnd = clock.getTicks();
+    }
+
+    @Override
+    public void notifyCollectionStarted() {
+        collectionStart = clock.getTicks();
+    }
+
+    private static long average(long average, long sample) {
+        return (AVERAGE_WEIGHT * sample + (100 - AVERAGE_WEIGHT) * average) / 100;
+    }
+
+    /**
+     * Record the pause of the collection that just completed and the mutator time that preceded it.
+     */
+    private void recordCollection() {
+        final long now = clock.getTicks();
+        final long pause = now - collectionStart;
+        final long interval = collectionStart - lastCollectionEnd;
+        if (numSamples == 0) {
+            averagePause = pause;
+            averageInterval = interval;
+        } else {
+            averagePause = average(averagePause, pause);
+            averageInterval = average(averageInterval, interval);
+        }
+        numSamples++;
+        lastCollectionEnd = now;
+    }
+
+    /**
+     * Decide how to resize based on the goals.
+     * @return one of {@link #KEEP}, {@link #GROW} or {@link #SHRINK}
+     */
+    private int decide() {
+        if (numSamples < MIN_SAMPLES) {
+            return KEEP;
+        }
+        if (MaxGCPauseMillis > 0 && averagePause > MaxGCPauseMillis * 1000000L) {
+            return SHRINK;
+        }
+        // GC time / (GC time + mutator time) > 1 / (1 + GCTimeRatio) is equivalent to GC time * GCTimeRatio > mutator time.
+        final long weightedPause = averagePause * GCTimeRatio;
+        if (weightedPause > averageInterval) {
+            return GROW;
+        }
+        if (weightedPause * FOOTPRINT_FACTOR < averageInterval) {
+            return SHRINK;
+        }
+        return KEEP;
+    }
+
+    private static Size percent(Size size, int percentage) {
+        return Size.fromLong((size.toLong() * percentage) / 100);
+    }
+
+    /**
+     * Largest amount of space that can be removed from a space without dropping below the minimum free space ratio.
+     */
+    private Size maxShrinkage(Size freeSpace, Size totalSpace) {
+        // Shrinking by d must leave (free - d) >= min% * (total - d), i.e., d <= (100 * free - min * total) / (100 - min).
+        final long excess = 100 * freeSpace.toLong() - minFreeSpaceRatioForExpansion * totalSpace.toLong();
+        if (excess <= 0) {
+            return Size.zero();
+        }
+        return Size.fromLong(excess / (100 - minFreeSpaceRatioForExpansion));
+    }
+
+    private void logDecision(String spaceName, int decision, Size delta, Size newSize) {
+        if (Heap.verbose()) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Ergonomic heap sizing: avg pause = ");
+            Log.print(averagePause / 1000L);
+            Log.print(" us, avg interval = ");
+            Log.print(averageInterval / 1000L);
+            Log.print(" us, ");
+            Log.print(decision == GROW ? "grew " : "shrunk ");
+            Log.print(spaceName);
+            Log.print(" by ");
+            Log.print(delta.toLong());
+            Log.print(" bytes to ");
+            Log.print(newSize.toLong());
+            Log.println(" bytes");
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+
+    @Override
+    public boolean resizeAfterCollection(Size spaceLeftAfterGC, ResizableSpace heapSpace) {
+        recordCollection();
+        if (growToMinFreeSpaceRatio(spaceLeftAfterGC, heapSpace)) {
+            // Not enough free space left: grow regardless of the goals.
+            return true;
+        }
+        final Size totalSpace = heapSpace.totalSpace();
+        final int decision = decide();
+        Size delta = Size.zero();
+        if (decision == GROW) {
+            if (totalSpace.lessThan(heapSpace.capacity())) {
+                delta = heapSpace.increaseSize(percent(totalSpace, GROWTH_PERCENT));
+            }
+        } else if (decision == SHRINK) {
+            Size shrinkage = percent(totalSpace, SHRINK_PERCENT);
+            final Size maxShrinkage = maxShrinkage(spaceLeftAfterGC, totalSpace);
+            if (shrinkage.greaterThan(maxShrinkage)) {
+                shrinkage = maxShrinkage;
+            }
+            if (!shrinkage.isZero()) {
+                delta = heapSpace.decreaseSize(shrinkage);
+            }
+        }
+        if (delta.isZero()) {
+            return false;
+        }
+        logDecision("heap", decision, delta, heapSpace.totalSpace());
+        return true;
+    }
+
+    @Override
+    public boolean resizeGenerationsAfterCollection(ResizableSpace youngSpace, ResizableSpace oldSpace, Size oldFreeSpace) {
+        recordCollection();
+        final int decision = decide();
+        final Size youngSize = youngSpace.totalSpace();
+        if (decision == GROW) {
+            // Collect less often with a larger young generation, provided the old generation can cover its evacuation.
+            if (youngSize.lessThan(youngSpace.capacity())) {
+                final Size growth = percent(youngSize, GROWTH_PERCENT);
+                final Size reserveNeeded = youngSize.plus(growth);
+                if (reserveNeeded.greaterThan(oldFreeSpace) && oldSpace.totalSpace().lessThan(oldSpace.capacity())) {
+                    oldFreeSpace = oldFreeSpace.plus(oldSpace.increaseSize(reserveNeeded.minus(oldFreeSpace)));
+                }
+                if (reserveNeeded.lessEqual(oldFreeSpace)) {
+                    final Size delta = youngSpace.increaseSize(growth);
+                    if (!delta.isZero()) {
+                        logDecision("young generation", decision, delta, youngSpace.totalSpace());
+                    }
+                }
+            }
+        } else if (decision == SHRINK) {
+            final Size delta = youngSpace.decreaseSize(percent(youngSize, SHRINK_PERCENT));
+            if (!delta.isZero()) {
+                logDecision("young generation", decision, delta, youngSpace.totalSpace());
+            }
+            // Give back old generation space in excess of both the evacuation reserve and the maximum free space ratio.
+            final Size oldTotalSpace = oldSpace.totalSpace();
+            if (oldFreeSpace.greaterThan(percent(oldTotalSpace, maxFreeSpaceRatioForShrinking))) {
+                Size shrinkage = percent(oldTotalSpace, SHRINK_PERCENT);
+                final Size reserve = youngSpace.totalSpace();
+                final Size excess = oldFreeSpace.greaterThan(reserve) ? oldFreeSpace.minus(reserve).asSize() : Size.zero();
+                if (shrinkage.greaterThan(excess)) {
+                    shrinkage = excess;
+                }
+                if (!shrinkage.isZero()) {
+                    final Size oldDelta = oldSpace.decreaseSize(shrinkage);
+                    oldFreeSpace = oldFreeSpace.minus(oldDelta);
+                    if (!oldDelta.isZero()) {
+                        logDecision("old generation", decision, oldDelta, oldSpace.totalSpace());
+                    }
+                }
+            }
+        }
+        return ensureEvacuationReserve(youngSpace, oldSpace, oldFreeSpace);
+    }
+}
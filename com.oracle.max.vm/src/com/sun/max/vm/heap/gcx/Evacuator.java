@@ -75,6 +75,18 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
 
     private boolean refDiscoveryEnabled = true;
 
+    /**
+     * Indicates whether forwarding references must be installed atomically, i.e., whether other evacuators may concurrently
+     * evacuate cells of the same evacuated area.
+     */
+    private boolean atomicForwarding;
+
+    /**
+     * Indicates whether references to the evacuated area are only recorded instead of being evacuated.
+     * See {@link #recordEvacuatedRef(Pointer)}.
+     */
+    private boolean recordingEvacuatedRefs;
+
     private GCOperation currentGCOperation;
 
     private EvacuationTimers timers;
@@ -98,7 +110,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
 
     private void updateSpecialReference(Pointer origin) {
         if (refDiscoveryEnabled) {
-            SpecialReferenceManager.discoverSpecialReference(origin);
+            discoverSpecialReference(origin);
         } else {
             // Treat referent as strong reference.
             if (traceEvacVisitedCell()) {
@@ -120,6 +132,23 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         refDiscoveryEnabled = false;
     }
 
+    /**
+     * Discover a special reference found while scanning cells for evacuatees.
+     * Evacuators running concurrently with others must serialize discoveries.
+     * @param origin origin of the special reference
+     */
+    void discoverSpecialReference(Pointer origin) {
+        SpecialReferenceManager.discoverSpecialReference(origin);
+    }
+
+    final void setAtomicForwarding(boolean atomicForwarding) {
+        this.atomicForwarding = atomicForwarding;
+    }
+
+    final void setRecordingEvacuatedRefs(boolean recordingEvacuatedRefs) {
+        this.recordingEvacuatedRefs = recordingEvacuatedRefs;
+    }
+
     @INLINE
     private void updateReferenceArray(Pointer refArrayOrigin, final int firstIndex, final int length) {
         for (int index = firstIndex; index < length; index++) {
@@ -188,6 +217,28 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
     @NEVER_INLINE
     abstract Pointer evacuate(Pointer origin);
 
+    /**
+     * Evacuate the cell at the specified origin and install the forwarding reference to its copy atomically.
+     * Used instead of {@link #evacuate(Pointer)} when several evacuators work on the same evacuated area concurrently.
+     * If another evacuator wins the race to forward the cell, the copy is discarded and the winner's copy is returned.
+     *
+     * @param origin origin of the cell to evacuate
+     * @return a reference to the evacuated cell's new location
+     */
+    Reference evacuateAtomically(Pointer origin) {
+        throw FatalError.unimplemented();
+    }
+
+    /**
+     * Record the location of a reference to the evacuated area for later evacuation.
+     * Called instead of evacuating the referenced cell when recording of evacuated references is enabled.
+     *
+     * @param refLocation address of a reference to a cell in the evacuated area
+     */
+    void recordEvacuatedRef(Pointer refLocation) {
+        throw FatalError.unimplemented();
+    }
+
     /**
      * Remembered set updates to apply to a reference to an evacuated cell.
      * Default is to do nothing.
@@ -210,6 +261,9 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
     protected final Reference getForwardRef(Pointer origin) {
         Reference forwardRef = Layout.readForwardRef(origin);
         if (forwardRef.isZero()) {
+            if (atomicForwarding) {
+                return evacuateAtomically(origin);
+            }
             final Pointer toOrigin = evacuate(origin);
             forwardRef = Reference.fromOrigin(toOrigin);
             Layout.writeForwardRef(origin, forwardRef);
@@ -241,6 +295,9 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
     protected final Reference getForwardRef(Pointer origin, Pointer at) {
         Reference forwardRef = Layout.readForwardRef(origin);
         if (forwardRef.isZero()) {
+            if (atomicForwarding) {
+                return evacuateAtomically(origin);
+            }
             final Pointer toOrigin = evacuate(origin);
             forwardRef = Reference.fromOrigin(toOrigin);
             Layout.writeForwardRef(origin, forwardRef);
@@ -269,6 +326,10 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         final Reference ref = refHolderOrigin.getReference(wordIndex);
         final Pointer origin = ref.toOrigin();
         if (inEvacuatedArea(origin)) {
+            if (recordingEvacuatedRefs) {
+                recordEvacuatedRef(refHolderOrigin.plusWords(wordIndex));
+                return;
+            }
             final Reference forwardRef = MaxineVM.isDebug() ? getForwardRef(origin, refHolderOrigin.plusWords(wordIndex)) : getForwardRef(origin);
             refHolderOrigin.setReference(wordIndex, forwardRef);
             updateRSet(refHolderOrigin, wordIndex, forwardRef);
@@ -314,6 +375,14 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
     void evacuateFromRoots() {
         heapRootsScanner.run();
     }
+
+    /**
+     * Evacuate the objects of the evacuated area directly reachable from the share of the roots assigned to a partition.
+     * See {@link SequentialHeapRootsScanner#run(int, int)}.
+     */
+    void evacuateFromRoots(int partition, int numPartitions) {
+        heapRootsScanner.run(partition, numPartitions);
+    }
     /**
      * Evacuate all objects of the evacuated area directly reachable from the remembered sets of the evacuated area. By default, this does nothing
      * (i.e., there are no remembered sets). For instance, a pure semi-space flat heap doesn't have any remembered sets to evacuate from, neither does
@@ -28,12 +28,14 @@ import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.heap.gcx.EvacuatingSpace.SpaceBounds;
 import com.sun.max.vm.heap.gcx.EvacuationTimers.TIMED_OPERATION;
 import com.sun.max.vm.heap.gcx.rset.ctbl.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.log.VMLog.Record;
 import com.sun.max.vm.log.hosted.*;
+import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
 /**
  * A heap space evacuator that evacuates objects from one space to a card-table covered space.
@@ -149,6 +151,11 @@ public class EvacuatorToCardSpace extends Evacuator {
 
     private final EvacuationLogger logger;
 
+    /**
+     * State shared by the evacuators of the GC workers when evacuating in parallel, null if this evacuator always works alone.
+     */
+    ParallelEvacuationState parallelEvacuationState;
+
     private long [] opEvacuationMarks = new long[TIMED_OPERATION.values().length];
 
     @Override
@@ -166,6 +173,20 @@ public class EvacuatorToCardSpace extends Evacuator {
         this.logger = new EvacuationLogger(name);
     }
 
+    /**
+     * Create an evacuator that shares the spaces, remembered set, evacuation buffer provider and logger of another evacuator, but
+     * has its own promotion lab and survivor ranges. Used to give each GC worker its own evacuator for parallel evacuation.
+     */
+    protected EvacuatorToCardSpace(EvacuatorToCardSpace evacuator) {
+        this.fromSpace = evacuator.fromSpace;
+        this.toSpace = evacuator.toSpace;
+        this.rset = evacuator.rset;
+        this.cfoTable = evacuator.cfoTable;
+        this.evacuationBufferProvider = evacuator.evacuationBufferProvider;
+        this.evacuatedAreaBounds = evacuator.evacuatedAreaBounds;
+        this.logger = evacuator.logger;
+    }
+
     public void setEvacuationSpace(EvacuatingSpace fromSpace,  HeapSpace toSpace) {
         this.fromSpace = fromSpace;
         this.toSpace = toSpace;
@@ -195,11 +216,60 @@ public class EvacuatorToCardSpace extends Evacuator {
         return evacuatedBytes;
     }
 
+    void addEvacuatedBytes(Size size) {
+        evacuatedBytes = evacuatedBytes.plus(size);
+    }
+
+    private Address refillEvacuationBuffer() {
+        if (parallelEvacuationState == null) {
+            return evacuationBufferProvider.refillEvacuationBuffer();
+        }
+        parallelEvacuationState.lock();
+        final Address chunk = evacuationBufferProvider.refillEvacuationBuffer();
+        parallelEvacuationState.unlock();
+        return chunk;
+    }
+
+    private void retireEvacuationBuffer(Address startOfSpaceLeft, Address endOfSpaceLeft) {
+        if (parallelEvacuationState == null) {
+            evacuationBufferProvider.retireEvacuationBuffer(startOfSpaceLeft, endOfSpaceLeft);
+            return;
+        }
+        parallelEvacuationState.lock();
+        evacuationBufferProvider.retireEvacuationBuffer(startOfSpaceLeft, endOfSpaceLeft);
+        parallelEvacuationState.unlock();
+    }
+
+    private Pointer overflowAllocate(Size size) {
+        if (parallelEvacuationState == null) {
+            return toSpace.allocate(size);
+        }
+        parallelEvacuationState.lock();
+        final Pointer cell = toSpace.allocate(size);
+        parallelEvacuationState.unlock();
+        return cell;
+    }
+
+    @Override
+    void discoverSpecialReference(Pointer origin) {
+        if (parallelEvacuationState == null) {
+            super.discoverSpecialReference(origin);
+            return;
+        }
+        parallelEvacuationState.lock();
+        super.discoverSpecialReference(origin);
+        parallelEvacuationState.unlock();
+    }
+
     /**
      * Retire promotion buffer before a GC on the promotion space is performed.
      */
     @Override
     public void doBeforeGC() {
+        resetPromotionLab();
+    }
+
+    final void resetPromotionLab() {
         if (MaxineVM.isDebug() && !ptop.isZero()) {
             FatalError.check(HeapFreeChunk.isTailFreeChunk(ptop, pend.plus(evacuationBufferHeadroom())), "Evacuator's allocation buffer must be parseable");
         }
@@ -210,12 +280,23 @@ public class EvacuatorToCardSpace extends Evacuator {
     @Override
     protected void doBeforeEvacuation() {
         fromSpace.doBeforeGC();
+        beginPromotion();
+        if (logger.enabled()) {
+            SpaceBounds toSpaceBounds = toSpace.bounds();
+            logger.logBeginEvacuation(evacuatedAreaBounds.lowestAddress(), evacuatedAreaBounds.highestAddress(), toSpaceBounds.lowestAddress(), toSpaceBounds.highestAddress());
+        }
+    }
+
+    /**
+     * Set up the promotion lab for an evacuation, refilling it if needed.
+     */
+    final void beginPromotion() {
         evacuatedBytes = Size.zero();
         lastOverflowAllocatedRangeStart = Pointer.zero();
         lastOverflowAllocatedRangeEnd = Pointer.zero();
         debugRetired_ptop = Pointer.zero();
         if (ptop.isZero()) {
-            Address chunk = evacuationBufferProvider.refillEvacuationBuffer();
+            Address chunk = refillEvacuationBuffer();
             Size chunkSize = HeapFreeChunk.getFreechunkSize(chunk);
             pnextChunk = HeapFreeChunk.getFreeChunkNext(chunk);
             rset.notifyRefill(chunk, chunkSize);
@@ -224,20 +305,23 @@ public class EvacuatorToCardSpace extends Evacuator {
         }
         initialEvacuationMark = ptop;
         allocatedRangeStart = ptop;
-        if (logger.enabled()) {
-            SpaceBounds toSpaceBounds = toSpace.bounds();
-            logger.logBeginEvacuation(evacuatedAreaBounds.lowestAddress(), evacuatedAreaBounds.highestAddress(), toSpaceBounds.lowestAddress(), toSpaceBounds.highestAddress());
-        }
     }
 
     @Override
     protected void doAfterEvacuation() {
-        survivorRanges.clear();
         fromSpace.doAfterGC();
-        Pointer limit = pend.plus(evacuationBufferHeadroom());
         if (logger.enabled()) {
-            logger.logEndEvacuation(limit);
+            logger.logEndEvacuation(pend.plus(evacuationBufferHeadroom()));
         }
+        endPromotion();
+    }
+
+    /**
+     * Leave the promotion lab in an iterable state once evacuation is complete, retiring it if needed.
+     */
+    final void endPromotion() {
+        survivorRanges.clear();
+        Pointer limit = pend.plus(evacuationBufferHeadroom());
         Size spaceLeft = limit.minus(ptop).asSize();
         if ((alwaysRefill && spaceLeft.greaterThan(minObjectSize())) || spaceLeft.greaterEqual(minRefillThreshold)) {
             // Leave remaining space in an iterable format.
@@ -246,7 +330,7 @@ public class EvacuatorToCardSpace extends Evacuator {
             rset.notifyRetireFreeSpace(ptop, spaceLeft);
             if (retireAfterEvacuation) {
                 // Note: if an overflow occurred and the TLAB isn't in the toSpace but in some other space, the leftover will not be retired but simply formatted as dead object.
-                evacuationBufferProvider.retireEvacuationBuffer(ptop, limit);
+                retireEvacuationBuffer(ptop, limit);
                 // Will trigger refill in doBeforeEvacution on next GC
                 ptop = Pointer.zero();
                 pend = Pointer.zero();
@@ -262,6 +346,20 @@ public class EvacuatorToCardSpace extends Evacuator {
         }
     }
 
+    /**
+     * Format the unallocated part of the promotion lab as dark matter so that the heap can be walked across it.
+     * The promotion lab can still be allocated from afterwards.
+     */
+    final void makePromotionLabParsable() {
+        if (ptop.isZero()) {
+            return;
+        }
+        final Pointer limit = pend.plus(evacuationBufferHeadroom());
+        if (ptop.lessThan(limit)) {
+            DarkMatter.format(ptop, limit);
+        }
+    }
+
     private void recordRange(Address start, Address end) {
         final Size rangeSize = end.minus(start).asSize();
         if (rangeSize.isZero()) {
@@ -324,7 +422,7 @@ public class EvacuatorToCardSpace extends Evacuator {
                 // Retire and update FOT accordingly
                 // FIXME: same as  rset.notifyRetireDeadSpace(ptop, limit.minus(ptop).asSize()) but faster. It'll be cleaner to use the rset interface though.
                 cfoTable.set(ptop, limit);
-                evacuationBufferProvider.retireEvacuationBuffer(ptop, limit);
+                retireEvacuationBuffer(ptop, limit);
                 if (MaxineVM.isDebug()) {
                     final Address deadSpaceLastWordAddress = limit.minus(Word.size());
                     if (CardTableRSet.alignDownToCard(ptop).lessThan(CardTableRSet.alignDownToCard(deadSpaceLastWordAddress))) {
@@ -335,7 +433,7 @@ public class EvacuatorToCardSpace extends Evacuator {
             // Check if there is another chunk in the lab.
             Address chunk = pnextChunk;
             if (chunk.isZero()) {
-                chunk = evacuationBufferProvider.refillEvacuationBuffer();
+                chunk = refillEvacuationBuffer();
                 FatalError.check(!chunk.isZero() && (alwaysRefill || HeapFreeChunk.getFreechunkSize(chunk).greaterEqual(minRefillThreshold)), "refill request should always succeed");
             }
             pnextChunk = HeapFreeChunk.getFreeChunkNext(chunk);
@@ -356,7 +454,7 @@ public class EvacuatorToCardSpace extends Evacuator {
             return Pointer.zero();
         }
         // Overflow allocate
-        final Pointer cell = toSpace.allocate(size);
+        final Pointer cell = overflowAllocate(size);
         // Allocator must have already fire a notifySplitLive event to the space's DeadSpaceListener (i.e., the CardTableRSet in this case).
         if (!cell.equals(lastOverflowAllocatedRangeEnd)) {
             if (lastOverflowAllocatedRangeEnd.greaterThan(lastOverflowAllocatedRangeStart)) {
@@ -407,13 +505,62 @@ public class EvacuatorToCardSpace extends Evacuator {
         return toCell;
     }
 
+    /**
+     * Size of a cell computed from a hub read beforehand, as the hub word of a cell being evacuated in parallel may be replaced by a
+     * forwarding reference at any time.
+     */
+    private static Size cellSize(Pointer origin, Hub hub) {
+        switch (hub.layoutCategory) {
+            case TUPLE:
+                return hub.tupleSize;
+            case ARRAY:
+                return Layout.getArraySize(hub.classActor.componentClassActor().kind, Layout.readArrayLength(origin));
+            case HYBRID:
+                return Layout.hybridLayout().getArraySize(Layout.readArrayLength(origin));
+        }
+        throw FatalError.unexpected("unknown layout category");
+    }
+
+    @Override
+    final Reference evacuateAtomically(Pointer fromOrigin) {
+        final Reference hubRef = Layout.readHubReference(fromOrigin);
+        if (hubRef.isMarked()) {
+            // Forwarded by another evacuator since the caller read the forwarding reference.
+            return hubRef.unmarked();
+        }
+        final Size size = cellSize(fromOrigin, UnsafeCast.asHub(hubRef.toJava()));
+        final Pointer toCell = allocate(size);
+        Memory.copyBytes(Layout.originToCell(fromOrigin), toCell, size);
+        final Pointer toOrigin = Layout.cellToOrigin(toCell);
+        // The copy may have picked up another evacuator's forwarding reference.
+        Layout.writeHubReference(toOrigin, hubRef);
+        final Reference forwardRef = Reference.fromOrigin(toOrigin);
+        if (Layout.compareAndSwapForwardRef(fromOrigin, hubRef, forwardRef).equals(hubRef)) {
+            return forwardRef;
+        }
+        // Another evacuator won the race: discard our copy.
+        if (toCell.plus(size).equals(ptop)) {
+            ptop = toCell;
+        } else {
+            DarkMatter.format(toCell, size);
+        }
+        return Layout.readForwardRef(fromOrigin);
+    }
+
     private boolean checkDarkMatterRefs = false;
     public void enableDarkMatterRefCheck(boolean b) {
         checkDarkMatterRefs = MaxineVM.isDebug() && b;
     }
 
     @Override
-    final protected void evacuateReachables() {
+    protected void evacuateReachables() {
+        drainSurvivorRanges();
+    }
+
+    /**
+     * Evacuate all the cells reachable from the survivor ranges of this evacuator, until no survivor ranges are left.
+     */
+    final void drainSurvivorRanges() {
         updateSurvivorRanges();
         while (!survivorRanges.isEmpty()) {
             final Pointer start = survivorRanges.start();
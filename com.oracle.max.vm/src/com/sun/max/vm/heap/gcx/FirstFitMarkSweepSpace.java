@@ -24,22 +24,32 @@ package com.sun.max.vm.heap.gcx;
 
 import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionInfo.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionState.*;
 
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
+import com.sun.max.annotate.*;
 import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.heap.*;
 import com.sun.max.vm.heap.HeapScheme.GCRequest;
+import com.sun.max.vm.heap.gcx.GCWorkers.GCTask;
 import com.sun.max.vm.heap.gcx.HeapRegionInfo.Flag;
 import com.sun.max.vm.heap.gcx.rset.*;
 import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
 /**
  * A region-based, mark-sweep heap space, with bump pointer allocation only.
  * Each partially occupied region has a list of addressed ordered free chunks, used to allocate TLAB refills.
  * An overflow allocator avoids refilling too frequently.
+ * <p>
+ * The space is swept serially by default. With {@code -XX:+ParallelSweep}, regions are swept by the {@link GCWorkers}, each with its own
+ * {@link WorkerSweeper}, then redistributed to the allocation lists in address order by the VM operation thread.
+ * Alternatively, the space can be swept lazily (see {@link #sweepLazily(TricolorHeapMarker, boolean)}): only a sample of the regions
+ * are swept during the collection, the others are swept on demand when allocators refill, or by the next collection.
  */
 public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends HeapRegionSweeper implements HeapSpace, RegionProvider {
     /* For simplicity at the moment. Should be able to allocate this in GC's own heap (i.e., the HeapRegionManager's allocator).
@@ -84,11 +94,22 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private HeapRegionList sweepList;
 
+    /**
+     * List of regions the space gave back to its heap account's uncommitted regions when shrinking. These are recommitted first
+     * when growing the space.
+     */
+    private HeapRegionList uncommittedRegions;
+
     /**
      * Total number of regions currently allocated to this heap space.
      */
     private int numRegionsInSpace;
 
+    /**
+     * Number of regions the space is initialized with. The space never shrinks below this.
+     */
+    private int minRegionsInSpace;
+
     /**
      * Maximum number of regions that this space can allocate from the heap account.
      */
@@ -108,6 +129,23 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     final ChunkListAllocator<RegionChunkListRefillManager> tlabAllocator;
 
+    /**
+     * TLAB refill allocators of each NUMA node, indexed by node, when regions are interleaved across NUMA nodes (see {@link HeapRegionManager}).
+     * Each refills from regions local to its node. The allocator of node 0 is the {@link #tlabAllocator}. Null if the heap isn't NUMA-aware.
+     */
+    private ChunkListAllocator<RegionChunkListRefillManager>[] numaTLABAllocators;
+
+    /**
+     * Number of regions handed out to the TLAB allocator of each NUMA node that were local to the node. For statistics only.
+     */
+    private int[] numaLocalRefills;
+
+    /**
+     * Number of regions handed out to the TLAB allocator of each NUMA node that were remote to the node because no local region had free space.
+     * For statistics only.
+     */
+    private int[] numaRemoteRefills;
+
     /**
      * Overflow allocator. Handles direct allocation request and all small overflow of TLABs.
      */
@@ -132,6 +170,129 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private Size minOverflowRefillSize;
 
+    /**
+     * One out of this many regions is swept during the collection when sweeping lazily.
+     * The free space found in these regions is used to estimate the free space of the regions left unswept.
+     */
+    static final int LAZY_SWEEP_SAMPLING_INTERVAL = 8;
+
+    /**
+     * Regions left unswept by a lazy sweep. They are swept on demand by {@link #getAllocatingRegion()} and
+     * {@link #getAllocatingRegion(Size, int)}. Those still unswept at the next collection are passed on to its sweep (see {@link #doBeforeGC()}).
+     */
+    private HeapRegionList lazySweepList;
+
+    /**
+     * Heap marker whose color map the regions of the {@link #lazySweepList} are swept with.
+     * Null if these regions must not be swept on demand, e.g., because a concurrent marking is reusing the color map.
+     */
+    private TricolorHeapMarker lazySweepMarker;
+
+    private boolean lazySweepIsImprecise;
+
+    /**
+     * Estimate of the free space per region left unswept by a lazy sweep.
+     */
+    private Size unsweptRegionFreeSpaceEstimate = Size.zero();
+
+    /**
+     * Sweepers of the GC workers, indexed by worker identifier. Null if the space isn't swept in parallel.
+     * The sweeper of worker 0 sweeps on behalf of the VM operation thread, so as to leave the state of this space's sweeper untouched.
+     */
+    private WorkerSweeper[] workerSweepers;
+
+    /**
+     * Identifiers of the regions swept by the GC workers during a parallel sweep.
+     */
+    private int[] parallelSweepRegions;
+
+    private int numParallelSweepRegions;
+
+    /**
+     * Index in {@link #parallelSweepRegions} of the next region to be claimed by a GC worker.
+     */
+    private volatile int nextParallelSweepRegion;
+
+    private TricolorHeapMarker parallelSweepMarker;
+
+    private boolean parallelSweepIsImprecise;
+
+    @FOLD
+    private static int nextParallelSweepRegionOffset() {
+        return ClassActor.fromJava(FirstFitMarkSweepSpace.class).findLocalInstanceFieldActor("nextParallelSweepRegion").offset();
+    }
+
+    private final GCTask parallelSweepTask = new GCTask() {
+        @Override
+        public void run(int workerID) {
+            final WorkerSweeper sweeper = workerSweepers[workerID];
+            int index = claimParallelSweepRegion();
+            while (index < numParallelSweepRegions) {
+                sweeper.sweep(fromRegionID(parallelSweepRegions[index]), parallelSweepMarker, parallelSweepIsImprecise);
+                index = claimParallelSweepRegion();
+            }
+        }
+    };
+
+    /**
+     * Sweeper used by a GC worker to sweep regions that aren't part of a large object on behalf of the space.
+     * Sweeping a region only updates the region's state and free chunks. It's up to the space to add the region to the appropriate list.
+     */
+    private static final class WorkerSweeper extends HeapRegionSweeper {
+        WorkerSweeper(HeapRegionSweeper sweeper) {
+            super(sweeper);
+        }
+
+        void sweep(HeapRegionInfo rinfo, TricolorHeapMarker heapMarker, boolean doImprecise) {
+            resetSweepingRegion(rinfo);
+            heapMarker.sweepRegion(this, doImprecise);
+            endSweep();
+        }
+
+        @Override
+        public boolean hasNextSweepingRegion() {
+            return false;
+        }
+
+        @Override
+        public void beginSweep() {
+            FatalError.unexpected("Regions must be assigned to worker sweepers");
+        }
+
+        @Override
+        public void endSweep() {
+            setSweptRegionState();
+            // Don't leave addresses of free chunks in the sweeper, as they may be taken for live objects by the next GC.
+            csrHead = null;
+            csrTail = null;
+        }
+
+        @Override
+        public void reachedRightmostLiveRegion() {
+        }
+
+        @Override
+        public Size freeSpaceAfterSweep() {
+            return Size.zero();
+        }
+
+        @Override
+        public void verify(AfterMarkSweepVerifier verifier) {
+        }
+    }
+
+    private int claimParallelSweepRegion() {
+        final Reference thisRef = Reference.fromJava(this);
+        int index;
+        do {
+            index = thisRef.readInt(nextParallelSweepRegionOffset());
+            if (index >= numParallelSweepRegions) {
+                return index;
+            }
+        } while (thisRef.compareAndSwapInt(nextParallelSweepRegionOffset(), index, index + 1) != index);
+        return index;
+    }
+
     /**
      * Indicate whether a size is categorized as large. Request for large size must go to the large object allocator.
      * @param size size in words
@@ -294,7 +455,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
                 if (MaxineVM.isDebug()) {
                     checkForSuspisciousGC(gcCount++);
                 }
-            } while(Heap.collectGarbage()); // Always collect for at least one region.
+            } while(completeSweep() || Heap.collectGarbage()); // Sweep lazily swept regions first, then always collect for at least one region.
             // Not enough freed memory.
             throw outOfMemoryError;
         }
@@ -380,6 +541,8 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         allocationRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
         unavailableRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
         sweepList = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        lazySweepList = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        uncommittedRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
 
         maxRegionsInSpace = numberOfRegions(maxSize);
         FatalError.check(maxRegionsInSpace <= heapAccount.reserve(), "under provisioned heap account");
@@ -391,7 +554,15 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         }
 
         numRegionsInSpace = initialNumberOfRegions;
+        minRegionsInSpace = initialNumberOfRegions;
         minReclaimableSpace = Size.fromInt(freeChunkMinSizeOption.getValue());
+        if (ParallelSweep && GCWorkers.numWorkers() > 1) {
+            workerSweepers = new WorkerSweeper[GCWorkers.numWorkers()];
+            for (int i = 0; i < workerSweepers.length; i++) {
+                workerSweepers[i] = new WorkerSweeper(this);
+            }
+            parallelSweepRegions = new int[maxRegionsInSpace];
+        }
         overflowAllocator.refillManager().setMinRefillSize(minOverflowRefillSize);
         // Set the iterable to the list of committed regions. This is the default. Any exception to this should
         // reset to the committed region list when done.
@@ -407,11 +578,58 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         RegionChunkListRefillManager refillManager = tlabAllocator.refillManager();
         refillManager.setRefillPolicy(minReclaimableSpace);
         refillManager.setMinChunkSize(minReclaimableSpace);
-        // Initialize the tlab allocator with a first region.
+        final int numNumaNodes = theHeapRegionManager().numNumaNodes();
+        if (numNumaNodes > 1) {
+            initializeNumaTLABAllocators(numNumaNodes);
+        }
+        // Initialize the tlab allocator(s) with a first region.
         tlabAllocator.initialize(regionSize, regionSize);
+        if (numaTLABAllocators != null) {
+            for (int node = 1; node < numaTLABAllocators.length; node++) {
+                numaTLABAllocators[node].initialize(regionSize, regionSize);
+            }
+        }
         overflowAllocator.initialize(Address.zero(), Size.zero(), Size.zero());
     }
 
+    // An array of a parameterized type cannot be created directly; every element stored in the raw array is a
+    // ChunkListAllocator<RegionChunkListRefillManager>, so the unchecked conversion is safe.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void initializeNumaTLABAllocators(int numNumaNodes) {
+        numaTLABAllocators = new ChunkListAllocator[numNumaNodes];
+        numaLocalRefills = new int[numNumaNodes];
+        numaRemoteRefills = new int[numNumaNodes];
+        numaTLABAllocators[0] = tlabAllocator;
+        tlabAllocator.refillManager().setNumaNode(0);
+        for (int node = 1; node < numNumaNodes; node++) {
+            final RegionChunkListRefillManager refillManager = new RegionChunkListRefillManager(tlabAllocator.refillManager().deadSpaceListener);
+            refillManager.setRegionProvider(this);
+            refillManager.setNumaNode(node);
+            refillManager.setRefillPolicy(minReclaimableSpace);
+            refillManager.setMinChunkSize(minReclaimableSpace);
+            numaTLABAllocators[node] = new ChunkListAllocator<RegionChunkListRefillManager>(refillManager);
+        }
+    }
+
+    /**
+     * TLAB allocator to refill the TLAB of the current thread from.
+     */
+    @INLINE
+    private ChunkListAllocator<RegionChunkListRefillManager> currentTLABAllocator() {
+        if (numaTLABAllocators == null) {
+            return tlabAllocator;
+        }
+        return numaTLABAllocators[VirtualMemory.currentNumaNode() % numaTLABAllocators.length];
+    }
+
+    private int numTLABAllocators() {
+        return numaTLABAllocators == null ? 1 : numaTLABAllocators.length;
+    }
+
+    private ChunkListAllocator<RegionChunkListRefillManager> tlabAllocator(int index) {
+        return numaTLABAllocators == null ? tlabAllocator : numaTLABAllocators[index];
+    }
+
     public Pointer allocate(Size size) {
         if (isLarge(size)) {
             return allocateLargeCleared(size);
@@ -420,12 +638,14 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public Pointer allocateTLAB(Size size) {
-        return tlabAllocator.allocateTLAB(size);
+        return currentTLABAllocator().allocateTLAB(size);
     }
 
     public void retireTLAB(Pointer start, Size size) {
-        if (tlabAllocator.retireTop(start, size)) {
-            return;
+        for (int i = 0; i < numTLABAllocators(); i++) {
+            if (tlabAllocator(i).retireTop(start, size)) {
+                return;
+            }
         }
         if (size.lessThan(minRetiredFreeChunkSize())) {
             DarkMatter.format(start, size);
@@ -457,7 +677,12 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public Size freeSpace() {
-        return allocationRegionsFreeSpace.plus(tlabAllocator.refillManager.freeSpace().plus(tlabAllocator.freeSpace().plus(overflowAllocator.freeSpace())));
+        Size freeSpace = allocationRegionsFreeSpace.plus(unsweptRegionFreeSpaceEstimate.times(lazySweepList.size())).plus(overflowAllocator.freeSpace());
+        for (int i = 0; i < numTLABAllocators(); i++) {
+            final ChunkListAllocator<RegionChunkListRefillManager> allocator = tlabAllocator(i);
+            freeSpace = freeSpace.plus(allocator.refillManager.freeSpace().plus(allocator.freeSpace()));
+        }
+        return freeSpace;
     }
 
     public Size usedSpace() {
@@ -465,9 +690,17 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public void doBeforeGC() {
+        // Regions still left to the lazy sweeper are swept along with the others once the heap is marked again.
+        // Mutators haven't allocated in them, so the dead objects they hold are unreachable and stay unmarked.
+        sweepList.appendAndClear(lazySweepList);
+        lazySweepMarker = null;
+        unsweptRegionFreeSpaceEstimate = Size.zero();
         overflowAllocator.doBeforeGC();
-        tlabAllocator.doBeforeGC();
-        FatalError.check(tlabAllocator.refillManager.allocatingRegion() == INVALID_REGION_ID, "TLAB allocating region must have been retired");
+        for (int i = 0; i < numTLABAllocators(); i++) {
+            final ChunkListAllocator<RegionChunkListRefillManager> allocator = tlabAllocator(i);
+            allocator.doBeforeGC();
+            FatalError.check(allocator.refillManager.allocatingRegion() == INVALID_REGION_ID, "TLAB allocating region must have been retired");
+        }
         // Move all regions to the sweep list. This tracks all the regions used by the space.
         sweepList.appendAndClear(unavailableRegions);
         sweepList.appendAndClear(allocationRegions);
@@ -484,6 +717,15 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         heapMarker.markAll(regionsRangeIterable);
     }
 
+    /**
+     * Complete a concurrent marking of the space.
+     * @see TricolorHeapMarker#remark(HeapRegionRangeIterable)
+     */
+    public void remark(TricolorHeapMarker heapMarker) {
+        regionsRangeIterable.reset();
+        heapMarker.remark(regionsRangeIterable);
+    }
+
 
     public void sweep(TricolorHeapMarker heapMarker, boolean doImprecise) {
         if (MaxineVM.isDebug()) {
@@ -491,10 +733,169 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         }
         allocationRegionsFreeSpace = Size.zero();
         csrIsLiveMultiRegionObjectTail = false;
-        heapMarker.sweep(this, doImprecise);
+        if (workerSweepers != null && GCWorkers.numActiveWorkers() > 1) {
+            sweepInParallel(heapMarker, doImprecise);
+        } else {
+            heapMarker.sweep(this, doImprecise);
+        }
         FatalError.check(sweepList.isEmpty(), "Sweeping list must be empty");
     }
 
+    /**
+     * Sweep the regions of the space with the GC workers.
+     * Regions that are part of a large object are swept by the VM operation thread, as they must be swept in sequence. The other regions are claimed
+     * one at a time by the workers. Swept regions are then added to the allocation lists in address order.
+     */
+    private void sweepInParallel(TricolorHeapMarker heapMarker, boolean doImprecise) {
+        numParallelSweepRegions = 0;
+        regionInfoIterable.initialize(sweepList);
+        regionInfoIterable.reset();
+        for (HeapRegionInfo rinfo : regionInfoIterable) {
+            if (!rinfo.isLarge()) {
+                parallelSweepRegions[numParallelSweepRegions++] = rinfo.toRegionID();
+            }
+        }
+        parallelSweepMarker = heapMarker;
+        parallelSweepIsImprecise = doImprecise;
+        nextParallelSweepRegion = 0;
+        GCWorkers.run(parallelSweepTask);
+        parallelSweepMarker = null;
+
+        while (hasNextSweepingRegion()) {
+            final HeapRegionInfo rinfo = fromRegionID(sweepList.head());
+            if (rinfo.isLarge()) {
+                beginSweep();
+                heapMarker.sweepRegion(this, doImprecise);
+                endSweep();
+            } else {
+                sweepList.removeHead();
+                addSweptRegion(rinfo);
+            }
+        }
+        reachedRightmostLiveRegion();
+    }
+
+    /**
+     * Add a region swept by this space or a {@link WorkerSweeper}, or returned by a {@link RegionCompactor}, to the list matching its free space.
+     */
+    private void addSweptRegion(HeapRegionInfo rinfo) {
+        final int regionID = rinfo.toRegionID();
+        if (rinfo.isEmpty()) {
+            allocationRegions.append(regionID);
+            allocationRegionsFreeSpace =  allocationRegionsFreeSpace.plus(regionSizeInBytes);
+        } else if (rinfo.hasFreeChunks()) {
+            final int freeBytes = rinfo.freeBytesInChunks();
+            allocationRegionsFreeSpace =  allocationRegionsFreeSpace.plus(freeBytes);
+            if (rinfo.numFreeChunks() == 1 && minOverflowRefillSize.lessEqual(freeBytes)) {
+                allocationRegions.append(regionID);
+            } else {
+                tlabAllocationRegions.append(regionID);
+            }
+        } else {
+            unavailableRegions.append(regionID);
+        }
+    }
+
+    /**
+     * Sweep the space lazily. Regions that are part of a large object, and one out of {@value #LAZY_SWEEP_SAMPLING_INTERVAL} other regions are
+     * swept immediately. The others are left in the {@link #lazySweepList} and are swept when allocators run out of regions to refill from,
+     * or by the sweep of the next collection. The color map of the heap marker must be left untouched while the regions are swept on demand
+     * (see {@link #suspendLazySweep()}).
+     */
+    public void sweepLazily(TricolorHeapMarker heapMarker, boolean doImprecise) {
+        if (MaxineVM.isDebug()) {
+            sweepList.checkIsAddressOrdered();
+        }
+        FatalError.check(lazySweepList.isEmpty(), "Unswept regions must have been passed on to the sweep list");
+        allocationRegionsFreeSpace = Size.zero();
+        csrIsLiveMultiRegionObjectTail = false;
+        int numRegions = 0;
+        int numSampledRegions = 0;
+        Size sampledFreeSpace = Size.zero();
+        while (hasNextSweepingRegion()) {
+            final HeapRegionInfo rinfo = fromRegionID(sweepList.head());
+            if (rinfo.isLarge()) {
+                beginSweep();
+                heapMarker.sweepRegion(this, doImprecise);
+                endSweep();
+            } else if (numRegions++ % LAZY_SWEEP_SAMPLING_INTERVAL == 0) {
+                final Size freeSpaceBefore = allocationRegionsFreeSpace;
+                beginSweep();
+                heapMarker.sweepRegion(this, doImprecise);
+                endSweep();
+                sampledFreeSpace = sampledFreeSpace.plus(allocationRegionsFreeSpace.minus(freeSpaceBefore));
+                numSampledRegions++;
+            } else {
+                lazySweepList.append(sweepList.removeHead());
+            }
+        }
+        reachedRightmostLiveRegion();
+        lazySweepMarker = heapMarker;
+        lazySweepIsImprecise = doImprecise;
+        unsweptRegionFreeSpaceEstimate = numSampledRegions == 0 ? Size.zero() : sampledFreeSpace.dividedBy(numSampledRegions);
+    }
+
+    /**
+     * Sweep the next region left to the lazy sweeper and add it to the list matching its free space.
+     * Mutators call this when refilling allocators. Safepoints are disabled while the region is swept: the region is in no
+     * list until it is swept, so a GC or VM operation must not run {@link #completeSweep()} or {@link #doBeforeGC()} meanwhile.
+     * @return the region info of the swept region, or {@code null} if there was no region left to sweep (e.g., because a GC
+     * took over the unswept regions since the caller last checked)
+     */
+    private HeapRegionInfo sweepNextUnsweptRegion() {
+        final boolean wasDisabled = SafepointPoll.disable();
+        try {
+            if (!canSweepLazily()) {
+                return null;
+            }
+            final HeapRegionInfo rinfo = fromRegionID(lazySweepList.removeHead());
+            resetSweepingRegion(rinfo);
+            lazySweepMarker.sweepRegion(this, lazySweepIsImprecise);
+            endSweep();
+            csrHead = null;
+            csrTail = null;
+            return rinfo;
+        } finally {
+            if (!wasDisabled) {
+                SafepointPoll.enable();
+            }
+        }
+    }
+
+    /**
+     * Indicates whether some regions are left unswept and can be swept on demand.
+     */
+    private boolean canSweepLazily() {
+        return lazySweepMarker != null && !lazySweepList.isEmpty();
+    }
+
+    /**
+     * Stop sweeping on demand the regions left unswept. Must be called before the color map used for sweeping lazily is modified
+     * outside of a collection, i.e., when starting a concurrent marking. The regions are then swept by the next collection.
+     */
+    public void suspendLazySweep() {
+        lazySweepMarker = null;
+    }
+
+    /**
+     * Sweep all the regions left to the lazy sweeper, if any and if the lazy sweep isn't {@linkplain #suspendLazySweep() suspended}.
+     * @return true if any region was swept
+     */
+    public boolean completeSweep() {
+        if (!canSweepLazily()) {
+            return false;
+        }
+        while (!lazySweepList.isEmpty()) {
+            sweepNextUnsweptRegion();
+        }
+        // Regions swept on demand were appended out of address order.
+        allocationRegions.sort();
+        tlabAllocationRegions.sort();
+        unavailableRegions.sort();
+        lazySweepMarker = null;
+        return true;
+    }
+
     private HeapRegionInfo nextRegionToSweep() {
         return RegionTable.theRegionTable().regionInfo(sweepList.removeHead());
     }
@@ -595,39 +996,8 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
             }
             csrIsMultiRegionObjectHead = false;
         } else {
-            if (csrFreeBytes == 0) {
-                if (csrIsLiveMultiRegionObjectTail) {
-                    // FIXME: is this true if the large object was already dead ?
-                    LARGE_FULL_TAIL.setState(csrInfo);
-                    csrIsLiveMultiRegionObjectTail = false;
-                }  else {
-                    FULL_REGION.setState(csrInfo);
-                }
-                unavailableRegions.append(csrInfo.toRegionID());
-            } else {
-                if (csrFreeBytes == regionSizeInBytes) {
-                    EMPTY_REGION.setState(csrInfo);
-                    HeapFreeChunk.format(csrInfo.regionStart(), regionSizeInBytes);
-                    allocationRegions.append(csrInfo.toRegionID());
-                    allocationRegionsFreeSpace =  allocationRegionsFreeSpace.plus(regionSizeInBytes);
-                } else {
-                    if (csrIsLiveMultiRegionObjectTail) {
-                        LARGE_TAIL.setState(csrInfo);
-                        csrIsLiveMultiRegionObjectTail = false;
-                    } else {
-                        FREE_CHUNKS_REGION.setState(csrInfo);
-                    }
-                    allocationRegionsFreeSpace =  allocationRegionsFreeSpace.plus(csrFreeBytes);
-                    if (csrFreeChunks == 1 && minOverflowRefillSize.lessEqual(csrFreeBytes)) {
-                        csrInfo.setFreeChunks(HeapFreeChunk.fromHeapFreeChunk(csrHead), csrFreeBytes,  csrFreeChunks);
-                        allocationRegions.append(csrInfo.toRegionID());
-                    } else {
-                        FatalError.check(csrFreeBytes > 0 && (csrFreeChunks > 1 || minOverflowRefillSize.greaterThan(csrFreeBytes)) && csrHead != null, "unknown state for a swept region");
-                        csrInfo.setFreeChunks(HeapFreeChunk.fromHeapFreeChunk(csrHead),  csrFreeBytes, csrFreeChunks);
-                        tlabAllocationRegions.append(csrInfo.toRegionID());
-                    }
-                }
-            }
+            setSweptRegionState();
+            addSweptRegion(csrInfo);
             if (TraceSweep) {
                 traceSweptRegion();
             }
@@ -663,14 +1033,56 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         if (numRegions == 0) {
             numRegions = 1;
         }
-        int allocated = heapAccount.allocate(numRegions, allocationRegions, false, true, true, regionTag);
-        return Size.fromInt(allocated).shiftedLeft(log2RegionSizeInBytes);
+        if (numRegions > maxRegionsInSpace - numRegionsInSpace) {
+            numRegions = maxRegionsInSpace - numRegionsInSpace;
+        }
+        int allocated = 0;
+        // Recommit first the regions given back when shrinking.
+        while (allocated < numRegions && !uncommittedRegions.isEmpty()) {
+            final int regionID = uncommittedRegions.removeHead();
+            heapAccount.commit(regionID);
+            final HeapRegionInfo rinfo = HeapRegionInfo.fromRegionID(regionID);
+            EMPTY_REGION.setState(rinfo);
+            HeapFreeChunk.format(rinfo.regionStart(), regionSizeInBytes);
+            rinfo.resetOccupancy();
+            allocationRegions.append(regionID);
+            allocated++;
+        }
+        if (allocated < numRegions) {
+            allocated += heapAccount.allocate(numRegions - allocated, allocationRegions, false, true, true, regionTag);
+        }
+        numRegionsInSpace += allocated;
+        final Size growth = Size.fromInt(allocated).shiftedLeft(log2RegionSizeInBytes);
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(growth);
+        return growth;
     }
 
+    /**
+     * Shrink the space by uncommitting empty regions, thus returning their memory to the OS. The regions stay in the space's heap account
+     * and are recommitted first when the space grows again. Only regions available for allocation and entirely free are given back, and
+     * the space never shrinks below its initial size. Must be called when the space is swept.
+     *
+     * @param delta number of bytes to shrink the space by, rounded up to a number of regions
+     * @return the effective shrinkage
+     */
     @Override
     public Size decreaseSize(Size delta) {
-        // TODO
-        return Size.zero();
+        int numRegions = delta.roundedUpBy(regionSizeInBytes).unsignedShiftedRight(log2RegionSizeInBytes).toInt();
+        if (numRegions > numRegionsInSpace - minRegionsInSpace) {
+            numRegions = numRegionsInSpace - minRegionsInSpace;
+        }
+        int released = 0;
+        while (released < numRegions) {
+            final int regionID = removeEmptyRegion();
+            if (regionID == INVALID_REGION_ID) {
+                break;
+            }
+            heapAccount.uncommit(regionID);
+            uncommittedRegions.append(regionID);
+            released++;
+        }
+        numRegionsInSpace -= released;
+        return Size.fromInt(released).shiftedLeft(log2RegionSizeInBytes);
     }
 
     private void iterateRegions(CellRangeVisitor visitor) {
@@ -693,7 +1105,9 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     @Override
     public void visit(CellRangeVisitor visitor) {
         // Make allocating regions iterable first.
-        tlabAllocator.unsafeMakeParsable();
+        for (int i = 0; i < numTLABAllocators(); i++) {
+            tlabAllocator(i).unsafeMakeParsable();
+        }
         overflowAllocator.unsafeMakeParsable();
         regionsRangeIterable.addMatchingFlags(Flag.IS_ALLOCATING);
         iterateRegions(visitor);
@@ -703,18 +1117,23 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
 
     private void verifyHeapRegionsBalance() {
         int balance = 0;
-        balance += tlabAllocator.refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
+        for (int i = 0; i < numTLABAllocators(); i++) {
+            balance += tlabAllocator(i).refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
+        }
         // balance += currentOverflowAllocatingRegion == INVALID_REGION_ID ? 0 : 1;
         balance += overflowAllocator.refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
 
         balance += tlabAllocationRegions.size();
         balance += allocationRegions.size();
         balance += unavailableRegions.size();
+        balance += lazySweepList.size();
         FatalError.check(balance == numRegionsInSpace, "incorrect balance of regions in space");
     }
 
     @Override
     public void verify(AfterMarkSweepVerifier verifier) {
+        // Regions left to the lazy sweeper may hold dead objects with dangling references.
+        completeSweep();
         verifyHeapRegionsBalance();
         tlabAllocationRegions.checkIsAddressOrdered();
         allocationRegions.checkIsAddressOrdered();
@@ -734,39 +1153,210 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public int getAllocatingRegion() {
+        while (tlabAllocationRegions.isEmpty() && allocationRegions.isEmpty() && canSweepLazily()) {
+            sweepNextUnsweptRegion();
+        }
         final int regionID = tlabAllocationRegionList().removeHead();
         if (regionID != INVALID_REGION_ID) {
-            final HeapRegionInfo regionInfo = fromRegionID(regionID);
-            final int numFreeBytes = regionInfo.isEmpty() ?  regionSizeInBytes : regionInfo.freeBytesInChunks();
-            allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(numFreeBytes);
+            takeTLABAllocatingRegion(fromRegionID(regionID));
+        }
+        return regionID;
+    }
+
+    private void takeTLABAllocatingRegion(HeapRegionInfo regionInfo) {
+        final int numFreeBytes = regionInfo.isEmpty() ?  regionSizeInBytes : regionInfo.freeBytesInChunks();
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(numFreeBytes);
+    }
+
+    public int getAllocatingRegion(int numaNode) {
+        while (tlabAllocationRegions.isEmpty() && allocationRegions.isEmpty() && canSweepLazily()) {
+            sweepNextUnsweptRegion();
+        }
+        // Regions are interleaved across nodes and lists are address-ordered, so a local region is usually found within the first few regions of the list.
+        regionInfoIterable.initialize(tlabAllocationRegionList());
+        regionInfoIterable.reset();
+        for (HeapRegionInfo regionInfo : regionInfoIterable) {
+            if (theHeapRegionManager().regionNode(regionInfo.toRegionID()) == numaNode) {
+                regionInfoIterable.remove();
+                takeTLABAllocatingRegion(regionInfo);
+                numaLocalRefills[numaNode]++;
+                return regionInfo.toRegionID();
+            }
+        }
+        final int regionID = getAllocatingRegion();
+        if (regionID != INVALID_REGION_ID) {
+            numaRemoteRefills[numaNode]++;
         }
         return regionID;
     }
 
+    /**
+     * Report the NUMA statistics of the space: for each node, the number of unallocated regions local to the node, and the number of
+     * node-local and remote regions handed out to the node's TLAB allocator.
+     */
+    public void reportNumaStatistics() {
+        if (numaTLABAllocators == null) {
+            return;
+        }
+        final boolean lockDisabledSafepoints = Log.lock();
+        for (int node = 0; node < numaTLABAllocators.length; node++) {
+            Log.print("NUMA node ");
+            Log.print(node);
+            Log.print(": free regions=");
+            Log.print(theHeapRegionManager().numFreeRegions(node));
+            Log.print(", local TLAB refills=");
+            Log.print(numaLocalRefills[node]);
+            Log.print(", remote TLAB refills=");
+            Log.println(numaRemoteRefills[node]);
+        }
+        Log.unlock(lockDisabledSafepoints);
+    }
+
     public int getAllocatingRegion(Size minFreeBytes, int maxFreeChunks) {
         final int minFreeSpace = minFreeBytes.toInt();
         regionInfoIterable.initialize(allocationRegions);
         regionInfoIterable.reset();
         for (HeapRegionInfo regionInfo : regionInfoIterable) {
-            if (regionInfo.isEmpty()) {
-                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
-            } else if (regionInfo.freeBytesInChunks() >= minFreeSpace && regionInfo.numFreeChunks() == maxFreeChunks) {
-                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionInfo.freeBytesInChunks());
-            } else {
-                continue;
+            if (takeAllocatingRegion(regionInfo, minFreeSpace, maxFreeChunks)) {
+                // Found a refill.
+                regionInfoIterable.remove();
+                return  regionInfo.toRegionID();
+            }
+        }
+        while (canSweepLazily()) {
+            final HeapRegionInfo regionInfo = sweepNextUnsweptRegion();
+            if (regionInfo == null) {
+                break;
+            }
+            final int regionID = regionInfo.toRegionID();
+            if (allocationRegions.tail() == regionID && takeAllocatingRegion(regionInfo, minFreeSpace, maxFreeChunks)) {
+                allocationRegions.remove(regionID);
+                return regionID;
             }
-            // Found a refill.
-            regionInfoIterable.remove();
-            return  regionInfo.toRegionID();
         }
         return INVALID_REGION_ID;
     }
 
+    private boolean takeAllocatingRegion(HeapRegionInfo regionInfo, int minFreeSpace, int maxFreeChunks) {
+        if (regionInfo.isEmpty()) {
+            allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
+        } else if (regionInfo.freeBytesInChunks() >= minFreeSpace && regionInfo.numFreeChunks() == maxFreeChunks) {
+            allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionInfo.freeBytesInChunks());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
 
     public Size minRetiredFreeChunkSize() {
         return minReclaimableSpace;
     }
 
+    /**
+     * Live bytes of the regions selected so far by {@link #removeSparseRegions(int, long, int[])}.
+     */
+    private long sparseRegionsLiveBytes;
+
+    /**
+     * Remove from the allocation lists the regions with at least the specified amount of free space, so that they can be evacuated by a compaction.
+     * Regions that are part of a large object are never selected.
+     *
+     * @param minFreeBytes minimum free space of a selected region
+     * @param maxLiveBytes maximum total amount of live data of the selected regions
+     * @param selected array where the identifiers of the selected regions are stored
+     * @return the number of selected regions
+     */
+    int removeSparseRegions(int minFreeBytes, long maxLiveBytes, int[] selected) {
+        sparseRegionsLiveBytes = 0L;
+        final int numSelected = removeSparseRegions(tlabAllocationRegions, minFreeBytes, maxLiveBytes, selected, 0);
+        return removeSparseRegions(allocationRegions, minFreeBytes, maxLiveBytes, selected, numSelected);
+    }
+
+    private int removeSparseRegions(HeapRegionList regionList, int minFreeBytes, long maxLiveBytes, int[] selected, int numSelected) {
+        regionInfoIterable.initialize(regionList);
+        regionInfoIterable.reset();
+        for (HeapRegionInfo rinfo : regionInfoIterable) {
+            if (rinfo.hasFreeChunks() && !rinfo.isLarge() && rinfo.freeBytesInChunks() >= minFreeBytes) {
+                final int liveBytes = regionSizeInBytes - rinfo.freeBytesInChunks();
+                if (sparseRegionsLiveBytes + liveBytes <= maxLiveBytes) {
+                    sparseRegionsLiveBytes += liveBytes;
+                    allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(rinfo.freeBytesInChunks());
+                    regionInfoIterable.remove();
+                    selected[numSelected++] = rinfo.toRegionID();
+                }
+            }
+        }
+        return numSelected;
+    }
+
+    /**
+     * Return to the allocation lists regions removed by {@link #removeSparseRegions(int, long, int[])} that won't be evacuated after all.
+     */
+    void restoreSparseRegions(int[] regionIDs, int numRegions) {
+        for (int i = 0; i < numRegions; i++) {
+            addSweptRegion(HeapRegionInfo.fromRegionID(regionIDs[i]));
+        }
+        sortRegionLists();
+    }
+
+    /**
+     * Remove an empty region from the allocation lists for a compaction to evacuate cells to.
+     * @return a region identifier, or {@link HeapRegionConstants#INVALID_REGION_ID} if the space has no empty regions
+     */
+    int removeEmptyRegion() {
+        regionInfoIterable.initialize(allocationRegions);
+        regionInfoIterable.reset();
+        for (HeapRegionInfo rinfo : regionInfoIterable) {
+            if (rinfo.isEmpty()) {
+                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
+                regionInfoIterable.remove();
+                return rinfo.toRegionID();
+            }
+        }
+        return INVALID_REGION_ID;
+    }
+
+    /**
+     * Return to the space a region a compaction evacuated cells to. The space left after the last evacuated cell is reclaimed.
+     * @param rinfo the region
+     * @param top end of the last cell evacuated in the region
+     */
+    void addCompactionDestination(HeapRegionInfo rinfo, Address top) {
+        final Address end = rinfo.regionStart().plus(regionSizeInBytes);
+        final Size spaceLeft = end.minus(top).asSize();
+        if (spaceLeft.lessThan(minReclaimableSpace)) {
+            if (!spaceLeft.isZero()) {
+                DarkMatter.format(top, spaceLeft);
+            }
+            FULL_REGION.setState(rinfo);
+        } else {
+            HeapFreeChunk.format(top, spaceLeft);
+            FREE_CHUNKS_REGION.setState(rinfo);
+            rinfo.setFreeChunks(top, spaceLeft, 1);
+        }
+        addSweptRegion(rinfo);
+    }
+
+    /**
+     * Return to the space a region whose live cells were all evacuated by a compaction.
+     */
+    void addEvacuatedRegion(HeapRegionInfo rinfo) {
+        EMPTY_REGION.setState(rinfo);
+        HeapFreeChunk.format(rinfo.regionStart(), regionSizeInBytes);
+        rinfo.resetOccupancy();
+        addSweptRegion(rinfo);
+    }
+
+    /**
+     * Restore the address order of the region lists after regions were returned by a compaction.
+     */
+    void sortRegionLists() {
+        allocationRegions.sort();
+        tlabAllocationRegions.sort();
+        unavailableRegions.sort();
+    }
+
     @Override
     public SpaceBounds bounds() {
         return bounds;
@@ -38,6 +38,9 @@ import com.sun.max.vm.runtime.*;
  * Methods for allocating individual unit or contiguous ranges are provided.
  * Allocating a region means the range of virtual memory addresses corresponding to the region are reserved.
  * In order to use them, the underlying virtual memory needs to be committed.
+ * <p>
+ * On NUMA platforms, regions can be interleaved across NUMA nodes: region {@code i} is then local to node {@code i % numNodes}, and the memory of
+ * a region is bound to its node when committed. As regions are allocated in address order, the allocated regions stay balanced across nodes.
  */
 class FixedSizeRegionAllocator {
 
@@ -240,6 +243,17 @@ class FixedSizeRegionAllocator {
      */
     private int highestAllocated;
 
+    /**
+     * Number of NUMA nodes regions are interleaved across. 1 if regions aren't bound to NUMA nodes.
+     */
+    @CONSTANT_WHEN_NOT_ZERO
+    private int numNodes = 1;
+
+    /**
+     * Number of regions that aren't allocated, per NUMA node. Only maintained if regions are interleaved across several nodes.
+     */
+    private int[] numFreeRegionsPerNode;
+
     FixedSizeRegionAllocator(String name) {
         backingStorage = new MemoryRegion(name);
         allocated = new RegionBitSet();
@@ -257,8 +271,9 @@ class FixedSizeRegionAllocator {
      * @param start address to the first byte of backing storage for the allocator
      * @param numRegions the size of the regions. Must be a multiple of the platform's page size.
      * @param numPreCommitted amount of space already allocated from the start of the backing storage space.
+     * @param numNodes number of NUMA nodes to interleave regions across, 1 to not bind regions to NUMA nodes
      */
-    void initialize(Address start, int numRegions, int numPreCommitted) {
+    void initialize(Address start, int numRegions, int numPreCommitted, int numNodes) {
         FatalError.check(backingStorage.start().isZero(), "Can only be initialized once");
         final int numWordsPerBitSet = 1 + (numRegions >> RegionBitSet.LOG2_BITS_PER_WORD);
         numFreeRegions = numRegions;
@@ -278,6 +293,46 @@ class FixedSizeRegionAllocator {
             committedSize = residentRegions;
             numFreeRegions -= residentRegions;
         }
+        if (numNodes > 1) {
+            this.numNodes = numNodes;
+            numFreeRegionsPerNode = new int[numNodes];
+            for (int regionId = residentRegions; regionId < numRegions; regionId++) {
+                numFreeRegionsPerNode[regionNode(regionId)]++;
+            }
+        }
+    }
+
+    /**
+     * Number of NUMA nodes regions are interleaved across.
+     */
+    int numNodes() {
+        return numNodes;
+    }
+
+    /**
+     * NUMA node the memory of a region is bound to.
+     * @param regionId a region identifier
+     * @return a node number
+     */
+    @INLINE
+    final int regionNode(int regionId) {
+        return regionId % numNodes;
+    }
+
+    /**
+     * Number of regions local to a NUMA node that aren't allocated.
+     */
+    int numFreeRegions(int node) {
+        return numFreeRegionsPerNode == null ? numFreeRegions : numFreeRegionsPerNode[node];
+    }
+
+    private void updateFreeRegionsPerNode(int firstRegionId, int numRegions, int delta) {
+        if (numFreeRegionsPerNode != null) {
+            final int end = firstRegionId + numRegions;
+            for (int regionId = firstRegionId; regionId < end; regionId++) {
+                numFreeRegionsPerNode[regionNode(regionId)] += delta;
+            }
+        }
     }
 
     boolean contains(Address address) {
@@ -319,6 +374,7 @@ class FixedSizeRegionAllocator {
         }
         numFreeRegions--;
         allocated.set(result);
+        updateFreeRegionsPerNode(result, 1, -1);
         return result;
     }
 
@@ -341,6 +397,7 @@ class FixedSizeRegionAllocator {
         }
         allocated.set(begin, end);
         numFreeRegions -= numAllocated;
+        updateFreeRegionsPerNode(begin, numAllocated, -1);
         return RegionRange.from(begin, numAllocated);
     }
 
@@ -381,6 +438,7 @@ class FixedSizeRegionAllocator {
         // Set bits in allocated set.
         allocated.set(begin, end);
         numFreeRegions -= numRegions;
+        updateFreeRegionsPerNode(begin, numRegions, -1);
         return begin;
     }
 
@@ -401,6 +459,8 @@ class FixedSizeRegionAllocator {
         }
         final int end = firstRegionId + numRegions;
         allocated.clear(firstRegionId, end);
+        numFreeRegions += numRegions;
+        updateFreeRegionsPerNode(firstRegionId, numRegions, 1);
         if (highestAllocated == (end - 1)) {
             highestAllocated = allocated.previousSetBit(firstRegionId);
         }
@@ -418,16 +478,33 @@ class FixedSizeRegionAllocator {
         if (VirtualMemory.commitMemory(regionStart(firstRegionId), size, VirtualMemory.Type.HEAP)) {
             committed.set(firstRegionId, firstRegionId + numRegions);
             committedSize += numRegions;
+            if (numNodes > 1) {
+                bindToNumaNodes(firstRegionId, numRegions);
+            }
             return true;
         }
         return false;
     }
 
+    /**
+     * Bind the memory of freshly committed regions to their NUMA node. Physical pages are only allocated on first touch, so this
+     * must be done before the regions are used.
+     */
+    private void bindToNumaNodes(int firstRegionId, int numRegions) {
+        final Size regionSize = Size.fromInt(regionSizeInBytes);
+        final int end = firstRegionId + numRegions;
+        for (int regionId = firstRegionId; regionId < end; regionId++) {
+            // Failing to bind only costs locality. Keep going.
+            VirtualMemory.bindToNumaNode(validRegionStart(regionId), regionSize, regionNode(regionId));
+        }
+    }
+
     synchronized boolean uncommit(int firstRegionId, int numRegions) {
         if (isValidCommittedRange(firstRegionId, numRegions)) {
             final Size size = Size.fromInt(numRegions).shiftedLeft(log2RegionSizeInBytes);
             if (VirtualMemory.uncommitMemory(regionStart(firstRegionId), size, VirtualMemory.Type.HEAP)) {
                 committed.clear(firstRegionId, firstRegionId + numRegions);
+                committedSize -= numRegions;
                 return true;
             }
         }
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A gang of GC worker threads that assist the {@link VmOperationThread} with the parallel phases of a garbage collection.
+ * <p>
+ * Workers are started at VM startup and wait on a VM lock in between GCs. They are created in immortal memory, never allocate,
+ * and are flagged as {@linkplain VmThread#isGCWorkerThread() GC worker threads} so that {@link GCOperation}s neither freeze them
+ * nor scan their stacks for roots. A {@link GCTask} submitted via {@link #run(GCTask)} is executed by every worker
+ * and by the VM operation thread itself, which always acts as worker 0. The method returns once all workers have completed the task.
+ * <p>
+ * The number of workers is controlled by the {@code -XX:ParallelGCThreads} option. With the default value of 0, no worker threads are
+ * started and tasks are run by the VM operation thread alone.
+ */
+public final class GCWorkers {
+    static int ParallelGCThreads = 0;
+    static boolean TraceGCWorkers = false;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "ParallelGCThreads", GCWorkers.class,
+            "Number of GC worker threads assisting the VM operation thread during parallel GC phases (0 for serial GC)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceGCWorkers", GCWorkers.class, "Trace dispatching of tasks to GC worker threads", Phase.PRISTINE);
+    }
+
+    /**
+     * A unit of GC work executed in parallel by all the workers of the gang.
+     */
+    public abstract static class GCTask {
+        /**
+         * Run the task on behalf of the specified worker.
+         * @param workerID identifier of the worker running the task, between 0 and {@link GCWorkers#numWorkers()} - 1.
+         * Worker 0 is always the VM operation thread.
+         */
+        public abstract void run(int workerID);
+    }
+
+    /**
+     * Lock used both to dispatch tasks to workers and to wait for their completion.
+     */
+    private static final Object LOCK = JavaMonitorManager.newVmLock("GC_WORKERS_LOCK");
+
+    private static GCWorkerThread[] workers;
+
+    /**
+     * Task currently dispatched to the workers.
+     */
+    private static GCTask currentTask;
+
+    /**
+     * Incremented every time a new task is dispatched. Used by workers to tell a new task from the one they just completed.
+     */
+    private static int taskEpoch;
+
+    /**
+     * Number of worker threads that haven't completed the current task yet.
+     */
+    private static int pendingWorkers;
+
+    private GCWorkers() {
+    }
+
+    /**
+     * Number of requested parallel GC workers, including the VM operation thread.
+     * This value is valid once PRISTINE options are parsed, i.e., before the worker threads are actually started,
+     * so that per-worker GC data structures can be sized when the heap scheme allocates its storage.
+     */
+    public static int numWorkers() {
+        return ParallelGCThreads > 0 ? ParallelGCThreads + 1 : 1;
+    }
+
+    /**
+     * Number of workers taking part in a task submitted via {@link #run(GCTask)}, including the VM operation thread.
+     */
+    public static int numActiveWorkers() {
+        return workers == null ? 1 : workers.length + 1;
+    }
+
+    /**
+     * Indicates whether parallel GC was requested.
+     */
+    public static boolean isParallel() {
+        return ParallelGCThreads > 0;
+    }
+
+    /**
+     * Start the worker threads. Called once at VM startup, once the VM operation thread is running.
+     */
+    static void start() {
+        if (!isParallel() || workers != null) {
+            return;
+        }
+        // The threads and their VmThread are allocated in immortal memory as workers run while the heap is being collected.
+        Heap.enableImmortalMemoryAllocation();
+        try {
+            workers = new GCWorkerThread[ParallelGCThreads];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new GCWorkerThread(i + 1);
+                workers[i].start();
+            }
+        } finally {
+            Heap.disableImmortalMemoryAllocation();
+        }
+    }
+
+    /**
+     * Run a task on all the GC workers. Must be called by the VM operation thread.
+     * Returns once every worker has completed the task.
+     *
+     * @param task the task to run
+     */
+    public static void run(GCTask task) {
+        FatalError.check(VmThread.current().isVmOperationThread(), "GC tasks must be submitted by the VM operation thread");
+        if (workers == null) {
+            task.run(0);
+            return;
+        }
+        synchronized (LOCK) {
+            currentTask = task;
+            pendingWorkers = workers.length;
+            taskEpoch++;
+            if (TraceGCWorkers) {
+                Log.print("GCWorkers: dispatch task #");
+                Log.println(taskEpoch);
+            }
+            LOCK.notifyAll();
+        }
+        task.run(0);
+        synchronized (LOCK) {
+            while (pendingWorkers > 0) {
+                try {
+                    LOCK.wait();
+                } catch (InterruptedException e) {
+                }
+            }
+            currentTask = null;
+        }
+    }
+
+    static final class GCWorkerThread extends Thread {
+        final int workerID;
+
+        GCWorkerThread(int workerID) {
+            super(VmThread.systemThreadGroup, "GCWorker-" + workerID);
+            this.workerID = workerID;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            synchronized (VmThreadMap.THREAD_LOCK) {
+                // GC operations hold the thread lock for their whole duration, so the worker can't change status mid-GC.
+                VmThread.current().setAsGCWorkerThread();
+            }
+            // Workers must never allocate: they run while the heap is being collected.
+            Heap.disableAllocationForCurrentThread();
+            int lastEpoch = 0;
+            while (true) {
+                GCTask task;
+                synchronized (LOCK) {
+                    while (taskEpoch == lastEpoch) {
+                        try {
+                            LOCK.wait();
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                    lastEpoch = taskEpoch;
+                    task = currentTask;
+                }
+                task.run(workerID);
+                synchronized (LOCK) {
+                    if (--pendingWorkers == 0) {
+                        LOCK.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
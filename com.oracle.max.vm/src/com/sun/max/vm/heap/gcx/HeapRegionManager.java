@@ -28,6 +28,7 @@ import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.heap.*;
 import com.sun.max.vm.heap.gcx.rset.*;
@@ -43,8 +44,17 @@ import com.sun.max.vm.type.*;
  * heap accounts, return free space to it, and may grow or shrink their accounts.
  * The heap region manager may also request a heap account to trade or free some specific
  * regions.
+ * <p>
+ * With {@code -XX:+UseNUMA}, regions are interleaved across the NUMA nodes of the platform (see {@link FixedSizeRegionAllocator}),
+ * so that heap spaces can hand out regions local to the node of the allocating thread.
  */
 public final class HeapRegionManager implements HeapAccountOwner {
+    static boolean UseNUMA = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "UseNUMA", HeapRegionManager.class,
+            "Interleave heap regions across NUMA nodes and refill TLABs from regions local to the allocating thread's node", Phase.PRISTINE);
+    }
+
     /**
      * The single instance of the heap region manager.
      */
@@ -147,6 +157,28 @@ public final class HeapRegionManager implements HeapAccountOwner {
         return regionAllocator.isValidRegionId(regionID);
     }
 
+    /**
+     * Number of NUMA nodes regions are interleaved across, 1 if regions aren't NUMA-aware.
+     */
+    public int numNumaNodes() {
+        return regionAllocator.numNodes();
+    }
+
+    /**
+     * NUMA node a region is local to.
+     */
+    @INLINE
+    public int regionNode(int regionID) {
+        return regionAllocator.regionNode(regionID);
+    }
+
+    /**
+     * Number of unallocated regions local to a NUMA node.
+     */
+    public int numFreeRegions(int node) {
+        return regionAllocator.numFreeRegions(node);
+    }
+
     private HeapRegionManager() {
         regionAllocator = new FixedSizeRegionAllocator("Heap Backing Storage");
         managerHeapAccount = new HeapAccount<HeapRegionManager>(this);
@@ -258,7 +290,7 @@ public final class HeapRegionManager implements HeapAccountOwner {
         try {
             heapScheme.enableCustomAllocation(Reference.fromJava(managerAllocator).toOrigin());
             // Record initial space usage.
-            regionAllocator.initialize(startOfManagedSpace, numTotalRegions, initialNumRegions);
+            regionAllocator.initialize(startOfManagedSpace, numTotalRegions, initialNumRegions, UseNUMA ? VirtualMemory.numaNodeCount() : 1);
             RegionTable.initialize(regionInfoClass, regionAllocator.bounds(), numTotalRegions);
             // Allocate the backing storage for the region lists.
             HeapRegionList.initializeListStorage(numTotalRegions);
@@ -54,6 +54,16 @@ public final class HeapRegionStatistics {
      */
     final int [] regionsFragmentation;
 
+    /**
+     * Total number of free bytes in the regions added to the statistics.
+     */
+    private long totalFreeBytes;
+
+    /**
+     * Number of free bytes in regions that aren't empty, i.e., that are only available in chunks smaller than a region.
+     */
+    private long fragmentedFreeBytes;
+
     /**
      * Private region info iterator.
      */
@@ -81,13 +91,45 @@ public final class HeapRegionStatistics {
     }
 
     public void clear() {
-        for (int i = log2MinFragmentSize; i <= log2MinFragmentSize; i++) {
+        for (int i = 0; i <= log2LargestChunkSize; i++) {
             fragmentSizes[i] = 0;
             freeSpaceSizes[i] = 0;
         }
         for (int i = 0; i < regionsFragmentation.length; i++) {
             regionsFragmentation[i] = 0;
         }
+        totalFreeBytes = 0L;
+        fragmentedFreeBytes = 0L;
+    }
+
+    /**
+     * Percentage of the free space that is only available in regions that aren't empty, i.e., that can't be used for allocating
+     * objects as large as a region.
+     */
+    public int fragmentationPercent() {
+        return totalFreeBytes == 0L ? 0 : (int) ((fragmentedFreeBytes * 100) / totalFreeBytes);
+    }
+
+    public int numEmptyRegions() {
+        return freeSpaceSizes[log2LargestChunkSize];
+    }
+
+    /**
+     * Minimum amount of free space of the sparsest regions, according to the histogram of free space within regions.
+     * Empty regions aren't counted.
+     *
+     * @param numRegions number of sparsest regions
+     * @return a lower bound of the free space of the {@code numRegions} regions with the most free space, rounded down to a power of 2
+     */
+    public int minFreeSpaceOfSparsestRegions(int numRegions) {
+        int count = 0;
+        for (int i = log2LargestChunkSize - 1; i > log2MinFragmentSize; i--) {
+            count += freeSpaceSizes[i];
+            if (count >= numRegions) {
+                return 1 << i;
+            }
+        }
+        return 1 << log2MinFragmentSize;
     }
 
     /**
@@ -101,8 +143,11 @@ public final class HeapRegionStatistics {
         regionsFragmentation[rinfo.numFreeChunks()]++;
         if (rinfo.hasFreeChunks()) {
             freeSpaceSizes[sizeBin(rinfo.freeBytesInChunks())]++;
+            totalFreeBytes += rinfo.freeBytesInChunks();
+            fragmentedFreeBytes += rinfo.freeBytesInChunks();
         } else if (rinfo.isEmpty()) {
             freeSpaceSizes[log2LargestChunkSize]++;
+            totalFreeBytes += 1 << log2LargestChunkSize;
         } else {
             freeSpaceSizes[0]++;
         }
@@ -153,6 +198,7 @@ public final class HeapRegionStatistics {
         }
         Log.print("empty regions ("); Log.print(1 << log2LargestChunkSize); Log.print(") : ");  Log.println(freeSpaceSizes[log2LargestChunkSize]);
         Log.print("full regions : ");  Log.println(freeSpaceSizes[0]);
+        Log.print("fragmentation : ");  Log.print(fragmentationPercent()); Log.println("%");
         Log.println(" # fragments             : # regions");
         for (int i = 0; i < regionsFragmentation.length; i++) {
             int numRegions = regionsFragmentation[i];
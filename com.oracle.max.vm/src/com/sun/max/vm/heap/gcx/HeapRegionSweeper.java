@@ -39,8 +39,10 @@ import com.sun.max.vm.runtime.*;
  */
 public abstract class HeapRegionSweeper extends Sweeper {
     static int SweepBreakAtRegion = -1;
+    static boolean ParallelSweep = false;
     static {
         VMOptions.addFieldOption("-XX:", "SweepBreakAtRegion", HeapRegionSweeper.class, "Break before sweeping region", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ParallelSweep", HeapRegionSweeper.class, "Sweep heap regions in parallel with the GC workers", Phase.PRISTINE);
     }
 
     protected Size minReclaimableSpace;
@@ -107,6 +109,17 @@ public abstract class HeapRegionSweeper extends Sweeper {
         this.deadSpaceListener = deadSpaceListener;
     }
 
+    /**
+     * Create a sweeper with the same settings as another sweeper, e.g., to sweep some of its regions on behalf of a GC worker.
+     * The minimum reclaimable space must be set when the other sweeper's is.
+     */
+    protected HeapRegionSweeper(HeapRegionSweeper sweeper) {
+        super(sweeper);
+        this.zapDeadReferences = sweeper.zapDeadReferences;
+        this.deadSpaceListener = sweeper.deadSpaceListener;
+        this.minReclaimableSpace = sweeper.minReclaimableSpace;
+    }
+
     final public int liveBytes() {
         return csrLiveBytes;
     }
@@ -154,6 +167,32 @@ public abstract class HeapRegionSweeper extends Sweeper {
         csrInfo.resetOccupancy();
     }
 
+    /**
+     * Set the state of the current sweeping region from the free space recorded while sweeping it.
+     * The region must not be the head of a multi-region object.
+     */
+    final void setSweptRegionState() {
+        if (csrFreeBytes == 0) {
+            if (csrIsLiveMultiRegionObjectTail) {
+                // FIXME: is this true if the large object was already dead ?
+                HeapRegionState.LARGE_FULL_TAIL.setState(csrInfo);
+            }  else {
+                HeapRegionState.FULL_REGION.setState(csrInfo);
+            }
+        } else if (csrFreeBytes == regionSizeInBytes) {
+            HeapRegionState.EMPTY_REGION.setState(csrInfo);
+            HeapFreeChunk.format(csrInfo.regionStart(), regionSizeInBytes);
+        } else {
+            if (csrIsLiveMultiRegionObjectTail) {
+                HeapRegionState.LARGE_TAIL.setState(csrInfo);
+            } else {
+                HeapRegionState.FREE_CHUNKS_REGION.setState(csrInfo);
+            }
+            csrInfo.setFreeChunks(HeapFreeChunk.fromHeapFreeChunk(csrHead), csrFreeBytes, csrFreeChunks);
+        }
+        csrIsLiveMultiRegionObjectTail = false;
+    }
+
     final void recordFreeSpace(Address chunk, Size chunkSize) {
         HeapFreeChunk c = HeapFreeChunk.format(chunk, chunkSize);
         if (csrTail == null) {
@@ -24,9 +24,37 @@ package com.sun.max.vm.heap.gcx;
 
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
 
-
+/**
+ * Heap resizing policy driven by the ratio of free space left after a collection: the heap is expanded when free space drops
+ * below {@link #minFreeSpaceRatioForExpansion} percent of the heap, and shrunk when it exceeds {@link #maxFreeSpaceRatioForShrinking}.
+ *
+ * Sub-classes may take their decisions on other criteria (see {@link ErgonomicHeapResizingPolicy}). Heap schemes obtain their policy
+ * from {@link #create()} at heap initialization.
+ */
 public class HeapResizingPolicy {
+    /**
+     * Knob for selecting the {@link ErgonomicHeapResizingPolicy} instead of the free space ratio driven policy.
+     */
+    static boolean UseErgonomicHeapSizing = false;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "UseErgonomicHeapSizing", HeapResizingPolicy.class,
+                        "Resize the heap to meet GC pause time and GC time ratio goals", Phase.PRISTINE);
+    }
+
+    /**
+     * Create the heap resizing policy selected by the VM options. Must be called at heap initialization time, with allocation
+     * directed to a space that isn't collected (e.g., immortal or heap region manager space).
+     */
+    public static HeapResizingPolicy create() {
+        if (UseErgonomicHeapSizing) {
+            return new ErgonomicHeapResizingPolicy();
+        }
+        return new HeapResizingPolicy();
+    }
+
     /**
      * Percentage of free space below which heap should be expanded.
      */
@@ -36,6 +64,12 @@ public class HeapResizingPolicy {
      */
     final int maxFreeSpaceRatioForShrinking = 70;
 
+    /**
+     * Notification that a collection is starting. Default is to do nothing.
+     */
+    public void notifyCollectionStarted() {
+    }
+
     /**
      * Resize the heap according to policy.
      *
@@ -44,6 +78,74 @@ public class HeapResizingPolicy {
      * @return true if the heap was resized
      */
     public boolean resizeAfterCollection(Size spaceLeftAfterGC, ResizableSpace heapSpace) {
+        return growToMinFreeSpaceRatio(spaceLeftAfterGC, heapSpace) || shrinkToMaxFreeSpaceRatio(spaceLeftAfterGC, heapSpace);
+    }
+
+    /**
+     * Shrink an idle heap as much as possible while keeping the minimum ratio of free space, so that the application doesn't
+     * immediately trigger a collection when it becomes active again. The memory given back is uncommitted, and committed again
+     * when the heap grows back.
+     *
+     * @param freeSpace space currently free in the heap
+     * @param heapSpace the heap
+     * @return the effective shrinkage
+     */
+    public Size shrinkIdleHeap(Size freeSpace, ResizableSpace heapSpace) {
+        Size totalSpace = heapSpace.totalSpace();
+        Size spaceUsed = totalSpace.minus(freeSpace);
+        Size minDesiredCapacity =  Size.fromLong((spaceUsed.toLong() * 100) / (100 - minFreeSpaceRatioForExpansion));
+        if (minDesiredCapacity.greaterEqual(totalSpace)) {
+            return Size.zero();
+        }
+        return heapSpace.decreaseSize(totalSpace.minus(minDesiredCapacity));
+    }
+
+    /**
+     * Resize the generations of a generational heap after a collection emptied the young generation.
+     * The default policy leaves the size of the generations untouched, apart for guaranteeing the evacuation reserve of the old generation
+     * (see {@link #ensureEvacuationReserve(ResizableSpace, ResizableSpace, Size)}).
+     *
+     * @param youngSpace the young generation, empty after the collection
+     * @param oldSpace the old generation
+     * @param oldFreeSpace space left in the old generation after the collection
+     * @return true if the old generation can accommodate the worst case evacuation of the young generation after resizing.
+     */
+    public boolean resizeGenerationsAfterCollection(ResizableSpace youngSpace, ResizableSpace oldSpace, Size oldFreeSpace) {
+        return ensureEvacuationReserve(youngSpace, oldSpace, oldFreeSpace);
+    }
+
+    /**
+     * Make sure the old generation has enough free space to accommodate the worst case evacuation of the young generation,
+     * i.e., the evacuation of the entire young generation. The old generation is grown first; if that isn't enough, the
+     * young generation is shrunk by the missing space.
+     *
+     * @param youngSpace the young generation, empty after the collection
+     * @param oldSpace the old generation
+     * @param oldFreeSpace space left in the old generation
+     * @return true if the worst case evacuation can be accommodated.
+     */
+    public boolean ensureEvacuationReserve(ResizableSpace youngSpace, ResizableSpace oldSpace, Size oldFreeSpace) {
+        Size worstCaseEvacuation = youngSpace.totalSpace();
+        if (worstCaseEvacuation.lessEqual(oldFreeSpace)) {
+            return true;
+        }
+        Size deficit = worstCaseEvacuation.minus(oldFreeSpace);
+        if (oldSpace.totalSpace().lessThan(oldSpace.capacity())) {
+            Size growth = oldSpace.increaseSize(deficit);
+            if (growth.greaterEqual(deficit)) {
+                return true;
+            }
+            deficit = deficit.minus(growth);
+        }
+        Size shrinkage = youngSpace.decreaseSize(deficit);
+        return shrinkage.greaterEqual(deficit);
+    }
+
+    /**
+     * Grow the heap if the space left after GC is below the minimum ratio of free space.
+     * @return true if the heap was grown
+     */
+    protected boolean growToMinFreeSpaceRatio(Size spaceLeftAfterGC, ResizableSpace heapSpace) {
         Size totalSpace = heapSpace.totalSpace();
         Size min = Size.fromLong((totalSpace.toLong() * minFreeSpaceRatioForExpansion) / 100);
         Size spaceUsedAfterGC = totalSpace.minus(spaceLeftAfterGC);
@@ -63,6 +165,16 @@ public class HeapResizingPolicy {
             }
             return !actualGrowth.isZero();
         }
+        return false;
+    }
+
+    /**
+     * Shrink the heap if the space left after GC is above the maximum ratio of free space.
+     * @return true if the heap was shrunk
+     */
+    protected boolean shrinkToMaxFreeSpaceRatio(Size spaceLeftAfterGC, ResizableSpace heapSpace) {
+        Size totalSpace = heapSpace.totalSpace();
+        Size spaceUsedAfterGC = totalSpace.minus(spaceLeftAfterGC);
         Size max = Size.fromLong((totalSpace.toLong() * maxFreeSpaceRatioForShrinking) / 100);
         if (spaceLeftAfterGC.greaterThan(max)) {
             Size maxDesiredCapacity =  Size.fromLong((spaceUsedAfterGC.toLong() * 100) / (100 - maxFreeSpaceRatioForShrinking));
@@ -101,6 +101,8 @@ public abstract class HeapSchemeWithTLABAdaptor extends HeapSchemeWithTLAB {
             heapStartupTime.start();
             allocateHeapAndGCStorage();
             heapStartupTime.stop();
+        } else if (phase == MaxineVM.Phase.STARTING) {
+            GCWorkers.start();
         } else if (phase == MaxineVM.Phase.TERMINATING) {
             if (Heap.logGCTime()) {
                 heapStartupTime.report("allocateHeapAndGCStorage", Log.out);
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import java.lang.management.*;
+
+import com.sun.max.vm.management.*;
+
+/**
+ * Memory pool reporting the usage of a {@link HeapSpace}. Unlike pools backed by a {@link com.sun.max.memory.MemoryRegion},
+ * the space doesn't have to be contiguous: committed memory is the {@linkplain ResizableSpace#totalSpace() current size} of the
+ * space, and memory the space {@linkplain com.sun.max.vm.heap.HeapScheme#uncommitUnusedMemory() gave back} to the operating system isn't counted.
+ */
+public class HeapSpaceMemoryPoolMXBean extends MemoryPoolMXBeanAdaptor {
+    private final String name;
+    private final HeapSpace space;
+
+    public HeapSpaceMemoryPoolMXBean(String name, HeapSpace space, MemoryManagerMXBean manager) {
+        super(MemoryType.HEAP, null, manager);
+        this.name = name;
+        this.space = space;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public MemoryUsage getUsage() {
+        final long committed = space.totalSpace().toLong();
+        final long used = Math.min(space.usedSpace().toLong(), committed);
+        return new MemoryUsage(-1L, used, committed, space.capacity().toLong());
+    }
+}
@@ -34,8 +34,13 @@ import com.sun.max.vm.runtime.*;
 public class NoAgingNurseryEvacuator extends EvacuatorToCardSpace {
     public static boolean TraceDirtyCardWalk = false;
     private static boolean traceDirtyCardWalk = false;
+    static boolean UseParallelEvacuation = true;
+    static int EvacuatedRefBufferSize = 16 * 1024;
     static {
         VMOptions.addFieldOption("-XX:", "TraceDirtyCardWalk", NoAgingNurseryEvacuator.class, "Trace Dirty Card Walk", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "UseParallelEvacuation", NoAgingNurseryEvacuator.class, "Evacuate the nursery in parallel with the GC workers", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "EvacuatedRefBufferSize", NoAgingNurseryEvacuator.class,
+            "Number of references to the nursery found in dirty cards each GC worker can record during parallel evacuation", Phase.PRISTINE);
     }
 
     @INLINE
@@ -110,13 +115,164 @@ public class NoAgingNurseryEvacuator extends EvacuatorToCardSpace {
         }
     }
 
+    /**
+     * Closure used by a GC worker to scan the dirty cards of the stripes of the old gen it claims during parallel evacuation.
+     * All workers iterate over the same stripes in the same order; each one scans only the stripes whose sequence number it
+     * claimed from the {@link ParallelEvacuationState}.
+     */
+    final class DirtyCardStripeClosure implements CellRangeVisitor {
+        private int stripeNumber;
+        private int claimedStripeNumber;
+
+        void reset() {
+            stripeNumber = 0;
+            claimedStripeNumber = parallelEvacuationState.claimStripe();
+        }
+
+        public void visitCells(Address start, Address end) {
+            final Size stripeSize = ParallelEvacuationState.stripeSize();
+            Address stripeStart = start;
+            while (stripeStart.lessThan(end)) {
+                Address stripeEnd = stripeStart.plus(stripeSize);
+                if (stripeEnd.greaterThan(end)) {
+                    stripeEnd = end;
+                }
+                if (stripeNumber == claimedStripeNumber) {
+                    heapSpaceDirtyCardClosure.visitCells(stripeStart, stripeEnd);
+                    claimedStripeNumber = parallelEvacuationState.claimStripe();
+                }
+                stripeNumber++;
+                stripeStart = stripeEnd;
+            }
+        }
+    }
+
     private final DirtyCardEvacuationClosure heapSpaceDirtyCardClosure;
     private final BootRegionDirtyCardEvacuationClosure bootRegionDirtyCardClosure;
+    private final DirtyCardStripeClosure dirtyCardStripeClosure;
+
+    /**
+     * Indicates whether the current evacuation is performed in parallel by the GC workers.
+     */
+    private boolean evacuatingInParallel;
+
+    /**
+     * Locations of references to the nursery found in dirty cards during parallel evacuation.
+     */
+    private long[] evacuatedRefs;
+    private int numEvacuatedRefs;
+    private boolean evacuatedRefsOverflowed;
 
     public NoAgingNurseryEvacuator(EvacuatingSpace fromSpace, HeapSpace toSpace, EvacuationBufferProvider evacuationBufferProvider, CardTableRSet rset, String name) {
         super(fromSpace, toSpace, evacuationBufferProvider, rset, name);
         this.heapSpaceDirtyCardClosure = new DirtyCardEvacuationClosure();
         this.bootRegionDirtyCardClosure = new BootRegionDirtyCardEvacuationClosure();
+        this.dirtyCardStripeClosure = new DirtyCardStripeClosure();
+    }
+
+    /**
+     * Create the evacuator of a GC worker for parallel evacuation.
+     * @param evacuator the evacuator used by the VM operation thread
+     */
+    NoAgingNurseryEvacuator(NoAgingNurseryEvacuator evacuator) {
+        super(evacuator);
+        this.heapSpaceDirtyCardClosure = new DirtyCardEvacuationClosure();
+        this.bootRegionDirtyCardClosure = new BootRegionDirtyCardEvacuationClosure();
+        this.dirtyCardStripeClosure = new DirtyCardStripeClosure();
+        this.evacuatedRefs = new long[EvacuatedRefBufferSize];
+    }
+
+    @Override
+    public void initialize(int maxSurvivorRanges, boolean alwaysRefill, Size minRefillThreshold, boolean retireAfterEvacuation) {
+        super.initialize(maxSurvivorRanges, alwaysRefill, minRefillThreshold, retireAfterEvacuation);
+        if (parallelEvacuationState == null && UseParallelEvacuation && GCWorkers.numWorkers() > 1) {
+            evacuatedRefs = new long[EvacuatedRefBufferSize];
+            parallelEvacuationState = new ParallelEvacuationState(this, maxSurvivorRanges, alwaysRefill, minRefillThreshold, retireAfterEvacuation);
+        }
+    }
+
+    /**
+     * Clean the dirty cards of the stripes of the old gen claimed by this evacuator, or of the dirty card buffers it claims if the
+     * collection visits logged cards only, and record the locations of the references to the nursery they hold, without evacuating anything.
+     */
+    void recordEvacuatedRefsFromDirtyCards() {
+        numEvacuatedRefs = 0;
+        evacuatedRefsOverflowed = false;
+        setRecordingEvacuatedRefs(true);
+        if (DirtyCardQueues.visitsLoggedCardsOnly()) {
+            DirtyCardQueues.visitClaimedLoggedCards(heapSpaceDirtyCardClosure);
+        } else {
+            dirtyCardStripeClosure.reset();
+            toSpace.visit(dirtyCardStripeClosure);
+        }
+        setRecordingEvacuatedRefs(false);
+    }
+
+    @Override
+    void recordEvacuatedRef(Pointer refLocation) {
+        if (numEvacuatedRefs < evacuatedRefs.length) {
+            evacuatedRefs[numEvacuatedRefs++] = refLocation.toLong();
+        } else {
+            // Leave the card dirty so that it is rescanned once parallel evacuation of the recorded references is done.
+            rset.cardTable.dirty(rset.cardTable.tableEntryIndex(refLocation));
+            evacuatedRefsOverflowed = true;
+        }
+    }
+
+    /**
+     * Evacuate the cells referenced from the locations recorded by {@link #recordEvacuatedRefsFromDirtyCards()}.
+     * @return true if this evacuator ran out of space to record references and left cards dirty
+     */
+    boolean evacuateFromRecordedRefs() {
+        for (int i = 0; i < numEvacuatedRefs; i++) {
+            updateEvacuatedRef(Pointer.fromLong(evacuatedRefs[i]), 0);
+        }
+        numEvacuatedRefs = 0;
+        return evacuatedRefsOverflowed;
+    }
+
+    @Override
+    public void doBeforeGC() {
+        super.doBeforeGC();
+        if (parallelEvacuationState != null) {
+            parallelEvacuationState.doBeforeGC();
+        }
+    }
+
+    @Override
+    protected void doBeforeEvacuation() {
+        super.doBeforeEvacuation();
+        evacuatingInParallel = parallelEvacuationState != null && GCWorkers.numActiveWorkers() > 1;
+        if (evacuatingInParallel) {
+            parallelEvacuationState.beginEvacuation();
+        }
+    }
+
+    @Override
+    protected void doAfterEvacuation() {
+        if (evacuatingInParallel) {
+            parallelEvacuationState.endEvacuation();
+            evacuatingInParallel = false;
+        }
+        super.doAfterEvacuation();
+    }
+
+    @Override
+    void evacuateFromRoots() {
+        if (evacuatingInParallel) {
+            parallelEvacuationState.evacuateFromRoots();
+        } else {
+            super.evacuateFromRoots();
+        }
+    }
+
+    @Override
+    protected void evacuateReachables() {
+        if (evacuatingInParallel) {
+            parallelEvacuationState.evacuateReachables();
+        } else {
+            super.evacuateReachables();
+        }
     }
 
     @Override
@@ -138,12 +294,24 @@ public class NoAgingNurseryEvacuator extends EvacuatorToCardSpace {
 
     @Override
     protected void evacuateFromRSets() {
-        // Visit the dirty cards of the old gen (i.e., the toSpace).
+        if (evacuatingInParallel) {
+            // Dirty cards were already scanned with the roots. Evacuate what they refer to, and rescan the cards left dirty if any worker
+            // ran out of space to record references.
+            if (!parallelEvacuationState.evacuateFromRecordedRefs()) {
+                return;
+            }
+            parallelEvacuationState.makePromotionLabsParsable();
+        }
+        // Visit the dirty cards of the old gen (i.e., the toSpace), or only those logged in the dirty card queues if the collection allows it.
         final boolean traceRSet = CardTableRSet.traceCardTableRSet();
         if (traceDirtyCardWalk()) {
             CardTableRSet.setTraceCardTableRSet(true);
         }
-        toSpace.visit(heapSpaceDirtyCardClosure);
+        if (DirtyCardQueues.visitsLoggedCardsOnly()) {
+            DirtyCardQueues.visitLoggedCards(heapSpaceDirtyCardClosure);
+        } else {
+            toSpace.visit(heapSpaceDirtyCardClosure);
+        }
         if (traceDirtyCardWalk()) {
             CardTableRSet.setTraceCardTableRSet(traceRSet);
         }
@@ -130,18 +130,49 @@ public final class NoAgingRegionalizedNursery implements HeapSpace {
         return allocator.allocateCleared(size);
     }
 
+    /**
+     * Grow the nursery by committing the regions following its current end. Must be called when the nursery is empty (i.e., after evacuation).
+     */
     @Override
     public Size increaseSize(Size delta) {
-        // TODO
-        FatalError.unimplemented();
-        return Size.zero();
+        int numRegions = delta.roundedUpBy(HeapRegionConstants.regionSizeInBytes).unsignedShiftedRight(HeapRegionConstants.log2RegionSizeInBytes).toInt();
+        if (numRegions > uncommitedNurseryRegionsList.size()) {
+            numRegions = uncommitedNurseryRegionsList.size();
+        }
+        for (int i = 0; i < numRegions; i++) {
+            // The uncommitted regions are contiguous and ordered, the head of the list follows the tail of the nursery's regions.
+            final int regionID = uncommitedNurseryRegionsList.removeHead();
+            heapAccount.commit(regionID);
+            nurseryRegionsList.append(regionID);
+        }
+        final Size growth = Size.fromInt(numRegions).shiftedLeft(HeapRegionConstants.log2RegionSizeInBytes);
+        allocator.grow(growth);
+        return growth;
     }
 
+    /**
+     * Shrink the nursery by uncommitting the regions at its end, thus returning their memory to the OS. The nursery keeps at least one region.
+     * Must be called when the nursery is empty (i.e., after evacuation).
+     */
     @Override
     public Size decreaseSize(Size delta) {
-        // TODO
-        FatalError.unimplemented();
-        return Size.zero();
+        int numRegions = delta.roundedUpBy(HeapRegionConstants.regionSizeInBytes).unsignedShiftedRight(HeapRegionConstants.log2RegionSizeInBytes).toInt();
+        if (numRegions >= nurseryRegionsList.size()) {
+            numRegions = nurseryRegionsList.size() - 1;
+        }
+        if (numRegions <= 0) {
+            return Size.zero();
+        }
+        final Size shrinkage = Size.fromInt(numRegions).shiftedLeft(HeapRegionConstants.log2RegionSizeInBytes);
+        if (!allocator.shrink(shrinkage)) {
+            return Size.zero();
+        }
+        for (int i = 0; i < numRegions; i++) {
+            final int regionID = nurseryRegionsList.removeTail();
+            heapAccount.uncommit(regionID);
+            uncommitedNurseryRegionsList.prepend(regionID);
+        }
+        return shrinkage;
     }
 
     @Override
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.gcx.GCWorkers.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Parallel evacuation of a nursery by the {@link GCWorkers}.
+ * <p>
+ * Each worker evacuates with its own {@link NoAgingNurseryEvacuator}, which owns a promotion lab refilled from the shared
+ * {@link EvacuationBufferProvider} and the queue of survivor ranges allocated in it. Cells are forwarded atomically, so
+ * that a cell reachable from several workers is copied by only one of them (see {@link Evacuator#evacuateAtomically(Pointer)}).
+ * A worker only scans the survivors it copied itself, so workers terminate independently of each other.
+ * <p>
+ * Dirty cards of the old generation can't be walked while other workers copy cells in the old generation as cells being copied
+ * aren't parsable. Instead, dirty cards are scanned before any cell is copied: workers claim stripes of the old generation, clean their
+ * dirty cards, and record the locations of references to the nursery they find. These locations are evacuated after the roots.
+ * A worker that runs out of space to record locations leaves the corresponding cards dirty; they are then scanned by the VM operation
+ * thread alone.
+ * <p>
+ * Roots on thread stacks are split among workers. The boot heap, code and immortal heap are scanned by the VM operation thread,
+ * as are the special references discovered during evacuation.
+ */
+final class ParallelEvacuationState {
+    /**
+     * Log 2 of the number of cards in a stripe of the old generation claimed by a worker when scanning dirty cards.
+     */
+    static final int LOG2_STRIPE_CARDS = 6;
+
+    @FOLD
+    static Size stripeSize() {
+        return Size.fromInt(1 << (CardTableRSet.LOG2_CARD_SIZE + LOG2_STRIPE_CARDS));
+    }
+
+    @FOLD
+    private static int nextStripeOffset() {
+        return ClassActor.fromJava(ParallelEvacuationState.class).findLocalInstanceFieldActor("nextStripe").offset();
+    }
+
+    @FOLD
+    private static int lockOffset() {
+        return ClassActor.fromJava(ParallelEvacuationState.class).findLocalInstanceFieldActor("lock").offset();
+    }
+
+    /**
+     * Evacuators of the workers. Worker 0 (the VM operation thread) uses the evacuator this state was created for.
+     */
+    private final NoAgingNurseryEvacuator[] evacuators;
+
+    /**
+     * Number of workers taking part in the current evacuation.
+     */
+    private int numWorkers;
+
+    /**
+     * Sequence number of the next stripe of the old generation to be claimed.
+     */
+    private volatile int nextStripe;
+
+    /**
+     * Lock serializing accesses to the shared evacuation buffer provider, to the to-space's allocator and to special reference discovery.
+     */
+    private volatile int lock;
+
+    private final GCTask recordDirtyCardRefsTask = new GCTask() {
+        @Override
+        public void run(int workerID) {
+            evacuators[workerID].recordEvacuatedRefsFromDirtyCards();
+        }
+    };
+
+    private final GCTask rootsTask = new GCTask() {
+        @Override
+        public void run(int workerID) {
+            evacuators[workerID].evacuateFromRoots(workerID, numWorkers);
+        }
+    };
+
+    private boolean recordedRefsOverflowed;
+
+    private final GCTask recordedRefsTask = new GCTask() {
+        @Override
+        public void run(int workerID) {
+            if (evacuators[workerID].evacuateFromRecordedRefs()) {
+                recordedRefsOverflowed = true;
+            }
+        }
+    };
+
+    private final GCTask reachablesTask = new GCTask() {
+        @Override
+        public void run(int workerID) {
+            evacuators[workerID].drainSurvivorRanges();
+        }
+    };
+
+    /**
+     * Create the evacuators of the GC workers. Must be called when allocation of the heap scheme's data structures is enabled.
+     */
+    ParallelEvacuationState(NoAgingNurseryEvacuator evacuator, int maxSurvivorRanges, boolean alwaysRefill, Size minRefillThreshold, boolean retireAfterEvacuation) {
+        evacuators = new NoAgingNurseryEvacuator[GCWorkers.numWorkers()];
+        evacuators[0] = evacuator;
+        for (int i = 1; i < evacuators.length; i++) {
+            final NoAgingNurseryEvacuator workerEvacuator = new NoAgingNurseryEvacuator(evacuator);
+            workerEvacuator.parallelEvacuationState = this;
+            workerEvacuator.initialize(maxSurvivorRanges, alwaysRefill, minRefillThreshold, retireAfterEvacuation);
+            evacuators[i] = workerEvacuator;
+        }
+    }
+
+    void lock() {
+        final Reference thisRef = Reference.fromJava(this);
+        while (thisRef.compareAndSwapInt(lockOffset(), 0, 1) != 0) {
+            Intrinsics.pause();
+        }
+    }
+
+    void unlock() {
+        lock = 0;
+    }
+
+    /**
+     * Claim the next stripe of the old generation.
+     * @return the sequence number of the claimed stripe
+     */
+    int claimStripe() {
+        final Reference thisRef = Reference.fromJava(this);
+        int stripe;
+        do {
+            stripe = thisRef.readInt(nextStripeOffset());
+        } while (thisRef.compareAndSwapInt(nextStripeOffset(), stripe, stripe + 1) != stripe);
+        return stripe;
+    }
+
+    void doBeforeGC() {
+        for (int i = 1; i < evacuators.length; i++) {
+            evacuators[i].resetPromotionLab();
+        }
+    }
+
+    void beginEvacuation() {
+        numWorkers = GCWorkers.numActiveWorkers();
+        evacuators[0].setAtomicForwarding(true);
+        for (int i = 1; i < numWorkers; i++) {
+            evacuators[i].beginPromotion();
+            evacuators[i].setAtomicForwarding(true);
+        }
+    }
+
+    void endEvacuation() {
+        final NoAgingNurseryEvacuator evacuator = evacuators[0];
+        evacuator.setAtomicForwarding(false);
+        for (int i = 1; i < numWorkers; i++) {
+            final NoAgingNurseryEvacuator workerEvacuator = evacuators[i];
+            workerEvacuator.setAtomicForwarding(false);
+            workerEvacuator.endPromotion();
+            evacuator.addEvacuatedBytes(workerEvacuator.evacuatedBytes());
+        }
+    }
+
+    /**
+     * Record the references to the nursery held in dirty cards, then evacuate the cells directly reachable from the roots.
+     */
+    void evacuateFromRoots() {
+        nextStripe = 0;
+        GCWorkers.run(recordDirtyCardRefsTask);
+        GCWorkers.run(rootsTask);
+    }
+
+    /**
+     * Evacuate the cells referenced from the locations recorded while scanning dirty cards.
+     * @return true if some cards were left dirty and must be rescanned
+     */
+    boolean evacuateFromRecordedRefs() {
+        recordedRefsOverflowed = false;
+        GCWorkers.run(recordedRefsTask);
+        return recordedRefsOverflowed;
+    }
+
+    /**
+     * Make the promotion labs of the workers parsable so that the VM operation thread can walk dirty cards of the old generation.
+     */
+    void makePromotionLabsParsable() {
+        for (int i = 1; i < numWorkers; i++) {
+            evacuators[i].makePromotionLabParsable();
+        }
+    }
+
+    void evacuateReachables() {
+        GCWorkers.run(reachablesTask);
+    }
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.code.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.GCWorkers.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Parallel tracing of the tricolor mark-bitmap of a {@link TricolorHeapMarker} by the {@link GCWorkers}.
+ * <p>
+ * Unlike the sequential forward scan, parallel marking doesn't use a finger. Each worker claims chunks of the portion of the color map
+ * where root marking left grey marks, and traces depth-first from every grey object it finds there using its own
+ * {@link WorkStealingMarkingStack}. Workers that run out of work steal from the others until all stacks are empty.
+ * <p>
+ * Color transitions are atomic: a worker pushes a reference on its stack only if it wins the white-to-grey transition, and
+ * visits an object only if it wins the grey-to-black transition. Hence, every live object is visited exactly once.
+ * When a worker's stack is full, the newly greyed object is simply left grey in the color map and the worker remembers the
+ * bounds of such overflowed objects. Once all workers are done, the color map is scanned again in parallel between these bounds,
+ * the same way the sequential marker rescans the color map to recover from a marking stack overflow.
+ * <p>
+ * The same state also supports concurrent marking (see {@link TricolorHeapMarker#markConcurrently()}): a single marking thread then
+ * traces with worker 0's stack while mutators run, and checks regularly whether the VM operation thread requested it to stop.
+ */
+final class ParallelMarkingState implements SpecialReferenceManager.GC {
+    /**
+     * Log 2 of the number of color map words in a chunk claimed by a worker when scanning the color map for grey marks.
+     */
+    static final int LOG2_CHUNK_BITMAP_WORDS = 8;
+
+    final TricolorHeapMarker heapMarker;
+
+    private WorkerState [] workerStates;
+
+    /**
+     * Number of workers taking part in the current marking.
+     */
+    private int numWorkers;
+
+    /**
+     * Index of the first color map word of the area to scan for grey marks.
+     */
+    private int scanFirstBitmapWordIndex;
+
+    /**
+     * Number of chunks in the area of the color map to scan for grey marks.
+     */
+    private int scanNumChunks;
+
+    /**
+     * Index of the last color map word of the area to scan for grey marks.
+     */
+    private int scanLastBitmapWordIndex;
+
+    /**
+     * Index of the next chunk to claim. Updated atomically.
+     */
+    private volatile int nextChunk;
+
+    /**
+     * Number of workers still looking for work. Updated atomically.
+     */
+    private volatile int activeWorkers;
+
+    /**
+     * Spin lock serializing the discovery of special references by the workers.
+     */
+    private volatile int discoveryLock;
+
+    /**
+     * Number of overflow rescans during the last marking. For statistics.
+     */
+    int overflowRescanCount;
+
+    /**
+     * Number of successful steals during the last marking. For statistics.
+     */
+    int stealCount;
+
+    /**
+     * Indicates that marking is performed concurrently with mutator threads by a single worker, in which case
+     * workers check for {@link #abortRequested} regularly.
+     */
+    private boolean concurrent;
+
+    /**
+     * Set by the VM operation thread to stop a concurrent marking.
+     */
+    private volatile boolean abortRequested;
+
+    @FOLD
+    private static int nextChunkOffset() {
+        return ClassActor.fromJava(ParallelMarkingState.class).findLocalInstanceFieldActor("nextChunk").offset();
+    }
+
+    @FOLD
+    private static int activeWorkersOffset() {
+        return ClassActor.fromJava(ParallelMarkingState.class).findLocalInstanceFieldActor("activeWorkers").offset();
+    }
+
+    @FOLD
+    private static int discoveryLockOffset() {
+        return ClassActor.fromJava(ParallelMarkingState.class).findLocalInstanceFieldActor("discoveryLock").offset();
+    }
+
+    private int atomicAdd(int offset, int delta) {
+        final Reference thisRef = Reference.fromJava(this);
+        int oldValue;
+        do {
+            oldValue = thisRef.readInt(offset);
+        } while (thisRef.compareAndSwapInt(offset, oldValue, oldValue + delta) != oldValue);
+        return oldValue;
+    }
+
+    private final GCTask markingTask = new GCTask() {
+        @Override
+        public void run(int workerID) {
+            workerStates[workerID].mark();
+        }
+    };
+
+    ParallelMarkingState(TricolorHeapMarker heapMarker) {
+        this.heapMarker = heapMarker;
+    }
+
+    /**
+     * Allocate the per-worker marking state. Must be called when allocation of the heap marker's data structure is enabled.
+     */
+    void initialize() {
+        if (workerStates != null) {
+            return;
+        }
+        final int maxWorkers = GCWorkers.numWorkers();
+        workerStates = new WorkerState[maxWorkers];
+        for (int i = 0; i < maxWorkers; i++) {
+            workerStates[i] = new WorkerState(i);
+            workerStates[i].markingStack.initialize();
+        }
+    }
+
+    private void discoverSpecialReference(Pointer cell) {
+        while (Reference.fromJava(this).compareAndSwapInt(discoveryLockOffset(), 0, 1) != 0) {
+            Intrinsics.pause();
+        }
+        SpecialReferenceManager.discoverSpecialReference(cell);
+        discoveryLock = 0;
+    }
+
+    /**
+     * Set the area of the color map to be scanned for grey marks by the next parallel marking task.
+     */
+    private void setScanArea(Address leftmost, Address rightmost) {
+        if (leftmost.greaterThan(rightmost)) {
+            scanNumChunks = 0;
+            return;
+        }
+        scanFirstBitmapWordIndex = heapMarker.bitmapWordIndex(leftmost);
+        scanLastBitmapWordIndex = heapMarker.bitmapWordIndex(rightmost);
+        final int numBitmapWords = scanLastBitmapWordIndex - scanFirstBitmapWordIndex + 1;
+        scanNumChunks = (numBitmapWords + (1 << LOG2_CHUNK_BITMAP_WORDS) - 1) >> LOG2_CHUNK_BITMAP_WORDS;
+    }
+
+    /**
+     * Run the parallel marking task until no more overflow is left to recover from.
+     */
+    private void runMarkingTask() {
+        do {
+            nextChunk = 0;
+            activeWorkers = numWorkers;
+            GCWorkers.run(markingTask);
+        } while (prepareOverflowRescan());
+    }
+
+    /**
+     * Check if any worker overflowed its marking stack during the last marking task, and if so, set the scan area to cover
+     * all the objects left grey because of the overflow.
+     * @return true if a rescan is needed
+     */
+    private boolean prepareOverflowRescan() {
+        Address leftmost = heapMarker.coveredAreaEnd;
+        Address rightmost = heapMarker.coveredAreaStart;
+        boolean overflowed = false;
+        for (int i = 0; i < numWorkers; i++) {
+            final WorkerState workerState = workerStates[i];
+            if (workerState.overflowed) {
+                overflowed = true;
+                if (workerState.leftmostOverflow.lessThan(leftmost)) {
+                    leftmost = workerState.leftmostOverflow;
+                }
+                if (workerState.rightmostOverflow.greaterThan(rightmost)) {
+                    rightmost = workerState.rightmostOverflow;
+                }
+                workerState.resetOverflow();
+            }
+        }
+        if (overflowed) {
+            overflowRescanCount++;
+            setScanArea(leftmost, rightmost);
+        }
+        return overflowed;
+    }
+
+    /**
+     * Rightmost object marked by any of the workers, or by the root marking.
+     */
+    private Address rightmostMarked(Address rootsRightmost) {
+        Address rightmost = rootsRightmost;
+        for (int i = 0; i < numWorkers; i++) {
+            if (workerStates[i].rightmost.greaterThan(rightmost)) {
+                rightmost = workerStates[i].rightmost;
+            }
+        }
+        return rightmost;
+    }
+
+    /**
+     * Trace all the objects reachable from the grey marks left in the color map by root marking.
+     *
+     * @param rootsLeftmost leftmost object marked grey by root marking
+     * @param rootsRightmost rightmost object marked grey by root marking
+     * @return the rightmost marked object
+     */
+    Address visitGreyObjectsAfterRootMarking(Address rootsLeftmost, Address rootsRightmost) {
+        reset(GCWorkers.numActiveWorkers());
+        setScanArea(rootsLeftmost, rootsRightmost);
+        runMarkingTask();
+        return rightmostMarked(rootsRightmost);
+    }
+
+    /**
+     * Prepare the marking state for a new marking with the specified number of workers.
+     */
+    void reset(int numWorkers) {
+        this.numWorkers = numWorkers;
+        overflowRescanCount = 0;
+        stealCount = 0;
+        for (int i = 0; i < numWorkers; i++) {
+            workerStates[i].reset();
+        }
+    }
+
+    /**
+     * Trace, concurrently with mutator threads, all the objects reachable from the grey marks left in the color map by
+     * root marking. The current thread is the only marking thread and uses the marking stack of worker 0.
+     *
+     * @param rootsLeftmost leftmost object marked grey by root marking
+     * @param rootsRightmost rightmost object marked grey by root marking
+     * @return the rightmost marked object, or zero if the marking was {@linkplain #requestAbort() aborted}
+     */
+    Address visitGreyObjectsConcurrently(Address rootsLeftmost, Address rootsRightmost) {
+        reset(1);
+        concurrent = true;
+        try {
+            setScanArea(rootsLeftmost, rootsRightmost);
+            do {
+                nextChunk = 0;
+                activeWorkers = 1;
+                workerStates[0].mark();
+                if (abortRequested) {
+                    return Address.zero();
+                }
+            } while (prepareOverflowRescan());
+        } finally {
+            concurrent = false;
+        }
+        return rightmostMarked(rootsRightmost);
+    }
+
+    void clearAbortRequest() {
+        abortRequested = false;
+    }
+
+    /**
+     * Request a concurrent marking to stop as soon as possible.
+     */
+    void requestAbort() {
+        abortRequested = true;
+    }
+
+    boolean abortRequested() {
+        return abortRequested;
+    }
+
+    /**
+     * Visitor marking grey the references it visits and pushing them on worker 0's marking stack.
+     */
+    PointerIndexVisitor rootMarker() {
+        return workerStates[0];
+    }
+
+    /**
+     * Complete a concurrent marking while mutators are stopped. Strong roots that mutators may have updated without a
+     * write barrier (thread stacks, monitors, code and immortal heap) are rescanned, then all the objects marked grey by
+     * the SATB barrier and the objects reachable from them are traced with the {@link GCWorkers}.
+     *
+     * @param threadRootsScanner scanner of thread stacks and monitors that marks grey with {@link #rootMarker()}
+     * @param rightmost rightmost object marked by the concurrent marking
+     * @return the rightmost marked object
+     */
+    Address remark(SequentialHeapRootsScanner threadRootsScanner, Address rightmost) {
+        reset(GCWorkers.numActiveWorkers());
+        final WorkerState workerState = workerStates[0];
+        threadRootsScanner.run();
+        Code.visitCells(workerState, false);
+        ImmortalHeap.visitCells(workerState);
+        final int numLoggedCells = SATBMarking.numLoggedCells();
+        for (int i = 0; i < numLoggedCells; i++) {
+            workerState.pushGrey(SATBMarking.loggedCell(i));
+        }
+        return visitPushedObjects(rightmost);
+    }
+
+    /**
+     * Trace objects pushed on worker 0's marking stack, e.g., objects preserved by the special reference manager.
+     *
+     * @param rightmost rightmost marked object so far
+     * @return the rightmost marked object
+     */
+    Address visitPushedObjects(Address rightmost) {
+        setScanArea(heapMarker.coveredAreaEnd, heapMarker.coveredAreaStart);
+        runMarkingTask();
+        return rightmostMarked(rightmost);
+    }
+
+    public boolean isReachable(Reference ref) {
+        Pointer origin = ref.toOrigin();
+        if (heapMarker.isCovered(origin)) {
+            return !heapMarker.isWhite(origin);
+        }
+        return true;
+    }
+
+    public Reference preserve(Reference ref) {
+        // Only ever called by the VM operation thread, i.e., worker 0.
+        workerStates[0].markRefGrey(ref);
+        return ref;
+    }
+
+    public boolean mayRelocateLiveObjects() {
+        return false;
+    }
+
+    /**
+     * Marking state private to a GC worker.
+     */
+    final class WorkerState extends PointerIndexVisitor implements CellVisitor {
+        final int workerID;
+        final WorkStealingMarkingStack markingStack = new WorkStealingMarkingStack();
+
+        /**
+         * Rightmost object marked grey by this worker.
+         */
+        Address rightmost;
+
+        /**
+         * Indicates that this worker left grey objects in the color map because of a marking stack overflow.
+         */
+        boolean overflowed;
+        Address leftmostOverflow;
+        Address rightmostOverflow;
+
+        WorkerState(int workerID) {
+            this.workerID = workerID;
+        }
+
+        void reset() {
+            rightmost = heapMarker.coveredAreaStart;
+            markingStack.reset();
+            resetOverflow();
+        }
+
+        void resetOverflow() {
+            overflowed = false;
+            leftmostOverflow = heapMarker.coveredAreaEnd;
+            rightmostOverflow = heapMarker.coveredAreaStart;
+        }
+
+        void pushGrey(Pointer cell) {
+            if (cell.greaterThan(rightmost)) {
+                rightmost = cell;
+            }
+            if (!markingStack.push(cell)) {
+                recordOverflow(cell);
+            }
+        }
+
+        private void recordOverflow(Pointer cell) {
+            overflowed = true;
+            if (cell.lessThan(leftmostOverflow)) {
+                leftmostOverflow = cell;
+            }
+            if (cell.greaterThan(rightmostOverflow)) {
+                rightmostOverflow = cell;
+            }
+        }
+
+        @INLINE
+        private void markObjectGrey(Pointer cell) {
+            if (!heapMarker.isCovered(cell)) {
+                return;
+            }
+            final int bitIndex = heapMarker.bitIndexOf(cell);
+            if (heapMarker.isWhite(bitIndex) && heapMarker.atomicMarkGreyIfWhite(bitIndex)) {
+                heapMarker.traceGreyMark(cell, bitIndex);
+                pushGrey(cell);
+            }
+        }
+
+        @INLINE
+        void markRefGrey(Reference ref) {
+            markObjectGrey(Layout.originToCell(ref.toOrigin()));
+        }
+
+        @Override
+        public void visit(Pointer pointer, int wordIndex) {
+            markRefGrey(pointer.getReference(wordIndex));
+        }
+
+        private void visitGreyCell(Pointer cell) {
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Reference hubRef = Layout.readHubReference(origin);
+            markRefGrey(hubRef);
+            final Hub hub = UnsafeCast.asHub(hubRef.toJava());
+            if (MaxineVM.isDebug()) {
+                heapMarker.checkGreyCellHub(origin, hub);
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout.isTupleLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+                if (hub.isJLRReference) {
+                    // The worker that blackened the reference is the only one visiting it. No risk of duplicate discovery.
+                    discoverSpecialReference(cell);
+                }
+            } else if (specificLayout.isReferenceArrayLayout()) {
+                final int length = Layout.readArrayLength(origin);
+                for (int index = 0; index < length; index++) {
+                    markRefGrey(Layout.getReference(origin, index));
+                }
+            } else if (specificLayout.isHybridLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+            }
+        }
+
+        /**
+         * Visit the references of a root cell outside of the covered area.
+         */
+        public Pointer visitCell(Pointer cell) {
+            visitGreyCell(cell);
+            return cell.plus(Layout.size(Layout.cellToOrigin(cell)));
+        }
+
+        /**
+         * Visit the cell if the current worker wins the race to blacken it.
+         */
+        @INLINE
+        private void visitIfGrey(Pointer cell) {
+            final int bitIndex = heapMarker.bitIndexOf(cell);
+            if (heapMarker.atomicMarkBlackFromGrey(bitIndex)) {
+                heapMarker.traceBlackMark(cell, bitIndex);
+                visitGreyCell(cell);
+            }
+        }
+
+        private void drain() {
+            Pointer cell = markingStack.pop();
+            while (!cell.isZero()) {
+                visitIfGrey(cell);
+                if (concurrent && abortRequested) {
+                    return;
+                }
+                cell = markingStack.pop();
+            }
+        }
+
+        private void scanChunk(int chunk) {
+            final Pointer colorMapBase = heapMarker.base.asPointer();
+            final int firstBitmapWordIndex = scanFirstBitmapWordIndex + (chunk << LOG2_CHUNK_BITMAP_WORDS);
+            final int lastBitmapWordIndex = Math.min(firstBitmapWordIndex + (1 << LOG2_CHUNK_BITMAP_WORDS) - 1, scanLastBitmapWordIndex);
+            for (int bitmapWordIndex = firstBitmapWordIndex; bitmapWordIndex <= lastBitmapWordIndex; bitmapWordIndex++) {
+                final int bitmapWordFirstBitIndex = bitmapWordIndex << Word.widthValue().log2numberOfBits;
+                long bitmapWord = colorMapBase.getLong(bitmapWordIndex);
+                while (bitmapWord != 0L) {
+                    final long greyMarksInWord = bitmapWord & (bitmapWord >>> 1);
+                    if (greyMarksInWord == 0L) {
+                        break;
+                    }
+                    final int bitIndexInWord = Pointer.fromLong(greyMarksInWord).leastSignificantBitSet();
+                    visitIfGrey(heapMarker.addressOf(bitmapWordFirstBitIndex + bitIndexInWord).asPointer());
+                    drain();
+                    // Re-read the word, ignoring the marks up to the one just processed.
+                    bitmapWord = colorMapBase.getLong(bitmapWordIndex) & ~((2L << (bitIndexInWord + 1)) - 1L);
+                }
+                if ((colorMapBase.getLong(bitmapWordIndex) >>> TricolorHeapMarker.LAST_BIT_INDEX_IN_WORD) == 1L &&
+                                (colorMapBase.getLong(bitmapWordIndex + 1) & 1L) != 0L) {
+                    // Grey mark spanning two words.
+                    visitIfGrey(heapMarker.addressOf(bitmapWordFirstBitIndex + TricolorHeapMarker.LAST_BIT_INDEX_IN_WORD).asPointer());
+                    drain();
+                }
+            }
+        }
+
+        private boolean steal() {
+            for (int i = 1; i < numWorkers; i++) {
+                final WorkerState victim = workerStates[(workerID + i) % numWorkers];
+                final Pointer cell = victim.markingStack.steal();
+                if (!cell.isZero()) {
+                    stealCount++;
+                    visitIfGrey(cell);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean workLeft() {
+            for (int i = 0; i < numWorkers; i++) {
+                if (!workerStates[i].markingStack.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void mark() {
+            // Start with any leftover on the worker's marking stack (e.g., references preserved by the special reference manager).
+            drain();
+            int chunk = atomicAdd(nextChunkOffset(), 1);
+            while (chunk < scanNumChunks) {
+                if (concurrent && abortRequested) {
+                    return;
+                }
+                scanChunk(chunk);
+                chunk = atomicAdd(nextChunkOffset(), 1);
+            }
+            while (true) {
+                drain();
+                if (steal()) {
+                    continue;
+                }
+                // Offer termination.
+                atomicAdd(activeWorkersOffset(), -1);
+                while (true) {
+                    if (activeWorkers == 0) {
+                        return;
+                    }
+                    if (workLeft()) {
+                        atomicAdd(activeWorkersOffset(), 1);
+                        break;
+                    }
+                    Intrinsics.pause();
+                }
+            }
+        }
+    }
+}
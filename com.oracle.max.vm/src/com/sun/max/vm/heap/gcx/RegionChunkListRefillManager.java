@@ -76,6 +76,11 @@ public final class RegionChunkListRefillManager extends ChunkListRefillManager {
      */
     private Size wastedSpace;
 
+    /**
+     * NUMA node the refill manager requests regions local to, or -1 if it doesn't care.
+     */
+    private int numaNode = -1;
+
     private static final OutOfMemoryError outOfMemoryError = new OutOfMemoryError();
 
     public void setRegionProvider(RegionProvider regionProvider) {
@@ -100,6 +105,10 @@ public final class RegionChunkListRefillManager extends ChunkListRefillManager {
         allocatingRegion = INVALID_REGION_ID;
     }
 
+    void setNumaNode(int numaNode) {
+        this.numaNode = numaNode;
+    }
+
     void setRefillPolicy(Size refillThreshold) {
         this.refillThreshold = refillThreshold;
     }
@@ -133,7 +142,7 @@ public final class RegionChunkListRefillManager extends ChunkListRefillManager {
             int gcCount = 0;
             retireCurrentAllocatingRegion();
             do {
-                allocatingRegion = regionProvider.getAllocatingRegion();
+                allocatingRegion = numaNode < 0 ? regionProvider.getAllocatingRegion() : regionProvider.getAllocatingRegion(numaNode);
                 if (allocatingRegion != INVALID_REGION_ID) {
                     if (allocatingRegion == DebuggedRegion) {
                         TLABLog.TraceTLABAllocation = true;
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Compaction of a {@link FirstFitMarkSweepSpace} by evacuation of its sparsest regions to empty regions of the space.
+ * The compaction runs right after a mark-sweep collection of the space, when the color map of the heap marker still reflects the live cells of the space.
+ * It is triggered when the free space that is only available in partially occupied regions exceeds a fragmentation threshold.
+ * <p>
+ * Sparse regions are selected using {@link HeapRegionStatistics}. The live (i.e., black) cells of the selected regions are all copied to empty regions
+ * and forwarded before references are updated. References to evacuated cells are then updated from the roots, the boot heap, the code and immortal
+ * heap, from the black cells of the regions of the space that aren't evacuated (which take the place of the remembered sets of the evacuated area),
+ * and from the evacuated cells themselves. Black marks are moved along with the cells so that heap verification after GC still works.
+ * The evacuated regions are returned to the space as empty regions.
+ * <p>
+ * Objects of the space never relocate otherwise. Compaction is therefore skipped while objects are pinned.
+ */
+public final class RegionCompactor extends Evacuator {
+    private static final byte NOT_COMPACTED = 0;
+    private static final byte EVACUATED = 1;
+    private static final byte DESTINATION = 2;
+
+    /**
+     * Space compacted.
+     */
+    private final FirstFitMarkSweepSpace<?> space;
+
+    /**
+     * Heap marker whose color map tells what cells of the space are live.
+     */
+    private final TricolorHeapMarker heapMarker;
+
+    /**
+     * Role of each region of the heap in the current compaction, indexed by region identifier.
+     */
+    private byte[] regionRoles;
+
+    /**
+     * Identifiers of the regions evacuated by the current compaction.
+     */
+    private int[] evacuatedRegions;
+    private int numEvacuatedRegions;
+
+    /**
+     * Identifiers of the regions cells are evacuated to, in allocation order.
+     */
+    private int[] destinationRegions;
+
+    /**
+     * End of the last cell evacuated to each of the destination regions, as an offset to the start of the region.
+     */
+    private int[] destinationRegionTops;
+    private int numDestinationRegions;
+
+    /**
+     * Allocation top in the current destination region.
+     */
+    private Pointer top = Pointer.zero();
+
+    /**
+     * End of the current destination region.
+     */
+    private Pointer end = Pointer.zero();
+
+    /**
+     * Index in {@link #destinationRegions} of the region where evacuated cells are being scanned.
+     */
+    private int scanRegionIndex;
+
+    /**
+     * Next evacuated cell to scan.
+     */
+    private Pointer scanCursor = Pointer.zero();
+
+    private HeapRegionStatistics regionStats;
+
+    /**
+     * Fragmentation of the space (see {@link HeapRegionStatistics#fragmentationPercent()}) before the last compaction.
+     */
+    private int fragmentationBefore;
+
+    /**
+     * Fragmentation of the space after the last compaction.
+     */
+    private int fragmentationAfter;
+
+    /**
+     * Number of bytes evacuated by the last compaction.
+     */
+    private long evacuatedBytes;
+
+    private int compactionCount;
+
+    private long totalEvacuatedBytes;
+
+    /**
+     * Copy each live cell of an evacuated region to a destination region and forward it.
+     */
+    private final CellVisitor evacuatedCellCopier = new CellVisitor() {
+        public Pointer visitCell(Pointer cell) {
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Size size = Layout.size(origin);
+            final Pointer toCell = allocate(size);
+            Memory.copyBytes(cell, toCell, size);
+            heapMarker.moveBlackMark(cell, toCell);
+            Layout.writeForwardRef(origin, Reference.fromOrigin(Layout.cellToOrigin(toCell)));
+            evacuatedBytes += size.toLong();
+            return cell.plus(size);
+        }
+    };
+
+    @HOSTED_ONLY
+    public RegionCompactor(FirstFitMarkSweepSpace<?> space, TricolorHeapMarker heapMarker) {
+        this.space = space;
+        this.heapMarker = heapMarker;
+    }
+
+    /**
+     * Allocate the compactor's data structures. Must be called once the region table is initialized, with custom allocation enabled.
+     */
+    public void initialize() {
+        final int numRegions = RegionTable.theRegionTable().length();
+        regionRoles = new byte[numRegions];
+        evacuatedRegions = new int[numRegions];
+        destinationRegions = new int[numRegions];
+        destinationRegionTops = new int[numRegions];
+        regionStats = new HeapRegionStatistics(space.minReclaimableSpace());
+    }
+
+    private int measureFragmentation() {
+        regionStats.clear();
+        regionStats.doStats(space.heapAccount());
+        return regionStats.fragmentationPercent();
+    }
+
+    /**
+     * Compact the space if its fragmentation exceeds a threshold. Must be called right after the space was marked and swept, before the color map of
+     * the heap marker is cleared.
+     *
+     * @param fragmentationThreshold percentage of the free space only available in partially occupied regions above which the space is compacted
+     * @return true if the space was compacted
+     */
+    public boolean compactIfFragmented(int fragmentationThreshold) {
+        // Region occupancy is only accurate once all regions are swept.
+        space.completeSweep();
+        fragmentationBefore = measureFragmentation();
+        final int numEmptyRegions = regionStats.numEmptyRegions();
+        if (fragmentationBefore < fragmentationThreshold || numEmptyRegions < 2) {
+            return false;
+        }
+        // Live data of the evacuated regions is limited to half the space of all empty regions but one. Whenever the compactor moves to a new destination
+        // region, the cell that doesn't fit in the previous one and the previous region's cells together exceed a region. So the cells evacuated
+        // within this limit always fit in the empty regions.
+        final long maxLiveBytes = ((long) (numEmptyRegions - 1) * regionSizeInBytes) >> 1;
+        final int minFreeBytes = Math.max(regionStats.minFreeSpaceOfSparsestRegions(numEmptyRegions - 1), regionSizeInBytes >> 1);
+        numEvacuatedRegions = space.removeSparseRegions(minFreeBytes, maxLiveBytes, evacuatedRegions);
+        if (numEvacuatedRegions < 2) {
+            // Evacuating a single region doesn't reclaim anything.
+            space.restoreSparseRegions(evacuatedRegions, numEvacuatedRegions);
+            return false;
+        }
+        for (int i = 0; i < numEvacuatedRegions; i++) {
+            regionRoles[evacuatedRegions[i]] = EVACUATED;
+        }
+        evacuatedBytes = 0L;
+        evacuate(Heap.logGCPhases());
+        fragmentationAfter = measureFragmentation();
+        compactionCount++;
+        totalEvacuatedBytes += evacuatedBytes;
+        if (Heap.verbose()) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Compaction #");
+            Log.print(compactionCount);
+            Log.print(": evacuated ");
+            Log.print(evacuatedBytes);
+            Log.print(" bytes from ");
+            Log.print(numEvacuatedRegions);
+            Log.print(" to ");
+            Log.print(numDestinationRegions);
+            Log.print(" regions, fragmentation ");
+            Log.print(fragmentationBefore);
+            Log.print("% -> ");
+            Log.print(fragmentationAfter);
+            Log.println('%');
+            Log.unlock(lockDisabledSafepoints);
+        }
+        return true;
+    }
+
+    public int fragmentationBeforeLastCompaction() {
+        return fragmentationBefore;
+    }
+
+    public int fragmentationAfterLastCompaction() {
+        return fragmentationAfter;
+    }
+
+    public long bytesEvacuatedByLastCompaction() {
+        return evacuatedBytes;
+    }
+
+    public int compactionCount() {
+        return compactionCount;
+    }
+
+    public long totalEvacuatedBytes() {
+        return totalEvacuatedBytes;
+    }
+
+    @Override
+    boolean inEvacuatedArea(Pointer origin) {
+        final int regionID = RegionTable.theRegionTable().regionID(origin);
+        return regionID != INVALID_REGION_ID && regionRoles[regionID] == EVACUATED;
+    }
+
+    private void closeDestinationRegion() {
+        destinationRegionTops[numDestinationRegions - 1] = top.minus(RegionTable.theRegionTable().regionAddress(destinationRegions[numDestinationRegions - 1])).toInt();
+    }
+
+    private Pointer allocate(Size size) {
+        if (top.plus(size).greaterThan(end)) {
+            if (numDestinationRegions > 0) {
+                closeDestinationRegion();
+            }
+            final int regionID = space.removeEmptyRegion();
+            FatalError.check(regionID != INVALID_REGION_ID, "Compaction ran out of empty regions");
+            regionRoles[regionID] = DESTINATION;
+            destinationRegions[numDestinationRegions++] = regionID;
+            top = RegionTable.theRegionTable().regionAddress(regionID).asPointer();
+            end = top.plus(regionSizeInBytes);
+        }
+        final Pointer cell = top;
+        top = top.plus(size);
+        return cell;
+    }
+
+    @Override
+    @NEVER_INLINE
+    Pointer evacuate(Pointer origin) {
+        // Live cells of the evacuated regions are all evacuated before references are updated (see doBeforeEvacuation), so this
+        // shouldn't be reached. Evacuate and blacken the cell anyway to keep the heap consistent.
+        final Pointer fromCell = Layout.originToCell(origin);
+        final Size size = Layout.size(origin);
+        final Pointer toCell = allocate(size);
+        Memory.copyBytes(fromCell, toCell, size);
+        heapMarker.moveBlackMark(fromCell, toCell);
+        evacuatedBytes += size.toLong();
+        return Layout.cellToOrigin(toCell);
+    }
+
+    @Override
+    protected void doBeforeEvacuation() {
+        // Referents of special references were already processed by the marking. Those that survived are evacuated like any other live cell.
+        disableSpecialRefDiscovery();
+        numDestinationRegions = 0;
+        top = Pointer.zero();
+        end = Pointer.zero();
+        for (int i = 0; i < numEvacuatedRegions; i++) {
+            final Address start = RegionTable.theRegionTable().regionAddress(evacuatedRegions[i]);
+            heapMarker.visitBlackCells(start, start.plus(regionSizeInBytes), evacuatedCellCopier);
+        }
+        scanRegionIndex = 0;
+        scanCursor = numDestinationRegions > 0 ? RegionTable.theRegionTable().regionAddress(destinationRegions[0]).asPointer() : Pointer.zero();
+    }
+
+    /**
+     * Update the references to evacuated cells held by the live cells of the space that aren't evacuated.
+     */
+    @Override
+    protected void evacuateFromRSets() {
+        final RegionTable regionTable = RegionTable.theRegionTable();
+        final HeapRegionList committedRegions = space.heapAccount().committedRegions();
+        int regionID = committedRegions.head();
+        while (regionID != INVALID_REGION_ID) {
+            if (regionRoles[regionID] == NOT_COMPACTED) {
+                final Address start = regionTable.regionAddress(regionID);
+                heapMarker.visitBlackCells(start, start.plus(regionSizeInBytes), this);
+            }
+            regionID = committedRegions.next(regionID);
+        }
+    }
+
+    /**
+     * Scan the evacuated cells in allocation order to update their references to other evacuated cells.
+     */
+    @Override
+    protected void evacuateReachables() {
+        while (scanRegionIndex < numDestinationRegions) {
+            final boolean isCurrentRegion = scanRegionIndex == numDestinationRegions - 1;
+            final Pointer scanEnd = isCurrentRegion ? top :
+                RegionTable.theRegionTable().regionAddress(destinationRegions[scanRegionIndex]).plus(destinationRegionTops[scanRegionIndex]).asPointer();
+            while (scanCursor.lessThan(scanEnd)) {
+                scanCursor = scanCellForEvacuatees(scanCursor);
+            }
+            if (isCurrentRegion && scanCursor.equals(top)) {
+                return;
+            }
+            scanRegionIndex++;
+            if (scanRegionIndex < numDestinationRegions) {
+                scanCursor = RegionTable.theRegionTable().regionAddress(destinationRegions[scanRegionIndex]).asPointer();
+            }
+        }
+    }
+
+    @Override
+    protected void doAfterEvacuation() {
+        if (numDestinationRegions > 0) {
+            closeDestinationRegion();
+        }
+        for (int i = 0; i < numDestinationRegions; i++) {
+            final int regionID = destinationRegions[i];
+            final HeapRegionInfo rinfo = HeapRegionInfo.fromRegionID(regionID);
+            space.addCompactionDestination(rinfo, rinfo.regionStart().plus(destinationRegionTops[i]));
+            regionRoles[regionID] = NOT_COMPACTED;
+        }
+        for (int i = 0; i < numEvacuatedRegions; i++) {
+            final int regionID = evacuatedRegions[i];
+            space.addEvacuatedRegion(HeapRegionInfo.fromRegionID(regionID));
+            regionRoles[regionID] = NOT_COMPACTED;
+        }
+        space.sortRegionLists();
+        top = Pointer.zero();
+        end = Pointer.zero();
+        scanCursor = Pointer.zero();
+    }
+}
@@ -39,10 +39,19 @@ public interface RegionProvider {
      * Obtain a region with free space from the region provider.
      * TODO: may need to refine this with argument specify constraint on the requested region, e.g., empty, with minimum number of fragment or free space,
      * suitable for TLAB allocation, etc..
+     * A region provider that sweeps lazily may sweep regions on demand to satisfy the request. Callers must hold the region provider's refill lock.
      * @return an region identifier, or {@link HeapRegionConstants#INVALID_REGION_ID} if free space is exhausted.
      */
     int getAllocatingRegion();
 
+    /**
+     * Obtain a region with free space, preferably local to the specified NUMA node.
+     * Same as {@link #getAllocatingRegion()} if no region local to the node has free space.
+     * @param numaNode a NUMA node (see {@link HeapRegionManager#regionNode(int)})
+     * @return an region identifier, or {@link HeapRegionConstants#INVALID_REGION_ID} if free space is exhausted.
+     */
+    int getAllocatingRegion(int numaNode);
+
     /**
      * Obtain a region with at least the specified amount of free space, and at most the specified number of chunks.
      * @param minFreeBytes
@@ -40,6 +40,7 @@ public interface ResizableSpace {
     /**
      * Try to shrink the resizable space by delta bytes.
       * The method rounds the delta up to any alignment constraints the resizable space may have to enforce.
+      * Memory backing the space given back should be uncommitted so as to return it to the OS.
     * @param delta the number of bytes to shrink the resizable with
      * @return the effective size the space shrunk, zero if failed to decrease the space.
      */
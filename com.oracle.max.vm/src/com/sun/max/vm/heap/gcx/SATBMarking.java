@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.cri.ci.*;
+import com.sun.cri.xir.*;
+import com.sun.cri.xir.CiXirAssembler.XirLabel;
+import com.sun.cri.xir.CiXirAssembler.XirOperand;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * Snapshot-at-the-beginning (SATB) pre-write barrier used while a {@link TricolorHeapMarker} traces the heap concurrently with mutators.
+ * <p>
+ * The barrier is inactive most of the time, and costs a load and a test of the {@link #active} flag of the single instance of
+ * this class. Once {@linkplain #activate() activated} by the initial mark pause, every reference store first paints grey the reference
+ * about to be overwritten, so that every object reachable at the beginning of the marking is traced. It also paints grey the new
+ * value of the reference. This guarantees that objects allocated during the concurrent marking, which are left white, are traced
+ * at remark if they were stored in the heap, and covers references to weakly reachable objects obtained from a
+ * {@link java.lang.ref.Reference#get()} during the marking. Objects allocated during the marking and referenced only from thread
+ * stacks are found by the remark pause, which rescans them.
+ * <p>
+ * Cells painted grey by the barrier are recorded in a fixed-size off-heap log that the remark pause traces from. A full log is only
+ * flagged: the remark pause then falls back to a complete stop-the-world mark.
+ * <p>
+ * The barrier's slow path runs with safepoints disabled, so a stop-the-world pause never observes a partially recorded cell,
+ * and checks again the {@link #active} flag once safepoints are disabled.
+ */
+public final class SATBMarking {
+    private static final VMIntOption satbLogSizeOption =
+        register(new VMIntOption("-XX:SATBLogSize=", 64 * 1024, "Number of cells the SATB barrier can record during a concurrent marking."),
+                        MaxineVM.Phase.PRISTINE);
+
+    private static final SATBMarking theSATBMarking = new SATBMarking();
+
+    /**
+     * Non-zero when the barrier is active, i.e., during a concurrent marking.
+     */
+    private volatile int active;
+
+    private TricolorHeapMarker heapMarker;
+
+    private Address logBase;
+
+    private int logCapacity;
+
+    /**
+     * Index of the next free entry of the log. Incremented with a CAS by mutators.
+     */
+    private volatile int logTop;
+
+    /**
+     * Set when a cell couldn't be recorded because the log was full.
+     */
+    private volatile boolean overflowed;
+
+    @FOLD
+    private static int activeOffset() {
+        return ClassActor.fromJava(SATBMarking.class).findLocalInstanceFieldActor("active").offset();
+    }
+
+    @FOLD
+    private static int logTopOffset() {
+        return ClassActor.fromJava(SATBMarking.class).findLocalInstanceFieldActor("logTop").offset();
+    }
+
+    private SATBMarking() {
+    }
+
+    /**
+     * Allocate the log and bind the barrier to the heap marker doing the concurrent marking.
+     *
+     * @param heapMarker the heap marker whose color map the barrier paints
+     */
+    static void initialize(TricolorHeapMarker heapMarker) {
+        final SATBMarking satb = theSATBMarking;
+        satb.heapMarker = heapMarker;
+        satb.logCapacity = Math.max(satbLogSizeOption.getValue(), 1024);
+        final Size size = Size.fromInt(satb.logCapacity).shiftedLeft(Word.widthValue().log2numberOfBytes);
+        satb.logBase = Memory.allocate(size);
+        if (satb.logBase.isZero()) {
+            MaxineVM.reportPristineMemoryFailure("SATB log", "allocate", size);
+        }
+    }
+
+    @INLINE
+    public static boolean isActive() {
+        return theSATBMarking.active != 0;
+    }
+
+    /**
+     * Activate the barrier. Must be called while mutators are stopped.
+     */
+    static void activate() {
+        final SATBMarking satb = theSATBMarking;
+        satb.logTop = 0;
+        satb.overflowed = false;
+        satb.active = 1;
+    }
+
+    /**
+     * Deactivate the barrier. Must be called while mutators are stopped.
+     */
+    static void deactivate() {
+        theSATBMarking.active = 0;
+    }
+
+    static boolean overflowed() {
+        return theSATBMarking.overflowed;
+    }
+
+    static int numLoggedCells() {
+        final SATBMarking satb = theSATBMarking;
+        return Math.min(satb.logTop, satb.logCapacity);
+    }
+
+    static Pointer loggedCell(int index) {
+        return theSATBMarking.logBase.asPointer().getWord(index).asPointer();
+    }
+
+    private void log(Pointer cell) {
+        int index;
+        do {
+            index = logTop;
+            if (index >= logCapacity) {
+                overflowed = true;
+                return;
+            }
+        } while (Reference.fromJava(this).compareAndSwapInt(logTopOffset(), index, index + 1) != index);
+        logBase.asPointer().setWord(index, cell);
+    }
+
+    private void shade(Reference ref) {
+        if (ref.isZero()) {
+            return;
+        }
+        final Pointer cell = Layout.originToCell(ref.toOrigin());
+        if (heapMarker.markGreyConcurrently(cell)) {
+            log(cell);
+        }
+    }
+
+    @NEVER_INLINE
+    private static void preWriteBarrierSlowPath(Reference oldValue, Reference newValue) {
+        final boolean wasDisabled = SafepointPoll.disable();
+        final SATBMarking satb = theSATBMarking;
+        if (satb.active != 0) {
+            satb.shade(oldValue);
+            satb.shade(newValue);
+        }
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+    }
+
+    /**
+     * Barrier to run before storing a reference in a tuple.
+     *
+     * @param ref the tuple whose reference field is updated
+     * @param offset offset of the reference field from the tuple's origin
+     * @param value the new value of the reference field
+     */
+    @INLINE
+    public static void preWriteBarrier(Reference ref, Offset offset, Reference value) {
+        if (isActive()) {
+            preWriteBarrierSlowPath(ref.readReference(offset), value);
+        }
+    }
+
+    /**
+     * Barrier to run before storing a reference in an array.
+     *
+     * @param ref the array whose element is updated
+     * @param displacement displacement of the first element from the array's origin
+     * @param index index of the updated element
+     * @param value the new value of the element
+     */
+    @INLINE
+    public static void preWriteBarrier(Reference ref, int displacement, int index, Reference value) {
+        if (isActive()) {
+            preWriteBarrierSlowPath(ref.getReference(displacement, index), value);
+        }
+    }
+
+    /**
+     * Slow path of the XIR pre-write barrier for tuples.
+     */
+    private static void tuplePreWriteBarrier(Object object, int offset, Object value) {
+        preWriteBarrierSlowPath(Reference.fromJava(object).readReference(offset), Reference.fromJava(value));
+    }
+
+    /**
+     * Slow path of the XIR pre-write barrier for reference arrays.
+     */
+    private static void arrayPreWriteBarrier(Object array, int index, Object value) {
+        final int displacement = Layout.referenceArrayLayout().getElementOffsetFromOrigin(0).toInt();
+        preWriteBarrierSlowPath(Reference.fromJava(array).getReference(displacement, index), Reference.fromJava(value));
+    }
+
+    private static final CriticalMethod tuplePreWriteBarrier =
+        new CriticalMethod(SATBMarking.class, "tuplePreWriteBarrier", SignatureDescriptor.create(void.class, Object.class, int.class, Object.class));
+
+    private static final CriticalMethod arrayPreWriteBarrier =
+        new CriticalMethod(SATBMarking.class, "arrayPreWriteBarrier", SignatureDescriptor.create(void.class, Object.class, int.class, Object.class));
+
+    @HOSTED_ONLY
+    private static void genPreWriteBarrier(CiXirAssembler asm, CriticalMethod slowPath, XirOperand cell, XirOperand offsetOrIndex, XirOperand value) {
+        final XirOperand isActive = asm.createTemp("satbActive", CiKind.Int);
+        final XirLabel slow = asm.createOutOfLineLabel("satbSlowPath");
+        final XirLabel done = asm.createInlineLabel("satbDone");
+        asm.pload(CiKind.Int, isActive, asm.createConstant(CiConstant.forObject(theSATBMarking)), asm.i(activeOffset()), false);
+        asm.jneq(slow, isActive, asm.i(0));
+        asm.bindOutOfLine(slow);
+        asm.callRuntime(slowPath.classMethodActor, null, cell, offsetOrIndex, value);
+        asm.jmp(done);
+        asm.bindInline(done);
+    }
+
+    /**
+     * Generate the XIR pre-write barrier for a store in a tuple.
+     */
+    @HOSTED_ONLY
+    public static void genTuplePreWriteBarrier(CiXirAssembler asm, XirOperand tupleCell, XirOperand fieldOffset, XirOperand value) {
+        genPreWriteBarrier(asm, tuplePreWriteBarrier, tupleCell, fieldOffset, value);
+    }
+
+    /**
+     * Generate the XIR pre-write barrier for a store in a reference array.
+     */
+    @HOSTED_ONLY
+    public static void genArrayPreWriteBarrier(CiXirAssembler asm, XirOperand arrayCell, XirOperand elemIndex, XirOperand value) {
+        genPreWriteBarrier(asm, arrayPreWriteBarrier, arrayCell, elemIndex, value);
+    }
+}
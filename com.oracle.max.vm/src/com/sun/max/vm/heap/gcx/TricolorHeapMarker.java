@@ -21,6 +21,7 @@
  * questions.
  */
 package com.sun.max.vm.heap.gcx;
+import com.oracle.max.cri.intrinsics.*;
 import com.sun.max.annotate.*;
 import com.sun.max.lang.*;
 import com.sun.max.memory.*;
@@ -180,6 +181,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
      * A ready-to-use option to try new code.
      */
     static boolean UseNewCode = false;
+
+    /**
+     * Use the {@link GCWorkers} to trace the heap in parallel when more than one GC worker is available.
+     */
+    static boolean UseParallelMarking = true;
     static {
         VMOptions.addFieldOption("-XX:", "TraceMarking", TricolorHeapMarker.class, "Trace each mark update (Debug mode only)", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "UseRescanMap", TricolorHeapMarker.class, "Use a rescan map when recovering from mark stack overflow", Phase.PRISTINE);
@@ -188,6 +194,7 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         VMOptions.addFieldOption("-XX:", "VerifyGreyLessAreas", TricolorHeapMarker.class, "Verify absence of grey bits in areas that shouldn't have any grey objects", Phase.PRISTINE);
 
         VMOptions.addFieldOption("-XX:", "UseNewCode", TricolorHeapMarker.class, "Use new refactored code)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "UseParallelMarking", TricolorHeapMarker.class, "Trace the heap in parallel with the GC workers", Phase.PRISTINE);
     }
 
     private enum MARK_PHASE {
@@ -524,6 +531,7 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         heapRootsScanner = null;
         overflowLinearScanState = null;
         overflowScanWithRescanMapState = null;
+        parallelMarkingState = null;
         initialize(start, end, bitmapStorage, bitmapSize);
     }
 
@@ -544,6 +552,7 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         heapRootsScanner = new SequentialHeapRootsScanner(rootCellVisitor);
         overflowLinearScanState = new OverflowLinearScanState(this);
         overflowScanWithRescanMapState = new OverflowScanWithRescanMapState(this);
+        parallelMarkingState = new ParallelMarkingState(this);
     }
 
     @FOLD
@@ -583,6 +592,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
                 overflowScanState = overflowLinearScanState;
             }
             overflowScanState.initialize();
+            if (UseParallelMarking && GCWorkers.numWorkers() > 1) {
+                parallelMarkingState.initialize();
+            } else {
+                UseParallelMarking = false;
+            }
         }
     }
 
@@ -734,6 +748,75 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         basePointer.setLong(wordIndex, basePointer.getLong(wordIndex) & ~bitmaskFor(greyBitIndex));
     }
 
+    /**
+     * Atomically paint grey a white color location that may span words. Used when several GC workers mark concurrently.
+     * If the color spans words, the bit in the first word is used to claim the location.
+     *
+     * @param bitIndex
+     * @return true if the location was white and the current thread painted it grey, false otherwise.
+     */
+    @INLINE
+    final boolean atomicMarkGreyIfWhite(int bitIndex) {
+        final Pointer basePointer = base.asPointer();
+        final int wordIndex = bitmapWordIndex(bitIndex);
+        final int byteOffset = wordIndex << Word.widthValue().log2numberOfBytes;
+        final long whiteMask = bitmaskFor(bitIndexInWord(bitIndex));
+        final long greyMask = colorSpanWords(bitIndex) ? whiteMask : GREY << bitIndexInWord(bitIndex);
+        long bitmapWord;
+        do {
+            bitmapWord = basePointer.getLong(wordIndex);
+            if ((bitmapWord & whiteMask) != 0L) {
+                return false;
+            }
+        } while (basePointer.compareAndSwapLong(byteOffset, bitmapWord, bitmapWord | greyMask) != bitmapWord);
+        if (colorSpanWords(bitIndex)) {
+            // Won the location. Set the grey bit in the next word.
+            final int nextByteOffset = byteOffset + Word.size();
+            do {
+                bitmapWord = basePointer.getLong(wordIndex + 1);
+            } while (basePointer.compareAndSwapLong(nextByteOffset, bitmapWord, bitmapWord | 1L) != bitmapWord);
+        }
+        return true;
+    }
+
+    /**
+     * Atomically paint black a grey color location. Used when several GC workers mark concurrently.
+     *
+     * @param bitIndex
+     * @return true if the location was grey and the current thread painted it black, false otherwise.
+     */
+    @INLINE
+    final boolean atomicMarkBlackFromGrey(int bitIndex) {
+        final Pointer basePointer = base.asPointer();
+        final int greyBitIndex = bitIndex + 1;
+        final int wordIndex = bitmapWordIndex(greyBitIndex);
+        final int byteOffset = wordIndex << Word.widthValue().log2numberOfBytes;
+        final long greyMask = bitmaskFor(bitIndexInWord(greyBitIndex));
+        long bitmapWord;
+        do {
+            bitmapWord = basePointer.getLong(wordIndex);
+            if ((bitmapWord & greyMask) == 0L) {
+                return false;
+            }
+        } while (basePointer.compareAndSwapLong(byteOffset, bitmapWord, bitmapWord & ~greyMask) != bitmapWord);
+        return true;
+    }
+
+    /**
+     * Atomically paint grey a white cell of the covered area. Used by mutators while the heap is marked concurrently.
+     *
+     * @param cell a cell
+     * @return true if the cell is in the covered area, was white and the current thread painted it grey
+     */
+    @INLINE
+    final boolean markGreyConcurrently(Pointer cell) {
+        if (!isCovered(cell)) {
+            return false;
+        }
+        final int bitIndex = bitIndexOf(cell);
+        return isWhite(bitIndex) && atomicMarkGreyIfWhite(bitIndex);
+    }
+
     @INLINE
     final void markBlackFromGrey(Address cell) {
         final int bitIndex = bitIndexOf(cell);
@@ -1249,6 +1332,12 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
     private final OverflowLinearScanState overflowLinearScanState;
     private final OverflowScanWithRescanMapState overflowScanWithRescanMapState;
 
+    /**
+     * Marking state used when tracing with the {@link GCWorkers}.
+     * @see #UseParallelMarking
+     */
+    private final ParallelMarkingState parallelMarkingState;
+
     /**
      * Indicates whether we're recovering from a marking stack overflow
      * (i.e., a scan of the marking stack in recovery mode is initiated).
@@ -1506,6 +1595,188 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         visitGreyObjects();
     }
 
+    /**
+     * Indicates whether tracing is performed in parallel by the {@link GCWorkers}.
+     */
+    private boolean useParallelMarking() {
+        return UseParallelMarking && GCWorkers.numActiveWorkers() > 1;
+    }
+
+    /**
+     * Visit all objects marked grey during root marking with the {@link GCWorkers}.
+     * Objects left grey in the color map on a marking stack overflow are recovered by the parallel marking itself, so the overflow
+     * scan states aren't used.
+     */
+    private void visitGreyObjectsInParallelAfterRootMarking() {
+        initAfterRootMarking();
+        forwardScanState.rightmost = parallelMarkingState.visitGreyObjectsAfterRootMarking(rootCellVisitor.leftmost, rootCellVisitor.rightmost);
+        forwardScanState.finger = forwardScanState.rightmost;
+    }
+
+    /**
+     * Process discovered special references and visit, with the {@link GCWorkers}, the objects they preserve.
+     */
+    private void processSpecialReferencesInParallel() {
+        SpecialReferenceManager.processDiscoveredSpecialReferences(parallelMarkingState);
+        forwardScanState.rightmost = parallelMarkingState.visitPushedObjects(forwardScanState.rightmost);
+        forwardScanState.finger = forwardScanState.rightmost;
+    }
+
+    /**
+     * States of a concurrent marking.
+     */
+    private enum CONCURRENT_PHASE {
+        /**
+         * No concurrent marking in progress.
+         */
+        IDLE,
+        /**
+         * Roots have been marked and the SATB barrier is active: the heap can be traced concurrently.
+         */
+        MARKING,
+        /**
+         * The concurrent tracing is done. Marking must be completed with a {@linkplain #remark(HeapRegionRangeIterable) remark}.
+         */
+        COMPLETE
+    }
+
+    private volatile CONCURRENT_PHASE concurrentPhase = CONCURRENT_PHASE.IDLE;
+
+    /**
+     * Set by the concurrent marking thread while it traces the heap.
+     */
+    private volatile boolean concurrentTracing;
+
+    private Address concurrentRootsLeftmost;
+    private Address concurrentRootsRightmost;
+
+    /**
+     * Rightmost object marked by the concurrent tracing.
+     */
+    private Address concurrentRightmost;
+
+    /**
+     * Scanning of thread stacks and monitors during remark.
+     */
+    private SequentialHeapRootsScanner remarkRootsScanner;
+
+    /**
+     * Allocate the data structures needed to mark the heap concurrently with mutators.
+     * Must be called when allocation of the heap marker's data structure is enabled.
+     */
+    public void initializeConcurrentMarking() {
+        parallelMarkingState.initialize();
+        remarkRootsScanner = new SequentialHeapRootsScanner(parallelMarkingState.rootMarker());
+        SATBMarking.initialize(this);
+    }
+
+    /**
+     * Start a concurrent marking: mark the roots grey and activate the SATB write barrier. Must be called while mutators
+     * are stopped, with their TLABs retired.
+     */
+    public void initialMark() {
+        FatalError.check(concurrentPhase == CONCURRENT_PHASE.IDLE, "concurrent marking already in progress");
+        traceGCTimes = Heap.logGCTime();
+        clearColorMap();
+        markRoots();
+        concurrentRootsLeftmost = rootCellVisitor.leftmost;
+        concurrentRootsRightmost = rootCellVisitor.rightmost;
+        parallelMarkingState.clearAbortRequest();
+        SATBMarking.activate();
+        concurrentPhase = CONCURRENT_PHASE.MARKING;
+    }
+
+    /**
+     * Trace the heap from the roots marked by the last {@link #initialMark()} concurrently with mutators.
+     * Called by the concurrent marking thread.
+     *
+     * @return true if the tracing completed, false if it was aborted
+     */
+    public boolean markConcurrently() {
+        if (concurrentPhase != CONCURRENT_PHASE.MARKING) {
+            return false;
+        }
+        concurrentTracing = true;
+        // Pairs with the barrier in abortConcurrentMarking: either the abort request is seen here, or the VM operation
+        // thread sees the tracing flag and waits.
+        MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+        boolean completed = false;
+        if (!parallelMarkingState.abortRequested()) {
+            final Address rightmost = parallelMarkingState.visitGreyObjectsConcurrently(concurrentRootsLeftmost, concurrentRootsRightmost);
+            if (!rightmost.isZero()) {
+                concurrentRightmost = rightmost;
+                concurrentPhase = CONCURRENT_PHASE.COMPLETE;
+                completed = true;
+            }
+        }
+        concurrentTracing = false;
+        return completed;
+    }
+
+    /**
+     * Indicates whether a concurrent tracing completed and is waiting for a {@linkplain #remark(HeapRegionRangeIterable) remark}.
+     */
+    public boolean isConcurrentMarkingComplete() {
+        return concurrentPhase == CONCURRENT_PHASE.COMPLETE;
+    }
+
+    /**
+     * Abandon the concurrent marking in progress, if any. Must be called by the VM operation thread, e.g., before a full
+     * stop-the-world marking. Returns once the concurrent marking thread stopped tracing.
+     */
+    public void abortConcurrentMarking() {
+        if (concurrentPhase == CONCURRENT_PHASE.IDLE) {
+            return;
+        }
+        parallelMarkingState.requestAbort();
+        MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+        while (concurrentTracing) {
+            Intrinsics.pause();
+        }
+        SATBMarking.deactivate();
+        SpecialReferenceManager.discardDiscoveredSpecialReferences();
+        concurrentPhase = CONCURRENT_PHASE.IDLE;
+    }
+
+    /**
+     * Complete a concurrent marking. Must be called while mutators are stopped.
+     * If the SATB log overflowed during the concurrent marking, the heap is marked again from scratch.
+     *
+     * @param regionsRanges enumerate ranges of heap regions holding objects to trace
+     */
+    public void remark(HeapRegionRangeIterable regionsRanges) {
+        FatalError.check(concurrentPhase == CONCURRENT_PHASE.COMPLETE, "no completed concurrent marking to remark");
+        SATBMarking.deactivate();
+        concurrentPhase = CONCURRENT_PHASE.IDLE;
+        if (SATBMarking.overflowed()) {
+            SpecialReferenceManager.discardDiscoveredSpecialReferences();
+            markAll(regionsRanges);
+            return;
+        }
+        final boolean traceGCPhases = Heap.logGCPhases();
+        traceGCTimes = Heap.logGCTime();
+
+        markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
+        markPhase.traceBegin(traceGCPhases);
+        startTimer(heapMarkingTimer);
+        forwardScanState.rightmost = parallelMarkingState.remark(remarkRootsScanner, concurrentRightmost);
+        forwardScanState.finger = forwardScanState.rightmost;
+        stopTimer(heapMarkingTimer);
+        markPhase.traceEnd(traceGCPhases);
+
+        markPhase = MARK_PHASE.SPECIAL_REF;
+        markPhase.traceBegin(traceGCPhases);
+        startTimer(weakRefTimer);
+        processSpecialReferencesInParallel();
+        stopTimer(weakRefTimer);
+        markPhase.traceEnd(traceGCPhases);
+
+        if (VerifyAfterMarking) {
+            verifyHasNoGreyMarks(coveredAreaStart, forwardScanState.endOfRightmostVisitedObject());
+        }
+        markPhase = MARK_PHASE.DONE;
+    }
+
 
     /**
      * Find the first black mark in the specified range of the color map.
@@ -1637,16 +1908,72 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         do {
             assert regionsSweeper.hasNextSweepingRegion();
             regionsSweeper.beginSweep();
-            if (doImprecise) {
-                impreciseRegionSweep(regionsSweeper);
-            } else {
-                preciseRegionSweep(regionsSweeper);
-            }
+            sweepRegion(regionsSweeper, doImprecise);
             regionsSweeper.endSweep();
         } while(regionsSweeper.endOfSweepingRegion().lessThan(endOfRightmostLiveObject));
         regionsSweeper.reachedRightmostLiveRegion();
     }
 
+    /**
+     * Sweep the current region of a heap region sweeper only. The caller is responsible for setting up the sweeper's region before,
+     * and for completing the sweep of the region after.
+     * Regions sweeps are independent of each other except for the regions of a multi-region object, which must be swept in address order
+     * by the same sweeper. Other regions can be swept in any order, concurrently by several sweepers, or after mutators resumed, as long as
+     * the color map isn't modified.
+     */
+    public void sweepRegion(HeapRegionSweeper regionSweeper, boolean doImprecise) {
+        if (doImprecise) {
+            impreciseRegionSweep(regionSweeper);
+        } else {
+            preciseRegionSweep(regionSweeper);
+        }
+    }
+
+    /**
+     * Visit the black cells of a range of the covered area in address order.
+     * Must only be used once marking is complete, i.e., when no grey marks are left in the color map.
+     *
+     * @param start start of the range
+     * @param end end of the range
+     * @param visitor visitor applied to every black cell whose first word is in the range
+     */
+    public void visitBlackCells(Address start, Address end, CellVisitor visitor) {
+        final Pointer colorMapBase = base.asPointer();
+        final int lastBitIndex = bitIndexOf(end);
+        int bitIndex = bitIndexOf(start);
+        while (bitIndex < lastBitIndex) {
+            final int bitmapWordIndex = bitmapWordIndex(bitIndex);
+            // Ignore the marks of the bitmap word before the current bit index.
+            final long bitmapWord = colorMapBase.getLong(bitmapWordIndex) >>> bitIndexInWord(bitIndex);
+            if (bitmapWord == 0L) {
+                bitIndex = (bitmapWordIndex + 1) << Word.widthValue().log2numberOfBits;
+                continue;
+            }
+            bitIndex += Pointer.fromLong(bitmapWord).leastSignificantBitSet();
+            if (bitIndex >= lastBitIndex) {
+                break;
+            }
+            bitIndex = bitIndexOf(visitor.visitCell(addressOf(bitIndex).asPointer()));
+        }
+    }
+
+    /**
+     * Move the black mark of a cell relocated after marking completed, e.g., by a compaction of the covered area, so that the color map keeps
+     * reflecting the live cells of the covered area.
+     *
+     * @param fromCell former location of the cell
+     * @param toCell new location of the cell
+     */
+    final void moveBlackMark(Pointer fromCell, Pointer toCell) {
+        final Pointer basePointer = base.asPointer();
+        final int fromBitIndex = bitIndexOf(fromCell);
+        final int fromWordIndex = bitmapWordIndex(fromBitIndex);
+        basePointer.setLong(fromWordIndex, basePointer.getLong(fromWordIndex) & ~bitmaskFor(bitIndexInWord(fromBitIndex)));
+        final int toBitIndex = bitIndexOf(toCell);
+        final int toWordIndex = bitmapWordIndex(toBitIndex);
+        basePointer.setLong(toWordIndex, basePointer.getLong(toWordIndex) | (BLACK << bitIndexInWord(toBitIndex)));
+    }
+
     /**
      * Return the pointer immediately after the last word of the cell.
      *
@@ -1787,7 +2114,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
         markPhase.traceBegin(traceGCPhases);
         startTimer(heapMarkingTimer);
-        visitGreyObjectsAfterRootMarking();
+        if (useParallelMarking()) {
+            visitGreyObjectsInParallelAfterRootMarking();
+        } else {
+            visitGreyObjectsAfterRootMarking();
+        }
         stopTimer(heapMarkingTimer);
         markPhase.traceEnd(traceGCPhases);
 
@@ -1803,8 +2134,12 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.SPECIAL_REF;
         markPhase.traceBegin(traceGCPhases);
         startTimer(weakRefTimer);
-        SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState);
-        visitGreyObjects();
+        if (useParallelMarking()) {
+            processSpecialReferencesInParallel();
+        } else {
+            SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState);
+            visitGreyObjects();
+        }
         stopTimer(weakRefTimer);
         markPhase.traceEnd(traceGCPhases);
 
@@ -1833,7 +2168,13 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
         markPhase.traceBegin(traceGCPhases);
         startTimer(heapMarkingTimer);
-        visitGreyObjectsAfterRootMarking(regionsRanges);
+        if (useParallelMarking()) {
+            // Parallel marking scans the color map between the leftmost and rightmost roots regardless of region ranges.
+            // This is equivalent since grey marks are only ever set within the heap regions being traced.
+            visitGreyObjectsInParallelAfterRootMarking();
+        } else {
+            visitGreyObjectsAfterRootMarking(regionsRanges);
+        }
         stopTimer(heapMarkingTimer);
         markPhase.traceEnd(traceGCPhases);
 
@@ -1895,6 +2236,13 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.SPECIAL_REF;
         markPhase.traceBegin(traceGCPhases);
         startTimer(weakRefTimer);
+        if (useParallelMarking()) {
+            processSpecialReferencesInParallel();
+            stopTimer(weakRefTimer);
+            markPhase.traceEnd(traceGCPhases);
+            markPhase = MARK_PHASE.DONE;
+            return;
+        }
         SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState);
         // Note: the VISIT_GREY_FORWARD has already visited the whole heap, so any additional grey reference added by the special reference
         // manager are on the marking stack. Draining that stack may nevertheless add new grey reference after the finger, so we still
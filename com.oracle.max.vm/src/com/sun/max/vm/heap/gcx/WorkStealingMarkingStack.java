@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Fixed size, per-GC worker marking stack used by parallel marking.
+ * The owner pushes and pops cells at the bottom of the stack, whereas other GC workers with no work left steal cells from its top.
+ * This follows the classic work-stealing deque of Arora, Blumofe and Plaxton, without growing: a push to a full stack fails and
+ * the caller is responsible for recording the overflow (see {@link ParallelMarkingState}).
+ */
+final class WorkStealingMarkingStack {
+    private static final VMIntOption parallelMarkingStackSizeOption =
+        register(new VMIntOption("-XX:ParallelMarkingStackSize=", 8 * 1024, "Size of each GC worker's marking stack in number of references (rounded up to a power of 2)."),
+                        MaxineVM.Phase.PRISTINE);
+
+    private Address base;
+    private int mask;
+
+    /**
+     * Index of the next slot to steal from. Only ever incremented, with a CAS.
+     */
+    private volatile int top;
+
+    /**
+     * Index of the next free slot. Only updated by the owner.
+     */
+    private volatile int bottom;
+
+    @FOLD
+    private static int topOffset() {
+        return ClassActor.fromJava(WorkStealingMarkingStack.class).findLocalInstanceFieldActor("top").offset();
+    }
+
+    WorkStealingMarkingStack() {
+    }
+
+    void initialize() {
+        final int length = Integer.highestOneBit(Math.max(parallelMarkingStackSizeOption.getValue(), 2) - 1) << 1;
+        final Size size = Size.fromInt(length).shiftedLeft(Word.widthValue().log2numberOfBytes);
+        base = Memory.allocate(size);
+        if (base.isZero()) {
+            MaxineVM.reportPristineMemoryFailure("parallel marking stack", "allocate", size);
+        }
+        mask = length - 1;
+        top = 0;
+        bottom = 0;
+    }
+
+    @INLINE
+    private boolean casTop(int expectedTop, int newTop) {
+        return Reference.fromJava(this).compareAndSwapInt(topOffset(), expectedTop, newTop) == expectedTop;
+    }
+
+    boolean isEmpty() {
+        return bottom - top <= 0;
+    }
+
+    /**
+     * Push a cell at the bottom of the stack. Must only be called by the owner.
+     * @param cell the cell to push
+     * @return false if the stack is full
+     */
+    boolean push(Pointer cell) {
+        final int b = bottom;
+        if (b - top > mask) {
+            return false;
+        }
+        base.asPointer().setWord(b & mask, cell);
+        // The cell must be visible to thieves before the new bottom.
+        MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+        bottom = b + 1;
+        return true;
+    }
+
+    /**
+     * Pop a cell from the bottom of the stack. Must only be called by the owner.
+     * @return a cell, or zero if the stack is empty
+     */
+    Pointer pop() {
+        final int b = bottom - 1;
+        bottom = b;
+        MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+        final int t = top;
+        if (b - t < 0) {
+            // Empty.
+            bottom = t;
+            return Pointer.zero();
+        }
+        Pointer cell = base.asPointer().getWord(b & mask).asPointer();
+        if (b != t) {
+            return cell;
+        }
+        // Last cell: race with thieves for it.
+        if (!casTop(t, t + 1)) {
+            cell = Pointer.zero();
+        }
+        bottom = t + 1;
+        return cell;
+    }
+
+    /**
+     * Steal a cell from the top of the stack. Can be called by any GC worker.
+     * @return a cell, or zero if the stack is empty or the steal lost a race.
+     */
+    Pointer steal() {
+        final int t = top;
+        MemoryBarriers.barrier(MemoryBarriers.LOAD_LOAD);
+        final int b = bottom;
+        if (b - t <= 0) {
+            return Pointer.zero();
+        }
+        final Pointer cell = base.asPointer().getWord(t & mask).asPointer();
+        if (casTop(t, t + 1)) {
+            return cell;
+        }
+        return Pointer.zero();
+    }
+
+    void reset() {
+        top = 0;
+        bottom = 0;
+    }
+}
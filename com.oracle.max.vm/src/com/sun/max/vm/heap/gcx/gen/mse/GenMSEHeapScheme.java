@@ -29,6 +29,7 @@ import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.*;
 
 import com.sun.cri.xir.*;
 import com.sun.cri.xir.CiXirAssembler.XirOperand;
+import com.sun.management.GarbageCollectorMXBean;
 import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.platform.*;
@@ -49,6 +50,11 @@ import com.sun.max.vm.thread.*;
 
 /**
  * Generational Heap Scheme with a mark-sweep old generation and a simple copying collector nursery.
+ * <p>
+ * The post-write barrier dirties the card of the updated reference. In boot images built with dirty card queues
+ * (see {@link DirtyCardQueues#DIRTY_CARD_QUEUES_PROPERTY}), it only dirties cards that aren't dirty already, and logs the cards of
+ * the old generation it dirties in {@link DirtyCardQueues}, so that minor collections visit the logged cards instead of scanning the
+ * card table of the whole old generation.
  */
 final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implements HeapAccountOwner, XirWriteBarrierSpecification, RSetCoverage, EvacuationBufferProvider {
     private static final int WORDS_COVERED_PER_BIT = 1;
@@ -94,6 +100,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      */
     private GenHeapSizingPolicy heapResizingPolicy;
 
+    /**
+     * Policy for resizing the generations after each GC. Selected at heap initialization.
+     */
+    private HeapResizingPolicy generationsResizingPolicy;
+
     /**
      * Card-table based remembered set for the nursery.
      */
@@ -134,6 +145,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
 
         oldSpace = new FirstFitMarkSweepSpace<GenMSEHeapScheme>(heapAccount, tlabAllocator, overflowAllocator, true, cardTableRSet, OLD.tag());
         youngSpaceEvacuator = new NoAgingNurseryEvacuator(youngSpace, oldSpace, this, cardTableRSet, "Young");
+        DirtyCardQueues.bind(cardTableRSet, youngSpace, oldSpace);
         noYoungReferencesVerifier = new NoEvacuatedSpaceReferenceVerifier(cardTableRSet, youngSpace);
         fotVerifier = new FOTVerifier(cardTableRSet);
         genCollection = new GenCollection();
@@ -143,6 +155,9 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
         cardTableRSet.initialize(phase);
+        if (phase == MaxineVM.Phase.STARTING) {
+            DirtyCardQueues.startRefinementThread();
+        }
     }
 
     /**
@@ -238,11 +253,13 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             }
             youngSpace.initialize(heapResizingPolicy);
             oldSpace.initialize(heapResizingPolicy.initialOldGenSize(), heapResizingPolicy.maxOldGenSize());
+            generationsResizingPolicy = HeapResizingPolicy.create();
 
             // FIXME: the capacity of the survivor range queues should be dynamic. Its upper bound could be computed based on the
             // worst case evacuation and the number of fragments of old space available for allocation.
             // Same with the lab size. In non parallel evacuators, this should be all the space available for allocation in a region.
             youngSpaceEvacuator.initialize(1000, false, oldSpace.minReclaimableSpace(), false);
+            DirtyCardQueues.initialize();
 
             if (HeapRangeDumper.DumpOnError) {
                 MemoryRegion dumpingCoverage = new MemoryRegion();
@@ -265,9 +282,21 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     }
 
     final class GenMSEGCRequest  extends GCRequest {
+        /**
+         * Flag set by the GC to indicate that the generations could not be resized to guarantee the old generation's reserve
+         * for the worst case evacuation of the young generation, i.e., that the heap is out of memory.
+         */
+        boolean outOfMemory;
+
         protected GenMSEGCRequest(VmThread vmThread) {
             super(vmThread);
         }
+
+        @Override
+        public void clear() {
+            super.clear();
+            outOfMemory = false;
+        }
     }
 
     @INTRINSIC(UNSAFE_CAST)
@@ -324,15 +353,18 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // This requires evacuating all of its objects somehow. Rather that doing a full GC covering both
             // the old and young gen and somehow reclaim enough regions for a fresh nursery, we just perform a nursery evacuation.
             // The full GC is thereafter just a old gen GC with an empty young gen.
+            generationsResizingPolicy.notifyCollectionStarted();
             VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
             vmConfig().monitorScheme().beforeGarbageCollection();
             if (Heap.verbose()) {
                 Log.println("--Begin nursery evacuation");
             }
             youngSpaceEvacuator.setGCOperation(this);
+            DirtyCardQueues.beginCollection();
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
             youngSpaceEvacuator.evacuate(Heap.logGCPhases());
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
+            DirtyCardQueues.endCollection();
             youngSpaceEvacuator.setGCOperation(null);
             if (Heap.verbose()) {
                 Log.println("--End nursery evacuation");
@@ -356,12 +388,15 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
                     verifyAfterEvacuation();
                 }
                 freeSpace = oldSpace.freeSpace();
-                if (worstCaseEvac.greaterThan(freeSpace)) {
-                    // TODO: 3 and 4.
-                    FatalError.unimplemented();
-                }
             }
-            final GCRequest gcRequest = callingThread().gcRequest;
+            // 3. The young generation is empty: resize the generations. This also guarantees the old generation's reserve for
+            // the worst case evacuation, growing it or shrinking the young generation if needed.
+            // 4. If the resizing failed, the GC failed: the requesting thread reports an out of memory error.
+            final GenMSEGCRequest gcRequest = asGenSSGCRequest(callingThread().gcRequest);
+            gcRequest.outOfMemory = !generationsResizingPolicy.resizeGenerationsAfterCollection(youngSpace, oldSpace, freeSpace);
+            if (gcRequest.outOfMemory && Heap.verbose()) {
+                Log.println("--Generations could not be resized: out of memory");
+            }
             gcRequest.lastInvocationCount = invocationCount;
         }
     }
@@ -374,7 +409,8 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     @Override
     public boolean collectGarbage() {
         genCollection.submit();
-        return true;
+        // A false result makes the allocation that requested the collection throw an OutOfMemoryError.
+        return !asGenSSGCRequest(VmThread.current().gcRequest).outOfMemory;
     }
 
     @Override
@@ -387,6 +423,33 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
         return oldSpace.usedSpace().plus(youngSpace.usedSpace());
     }
 
+    /**
+     * Uncommit the empty regions of the old generation it can do without while idle. The old generation's reserve for the worst
+     * case evacuation of the young generation is left out of the space that can be given back.
+     */
+    @Override
+    public Size uncommitUnusedMemory() {
+        final Size evacuationReserve = youngSpace.totalSpace();
+        final Size freeSpace = oldSpace.freeSpace();
+        if (freeSpace.lessEqual(evacuationReserve)) {
+            return Size.zero();
+        }
+        return generationsResizingPolicy.shrinkIdleHeap(freeSpace.minus(evacuationReserve), oldSpace);
+    }
+
+    @Override
+    public GarbageCollectorMXBean getGarbageCollectorMXBean() {
+        return new GenMSEGarbageCollectorMXBean();
+    }
+
+    private final class GenMSEGarbageCollectorMXBean extends HeapSchemeAdaptor.GarbageCollectorMXBeanAdaptor {
+        private GenMSEGarbageCollectorMXBean() {
+            super("GenMSE");
+            add(new HeapSpaceMemoryPoolMXBean("Nursery", youngSpace, this));
+            add(new HeapSpaceMemoryPoolMXBean("Old Generation", oldSpace, this));
+        }
+    }
+
     @Override
     public boolean pin(Object object) {
         return false;
@@ -406,13 +469,27 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     @INLINE
     @Override
     public void postWriteBarrier(Reference ref, Offset offset, Reference value) {
-        cardTableRSet.record(ref, offset);
+        if (DirtyCardQueues.DirtyCardQueuesSupport) {
+            cardTableRSet.recordAndLog(ref, offset);
+        } else {
+            cardTableRSet.record(ref, offset);
+        }
     }
 
     @INLINE
     @Override
     public void postWriteBarrier(Reference ref,  int displacement, int index, Reference value) {
-        cardTableRSet.record(ref, displacement, index);
+        if (DirtyCardQueues.DirtyCardQueuesSupport) {
+            cardTableRSet.recordAndLog(ref, displacement, index);
+        } else {
+            cardTableRSet.record(ref, displacement, index);
+        }
+    }
+
+    @Override
+    public void notifyCurrentThreadDetach() {
+        super.notifyCurrentThreadDetach();
+        DirtyCardQueues.notifyCurrentThreadDetach();
     }
 
     /**
@@ -444,7 +521,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, createTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -481,14 +558,22 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             return new XirWriteBarrierGenerator() {
                 @Override
                 public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
-                    cardTableRSet.genTuplePostWriteBarrier(asm, operands[0]);
+                    if (DirtyCardQueues.DirtyCardQueuesSupport) {
+                        cardTableRSet.genTupleLoggingPostWriteBarrier(asm, operands[0]);
+                    } else {
+                        cardTableRSet.genTuplePostWriteBarrier(asm, operands[0]);
+                    }
                 }
             };
         } else if (writeBarrierSpec.equals(ARRAY_POST_BARRIER)) {
             return new XirWriteBarrierGenerator() {
                 @Override
                 public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
-                    cardTableRSet.genArrayPostWriteBarrier(asm, operands[0], operands[1]);
+                    if (DirtyCardQueues.DirtyCardQueuesSupport) {
+                        cardTableRSet.genArrayLoggingPostWriteBarrier(asm, operands[0], operands[1]);
+                    } else {
+                        cardTableRSet.genArrayPostWriteBarrier(asm, operands[0], operands[1]);
+                    }
                 }
             };
         }
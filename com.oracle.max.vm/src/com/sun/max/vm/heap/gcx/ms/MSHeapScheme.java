@@ -63,6 +63,11 @@ public final class MSHeapScheme extends HeapSchemeWithTLABAdaptor {
 
     private final MSCollection collect = new MSCollection();
 
+    /**
+     * Policy for resizing the heap after each GC. Selected at heap initialization.
+     */
+    private HeapResizingPolicy heapResizingPolicy;
+
     final AfterMarkSweepVerifier afterGCVerifier;
 
     private final AtomicPinCounter pinnedCounter = MaxineVM.isDebug() ? new AtomicPinCounter() : null;
@@ -119,6 +124,7 @@ public final class MSHeapScheme extends HeapSchemeWithTLABAdaptor {
             // Use immortal memory for now.
             Heap.enableImmortalMemoryAllocation();
             objectSpace.initialize(this, heapStart, initSize, maxSize, true);
+            heapResizingPolicy = HeapResizingPolicy.create();
             ContiguousHeapSpace markedSpace = objectSpace.committedHeapSpace;
 
             // Initialize the heap marker's data structures. Needs to make sure it is outside of the heap reserved space.
@@ -272,12 +278,11 @@ public final class MSHeapScheme extends HeapSchemeWithTLABAdaptor {
             return objectSpace.freeSpaceAfterSweep();
         }
 
-        private HeapResizingPolicy heapResizingPolicy = new HeapResizingPolicy();
-
         @Override
         public void collect(int invocationCount) {
             traceGCTimes = Heap.logGCTime();
             startTimer(totalPauseTime);
+            heapResizingPolicy.notifyCollectionStarted();
             VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
 
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
@@ -400,7 +405,7 @@ public final class MSHeapScheme extends HeapSchemeWithTLABAdaptor {
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of dirty meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the tlab allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, createTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the tlab.
             return tlabAllocate(size);
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx.mse;
+
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Daemon thread driving the concurrent marking cycles of the {@link MSEHeapScheme}.
+ * <p>
+ * The thread periodically checks the heap occupancy and runs a concurrent marking cycle once it reaches the trigger threshold.
+ * Like the {@linkplain com.sun.max.vm.heap.gcx.GCWorkers GC workers}, it is created in immortal memory, never allocates, and is
+ * flagged as a GC worker thread so that GC operations neither freeze it nor scan its stack. This lets a collection requested by a
+ * mutator abandon a concurrent marking in progress without waiting for the thread to reach a safepoint.
+ */
+final class ConcurrentMarkingThread extends Thread {
+    /**
+     * Interval, in milliseconds, between two checks of the heap occupancy.
+     */
+    private static final long POLL_INTERVAL = 5;
+
+    private static ConcurrentMarkingThread concurrentMarkingThread;
+
+    private final MSEHeapScheme heapScheme;
+
+    private ConcurrentMarkingThread(MSEHeapScheme heapScheme) {
+        super(VmThread.systemThreadGroup, "ConcurrentMarking");
+        this.heapScheme = heapScheme;
+        setDaemon(true);
+    }
+
+    /**
+     * Start the concurrent marking thread. Called once at VM startup.
+     */
+    static void start(MSEHeapScheme heapScheme) {
+        if (concurrentMarkingThread != null) {
+            return;
+        }
+        Heap.enableImmortalMemoryAllocation();
+        try {
+            concurrentMarkingThread = new ConcurrentMarkingThread(heapScheme);
+            concurrentMarkingThread.start();
+        } finally {
+            Heap.disableImmortalMemoryAllocation();
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (VmThreadMap.THREAD_LOCK) {
+            VmThread.current().setAsGCWorkerThread();
+        }
+        Heap.disableAllocationForCurrentThread();
+        while (true) {
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+            }
+            if (heapScheme.shouldStartConcurrentMarking()) {
+                heapScheme.runConcurrentMarkingCycle();
+            }
+        }
+    }
+}
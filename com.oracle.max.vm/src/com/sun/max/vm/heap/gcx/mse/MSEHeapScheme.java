@@ -23,19 +23,25 @@
 package com.sun.max.vm.heap.gcx.mse;
 
 import static com.sun.max.vm.VMConfiguration.*;
+import static com.sun.max.vm.heap.WriteBarrierSpecification.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
 import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.*;
 
+import com.sun.cri.xir.*;
+import com.sun.management.GarbageCollectorMXBean;
+import com.sun.cri.xir.CiXirAssembler.XirOperand;
 import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.platform.*;
 import com.sun.max.program.*;
 import com.sun.max.unsafe.*;
+import com.sun.max.util.*;
 import com.sun.max.util.timer.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.code.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.debug.*;
 import com.sun.max.vm.heap.gcx.*;
 import com.sun.max.vm.heap.gcx.rset.*;
 import com.sun.max.vm.layout.*;
@@ -46,16 +52,56 @@ import com.sun.max.vm.thread.*;
 /**
  * Region-based Mark Sweep + Evacuation-based defragmentation Heap Scheme.
  * Used for testing region-based support.
+ * <p>
+ * With {@code -XX:+UseConcurrentMarking}, available when the boot image is built with the {@value #CONCURRENT_MARKING_PROPERTY} property
+ * set, a {@link ConcurrentMarkingThread} marks the heap concurrently with mutators once heap
+ * occupancy reaches {@code -XX:ConcurrentMarkingTriggerPercent}. Mutators are only stopped for a short initial mark of the roots,
+ * and for a remark pause that completes the marking and sweeps the heap. A snapshot-at-the-beginning pre-write barrier
+ * (see {@link SATBMarking}) keeps the concurrent marking correct. Boot images built without the property compile reference stores without it. A collection requested by a mutator abandons any concurrent
+ * marking in progress and marks the heap from scratch.
+ * <p>
+ * With {@code -XX:+LazySweep}, most regions are left unswept at the end of a collection and are swept on demand when allocators refill
+ * (see {@link FirstFitMarkSweepSpace#sweepLazily(TricolorHeapMarker, boolean)}).
+ * <p>
+ * With {@code -XX:+UseRegionCompaction}, the sparsest regions of the heap are evacuated by a {@link RegionCompactor} after a collection
+ * whenever the fragmentation of the free space reaches {@code -XX:CompactionFragmentationThreshold}. Objects then no longer stay
+ * put, so pinned objects are counted and compaction is skipped while any object is pinned.
  */
-public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner {
+public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner, XirWriteBarrierSpecification {
     private static final int WORDS_COVERED_PER_BIT = 1;
+
+    /**
+     * Property that enables support for concurrent marking when set at boot image build time
+     * (see the {@code -concurrent-marking} option of {@link com.sun.max.vm.hosted.BootImageGenerator}).
+     */
+    public static final String CONCURRENT_MARKING_PROPERTY = "max.mse.concurrentMarking";
+
+    /**
+     * Whether reference stores are compiled with the SATB pre-write barrier and {@code -XX:+UseConcurrentMarking} is available.
+     */
+    static final boolean ConcurrentMarkingSupport = System.getProperty(CONCURRENT_MARKING_PROPERTY) != null;
+
     static boolean DumpFragStatsAfterGC = false;
     static boolean DumpFragStatsAtGCFailure = false;
     static boolean DoImpreciseSweep = false;
+    static boolean UseConcurrentMarking = false;
+    static int ConcurrentMarkingTriggerPercent = 60;
+    static boolean LazySweep = false;
+    static boolean UseRegionCompaction = false;
+    static int CompactionFragmentationThreshold = 50;
     static {
         VMOptions.addFieldOption("-XX:", "DumpFragStatsAfterGC", MSEHeapScheme.class, "Dump region fragmentation stats after GC", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "DumpFragStatsAtGCFailure", MSEHeapScheme.class, "Dump region fragmentation when GC failed to reclaim enough space", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "DoImpreciseSweep", MSEHeapScheme.class, "Control whether to do precise or imprecise sweep", Phase.PRISTINE);
+        if (ConcurrentMarkingSupport) {
+            VMOptions.addFieldOption("-XX:", "UseConcurrentMarking", MSEHeapScheme.class, "Mark the heap concurrently with mutator threads", Phase.PRISTINE);
+            VMOptions.addFieldOption("-XX:", "ConcurrentMarkingTriggerPercent", MSEHeapScheme.class,
+                "Heap occupancy (in percent of the heap size) that triggers a concurrent marking", Phase.PRISTINE);
+        }
+        VMOptions.addFieldOption("-XX:", "LazySweep", MSEHeapScheme.class, "Sweep most heap regions on demand when allocators refill instead of during GC", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "UseRegionCompaction", MSEHeapScheme.class, "Evacuate sparse heap regions after GC when the heap is fragmented", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CompactionFragmentationThreshold", MSEHeapScheme.class,
+            "Percentage of the free space only available in partially occupied regions that triggers a compaction", Phase.PRISTINE);
     }
 
     /**
@@ -68,10 +114,27 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
      */
     private final FirstFitMarkSweepSpace<MSEHeapScheme> markSweepSpace;
 
-    private final AtomicPinCounter pinnedCounter = MaxineVM.isDebug() ? new AtomicPinCounter() : null;
+    /**
+     * Count of pinned objects. Only maintained in debug mode, or when compaction may relocate objects.
+     */
+    private final AtomicPinCounter pinnedCounter = new AtomicPinCounter();
+
+    /**
+     * Compactor of the heap, used when {@link #UseRegionCompaction} is set.
+     */
+    private final RegionCompactor regionCompactor;
 
     final MarkSweepCollection collect = new MarkSweepCollection();
 
+    final ConcurrentInitialMark concurrentInitialMark = new ConcurrentInitialMark();
+
+    final ConcurrentRemark concurrentRemark = new ConcurrentRemark();
+
+    /**
+     * Policy for resizing the heap after each GC. Selected at heap initialization.
+     */
+    private HeapResizingPolicy heapResizingPolicy;
+
     /**
      * An instance of an after mark sweep verifier to use for heap verification after a mark sweep.
      * @see Sweeper
@@ -96,12 +159,23 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         markSweepSpace = new FirstFitMarkSweepSpace<MSEHeapScheme>(heapAccount, tlabAllocator, overflowAllocator, false, NullDeadSpaceListener.nullDeadSpaceListener(), 0);
         heapMarker = new TricolorHeapMarker(WORDS_COVERED_PER_BIT, new HeapAccounRootCellVisitor(this));
         afterGCVerifier = new AfterMarkSweepVerifier(heapMarker, markSweepSpace, AfterMarkSweepBootHeapVerifier.makeVerifier(heapMarker, this));
+        regionCompactor = new RegionCompactor(markSweepSpace, heapMarker);
+        regionCompactor.setTimers(new EvacuationTimers());
+        regionCompactor.setPhaseLogger(new Evacuator.PhaseLogger());
+        if (MaxineVM.isDebug()) {
+            regionCompactor.setDetailLogger(new DebugHeap.DetailLogger());
+        }
         pinningSupportFlags = PIN_SUPPORT_FLAG.makePinSupportFlags(true, false, true);
     }
 
     @Override
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
+        if (phase == MaxineVM.Phase.STARTING && UseConcurrentMarking) {
+            ConcurrentMarkingThread.start(this);
+        } else if (phase == MaxineVM.Phase.TERMINATING && Heap.verbose()) {
+            markSweepSpace.reportNumaStatistics();
+        }
     }
 
     /**
@@ -150,11 +224,18 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             }
 
             markSweepSpace.initialize(initSize, applicationHeapMaxSize);
+            heapResizingPolicy = HeapResizingPolicy.create();
             if (!VirtualMemory.commitMemory(heapMarkerDataStart, heapMarkerDatasize,  VirtualMemory.Type.DATA)) {
                 MaxineVM.reportPristineMemoryFailure("heapMarkerDataStart", "commit", heapMarkerDatasize);
             }
             heapMarker.initialize(heapBounds.start(), heapBounds.end(), heapMarkerDataStart, heapMarkerDatasize);
+            if (UseConcurrentMarking) {
+                heapMarker.initializeConcurrentMarking();
+            }
 
+            if (UseRegionCompaction) {
+                regionCompactor.initialize();
+            }
             if (DumpFragStatsAfterGC || DumpFragStatsAtGCFailure) {
                 fragmentationStats = new HeapRegionStatistics(markSweepSpace.minReclaimableSpace());
             }
@@ -241,10 +322,33 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         return markSweepSpace.usedSpace();
     }
 
+    /**
+     * Uncommit the empty regions the heap can do without while idle, keeping enough free space to not trigger a collection as soon
+     * as mutators resume allocating.
+     */
+    @Override
+    public Size uncommitUnusedMemory() {
+        // Regions left to the lazy sweeper may be empty.
+        markSweepSpace.completeSweep();
+        return heapResizingPolicy.shrinkIdleHeap(markSweepSpace.freeSpace(), markSweepSpace);
+    }
+
+    @Override
+    public GarbageCollectorMXBean getGarbageCollectorMXBean() {
+        return new MSEGarbageCollectorMXBean();
+    }
+
+    private final class MSEGarbageCollectorMXBean extends HeapSchemeAdaptor.GarbageCollectorMXBeanAdaptor {
+        private MSEGarbageCollectorMXBean() {
+            super("MSE");
+            add(new HeapSpaceMemoryPoolMXBean("Heap", markSweepSpace, this));
+        }
+    }
+
     @INLINE
     public boolean pin(Object object) {
-        // Objects never relocate. So this is always safe.
-        if (MaxineVM.isDebug()) {
+        // Objects only relocate when compacting, which doesn't happen while objects are pinned. So this is always safe.
+        if (MaxineVM.isDebug() || UseRegionCompaction) {
             pinnedCounter.increment();
         }
         return true;
@@ -252,7 +356,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     @INLINE
     public void unpin(Object object) {
-        if (MaxineVM.isDebug()) {
+        if (MaxineVM.isDebug() || UseRegionCompaction) {
             pinnedCounter.decrement();
         }
     }
@@ -261,13 +365,144 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
     public void writeBarrier(Reference from, Reference to) {
     }
 
+    @INLINE
+    @Override
+    public boolean needsBarrier(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
+        return ConcurrentMarkingSupport && writeBarrierSpec.isSet(WriteBarrierSpec.PRE_WRITE);
+    }
+
+    @INLINE
+    @Override
+    public void preWriteBarrier(Reference ref, Offset offset, Reference value) {
+        if (ConcurrentMarkingSupport) {
+            SATBMarking.preWriteBarrier(ref, offset, value);
+        }
+    }
+
+    @INLINE
+    @Override
+    public void preWriteBarrier(Reference ref,  int displacement, int index, Reference value) {
+        if (ConcurrentMarkingSupport) {
+            SATBMarking.preWriteBarrier(ref, displacement, index, value);
+        }
+    }
+
+    @HOSTED_ONLY
+    public XirWriteBarrierGenerator barrierGenerator(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
+        if (!ConcurrentMarkingSupport) {
+            return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
+        }
+        if (writeBarrierSpec.equals(TUPLE_PRE_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    SATBMarking.genTuplePreWriteBarrier(asm, operands[0], operands[1], operands[2]);
+                }
+            };
+        } else if (writeBarrierSpec.equals(ARRAY_PRE_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    SATBMarking.genArrayPreWriteBarrier(asm, operands[0], operands[1], operands[2]);
+                }
+            };
+        }
+        return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
+    }
+
+    /**
+     * Indicates whether heap occupancy is high enough to start a concurrent marking.
+     */
+    boolean shouldStartConcurrentMarking() {
+        final Size usedSpace = markSweepSpace.usedSpace();
+        final Size totalSpace = markSweepSpace.totalSpace();
+        return usedSpace.times(100).greaterEqual(totalSpace.times(ConcurrentMarkingTriggerPercent));
+    }
+
+    /**
+     * Run a concurrent marking cycle: an initial mark pause, a concurrent tracing of the heap, and a remark pause that
+     * completes marking and sweeps the heap. Called by the {@link ConcurrentMarkingThread}.
+     */
+    void runConcurrentMarkingCycle() {
+        concurrentInitialMark.submit();
+        if (heapMarker.markConcurrently()) {
+            concurrentRemark.submit();
+        }
+    }
+
+    /**
+     * Operation starting a concurrent marking: marks the roots and activates the SATB barrier.
+     */
+    final class ConcurrentInitialMark extends GCOperation {
+        private final TimerMetric pauseTime = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
+
+        ConcurrentInitialMark() {
+            super("ConcurrentInitialMark");
+        }
+
+        @Override
+        protected void collect(int invocationCount) {
+            final boolean traceGCTimes = Heap.logGCTime();
+            if (traceGCTimes) {
+                pauseTime.start();
+            }
+            vmConfig().monitorScheme().beforeGarbageCollection();
+            // Regions left unswept by the previous collection can't be swept with the color map the initial mark is about to clear.
+            // They are swept at remark instead.
+            markSweepSpace.suspendLazySweep();
+            heapMarker.initialMark();
+            vmConfig().monitorScheme().afterGarbageCollection();
+            if (traceGCTimes) {
+                pauseTime.stop();
+                final boolean lockDisabledSafepoints = Log.lock();
+                Log.print("Initial mark: total=");
+                Log.println(pauseTime.getLastElapsedTime());
+                Log.unlock(lockDisabledSafepoints);
+            }
+        }
+    }
+
+    /**
+     * Operation completing a concurrent marking, then sweeping the heap like a {@link MarkSweepCollection}.
+     */
+    final class ConcurrentRemark extends MarkSweepCollection {
+        ConcurrentRemark() {
+            super("ConcurrentRemark");
+        }
+
+        @Override
+        protected void collect(int invocationCount) {
+            // A collection requested by a mutator may have abandoned the concurrent marking since the marking thread completed it.
+            if (heapMarker.isConcurrentMarkingComplete()) {
+                super.collect(invocationCount);
+            }
+        }
+
+        @Override
+        protected void mark() {
+            markSweepSpace.remark(heapMarker);
+        }
+    }
+
     /**
      * Class implementing the garbage collection routine.
      * This is the {@link VmOperationThread}'s entry point to garbage collection.
      */
-    final class MarkSweepCollection extends GCOperation {
+    class MarkSweepCollection extends GCOperation {
         MarkSweepCollection() {
-            super("MarkSweepCollection");
+            this("MarkSweepCollection");
+        }
+
+        MarkSweepCollection(String name) {
+            super(name);
+        }
+
+        /**
+         * Mark the heap. A concurrent marking in progress, if any, is abandoned.
+         */
+        protected void mark() {
+            heapMarker.abortConcurrentMarking();
+            markSweepSpace.mark(heapMarker);
         }
 
         private final TimerMetric reclaimTimer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
@@ -306,13 +541,12 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             Log.unlock(lockDisabledSafepoints);
         }
 
-        private HeapResizingPolicy heapResizingPolicy = new HeapResizingPolicy();
-
         @Override
         protected void collect(int invocationCount) {
             final boolean traceGCPhases = Heap.logGCPhases();
             traceGCTimes = Heap.logGCTime();
             startTimer(totalPauseTime);
+            heapResizingPolicy.notifyCollectionStarted();
             VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
 
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
@@ -323,7 +557,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
             theHeapRegionManager().checkOutgoingReferences();
 
-            markSweepSpace.mark(heapMarker);
+            mark();
 
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
 
@@ -331,13 +565,23 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
                 Log.println("BEGIN: Sweeping");
             }
             startTimer(reclaimTimer);
-            markSweepSpace.sweep(heapMarker, DoImpreciseSweep);
+            if (LazySweep) {
+                markSweepSpace.sweepLazily(heapMarker, DoImpreciseSweep);
+            } else {
+                markSweepSpace.sweep(heapMarker, DoImpreciseSweep);
+            }
             Size freeSpaceAfterGC = markSweepSpace.freeSpace();
             stopTimer(reclaimTimer);
             if (traceGCPhases) {
                 Log.println("END: Sweeping");
             }
 
+            if (UseRegionCompaction && !pinnedCounter.hasPinnedObjects()) {
+                if (regionCompactor.compactIfFragmented(CompactionFragmentationThreshold)) {
+                    freeSpaceAfterGC = markSweepSpace.freeSpace();
+                }
+            }
+
             if (VerifyAfterGC) {
                 afterGCVerifier.run();
             }
@@ -449,7 +693,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of dirty meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the tlab allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, createTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the tlab.
             return tlabAllocate(size);
@@ -28,6 +28,7 @@ import com.sun.cri.ci.CiAddress.Scale;
 import com.sun.cri.ci.*;
 import com.sun.cri.xir.*;
 import com.sun.cri.xir.CiXirAssembler.XirConstant;
+import com.sun.cri.xir.CiXirAssembler.XirLabel;
 import com.sun.cri.xir.CiXirAssembler.XirOperand;
 import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
@@ -272,6 +273,46 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
         asm.pstore(CiKind.Byte, biasedCardTableAddress, temp, asm.i(CardState.DIRTY_CARD.value()), false);
     }
 
+    /**
+     * Generate a post-write barrier for a store in a tuple that only dirties the card of the tuple if it isn't dirty already,
+     * and calls the runtime to log it in the {@link DirtyCardQueues} when it does.
+     */
+    @HOSTED_ONLY
+    public void genTupleLoggingPostWriteBarrier(CiXirAssembler asm, XirOperand tupleCell) {
+        final XirOperand temp = asm.createTemp("temp", WordUtil.archKind());
+        asm.shr(temp, tupleCell, asm.i(CardTableRSet.LOG2_CARD_SIZE));
+        genLoggingPostWriteBarrier(asm, temp, DirtyCardQueues.tupleLoggingPostWriteBarrier, tupleCell);
+    }
+
+    /**
+     * Generate a post-write barrier for a store in a reference array that only dirties the card of the updated element if it isn't
+     * dirty already, and calls the runtime to log it in the {@link DirtyCardQueues} when it does.
+     */
+    @HOSTED_ONLY
+    public void genArrayLoggingPostWriteBarrier(CiXirAssembler asm, XirOperand arrayCell, XirOperand elemIndex) {
+        final XirOperand temp = asm.createTemp("temp", WordUtil.archKind());
+        final Scale scale = Scale.fromInt(Word.size());
+        final int disp = Layout.referenceArrayLayout().getElementOffsetInCell(0).toInt();
+        asm.lea(temp, arrayCell, elemIndex, disp, scale);
+        asm.shr(temp, temp, asm.i(CardTableRSet.LOG2_CARD_SIZE));
+        genLoggingPostWriteBarrier(asm, temp, DirtyCardQueues.arrayLoggingPostWriteBarrier, arrayCell, elemIndex);
+    }
+
+    @HOSTED_ONLY
+    private void genLoggingPostWriteBarrier(CiXirAssembler asm, XirOperand shiftedAddress, CriticalMethod slowPath, XirOperand... slowPathArgs) {
+        final XirOperand card = asm.createTemp("card", CiKind.Int);
+        final XirLabel slow = asm.createOutOfLineLabel("dirtyCardSlowPath");
+        final XirLabel done = asm.createInlineLabel("dirtyCardDone");
+        final XirConstant biasedCardTableAddress = biasedCardTableAddressXirConstant(asm);
+        asm.pload(CiKind.Byte, card, biasedCardTableAddress, shiftedAddress, false);
+        asm.jneq(slow, card, asm.i(CardState.DIRTY_CARD.value()));
+        asm.bindOutOfLine(slow);
+        asm.pstore(CiKind.Byte, biasedCardTableAddress, shiftedAddress, asm.i(CardState.DIRTY_CARD.value()), false);
+        asm.callRuntime(slowPath.classMethodActor, null, slowPathArgs);
+        asm.jmp(done);
+        asm.bindInline(done);
+    }
+
     /**
      * Record update to a reference slot of a cell.
      * @param ref the cell whose reference is updated
@@ -291,13 +332,42 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
         cardTable.dirtyCovered(ref.toOrigin().plus(Address.fromInt(index).shiftedLeft(Word.widthValue().log2numberOfBytes).plus(displacement)));
     }
 
+    /**
+     * Record update to a reference slot of a cell, and log the card of the slot in the {@link DirtyCardQueues} if it wasn't dirty.
+     * @param ref the cell whose reference is updated
+     * @param offset the offset from the origin of the cell to the updated reference.
+     */
+    @INLINE
+    public void recordAndLog(Reference ref, Offset offset) {
+        final Address slot = ref.toOrigin().plus(offset);
+        if (cardTable.unsafeGet(slot) != CardState.DIRTY_CARD.value) {
+            cardTable.unsafeSet(slot, CardState.DIRTY_CARD.value);
+            DirtyCardQueues.loggingPostWriteBarrier(slot);
+        }
+    }
+
+    /**
+     * Record update to a reference slot of a cell, and log the card of the slot in the {@link DirtyCardQueues} if it wasn't dirty.
+     * @param ref the cell whose reference is updated
+     * @param displacement a displacement from the origin of the cell
+     * @param index a word index to the updated reference
+     */
+    @INLINE
+    public void recordAndLog(Reference ref,  int displacement, int index) {
+        final Address slot = ref.toOrigin().plus(Address.fromInt(index).shiftedLeft(Word.widthValue().log2numberOfBytes).plus(displacement));
+        if (cardTable.unsafeGet(slot) != CardState.DIRTY_CARD.value) {
+            cardTable.unsafeSet(slot, CardState.DIRTY_CARD.value);
+            DirtyCardQueues.loggingPostWriteBarrier(slot);
+        }
+    }
+
     /**
      * Visit the cells that overlap a card.
      *
      * @param cardIndex index of the card
      * @param cellVisitor the logic to apply to the visited cell
      */
-    private void visitCard(int cardIndex, OverlappingCellVisitor cellVisitor) {
+    void visitCard(int cardIndex, OverlappingCellVisitor cellVisitor) {
         visitCards(cardIndex, cardIndex + 1, cellVisitor);
     }
 
@@ -325,7 +395,7 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
         } while (cell.lessThan(end));
     }
 
-    private void traceVisitedCard(int startCardIndex, int endCardIndex, CardState cardState) {
+    void traceVisitedCard(int startCardIndex, int endCardIndex, CardState cardState) {
         Log.print("Visiting ");
         Log.print(cardState.name());
         Log.print(" cards [");
@@ -0,0 +1,720 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx.rset.ctbl;
+
+import static com.sun.max.vm.heap.gcx.rset.ctbl.CardState.*;
+import static com.sun.max.vm.thread.VmThread.*;
+import static com.sun.max.vm.thread.VmThreadLocal.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.lang.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+import com.sun.max.vm.thread.VmThreadLocal.Nature;
+import com.sun.max.vm.type.*;
+
+/**
+ * Queues of the cards of the old generation dirtied by mutators, which let a minor collection visit the logged cards only
+ * instead of scanning the whole card table of the old generation.
+ * <p>
+ * Dirty card queues are only available in boot images built with the {@value #DIRTY_CARD_QUEUES_PROPERTY} property set. Other images
+ * keep the unconditional card dirtying post-write barrier. Images built with the property use a logging post-write barrier (see
+ * {@link CardTableRSet#genTupleLoggingPostWriteBarrier(com.sun.cri.xir.CiXirAssembler, com.sun.cri.xir.CiXirAssembler.XirOperand)})
+ * that tests the card of the updated reference and, only if the card isn't dirty, dirties it and calls the runtime to log it. With
+ * {@code -XX:+UseDirtyCardQueues}, the default in these images, the runtime appends the index of the card to a buffer local to the
+ * current thread if the card covers the old generation. Full buffers are pushed on a global list of completed buffers.
+ * <p>
+ * A {@link RefinementThread} periodically refines the completed buffers concurrently with mutators. It first cleans the cards of
+ * the buffers, then scans each of them for references to the young generation: cards holding some are dirtied again and kept in
+ * a list of refined buffers, the others are left clean and dropped. Because the barrier may read the card of a reference before the
+ * store of the reference is visible to other threads, the refinement thread handshakes with each mutator in turn between the cleaning
+ * and the scanning of the cards. Mutators are never all stopped at once: each one is only frozen long enough to have passed a
+ * safepoint, after which its earlier stores are visible. A reference stored in a cleaned card afterward goes through the barrier's
+ * slow path and is logged again.
+ * <p>
+ * A minor collection gathers the refined buffers, the completed buffers, the buffers being refined, and the current buffers of all
+ * threads in a list of logged cards. Cards of the buffers being refined are conservatively dirtied again. The evacuator visits
+ * each logged card that is still dirty and still covers the old generation. Once the young generation is evacuated, no
+ * references from the old to the young generation are left, and the gathered buffers are released.
+ * <p>
+ * Buffers and the lists linking them are manipulated with safepoints disabled, so that a collection never observes them in an
+ * inconsistent state. Buffers are only pushed on the list of free buffers during a collection: a thread popping one with
+ * safepoints disabled therefore never suffers from the ABA problem.
+ * A card dirtied by a thread that couldn't allocate a buffer to log it makes the next minor collection scan the whole card table.
+ * So does the first minor collection, as cards may have been dirtied before the queues were initialized.
+ */
+public final class DirtyCardQueues {
+    /**
+     * Property that enables support for dirty card queues when set at boot image build time
+     * (see the {@code -dirty-card-queues} option of {@link com.sun.max.vm.hosted.BootImageGenerator}).
+     */
+    public static final String DIRTY_CARD_QUEUES_PROPERTY = "max.gmse.dirtyCardQueues";
+
+    /**
+     * Whether reference stores are compiled with the logging post-write barrier and {@code -XX:+UseDirtyCardQueues} is available.
+     */
+    public static final boolean DirtyCardQueuesSupport = System.getProperty(DIRTY_CARD_QUEUES_PROPERTY) != null;
+
+    static boolean UseDirtyCardQueues = DirtyCardQueuesSupport;
+    static int DirtyCardBufferSize = 256;
+    static int DirtyCardRefinementInterval = 20;
+    static {
+        if (DirtyCardQueuesSupport) {
+            VMOptions.addFieldOption("-XX:", "UseDirtyCardQueues", DirtyCardQueues.class,
+                "Log dirtied cards so that minor collections only visit the logged cards instead of scanning the card table", Phase.PRISTINE);
+            VMOptions.addFieldOption("-XX:", "DirtyCardBufferSize", DirtyCardQueues.class, "Number of cards a dirty card buffer can log", Phase.PRISTINE);
+            VMOptions.addFieldOption("-XX:", "DirtyCardRefinementInterval", DirtyCardQueues.class,
+                "Milliseconds between two refinements of the completed dirty card buffers (0 disables refinement)", Phase.PRISTINE);
+        }
+    }
+
+    /**
+     * Thread local holding the buffer the thread logs the cards it dirties in.
+     */
+    private static final VmThreadLocal DIRTY_CARD_BUFFER =
+        new VmThreadLocal("DIRTY_CARD_BUFFER", false, "Buffer logging the cards dirtied by the thread", Nature.Single);
+
+    /**
+     * Thread local holding the number of cards logged in the thread's buffer, or -1 once the thread has detached.
+     */
+    private static final VmThreadLocal DIRTY_CARD_BUFFER_INDEX =
+        new VmThreadLocal("DIRTY_CARD_BUFFER_INDEX", false, "Number of cards logged in the thread's dirty card buffer", Nature.Single);
+
+    /**
+     * Value of {@link #DIRTY_CARD_BUFFER_INDEX} for a thread that detached. Cards dirtied by the thread are then logged in
+     * single-entry buffers pushed immediately on the list of completed buffers.
+     */
+    private static final int DETACHED = -1;
+
+    // Layout of a buffer: a link to the next buffer in a list, the number of cards logged in the buffer, and the indexes of the logged cards.
+    private static final int NEXT_WORD_INDEX = 0;
+    private static final int NUM_ENTRIES_WORD_INDEX = 1;
+    private static final int NUM_HEADER_WORDS = 2;
+
+    private static final DirtyCardQueues theDirtyCardQueues = new DirtyCardQueues();
+
+    private CardTableRSet rset;
+
+    private EvacuatingSpace youngSpace;
+
+    private EvacuatingSpace oldSpace;
+
+    /**
+     * Indicates whether the barrier logs dirtied cards.
+     */
+    private boolean enabled;
+
+    private int bufferCapacity;
+
+    /**
+     * List of buffers filled up by mutators. Buffers are pushed with a CAS and the whole list is taken with a CAS.
+     */
+    private volatile Address completedBuffers = Address.zero();
+
+    /**
+     * List of released buffers ready for reuse. Buffers are only pushed during a collection and popped with a CAS.
+     */
+    private volatile Address freeBuffers = Address.zero();
+
+    /**
+     * List of buffers whose cards have been cleaned by the refinement thread, but not yet scanned.
+     */
+    private Address refiningBuffers = Address.zero();
+
+    /**
+     * List of buffers holding the cards the refinement thread found references to the young generation in.
+     */
+    private Address refinedBuffers = Address.zero();
+
+    /**
+     * List of the buffers gathered for the current minor collection.
+     */
+    private Address collectedBuffers = Address.zero();
+
+    /**
+     * Next buffer of the {@link #collectedBuffers} GC workers can claim during a parallel evacuation.
+     */
+    private volatile Address nextUnclaimedBuffer = Address.zero();
+
+    /**
+     * Indicates whether the current minor collection visits the logged cards only.
+     */
+    private boolean visitLoggedCardsOnly;
+
+    /**
+     * Set when cards may be dirty without being logged, to force the next minor collection to scan the whole card table.
+     */
+    private volatile boolean fullScanNeeded = true;
+
+    private final YoungReferenceFinder youngReferenceFinder = new YoungReferenceFinder();
+
+    private DirtyCardQueues() {
+    }
+
+    @FOLD
+    private static int completedBuffersOffset() {
+        return ClassActor.fromJava(DirtyCardQueues.class).findLocalInstanceFieldActor("completedBuffers").offset();
+    }
+
+    @FOLD
+    private static int freeBuffersOffset() {
+        return ClassActor.fromJava(DirtyCardQueues.class).findLocalInstanceFieldActor("freeBuffers").offset();
+    }
+
+    @FOLD
+    private static int nextUnclaimedBufferOffset() {
+        return ClassActor.fromJava(DirtyCardQueues.class).findLocalInstanceFieldActor("nextUnclaimedBuffer").offset();
+    }
+
+    @INLINE
+    private static int entriesDisplacement() {
+        return NUM_HEADER_WORDS * Word.size();
+    }
+
+    /**
+     * Bind the queues to the card table and the generations of the heap scheme using the logging barrier.
+     *
+     * @param rset the card table remembered set the barrier dirties cards of
+     * @param youngSpace the young generation
+     * @param oldSpace the old generation, whose dirtied cards are logged
+     */
+    @HOSTED_ONLY
+    public static void bind(CardTableRSet rset, EvacuatingSpace youngSpace, EvacuatingSpace oldSpace) {
+        final DirtyCardQueues queues = theDirtyCardQueues;
+        queues.rset = rset;
+        queues.youngSpace = youngSpace;
+        queues.oldSpace = oldSpace;
+    }
+
+    /**
+     * Enable logging if {@code -XX:+UseDirtyCardQueues} is specified. Must be called once the generations are initialized.
+     */
+    public static void initialize() {
+        final DirtyCardQueues queues = theDirtyCardQueues;
+        queues.bufferCapacity = Math.max(DirtyCardBufferSize, 16);
+        queues.enabled = UseDirtyCardQueues;
+    }
+
+    @INLINE
+    public static boolean isEnabled() {
+        return theDirtyCardQueues.enabled;
+    }
+
+    /**
+     * Start the thread refining completed buffers concurrently with mutators, if dirty card queues are enabled.
+     */
+    public static void startRefinementThread() {
+        if (isEnabled() && DirtyCardRefinementInterval > 0) {
+            new RefinementThread().start();
+        }
+    }
+
+    /**
+     * Flush the buffer of the current thread before it detaches from the VM.
+     */
+    public static void notifyCurrentThreadDetach() {
+        if (!isEnabled()) {
+            return;
+        }
+        final boolean wasDisabled = SafepointPoll.disable();
+        final Pointer etla = ETLA.load(currentTLA());
+        final Pointer buffer = DIRTY_CARD_BUFFER.load(etla).asPointer();
+        if (!buffer.isZero()) {
+            theDirtyCardQueues.pushCompleted(buffer, DIRTY_CARD_BUFFER_INDEX.load(etla).toInt());
+            DIRTY_CARD_BUFFER.store(etla, Address.zero());
+        }
+        DIRTY_CARD_BUFFER_INDEX.store(etla, Address.fromInt(DETACHED));
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+    }
+
+    private boolean isOldGenCard(int cardIndex) {
+        final Address cardStart = rset.cardTable.rangeStart(cardIndex);
+        return HeapRegionManager.theHeapRegionManager().contains(cardStart) && oldSpace.contains(cardStart);
+    }
+
+    private static Address next(Address buffer) {
+        return buffer.asPointer().getWord(NEXT_WORD_INDEX).asAddress();
+    }
+
+    private static int numEntries(Address buffer) {
+        return buffer.asPointer().getWord(NUM_ENTRIES_WORD_INDEX).asAddress().toInt();
+    }
+
+    private static void setNumEntries(Address buffer, int numEntries) {
+        buffer.asPointer().setWord(NUM_ENTRIES_WORD_INDEX, Address.fromInt(numEntries));
+    }
+
+    private static int entry(Address buffer, int index) {
+        return buffer.asPointer().getInt(entriesDisplacement(), index);
+    }
+
+    private static void setEntry(Address buffer, int index, int cardIndex) {
+        buffer.asPointer().setInt(entriesDisplacement(), index, cardIndex);
+    }
+
+    private static Address push(Address list, Address buffer) {
+        buffer.asPointer().setWord(NEXT_WORD_INDEX, list);
+        return buffer;
+    }
+
+    private Pointer allocateBuffer() {
+        final Pointer thisAddress = Reference.fromJava(this).toOrigin();
+        Address buffer;
+        do {
+            buffer = freeBuffers;
+            if (buffer.isZero()) {
+                return Memory.allocate(Size.fromInt(bufferCapacity * Ints.SIZE + entriesDisplacement()));
+            }
+        } while (!thisAddress.compareAndSwapWord(freeBuffersOffset(), buffer, next(buffer)).equals(buffer));
+        return buffer.asPointer();
+    }
+
+    private void pushCompleted(Pointer buffer, int numEntries) {
+        setNumEntries(buffer, numEntries);
+        final Pointer thisAddress = Reference.fromJava(this).toOrigin();
+        Address head;
+        do {
+            head = completedBuffers;
+            push(head, buffer);
+        } while (!thisAddress.compareAndSwapWord(completedBuffersOffset(), head, buffer).equals(head));
+    }
+
+    private Address takeCompleted() {
+        final Pointer thisAddress = Reference.fromJava(this).toOrigin();
+        Address head;
+        do {
+            head = completedBuffers;
+        } while (!thisAddress.compareAndSwapWord(completedBuffersOffset(), head, Address.zero()).equals(head));
+        return head;
+    }
+
+    /**
+     * Log a card in the current thread's buffer. Must be called with safepoints disabled.
+     */
+    private void log(int cardIndex) {
+        final Pointer etla = ETLA.load(currentTLA());
+        Pointer buffer = DIRTY_CARD_BUFFER.load(etla).asPointer();
+        int index = DIRTY_CARD_BUFFER_INDEX.load(etla).toInt();
+        if (index == DETACHED) {
+            buffer = allocateBuffer();
+            if (buffer.isZero()) {
+                fullScanNeeded = true;
+                return;
+            }
+            setEntry(buffer, 0, cardIndex);
+            pushCompleted(buffer, 1);
+            return;
+        }
+        if (buffer.isZero() || index == bufferCapacity) {
+            if (!buffer.isZero()) {
+                pushCompleted(buffer, index);
+            }
+            buffer = allocateBuffer();
+            DIRTY_CARD_BUFFER.store(etla, buffer);
+            index = 0;
+            if (buffer.isZero()) {
+                DIRTY_CARD_BUFFER_INDEX.store(etla, Address.zero());
+                fullScanNeeded = true;
+                return;
+            }
+        }
+        setEntry(buffer, index, cardIndex);
+        DIRTY_CARD_BUFFER_INDEX.store(etla, Address.fromInt(index + 1));
+    }
+
+    private void logDirtiedCard(Address address) {
+        if (enabled) {
+            final int cardIndex = rset.cardTable.tableEntryIndex(address);
+            if (isOldGenCard(cardIndex)) {
+                log(cardIndex);
+            }
+        }
+    }
+
+    /**
+     * Slow path of the logging post-write barrier, taken once the barrier has dirtied the card covering an updated reference.
+     * There's no safepoint between the dirtying of the card and the disabling of safepoints, so a collection never observes a card
+     * dirtied by the barrier that isn't logged.
+     *
+     * @param address address covered by the card to log
+     */
+    @NEVER_INLINE
+    @NO_SAFEPOINT_POLLS("the card is dirty but not logged yet")
+    static void loggingPostWriteBarrier(Address address) {
+        final boolean wasDisabled = SafepointPoll.disable();
+        theDirtyCardQueues.logDirtiedCard(address);
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+    }
+
+    /**
+     * Slow path of the XIR logging post-write barrier for tuples.
+     */
+    @NO_SAFEPOINT_POLLS("the card is dirty but not logged yet")
+    private static void tupleLoggingPostWriteBarrier(Object object) {
+        loggingPostWriteBarrier(Reference.fromJava(object).toOrigin());
+    }
+
+    /**
+     * Slow path of the XIR logging post-write barrier for reference arrays.
+     */
+    @NO_SAFEPOINT_POLLS("the card is dirty but not logged yet")
+    private static void arrayLoggingPostWriteBarrier(Object array, int index) {
+        loggingPostWriteBarrier(Reference.fromJava(array).toOrigin().plus(Layout.referenceArrayLayout().getElementOffsetFromOrigin(index)));
+    }
+
+    static final CriticalMethod tupleLoggingPostWriteBarrier =
+        new CriticalMethod(DirtyCardQueues.class, "tupleLoggingPostWriteBarrier", SignatureDescriptor.create(void.class, Object.class));
+
+    static final CriticalMethod arrayLoggingPostWriteBarrier =
+        new CriticalMethod(DirtyCardQueues.class, "arrayLoggingPostWriteBarrier", SignatureDescriptor.create(void.class, Object.class, int.class));
+
+    /**
+     * Gather the logged cards for a minor collection. Must be called while mutators are stopped, before evacuating the young generation.
+     *
+     * @return true if the collection can visit the logged cards only, false if it must scan the whole card table.
+     */
+    public static boolean beginCollection() {
+        final DirtyCardQueues queues = theDirtyCardQueues;
+        if (!queues.enabled) {
+            return false;
+        }
+        queues.collectBuffers();
+        queues.visitLoggedCardsOnly = !queues.fullScanNeeded;
+        queues.fullScanNeeded = false;
+        return queues.visitLoggedCardsOnly;
+    }
+
+    private final Pointer.Procedure threadBufferCollector = new Pointer.Procedure() {
+        public void run(Pointer tla) {
+            final Pointer etla = ETLA.load(tla);
+            final Pointer buffer = DIRTY_CARD_BUFFER.load(etla).asPointer();
+            if (!buffer.isZero()) {
+                setNumEntries(buffer, DIRTY_CARD_BUFFER_INDEX.load(etla).toInt());
+                collectedBuffers = push(collectedBuffers, buffer);
+                DIRTY_CARD_BUFFER.store(etla, Address.zero());
+                DIRTY_CARD_BUFFER_INDEX.store(etla, Address.zero());
+            }
+        }
+    };
+
+    private static Address appendBuffers(Address list, Address buffers) {
+        Address buffer = buffers;
+        while (!buffer.isZero()) {
+            final Address nextBuffer = next(buffer);
+            list = push(list, buffer);
+            buffer = nextBuffer;
+        }
+        return list;
+    }
+
+    private void collectBuffers() {
+        // Buffers being refined may have cards cleaned but not scanned yet. Dirty them again.
+        for (Address buffer = refiningBuffers; !buffer.isZero(); buffer = next(buffer)) {
+            final int numEntries = numEntries(buffer);
+            for (int i = 0; i < numEntries; i++) {
+                final int cardIndex = entry(buffer, i);
+                if (isOldGenCard(cardIndex)) {
+                    rset.cardTable.dirty(cardIndex);
+                }
+            }
+        }
+        Address list = appendBuffers(Address.zero(), refiningBuffers);
+        list = appendBuffers(list, refinedBuffers);
+        list = appendBuffers(list, takeCompleted());
+        refiningBuffers = Address.zero();
+        refinedBuffers = Address.zero();
+        collectedBuffers = list;
+        VmThreadMap.ACTIVE.forAllThreadLocals(null, threadBufferCollector);
+        nextUnclaimedBuffer = collectedBuffers;
+    }
+
+    /**
+     * Release the buffers gathered for a minor collection. Must be called while mutators are stopped, once the young generation is evacuated.
+     */
+    public static void endCollection() {
+        final DirtyCardQueues queues = theDirtyCardQueues;
+        if (!queues.enabled) {
+            return;
+        }
+        queues.freeBuffers = appendBuffers(queues.freeBuffers, queues.collectedBuffers);
+        queues.collectedBuffers = Address.zero();
+        queues.nextUnclaimedBuffer = Address.zero();
+        queues.visitLoggedCardsOnly = false;
+    }
+
+    /**
+     * Indicates whether the current minor collection visits the logged cards only instead of scanning the whole card table.
+     */
+    @INLINE
+    public static boolean visitsLoggedCardsOnly() {
+        return theDirtyCardQueues.visitLoggedCardsOnly;
+    }
+
+    private void visitLoggedCards(Address buffer, OverlappingCellVisitor cellVisitor) {
+        final CardTable cardTable = rset.cardTable;
+        final int numEntries = numEntries(buffer);
+        for (int i = 0; i < numEntries; i++) {
+            final int cardIndex = entry(buffer, i);
+            // Skip cards visited already, cleaned by the reclamation of the space they cover, or no longer in the old generation.
+            if (cardTable.unsafeGet(cardIndex) != CLEAN_CARD.value && isOldGenCard(cardIndex)) {
+                if (CardTableRSet.traceCardTableRSet()) {
+                    rset.traceVisitedCard(cardIndex, cardIndex + 1, DIRTY_CARD);
+                }
+                cardTable.clean(cardIndex);
+                rset.visitCard(cardIndex, cellVisitor);
+            }
+        }
+    }
+
+    /**
+     * Clean and visit all the dirty cards logged for the current minor collection.
+     *
+     * @param cellVisitor the logic to apply to the cells overlapping the visited cards
+     */
+    public static void visitLoggedCards(OverlappingCellVisitor cellVisitor) {
+        final DirtyCardQueues queues = theDirtyCardQueues;
+        for (Address buffer = queues.collectedBuffers; !buffer.isZero(); buffer = next(buffer)) {
+            queues.visitLoggedCards(buffer, cellVisitor);
+        }
+    }
+
+    private Address claimBuffer() {
+        final Pointer thisAddress = Reference.fromJava(this).toOrigin();
+        Address buffer;
+        do {
+            buffer = nextUnclaimedBuffer;
+            if (buffer.isZero()) {
+                return buffer;
+            }
+        } while (!thisAddress.compareAndSwapWord(nextUnclaimedBufferOffset(), buffer, next(buffer)).equals(buffer));
+        return buffer;
+    }
+
+    /**
+     * Clean and visit the dirty cards of the buffers the caller claims, until none are left unclaimed. Used by GC workers
+     * during a parallel evacuation. A card logged in several buffers may be visited by more than one worker, which only
+     * results in references to the young generation being evacuated by one worker and updated by several.
+     *
+     * @param cellVisitor the logic to apply to the cells overlapping the visited cards
+     */
+    public static void visitClaimedLoggedCards(OverlappingCellVisitor cellVisitor) {
+        final DirtyCardQueues queues = theDirtyCardQueues;
+        for (Address buffer = queues.claimBuffer(); !buffer.isZero(); buffer = queues.claimBuffer()) {
+            queues.visitLoggedCards(buffer, cellVisitor);
+        }
+    }
+
+    /**
+     * Clean the logged cards of a list of completed buffers, dropping those that aren't dirty or no longer in the old generation.
+     * Must be called with safepoints disabled.
+     *
+     * @return the list of buffers with cards left to scan
+     */
+    private Address cleanLoggedCards(Address buffers) {
+        final CardTable cardTable = rset.cardTable;
+        Address list = Address.zero();
+        Address buffer = buffers;
+        while (!buffer.isZero()) {
+            final Address nextBuffer = next(buffer);
+            final int numEntries = numEntries(buffer);
+            int numKept = 0;
+            for (int i = 0; i < numEntries; i++) {
+                final int cardIndex = entry(buffer, i);
+                if (cardTable.unsafeGet(cardIndex) == DIRTY_CARD.value && isOldGenCard(cardIndex)) {
+                    cardTable.clean(cardIndex);
+                    setEntry(buffer, numKept++, cardIndex);
+                }
+            }
+            if (numKept == 0) {
+                Memory.deallocate(buffer);
+            } else {
+                setNumEntries(buffer, numKept);
+                list = push(list, buffer);
+            }
+            buffer = nextBuffer;
+        }
+        return list;
+    }
+
+    /**
+     * Scan the cleaned cards of a buffer for references to the young generation. Cards holding some are dirtied again and kept
+     * in the buffer. Must be called with safepoints disabled.
+     *
+     * @return the number of cards kept in the buffer
+     */
+    private int scanLoggedCards(Address buffer) {
+        final CardTable cardTable = rset.cardTable;
+        final int numEntries = numEntries(buffer);
+        int numKept = 0;
+        for (int i = 0; i < numEntries; i++) {
+            final int cardIndex = entry(buffer, i);
+            // A card dirtied since it was cleaned was logged again by the thread that dirtied it.
+            if (cardTable.unsafeGet(cardIndex) != DIRTY_CARD.value && isOldGenCard(cardIndex) && youngReferenceFinder.scanCard(cardIndex)) {
+                cardTable.dirty(cardIndex);
+                setEntry(buffer, numKept++, cardIndex);
+            }
+        }
+        setNumEntries(buffer, numKept);
+        return numKept;
+    }
+
+    /**
+     * Refine the completed buffers. Called periodically by the refinement thread.
+     */
+    private void refine() {
+        boolean wasDisabled = SafepointPoll.disable();
+        refiningBuffers = cleanLoggedCards(takeCompleted());
+        final boolean nothingToRefine = refiningBuffers.isZero();
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+        if (nothingToRefine) {
+            return;
+        }
+        // Make stores of references in the cleaned cards visible before scanning them.
+        refinementHandshake.submit();
+        while (true) {
+            wasDisabled = SafepointPoll.disable();
+            // The list of buffers being refined is taken by minor collections.
+            final Address buffer = refiningBuffers;
+            if (!buffer.isZero()) {
+                refiningBuffers = next(buffer);
+                if (scanLoggedCards(buffer) == 0) {
+                    Memory.deallocate(buffer);
+                } else {
+                    refinedBuffers = push(refinedBuffers, buffer);
+                }
+            }
+            if (!wasDisabled) {
+                SafepointPoll.enable();
+            }
+            if (buffer.isZero()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds references to the young generation in the cells overlapping a card. References of tuples and hybrids are
+     * all scanned, as the barrier dirties the card of their header.
+     */
+    private final class YoungReferenceFinder extends PointerIndexVisitor implements OverlappingCellVisitor {
+        private boolean found;
+
+        boolean scanCard(int cardIndex) {
+            found = false;
+            rset.visitCard(cardIndex, this);
+            return found;
+        }
+
+        @Override
+        public void visit(Pointer pointer, int wordIndex) {
+            if (youngSpace.contains(pointer.getReference(wordIndex).toOrigin())) {
+                found = true;
+            }
+        }
+
+        @Override
+        public Pointer visitCell(Pointer cell, Address start, Address end) {
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Hub hub = Layout.getHub(origin);
+            if (hub == HeapFreeChunk.heapFreeChunkHub()) {
+                return cell.plus(HeapFreeChunk.getFreechunkSize(cell));
+            }
+            visit(origin, Layout.hubIndex());
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout.isTupleLayout()) {
+                hub.visitMappedReferences(origin, this);
+                if (hub.isJLRReference) {
+                    visit(origin, SpecialReferenceManager.referentIndex());
+                }
+            } else if (specificLayout.isHybridLayout()) {
+                hub.visitMappedReferences(origin, this);
+            } else if (specificLayout.isReferenceArrayLayout()) {
+                final int log2WordSize = Word.widthValue().log2numberOfBytes;
+                final int endOfArrayIndex = Layout.readArrayLength(origin) + Layout.firstElementIndex();
+                final Address firstElementAddr = origin.plusWords(Layout.firstElementIndex());
+                final Address endOfArrayAddr = origin.plusWords(endOfArrayIndex);
+                final int firstIndex = start.greaterThan(firstElementAddr) ? start.minus(origin).unsignedShiftedRight(log2WordSize).toInt() : Layout.firstElementIndex();
+                final int endIndex = endOfArrayAddr.greaterThan(end) ? end.minus(origin).unsignedShiftedRight(log2WordSize).toInt() : endOfArrayIndex;
+                for (int index = firstIndex; index < endIndex && !found; index++) {
+                    visit(origin, index);
+                }
+            }
+            // Stop at the first reference found.
+            return found ? end.asPointer() : cell.plus(Layout.size(origin));
+        }
+    }
+
+    /**
+     * Operation freezing and thawing each mutator in turn, after which their stores in the cards cleaned by the refinement thread are
+     * visible. Being a {@link Mode#Handshake} operation, it never stops all mutators at once.
+     */
+    private static final class RefinementHandshake extends VmOperation {
+        RefinementHandshake() {
+            super("DirtyCardRefinementHandshake", null, Mode.Handshake);
+        }
+
+        @Override
+        protected void doThread(VmThread vmThread, Pointer ip, Pointer sp, Pointer fp) {
+            // Freezing the thread is all it takes.
+        }
+    }
+
+    private static final RefinementHandshake refinementHandshake = new RefinementHandshake();
+
+    /**
+     * Daemon thread periodically refining the completed buffers.
+     */
+    private static final class RefinementThread extends Thread {
+        RefinementThread() {
+            super(VmThread.systemThreadGroup, "DirtyCardRefinement");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Thread.sleep(DirtyCardRefinementInterval);
+                } catch (InterruptedException e) {
+                }
+                theDirtyCardQueues.refine();
+            }
+        }
+    }
+}
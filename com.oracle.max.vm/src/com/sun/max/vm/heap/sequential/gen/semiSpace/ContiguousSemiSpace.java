@@ -73,6 +73,22 @@ public class ContiguousSemiSpace <T extends BaseAtomicBumpPointerAllocator<? ext
         allocator.refill(space.start(), space.committedSize());
     }
 
+    /**
+     * Give the physical memory backing the from-space back to the operating system. The from-space holds no live objects outside
+     * of a full collection, so this can be done between any two collections. The from-space remains committed and is transparently
+     * backed again by the operating system on the next flip.
+     *
+     * @return the number of bytes given back
+     */
+    Size discardFromSpace() {
+        if (!fromSpace.discardCommittedSpace()) {
+            return Size.zero();
+        }
+        // Inspector support: see initialize.
+        fromSpace.start().asPointer().setWord(Word.zero());
+        return fromSpace.committedSize();
+    }
+
     @Override
     public Size increaseSize(Size delta) {
         Size size = super.increaseSize(delta);
@@ -526,6 +526,8 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
         // Code only point to memory region that contains live objects
         verifyCodeRegion(Code.bootCodeRegion());
         verifyCodeRegion(Code.getCodeManager().getRuntimeBaselineCodeRegion());
+        verifyCodeRegion(Code.getCodeManager().getRuntimeStubCodeRegion());
+        verifyCodeRegion(Code.getCodeManager().getRuntimeProfiledCodeRegion());
         verifyCodeRegion(Code.getCodeManager().getRuntimeOptCodeRegion());
         oldSpace.visit(fotVerifier);
     }
@@ -855,6 +857,14 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
         return oldSpace.usedSpace().plus(youngSpace.usedSpace());
     }
 
+    /**
+     * The old generation's from-space is only used during full collections. Give its memory back to the operating system.
+     */
+    @Override
+    public Size uncommitUnusedMemory() {
+        return oldSpace.discardFromSpace();
+    }
+
     @Override
     public void walkHeap(CallbackCellVisitor visitor) {
         ImmortalHeap.visitCells(visitor);
@@ -931,6 +941,10 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
                 final Size newTLABSize = Size.fromLong(Long.highestOneBit(largeObjectSizeThreshold.toLong()));
                 setInitialTlabSize(newTLABSize);
             }
+            if (largeObjectSizeThreshold.lessThan(maxTlabSize())) {
+                // Adaptively sized TLABs must not grow beyond the large object size threshold either.
+                setMaxTlabSize(Size.fromLong(Long.highestOneBit(largeObjectSizeThreshold.toLong())));
+            }
             youngSpace.initialize(firstUnusedByteAddress, resizingPolicy.maxYoungGenSize(), resizingPolicy.initialYoungGenSize());
             youngSpace.allocator().initialize(youngSpace.space.start(), youngSpace.space.committedSize(), largeObjectSizeThreshold);
             Address startOfOldSpace = youngSpace.space.end().alignUp(pageSize);
@@ -1021,7 +1035,7 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, createTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -1111,6 +1125,23 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
         GenSSMemoryPoolMXBean(MemoryRegion region, MemoryManagerMXBean manager) {
             super(MemoryType.HEAP, region, manager);
         }
+
+        /**
+         * Report what is allocated in the space, instead of all its committed memory. The old generation's semi-spaces flip
+         * at every full collection, so the space's role is checked on every call: the from-space never holds objects in use.
+         */
+        @Override
+        public MemoryUsage getUsage() {
+            final ContiguousHeapSpace space = (ContiguousHeapSpace) region;
+            final long committed = space.committedSize().toLong();
+            long used = 0L;
+            if (space == oldSpace.space) {
+                used = oldSpace.usedSpace().toLong();
+            } else if (space == youngSpace.space) {
+                used = youngSpace.usedSpace().toLong();
+            }
+            return new MemoryUsage(-1L, Math.min(used, committed), committed, space.size().toLong());
+        }
     }
 
     @HOSTED_ONLY
@@ -39,6 +39,8 @@ import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.compiler.deps.*;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.mse.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
 import com.sun.max.vm.jdk.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.type.*;
@@ -94,6 +96,12 @@ public final class BootImageGenerator {
     private static final Option<Boolean> useOutOfLineStubs = options.newBooleanOption("out-stubs", true,
             "Uses out of line runtime stubs when generating inlined TLAB allocations with XIR");
 
+    private static final Option<Boolean> concurrentMarkingOption = options.newBooleanOption("concurrent-marking", false,
+            "Compile reference stores with the SATB barrier needed by -XX:+UseConcurrentMarking (MSE heap scheme only).");
+
+    private static final Option<Boolean> dirtyCardQueuesOption = options.newBooleanOption("dirty-card-queues", false,
+            "Compile reference stores with the card logging barrier needed by -XX:+UseDirtyCardQueues (GenMSE heap scheme only).");
+
     // Options shared with the Inspector
     public static final OptionSet inspectorSharedOptions = new OptionSet();
 
@@ -221,6 +229,14 @@ public final class BootImageGenerator {
                 System.setProperty(CompilationBroker.COMPILATION_BROKER_CLASS_PROPERTY_NAME, compilationBrokerClassOption.getValue());
             }
 
+            if (concurrentMarkingOption.getValue()) {
+                System.setProperty(MSEHeapScheme.CONCURRENT_MARKING_PROPERTY, "true");
+            }
+
+            if (dirtyCardQueuesOption.getValue()) {
+                System.setProperty(DirtyCardQueues.DIRTY_CARD_QUEUES_PROPERTY, "true");
+            }
+
             ClassIDManager.traceArrayClassIDs = debugClassIDOption.getValue();
 
             String[] extraClassesAndPackages = options.getArguments();
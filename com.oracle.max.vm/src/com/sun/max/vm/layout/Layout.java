@@ -482,6 +482,20 @@ public final class Layout {
         generalLayout().writeForwardRef(origin, forwardRef);
     }
 
+    /**
+     * Atomically installs a forwarding reference in an object, provided its hub word still holds the specified value.
+     *
+     * @param origin location of an object
+     * @param suspectedRef the value the hub word is expected to hold
+     * @param forwardRef the forwarding reference to install
+     * @return the value of the hub word before the operation; the forwarding reference was installed if it equals {@code suspectedRef}
+     */
+    @ACCESSOR(Pointer.class)
+    @INLINE
+    public static Reference compareAndSwapForwardRef(Pointer origin, Reference suspectedRef, Reference forwardRef) {
+        return generalLayout().compareAndSwapForwardRef(origin, suspectedRef, forwardRef);
+    }
+
     /**
      * Access to <strong>byte array object</strong> layout information in the
      * context of the current {@linkplain VMConfiguration VM configuration}.
@@ -88,9 +88,10 @@ public class MemoryManagement {
 
         for (MemoryPoolMXBean pool : pools) {
             final MemoryUsage poolUsage = pool.getUsage();
-            init += poolUsage.getInit();
+            // Pools report -1 for an undefined initial or maximum size.
+            init += Math.max(poolUsage.getInit(), 0L);
             committed += poolUsage.getCommitted();
-            max += poolUsage.getMax();
+            max += Math.max(poolUsage.getMax(), 0L);
             used += poolUsage.getUsed();
         }
         return new MemoryUsage(init, used, committed, max);
@@ -28,6 +28,7 @@ import java.util.*;
 
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.jdk.*;
+import com.sun.max.vm.monitor.modal.sync.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.stack.*;
 import com.sun.max.vm.thread.*;
@@ -63,6 +64,27 @@ public class ThreadManagement {
         return VmThreadMap.getTotalStartedThreadCount();
     }
 
+    /**
+     * Gets the number of inflated monitors currently bound to an object.
+     */
+    public static int getBoundMonitorCount() {
+        return JavaMonitorManager.boundMonitorCount();
+    }
+
+    /**
+     * Gets the number of inflated monitors available for binding to an object.
+     */
+    public static int getUnboundMonitorCount() {
+        return JavaMonitorManager.unboundMonitorCount();
+    }
+
+    /**
+     * Gets the number of monitors deflated by the {@link MonitorDeflater} since the VM started.
+     */
+    public static long getAsyncDeflatedMonitorCount() {
+        return JavaMonitorManager.asyncDeflationCount();
+    }
+
     public static int getTotalThreadCount() {
         return VmThreadMap.getLiveTheadCount();
     }
@@ -189,7 +211,7 @@ public class ThreadManagement {
     }
 
     /**
-     * A thread-freezing operation to get a stack trace for a given set of threads.
+     * A handshake operation to get a stack trace for a given set of threads, freezing one thread at a time.
      *
      */
     static final class StackTraceGatherer extends VmOperation {
@@ -197,7 +219,7 @@ public class ThreadManagement {
         final StackTraceElement[][] traces;
         final List<Thread> threads;
         StackTraceGatherer(List<Thread> threads, StackTraceElement[][] result, int maxDepth) {
-            super("StackTraceGatherer", null, Mode.Safepoint);
+            super("StackTraceGatherer", null, Mode.Handshake);
             this.threads = threads;
             this.maxDepth = maxDepth;
             this.traces = result;
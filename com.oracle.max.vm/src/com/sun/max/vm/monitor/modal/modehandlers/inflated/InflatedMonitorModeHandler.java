@@ -20,6 +20,7 @@
  */
 package com.sun.max.vm.monitor.modal.modehandlers.inflated;
 
+import com.oracle.max.cri.intrinsics.*;
 import com.sun.max.annotate.*;
 import com.sun.max.platform.*;
 import com.sun.max.unsafe.*;
@@ -67,10 +68,20 @@ public abstract class InflatedMonitorModeHandler extends AbstractModeHandler {
 
     @INLINE
     protected final InflatedMonitorLockword64 readMiscAndProtectBinding(Object object) {
-        final InflatedMonitorLockword64 lockword = InflatedMonitorLockword64.from(ObjectAccess.readMisc(object));
+        InflatedMonitorLockword64 lockword = InflatedMonitorLockword64.from(ObjectAccess.readMisc(object));
         if (Platform.target().arch.is64bit()) {
-            if (lockword.isBound()) {
+            while (lockword.isBound()) {
                 JavaMonitorManager.protectBinding(lockword.getBoundMonitor());
+                if (!MonitorDeflater.isActive()) {
+                    break;
+                }
+                // Make the protection visible to the monitor deflater before checking that the monitor was not deflated
+                MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+                final InflatedMonitorLockword64 newLockword = InflatedMonitorLockword64.from(ObjectAccess.readMisc(object));
+                if (newLockword.equals(lockword)) {
+                    break;
+                }
+                lockword = newLockword;
             }
         } else {
             final InflatedMonitorLockword64 hashword = InflatedMonitorLockword64.from(ObjectAccess.readHash(object));
@@ -81,6 +92,26 @@ public abstract class InflatedMonitorModeHandler extends AbstractModeHandler {
         return lockword;
     }
 
+    /**
+     * Checks that a monitor the current thread has just entered is still bound to the object, which is not the case if
+     * the {@link MonitorDeflater} deflated it while the current thread was entering it. If it is not, the monitor is
+     * released.
+     *
+     * @return true if the monitor is still bound to {@code object}; false if it was released
+     */
+    @INLINE
+    protected final boolean enteredMonitorIsBound(Object object, JavaMonitor monitor) {
+        if (Platform.target().arch.is64bit() && MonitorDeflater.isActive()) {
+            final InflatedMonitorLockword64 lockword = InflatedMonitorLockword64.from(ObjectAccess.readMisc(object));
+            if (!lockword.isBound() || lockword.getBoundMonitor() != monitor) {
+                monitor.monitorExit();
+                JavaMonitorManager.protectBinding(null);
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected int makeBoundHashCode(Object object, InflatedMonitorLockword64 lockword, InflatedMonitorLockword64 hashword) {
         assert hashword.isZero() || Platform.target().arch.is32bit() : " Hashword != null in 64 bit mode ";
         final JavaMonitor monitor = Platform.target().arch.is64bit() ? lockword.getBoundMonitor() : hashword.getBoundMonitor();
@@ -148,7 +179,11 @@ public abstract class InflatedMonitorModeHandler extends AbstractModeHandler {
             super(new UnboundMiscWordWriter() {
 
                 public void writeUnboundMiscWord(Object object, Word preBindingMiscWord) {
-                    ObjectAccess.writeMisc(object, preBindingMiscWord);
+                    ObjectAccess.writeMisc(object, unboundMiscWord(preBindingMiscWord));
+                }
+
+                public Word unboundMiscWord(Word preBindingMiscWord) {
+                    return preBindingMiscWord;
                 }
 
                 public void writeUnboundHashWord(Object object, Word hashWord) {
@@ -227,7 +262,13 @@ public abstract class InflatedMonitorModeHandler extends AbstractModeHandler {
                     }
                     final JavaMonitor boundMonitor = Platform.target().arch.is64bit() ? lockword.getBoundMonitor() : hashword.getBoundMonitor();
                     boundMonitor.monitorEnter();
-                    return;
+                    if (enteredMonitorIsBound(object, boundMonitor)) {
+                        return;
+                    }
+                    // The monitor was deflated. Try again.
+                    monitor = null;
+                    lockword = readMiscAndProtectBinding(object);
+                    continue;
                 } else if (monitor == null) {
                     monitor = JavaMonitorManager.bindMonitor(object);
                     monitor.monitorEnter();
@@ -340,7 +381,7 @@ public abstract class InflatedMonitorModeHandler extends AbstractModeHandler {
             }
             final JavaMonitor monitor = Platform.target().arch.is64bit() ? inflatedLockword.getBoundMonitor() : InflatedMonitorLockword64.from(ObjectAccess.readHash(object)).getBoundMonitor();
             monitor.monitorEnter();
-            return true;
+            return enteredMonitorIsBound(object, monitor);
         }
 
         public void delegateMonitorExit(Object object, ModalLockword64 lockword) {
@@ -391,7 +432,11 @@ public abstract class InflatedMonitorModeHandler extends AbstractModeHandler {
             super(new UnboundMiscWordWriter() {
 
                 public void writeUnboundMiscWord(Object object, Word preBindingMiscWord) {
-                    ObjectAccess.writeMisc(object, ThinLockword64.from(preBindingMiscWord).asUnlocked());
+                    ObjectAccess.writeMisc(object, unboundMiscWord(preBindingMiscWord));
+                }
+
+                public Word unboundMiscWord(Word preBindingMiscWord) {
+                    return ThinLockword64.from(preBindingMiscWord).asUnlocked();
                 }
 
                 public void writeUnboundHashWord(Object object, Word hashWord) {
@@ -456,7 +501,11 @@ public abstract class InflatedMonitorModeHandler extends AbstractModeHandler {
             super(new UnboundMiscWordWriter() {
 
                 public void writeUnboundMiscWord(Object object, Word preBindingMiscWord) {
-                    ObjectAccess.writeMisc(object, BiasedLockword64.from(preBindingMiscWord).asAnonBiased());
+                    ObjectAccess.writeMisc(object, unboundMiscWord(preBindingMiscWord));
+                }
+
+                public Word unboundMiscWord(Word preBindingMiscWord) {
+                    return BiasedLockword64.from(preBindingMiscWord).asAnonBiased();
                 }
 
                 public void writeUnboundHashWord(Object object, Word hashWord) {
@@ -53,7 +53,7 @@ public final class BiasedLockEpoch64 extends Word {
             return MIN;
         }
         int epoch = toIntInternal();
-        return BiasedLockEpoch64.from(Address.fromUnsignedInt(epoch++).shiftedLeft(BiasedLockword64.EPOCH_SHIFT));
+        return BiasedLockEpoch64.from(Address.fromUnsignedInt(epoch + 1).shiftedLeft(BiasedLockword64.EPOCH_SHIFT));
     }
 
     @INLINE
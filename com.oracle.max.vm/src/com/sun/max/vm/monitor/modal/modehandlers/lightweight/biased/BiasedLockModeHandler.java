@@ -70,6 +70,9 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
 
     @Override
     public void initialize(MaxineVM.Phase phase) {
+        if (phase == MaxineVM.Phase.TERMINATING && BiasedLockRevocationHeuristics.PrintBiasedLockingStatistics) {
+            BiasedLockRevocationHeuristics.printStatistics();
+        }
     }
 
     // Inspector support
@@ -85,6 +88,7 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
         if (BiasedLockword64.isBiasedLockword(lockword)) {
             final ModalLockword64 newLockword = delegate().prepareModalLockword(object, lockword);
             ObjectAccess.writeMisc(object, newLockword);
+            BiasedLockRevocationHeuristics.recordRevocation(ObjectAccess.readHub(object).classActor);
             return newLockword;
         }
         return lockword;
@@ -96,37 +100,48 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
         }
     }
 
+    /**
+     * Revokes the bias of an object while its bias owner is frozen by a per-thread {@linkplain Mode#Handshake handshake},
+     * so that no other thread is stopped.
+     */
     class RevokeBiasOperation extends VmOperation {
         final Object object;
         ModalLockword64 newLockword;
+        boolean revoked;
         RevokeBiasOperation(VmThread thread, Object object) {
-            super("RevokeBias", thread, Mode.Safepoint, false);
+            super("RevokeBias", thread, Mode.Handshake, false);
             this.object = object;
         }
         @Override
-        protected void doIt() {
+        protected void doThread(VmThread vmThread, Pointer ip, Pointer sp, Pointer fp) {
+            BiasedLockRevocationHeuristics.recordSafepoint();
             newLockword = revokeBias(object);
+            revoked = true;
         }
     }
 
     protected ModalLockword64 revokeWithOwnerSafepointed(final Object object, int vmThreadMapThreadID, BiasedLockword64 biasedLockword) {
+        final VmThread biasOwnerThread;
         synchronized (VmThreadMap.THREAD_LOCK) {
-            final VmThread biasOwnerThread = VmThreadMap.ACTIVE.getVmThreadForID(vmThreadMapThreadID);
+            biasOwnerThread = VmThreadMap.ACTIVE.getVmThreadForID(vmThreadMapThreadID);
             if (biasOwnerThread == null) {
                 // The bias owner is terminated. No need to safepoint.
                 // Lets try to reset the bias to anon.
                 return ModalLockword64.from(ObjectAccess.compareAndSwapMisc(object, biasedLockword, biasedLockword.asAnonBiased()));
             }
-            final Pointer tla = biasOwnerThread.tla();
-            if (tla.isZero()) {
+            if (biasOwnerThread.tla().isZero()) {
                 // The bias holding thread is still starting up, so how can it own biases??
                 FatalError.unexpected("Attempted to revoke bias for still initializing thread.");
             }
-
-            RevokeBiasOperation operation = new RevokeBiasOperation(VmThread.fromTLA(tla), object);
-            operation.submit();
-            return operation.newLockword;
         }
+        // The thread lock must be released before submitting, as the VM operation thread takes it to freeze the bias owner
+        final RevokeBiasOperation operation = new RevokeBiasOperation(biasOwnerThread, object);
+        operation.submit();
+        if (!operation.revoked) {
+            // The bias owner terminated before it could be frozen, let the caller try again
+            return ModalLockword64.from(ObjectAccess.readMisc(object));
+        }
+        return operation.newLockword;
     }
 
     public Word createMisc(Object object) {
@@ -397,12 +412,17 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                     // We lock as normal. When the lock is released, the object will be rebiased.
                     ObjectAccess.writeMisc(object, biasedLockword.incrementCount());
                     return;
-                } else if (biasedLockword.equals(biasedLockword.asAnonBiased()) || !biasedLockword.getEpoch().equals(classEpoch)) {
-                    // Object is not biased or it's bias is not in the current epoch. Try to get the bias.
+                } else if (biasedLockword.equals(biasedLockword.asAnonBiased()) ||
+                           (!biasedLockword.getEpoch().equals(classEpoch) && biasedLockword.countUnderflow())) {
+                    // Object is not biased or it's bias is not in the current epoch and it is not locked. Try to get the bias.
+                    // (A bias from an earlier epoch that is still locked must be revoked, as its owner still holds the lock.)
                     final BiasedLockword64 newBiasedLockword = biasedLockword.asBiasedAndLockedOnceBy(lockwordThreadID, classEpoch);
                     currentLockword = ModalLockword64.from(ObjectAccess.compareAndSwapMisc(object, biasedLockword, newBiasedLockword));
                     if (currentLockword.equals(biasedLockword)) {
                         // Current thread is now the bias owner
+                        if (!biasedLockword.equals(biasedLockword.asAnonBiased())) {
+                            BiasedLockRevocationHeuristics.recordRebias();
+                        }
                         return;
                     }
                 } else if (biasedLockword.getBiasOwnerID() == lockwordThreadID && biasedLockword.countOverflow()) {
@@ -469,20 +489,8 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
             return delegate().delegateMakeHashcode(object, lockword);
         }
 
-        private BiasedLockRevocationHeuristics getHeuristics(Object object) {
-            final Hub hub = ObjectAccess.readHub(object);
-            BiasedLockRevocationHeuristics revocationHeuristics = hub.biasedLockRevocationHeuristics();
-            if (revocationHeuristics == null) {
-                // This is purposely not synchronised.
-                // We only may miss an update to the heuristics.
-                revocationHeuristics = new BiasedLockRevocationHeuristics();
-                hub.setBiasedLockRevocationHeuristics(revocationHeuristics);
-            }
-            return revocationHeuristics;
-        }
-
         private ModalLockword64 performRevocation(Object object, BiasedLockword64 lockword) {
-            final BiasedLockRevocationHeuristics revocationHeuristics = getHeuristics(object);
+            final BiasedLockRevocationHeuristics revocationHeuristics = BiasedLockRevocationHeuristics.of(ObjectAccess.readHub(object).classActor);
             final RevocationType type = revocationHeuristics.notifyContentionRevocationRequest();
             ModalLockword64 postRevokeLockword = ModalLockword64.from(Word.zero());
             switch (type) {
@@ -504,7 +512,7 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                         Log.unlock(lockDisabledSafepoints);
                     }
 
-                    BulkRebiasOperation operation = new BulkRebiasOperation(object);
+                    BulkRebiasOperation operation = new BulkRebiasOperation(object, revocationHeuristics);
                     operation.submit();
                     postRevokeLockword = operation.postRebiasLockword;
                     revocationHeuristics.notifyBulkRebiasComplete();
@@ -518,7 +526,7 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                         Log.unlock(lockDisabledSafepoints);
                     }
 
-                    BulkRevokeOperation operation = new BulkRevokeOperation(object);
+                    BulkRevokeOperation operation = new BulkRevokeOperation(object, revocationHeuristics);
                     operation.submit();
                     postRevokeLockword = operation.postRevokeLockword;
                     break;
@@ -529,13 +537,17 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
 
         class BulkRevokeOperation extends VmOperation {
             private final Object object;
+            private final BiasedLockRevocationHeuristics revocationHeuristics;
             ModalLockword64 postRevokeLockword;
-            BulkRevokeOperation(Object object) {
+            BulkRevokeOperation(Object object, BiasedLockRevocationHeuristics revocationHeuristics) {
                 super("BulkRevoke", null, Mode.Safepoint, false);
                 this.object = object;
+                this.revocationHeuristics = revocationHeuristics;
             }
             @Override
             protected void doIt() {
+                BiasedLockRevocationHeuristics.recordSafepoint();
+                revocationHeuristics.recordBulkRevocation();
                 final Hub hub = ObjectAccess.readHub(object);
                 hub.biasedLockEpoch = BiasedLockEpoch64.bulkRevocation();
                 postRevokeLockword = revokeBias(object);
@@ -544,13 +556,17 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
 
         class BulkRebiasOperation extends VmOperation {
             private final Object object;
+            private final BiasedLockRevocationHeuristics revocationHeuristics;
             ModalLockword64 postRebiasLockword;
-            BulkRebiasOperation(Object object) {
+            BulkRebiasOperation(Object object, BiasedLockRevocationHeuristics revocationHeuristics) {
                 super("BulkRebias", null, Mode.Safepoint, false);
                 this.object = object;
+                this.revocationHeuristics = revocationHeuristics;
             }
             @Override
             protected void doIt() {
+                BiasedLockRevocationHeuristics.recordSafepoint();
+                revocationHeuristics.recordBulkRebias();
                 final Hub hub = ObjectAccess.readHub(object);
                 final BiasedLockEpoch64 epoch = hub.biasedLockEpoch;
                 hub.biasedLockEpoch = epoch.increment();
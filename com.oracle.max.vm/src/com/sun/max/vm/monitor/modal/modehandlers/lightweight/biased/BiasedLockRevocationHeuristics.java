@@ -23,42 +23,113 @@
 package com.sun.max.vm.monitor.modal.modehandlers.lightweight.biased;
 
 import com.sun.max.atomic.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
 
 /**
+ * Per-class statistics about the revocation of biased locks, used to decide whether the next revocation requested
+ * for an instance of the class should revoke the bias of that object only, rebias all instances of the class by
+ * bumping the epoch of the class (bulk rebias), or disable biased locking for the class altogether (bulk revocation).
+ *
+ * The heuristic re-implements that used in HotSpot (as of 1.7): a class whose instances are handed over from one
+ * thread to another now and then gets its instances rebiased in bulk, so that the new owners can take the biases
+ * without a safepoint. A class whose revocations keep coming after a bulk rebias is genuinely shared and stops
+ * being biased. Revocations that are further apart than {@link #BiasedLockingDecayTime} after a bulk rebias are
+ * not counted towards a bulk revocation.
+ *
+ * The class also keeps VM-wide counters of revocations, bulk operations and the safepoints they cause, which are
+ * printed by {@code -XX:+PrintBiasedLockingStatistics}. These counters are not updated atomically.
  */
-public class BiasedLockRevocationHeuristics {
+public final class BiasedLockRevocationHeuristics {
+
+    public static int BiasedLockingBulkRebiasThreshold = 20;
+    public static int BiasedLockingBulkRevokeThreshold = 40;
+    public static int BiasedLockingDecayTime = 25000;
+    public static boolean PrintBiasedLockingStatistics;
+    static {
+        VMOptions.addFieldOption("-XX:", "BiasedLockingBulkRebiasThreshold", BiasedLockRevocationHeuristics.class,
+            "Number of revocations of the biased locks of a class's instances after which they are rebiased in bulk.", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "BiasedLockingBulkRevokeThreshold", BiasedLockRevocationHeuristics.class,
+            "Number of revocations of the biased locks of a class's instances after which biased locking is disabled for the class.", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "BiasedLockingDecayTime", BiasedLockRevocationHeuristics.class,
+            "Time (in milliseconds) since the last bulk rebias of a class after which its revocation count is reset.", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "PrintBiasedLockingStatistics", BiasedLockRevocationHeuristics.class,
+            "Print the number of biased lock revocations, rebiases and biasing safepoints when the VM terminates.", MaxineVM.Phase.PRISTINE);
+    }
 
     enum RevocationType {SINGLE_OBJECT_REVOCATION, BULK_REBIAS, BULK_REVOCATION}
 
-    private static final int BULK_REBIAS_THRESHOLD = 20;
-    private static final int BULK_REVOCATION_THRESHOLD = 40;
-    private static final int BULK_REBIAS_DECAY_TIME = 25000;
+    private static int revocations;
+    private static int rebiases;
+    private static int bulkRebiases;
+    private static int bulkRevocations;
+    private static int safepoints;
+
+    /**
+     * The head of the list of all heuristics created so far, linked through {@link #next}. Heuristics are pushed onto
+     * the list with a CAS as they may be created concurrently by revoking threads.
+     */
+    private static final AtomicReference first = new AtomicReference();
 
+    private final ClassActor classActor;
+    private BiasedLockRevocationHeuristics next;
     private final AtomicInteger revocationCount = new AtomicInteger();
-    private long lastBulkRebiasTime = 0;
+    private volatile long lastBulkRebiasTime = 0;
+    private int totalRevocations;
+    private int totalBulkRebiases;
+    private boolean bulkRevoked;
 
-    public RevocationType notifyContentionRevocationRequest() {
+    private BiasedLockRevocationHeuristics(ClassActor classActor) {
+        this.classActor = classActor;
+    }
 
-        // This heuristic re-implements that used in HotSpot (as of 1.7)
+    /**
+     * Gets the heuristics of a class, creating them if necessary.
+     */
+    static BiasedLockRevocationHeuristics of(ClassActor classActor) {
+        final BiasedLockRevocationHeuristics revocationHeuristics = classActor.biasedLockRevocationHeuristics();
+        if (revocationHeuristics != null) {
+            return revocationHeuristics;
+        }
+        return create(classActor);
+    }
 
+    /**
+     * Creates the heuristics of a class without taking a lock, as this is called on the revocation path. If several
+     * threads race to create them, the heuristics published first in the class actor win and the others are dropped.
+     */
+    private static BiasedLockRevocationHeuristics create(ClassActor classActor) {
+        final BiasedLockRevocationHeuristics revocationHeuristics = new BiasedLockRevocationHeuristics(classActor);
+        final BiasedLockRevocationHeuristics published = classActor.publishBiasedLockRevocationHeuristics(revocationHeuristics);
+        if (published == revocationHeuristics) {
+            BiasedLockRevocationHeuristics head;
+            do {
+                head = (BiasedLockRevocationHeuristics) first.get();
+                revocationHeuristics.next = head;
+            } while (!first.compareAndSet(head, revocationHeuristics));
+        }
+        return published;
+    }
+
+    public RevocationType notifyContentionRevocationRequest() {
         int currentRevocationCount = revocationCount.get();
         final long bulkRebiasTime = lastBulkRebiasTime;
         final long currentTime = System.currentTimeMillis();
-        if (currentRevocationCount >= BULK_REBIAS_THRESHOLD &&
-            currentRevocationCount < BULK_REVOCATION_THRESHOLD &&
-            lastBulkRebiasTime != 0 &&
-            currentTime - bulkRebiasTime > BULK_REBIAS_DECAY_TIME) {
+        if (currentRevocationCount >= BiasedLockingBulkRebiasThreshold &&
+            currentRevocationCount < BiasedLockingBulkRevokeThreshold &&
+            bulkRebiasTime != 0 &&
+            currentTime - bulkRebiasTime > BiasedLockingDecayTime) {
             currentRevocationCount = 0;
             revocationCount.set(0);
         }
 
-        if (currentRevocationCount <= BULK_REVOCATION_THRESHOLD) {
+        if (currentRevocationCount <= BiasedLockingBulkRevokeThreshold) {
             currentRevocationCount = revocationCountAtomicInc();
         }
 
-        if (currentRevocationCount == BULK_REBIAS_THRESHOLD) {
+        if (currentRevocationCount == BiasedLockingBulkRebiasThreshold) {
             return RevocationType.BULK_REBIAS;
-        } else if (currentRevocationCount == BULK_REVOCATION_THRESHOLD) {
+        } else if (currentRevocationCount == BiasedLockingBulkRevokeThreshold) {
             return RevocationType.BULK_REVOCATION;
         }
         return RevocationType.SINGLE_OBJECT_REVOCATION;
@@ -71,4 +142,90 @@ public class BiasedLockRevocationHeuristics {
     private int revocationCountAtomicInc() {
         return revocationCount.getAndAdd(1) + 1;
     }
+
+    /**
+     * Records the revocation of the bias of a single object.
+     */
+    static void recordRevocation(ClassActor classActor) {
+        revocations++;
+        final BiasedLockRevocationHeuristics revocationHeuristics = classActor.biasedLockRevocationHeuristics();
+        if (revocationHeuristics != null) {
+            revocationHeuristics.totalRevocations++;
+        }
+    }
+
+    /**
+     * Records that a thread took the bias of an object whose previous bias belonged to an earlier epoch.
+     */
+    static void recordRebias() {
+        rebiases++;
+    }
+
+    /**
+     * Records the bulk rebias of the instances of a class. Must be called at a safepoint.
+     */
+    void recordBulkRebias() {
+        bulkRebiases++;
+        totalBulkRebiases++;
+    }
+
+    /**
+     * Records that biased locking was disabled for the instances of a class. Must be called at a safepoint.
+     */
+    void recordBulkRevocation() {
+        bulkRevocations++;
+        bulkRevoked = true;
+    }
+
+    /**
+     * Records a safepoint caused by biased locking. Must be called by the VM operation thread.
+     */
+    static void recordSafepoint() {
+        safepoints++;
+    }
+
+    public static int revocations() {
+        return revocations;
+    }
+
+    public static int rebiases() {
+        return rebiases;
+    }
+
+    public static int bulkRebiases() {
+        return bulkRebiases;
+    }
+
+    public static int bulkRevocations() {
+        return bulkRevocations;
+    }
+
+    public static int safepoints() {
+        return safepoints;
+    }
+
+    static void printStatistics() {
+        final boolean lockDisabledSafepoints = Log.lock();
+        Log.println("Biased locking statistics:");
+        Log.print("  revocations: ");
+        Log.println(revocations);
+        Log.print("  rebiases: ");
+        Log.println(rebiases);
+        Log.print("  bulk rebiases: ");
+        Log.println(bulkRebiases);
+        Log.print("  bulk revocations: ");
+        Log.println(bulkRevocations);
+        Log.print("  safepoints: ");
+        Log.println(safepoints);
+        for (BiasedLockRevocationHeuristics h = (BiasedLockRevocationHeuristics) first.get(); h != null; h = h.next) {
+            Log.print("  ");
+            Log.print(h.classActor.name());
+            Log.print(": revocations=");
+            Log.print(h.totalRevocations);
+            Log.print(", bulk rebiases=");
+            Log.print(h.totalBulkRebiases);
+            Log.println(h.bulkRevoked ? ", bulk revoked" : "");
+        }
+        Log.unlock(lockDisabledSafepoints);
+    }
 }
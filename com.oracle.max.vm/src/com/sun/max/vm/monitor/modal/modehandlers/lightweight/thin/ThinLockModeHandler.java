@@ -29,6 +29,7 @@ import com.sun.max.vm.monitor.modal.modehandlers.*;
 import com.sun.max.vm.monitor.modal.modehandlers.AbstractModeHandler.ModeDelegate.*;
 import com.sun.max.vm.monitor.modal.modehandlers.inflated.*;
 import com.sun.max.vm.monitor.modal.modehandlers.lightweight.biased.*;
+import com.sun.max.vm.monitor.modal.sync.*;
 import com.sun.max.vm.object.*;
 import com.sun.max.vm.thread.*;
 
@@ -41,6 +42,19 @@ public abstract class ThinLockModeHandler extends AbstractModeHandler {
 
     private static final int THIN_LOCK_RETRIES = 20;
 
+    /**
+     * Spin counters of the thin locks of this mode handler.
+     */
+    private final AdaptiveSpin spin = new AdaptiveSpin("thin locks");
+
+    /**
+     * The number of pause iterations a thread spins for on a thin lock held by another thread before inflating it.
+     * A thin lock has no room to record a duration of its own, so this duration is learned from all the thin locks
+     * handled by this mode handler. It is 0 until the {@linkplain AdaptiveSpin#duration(int) initial duration} is
+     * first used, as this mode handler is created while the boot image is built.
+     */
+    private int spinDuration;
+
     /**
      * Returns a ThinLockModeHandler with the required interface for fast-path entry from a MonitorScheme.
      */
@@ -114,6 +128,7 @@ public abstract class ThinLockModeHandler extends AbstractModeHandler {
     protected void slowPathMonitorEnter(Object object, ModalLockword64 lockword, int lockwordThreadID) {
         ModalLockword64 newLockword = lockword;
         int retries = THIN_LOCK_RETRIES;
+        int spun = 0;
         while (true) {
             if (ThinLockword64.isThinLockword(newLockword)) {
                 final ThinLockword64 thinLockword = ThinLockword64.from(newLockword);
@@ -135,14 +150,30 @@ public abstract class ThinLockModeHandler extends AbstractModeHandler {
                     final ModalLockword64 answer = ModalLockword64.from(ObjectAccess.compareAndSwapMisc(object, asUnlocked, asLocked));
                     if (answer.equals(asUnlocked)) {
                         // The current thread got the lock
+                        if (spun > 0) {
+                            spinDuration = spin.succeeded(AdaptiveSpin.duration(spinDuration), spun);
+                        }
                         return;
                     }
                     // This could be a hashcode, inflation or another thread got the lock.
                     // Lets try again.
                     newLockword = answer;
                     if (--retries > 0) {
+                        if (AdaptiveSpin.MonitorSpinLimit > 0) {
+                            // Spin with backoff while another thread holds the lock, rather than inflating straight away
+                            final int budget = AdaptiveSpin.duration(spinDuration);
+                            int delay = 1;
+                            while (spun < budget && isLockedThinLockword(newLockword)) {
+                                spun += delay;
+                                delay = AdaptiveSpin.backoff(delay);
+                                newLockword = ModalLockword64.from(ObjectAccess.readMisc(object));
+                            }
+                        }
                         continue;
                     }
+                    if (spun > 0) {
+                        spinDuration = spin.failed(AdaptiveSpin.duration(spinDuration));
+                    }
                 }
                 // Count overflow or too much contention - inflate
                 newLockword = inflate(object, thinLockword);
@@ -158,6 +189,15 @@ public abstract class ThinLockModeHandler extends AbstractModeHandler {
         }
     }
 
+    @INLINE
+    private static boolean isLockedThinLockword(ModalLockword64 lockword) {
+        if (!ThinLockword64.isThinLockword(lockword)) {
+            return false;
+        }
+        final ThinLockword64 thinLockword = ThinLockword64.from(lockword);
+        return !thinLockword.equals(thinLockword.asUnlocked());
+    }
+
     @SNIPPET_SLOWPATH
     protected void slowPathMonitorExit(Object object, ModalLockword64 lockword, int lockwordThreadID) {
         if (ThinLockword64.isThinLockword(lockword)) {
@@ -68,6 +68,13 @@ public abstract class ModalMonitorScheme extends AbstractMonitorScheme {
             handler = handler.delegate();
         }
         JavaMonitorManager.initialize(phase);
+        if (phase == MaxineVM.Phase.TERMINATING && AdaptiveSpin.PrintMonitorSpinStatistics) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Monitor spin statistics for ");
+            Log.println(getClass().getSimpleName());
+            AdaptiveSpin.printStatistics();
+            Log.unlock(lockDisabledSafepoints);
+        }
     }
 
     /**
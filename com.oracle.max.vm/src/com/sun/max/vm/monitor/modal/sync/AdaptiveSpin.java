@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.monitor.modal.sync;
+
+import java.util.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+
+/**
+ * Support for spinning with exponential backoff on a contended lock before falling back to a more expensive way
+ * of waiting for it, such as inflating a thin lock or blocking on a native mutex.
+ *
+ * The time to spin is learned by the lock implementation and kept in a {@code spinDuration} value, expressed in
+ * {@linkplain Intrinsics#pause() pause} iterations. A successful spin moves the duration towards twice the time
+ * it took to acquire the lock, which approximates the hold times recently seen on that lock. A failed spin halves
+ * the duration. The duration always stays between {@link #MonitorSpinMinimum} and {@link #MonitorSpinLimit} so that
+ * a lock that suffered from long hold times for a while still gets a chance to be acquired by spinning again.
+ * A lock starts with a duration of 0, which {@link #duration(int)} turns into the {@linkplain #initialDuration()
+ * initial duration} on first use. Locks created while the boot image is built therefore honor the spin options
+ * given at startup.
+ *
+ * Each instance of this class counts the successful and failed spins of one kind of lock of a monitor scheme.
+ * The counters are not updated atomically and are only meant to give an approximate picture of how effective
+ * spinning is, as printed by {@code -XX:+PrintMonitorSpinStatistics}.
+ */
+public final class AdaptiveSpin {
+
+    public static int MonitorSpinLimit = 4096;
+    public static int MonitorSpinMinimum = 64;
+    public static boolean PrintMonitorSpinStatistics;
+    static {
+        VMOptions.addFieldOption("-XX:", "MonitorSpinLimit", AdaptiveSpin.class,
+            "Maximum number of pause iterations a thread spins on a contended monitor before inflating or blocking (0 disables spinning).", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "MonitorSpinMinimum", AdaptiveSpin.class,
+            "Minimum number of pause iterations a thread spins on a contended monitor.", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "PrintMonitorSpinStatistics", AdaptiveSpin.class,
+            "Print the number of successful and failed spins on contended monitors when the VM terminates.", MaxineVM.Phase.PRISTINE);
+    }
+
+    /**
+     * The upper bound on the number of pause iterations between two consecutive polls of a lock.
+     */
+    private static final int MAX_BACKOFF = 64;
+
+    private static final List<AdaptiveSpin> all = new ArrayList<AdaptiveSpin>();
+
+    private final String name;
+    private int successes;
+    private int failures;
+
+    /**
+     * Creates the spin counters for a kind of lock.
+     *
+     * @param name the name printed with the counters
+     */
+    public AdaptiveSpin(String name) {
+        this.name = name;
+        if (MaxineVM.isHosted()) {
+            all.add(this);
+        }
+    }
+
+    /**
+     * Gets the initial spin duration of a lock.
+     */
+    @INLINE
+    public static int initialDuration() {
+        return clamp(MonitorSpinMinimum);
+    }
+
+    /**
+     * Gets the spin duration to use for a lock.
+     *
+     * @param spinDuration the spin duration of the lock, 0 if it has not been used yet
+     */
+    @INLINE
+    public static int duration(int spinDuration) {
+        return spinDuration == 0 ? initialDuration() : spinDuration;
+    }
+
+    /**
+     * Spins for a number of iterations given by {@code delay}, and returns the delay to use for the next
+     * backoff.
+     *
+     * @param delay the number of pause iterations to spin for
+     * @return the next, doubled, delay
+     */
+    @INLINE
+    public static int backoff(int delay) {
+        for (int i = 0; i < delay; i++) {
+            Intrinsics.pause();
+        }
+        return delay < MAX_BACKOFF ? delay << 1 : MAX_BACKOFF;
+    }
+
+    /**
+     * Records that spinning acquired the lock.
+     *
+     * @param spinDuration the current spin duration of the lock
+     * @param spun the number of pause iterations spun before the lock was acquired
+     * @return the new spin duration of the lock
+     */
+    public int succeeded(int spinDuration, int spun) {
+        successes++;
+        return clamp((spinDuration + 2 * spun) >> 1);
+    }
+
+    /**
+     * Records that the lock could not be acquired by spinning.
+     *
+     * @param spinDuration the current spin duration of the lock
+     * @return the new spin duration of the lock
+     */
+    public int failed(int spinDuration) {
+        failures++;
+        return clamp(spinDuration >> 1);
+    }
+
+    private static int clamp(int spinDuration) {
+        if (spinDuration > MonitorSpinLimit) {
+            return MonitorSpinLimit;
+        }
+        if (spinDuration < MonitorSpinMinimum) {
+            return Math.min(MonitorSpinMinimum, MonitorSpinLimit);
+        }
+        return spinDuration;
+    }
+
+    public int successes() {
+        return successes;
+    }
+
+    public int failures() {
+        return failures;
+    }
+
+    /**
+     * Prints the counters of all the kinds of locks of the monitor scheme.
+     */
+    public static void printStatistics() {
+        for (AdaptiveSpin spin : all) {
+            Log.print("  ");
+            Log.print(spin.name);
+            Log.print(": spin successes=");
+            Log.print(spin.successes);
+            Log.print(", spin failures=");
+            Log.println(spin.failures);
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.monitor.*;
+import com.sun.max.vm.monitor.modal.modehandlers.inflated.*;
 import com.sun.max.vm.monitor.modal.sync.JavaMonitorManager.ManagedMonitor.*;
 import com.sun.max.vm.monitor.modal.sync.nat.*;
 import com.sun.max.vm.object.*;
@@ -113,6 +114,23 @@ public class JavaMonitorManager {
 
     private static boolean inGlobalSafepoint = false;
 
+    /**
+     * The list of monitors {@linkplain #deflateIdleMonitors() deflated} by the {@link MonitorDeflater} that are
+     * waiting to be put back on the unbound list. Only accessed by the monitor deflater thread.
+     */
+    private static ManagedMonitor deflatedList;
+
+    /**
+     * The number of monitors on the {@link #deflatedList}. Updated under {@link #LOCK} so that the monitor counts
+     * read together with the unbound monitor count are consistent.
+     */
+    private static int numberOfDeflatedMonitors;
+
+    /**
+     * The total number of monitors deflated by the {@link MonitorDeflater}.
+     */
+    private static long asyncDeflationCount;
+
     /**
      * Lockword rewriting for objects in the process of being unbound is delegated to an UnboundMiscWordWriter.
      * This allows unbinding to transition a lock from 'inflated' to any other mode.
@@ -121,6 +139,11 @@ public class JavaMonitorManager {
     public interface UnboundMiscWordWriter {
         void writeUnboundMiscWord(Object object, Word preBindingMiscWord);
         void writeUnboundHashWord(Object object, Word preBindingMiscWord);
+
+        /**
+         * Gets the misc word {@link #writeUnboundMiscWord(Object, Word)} writes for a given pre-binding misc word.
+         */
+        Word unboundMiscWord(Word preBindingMiscWord);
     }
 
     @CONSTANT_WHEN_NOT_ZERO
@@ -437,6 +460,154 @@ public class JavaMonitorManager {
         FatalError.check(verifyBindableMonitors() == 0, "corrupted bindableMonitors array");
     }
 
+    /**
+     * Gets the number of monitors currently bound to an object, excluding sticky monitors.
+     */
+    public static int boundMonitorCount() {
+        synchronized (LOCK) {
+            return numberOfBindableMonitors - numberOfUnboundMonitors - numberOfDeflatedMonitors;
+        }
+    }
+
+    /**
+     * Gets the number of monitors available for binding.
+     */
+    public static int unboundMonitorCount() {
+        synchronized (LOCK) {
+            return numberOfUnboundMonitors;
+        }
+    }
+
+    /**
+     * Gets the total number of monitors deflated by the {@link MonitorDeflater}.
+     */
+    public static long asyncDeflationCount() {
+        return asyncDeflationCount;
+    }
+
+    /**
+     * Collects the monitors protected by all threads.
+     */
+    private static final class ProtectedMonitorCollector implements Pointer.Procedure {
+        JavaMonitor[] monitors = new JavaMonitor[16];
+        int count;
+
+        public void run(Pointer tla) {
+            final JavaMonitor monitor = VmThread.fromTLA(tla).protectedMonitor;
+            if (monitor != null) {
+                if (count == monitors.length) {
+                    monitors = Arrays.copyOf(monitors, count * 2);
+                }
+                monitors[count++] = monitor;
+            }
+        }
+
+        boolean contains(JavaMonitor monitor) {
+            for (int i = 0; i < count; i++) {
+                if (monitors[i] == monitor) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final ProtectedMonitorCollector protectedMonitorCollector = new ProtectedMonitorCollector();
+
+    /**
+     * Deflates the monitors that are bound to an object but not owned, waited on or protected by any thread,
+     * without stopping the mutator threads. Must only be called by the {@link MonitorDeflater} thread.
+     * <p>
+     * The deflater acquires an idle monitor so that no other thread can own it, makes sure the displaced misc word holds
+     * the object's hash code so that it no longer changes, then CASes the object's lock word from the bound monitor to the
+     * unbound misc word. A thread that read the bound lock word before this CAS may still be about to use the monitor.
+     * Such a thread {@linkplain #protectBinding(JavaMonitor) protects} the monitor and then re-reads the lock word, and it
+     * checks the lock word again once it has entered the monitor, so it eventually gives up on the deflated monitor. A
+     * deflated monitor is therefore only put back on the unbound list, on a later call, once no thread protects it anymore.
+     *
+     * @return the number of monitors deflated
+     */
+    static int deflateIdleMonitors() {
+        recycleDeflatedMonitors();
+        final int n = numberOfBindableMonitors;
+        final ManagedMonitor[] monitors = bindableMonitors;
+        int deflated = 0;
+        for (int i = 0; i < n && i < monitors.length; i++) {
+            final ManagedMonitor monitor = monitors[i];
+            if (monitor != null && monitor.isHardBound() && deflate(monitor)) {
+                deflated++;
+            }
+        }
+        protectBinding(null);
+        asyncDeflationCount += deflated;
+        return deflated;
+    }
+
+    private static boolean deflate(ManagedMonitor monitor) {
+        final Object object = monitor.boundObject();
+        if (object == null) {
+            return false;
+        }
+        protectBinding(monitor);
+        if (!monitor.acquireIfIdle()) {
+            return false;
+        }
+        boolean deflated = false;
+        final Word boundLockword = InflatedMonitorLockword64.boundFromMonitor(monitor);
+        if (ObjectAccess.readMisc(object).equals(boundLockword)) {
+            // Fix the hash code in the displaced misc word so that the unbound misc word computed below stays valid
+            System.identityHashCode(object);
+            final Word unboundLockword = unboundMiscWordWriter.unboundMiscWord(monitor.displacedMisc());
+            deflated = ObjectAccess.compareAndSwapMisc(object, boundLockword, unboundLockword).equals(boundLockword);
+        }
+        monitor.releaseAfterDeflation(deflated);
+        if (deflated) {
+            if (Monitor.TraceMonitors) {
+                final boolean lockDisabledSafepoints = Log.lock();
+                Log.print("Deflated monitor: ");
+                monitor.log();
+                Log.println();
+                Log.unlock(lockDisabledSafepoints);
+            }
+            monitor.setNext(deflatedList);
+            deflatedList = monitor;
+            synchronized (LOCK) {
+                numberOfDeflatedMonitors++;
+            }
+        }
+        return deflated;
+    }
+
+    /**
+     * Puts the deflated monitors that no thread can still use back on the unbound list.
+     */
+    private static void recycleDeflatedMonitors() {
+        if (deflatedList == null) {
+            return;
+        }
+        protectedMonitorCollector.count = 0;
+        synchronized (VmThreadMap.THREAD_LOCK) {
+            VmThreadMap.ACTIVE.forAllThreadLocals(null, protectedMonitorCollector);
+        }
+        ManagedMonitor monitor = deflatedList;
+        ManagedMonitor stillProtected = null;
+        while (monitor != null) {
+            final ManagedMonitor next = monitor.next();
+            if (protectedMonitorCollector.contains(monitor) || !monitor.isOwnedBy(null)) {
+                monitor.setNext(stillProtected);
+                stillProtected = monitor;
+            } else {
+                monitor.setNext(null);
+                synchronized (LOCK) {
+                    numberOfDeflatedMonitors--;
+                    unbindMonitor(monitor);
+                }
+            }
+            monitor = next;
+        }
+        deflatedList = stillProtected;
+    }
+
     /**
      * Notifies this JavaMonitorManager that the current thread is in-flight to
      * perform an operation on the given monitor. The monitor will
@@ -661,6 +832,23 @@ public class JavaMonitorManager {
          */
         void setNext(ManagedMonitor monitor);
 
+        /**
+         * Acquires this monitor on behalf of the {@link MonitorDeflater} if it is idle, i.e. it is not owned and
+         * no thread waits on it or has been notified. Never blocks: a monitor another thread is about to enter is
+         * simply not acquired.
+         *
+         * @return true if the monitor was acquired; false if it is not idle or could not be acquired without blocking
+         */
+        boolean acquireIfIdle();
+
+        /**
+         * Releases this monitor after it was {@linkplain #acquireIfIdle() acquired} by the {@link MonitorDeflater}.
+         * The binding of a deflated monitor is removed so that it is ignored until it is put back on the unbound list.
+         *
+         * @param deflated specifies if the monitor was deflated
+         */
+        void releaseAfterDeflation(boolean deflated);
+
         void log();
     }
 
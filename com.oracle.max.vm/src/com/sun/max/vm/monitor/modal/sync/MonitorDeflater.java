@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.monitor.modal.sync;
+
+import static com.sun.max.vm.VMConfiguration.*;
+
+import com.sun.max.platform.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.monitor.*;
+import com.sun.max.vm.monitor.modal.schemes.*;
+
+/**
+ * Deflates idle inflated monitors without waiting for a garbage collection.
+ * <p>
+ * {@link JavaMonitorManager} otherwise only deflates monitors while the VM is stopped for a GC, so that an application
+ * that synchronizes a lot but allocates little keeps on binding new monitors. With {@code -XX:+AsyncMonitorDeflation},
+ * a daemon thread {@linkplain JavaMonitorManager#deflateIdleMonitors() deflates} every
+ * {@code -XX:MonitorDeflationInterval} milliseconds the monitors that are not in use, concurrently with the mutator threads.
+ * This is only supported for modal monitor schemes on 64-bit platforms, where the binding of a monitor is held by the misc word alone.
+ */
+public final class MonitorDeflater extends Thread {
+    static boolean AsyncMonitorDeflation = false;
+
+    static int MonitorDeflationInterval = 1000;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "AsyncMonitorDeflation", MonitorDeflater.class,
+            "Deflate idle monitors from a background thread rather than only during garbage collections", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "MonitorDeflationInterval", MonitorDeflater.class,
+            "Number of milliseconds between two deflations of idle monitors by the monitor deflater thread", Phase.PRISTINE);
+    }
+
+    /**
+     * Specifies if the monitor deflater thread was started, in which case the threads using an inflated monitor must
+     * check that it was not deflated concurrently.
+     */
+    private static boolean active;
+
+    /**
+     * Determines if monitors can be deflated concurrently with the current thread.
+     */
+    public static boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Starts the monitor deflater thread if {@code -XX:+AsyncMonitorDeflation} is specified.
+     */
+    public static void startIfEnabled() {
+        if (AsyncMonitorDeflation) {
+            if (MonitorDeflationInterval <= 0) {
+                Log.println("-XX:MonitorDeflationInterval must be positive");
+                MaxineVM.native_exit(1);
+            }
+            if (!(vmConfig().monitorScheme() instanceof ModalMonitorScheme) || !Platform.target().arch.is64bit()) {
+                Log.println("-XX:+AsyncMonitorDeflation is only supported by modal monitor schemes on 64-bit platforms");
+                return;
+            }
+            active = true;
+            new MonitorDeflater().start();
+        }
+    }
+
+    private MonitorDeflater() {
+        super("MonitorDeflater");
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(MonitorDeflationInterval);
+            } catch (InterruptedException e) {
+            }
+            final int deflated = JavaMonitorManager.deflateIdleMonitors();
+            if (Monitor.TraceMonitors && deflated > 0) {
+                final int bound = JavaMonitorManager.boundMonitorCount();
+                final int unbound = JavaMonitorManager.unboundMonitorCount();
+                final boolean lockDisabledSafepoints = Log.lock();
+                Log.print("Deflated ");
+                Log.print(deflated);
+                Log.print(" idle monitors, bound monitors: ");
+                Log.print(bound);
+                Log.print(", unbound monitors: ");
+                Log.println(unbound);
+                Log.unlock(lockDisabledSafepoints);
+            }
+        }
+    }
+}
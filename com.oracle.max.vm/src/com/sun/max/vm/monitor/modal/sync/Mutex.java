@@ -61,6 +61,13 @@ public abstract class Mutex {
       */
     public abstract boolean unlock();
 
+    /**
+     * Causes the current thread to lock the mutex if no other thread holds it, without blocking.
+     *
+     * @return true if the current thread now holds the mutex; false otherwise
+     */
+    public abstract boolean tryLock();
+
     /**
      * Return an id suitable for logging purposes.
      */
@@ -72,6 +72,17 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
 
     private int notifiedThreads;
 
+    /**
+     * The number of pause iterations to spin for when entering this monitor while it is owned by another thread,
+     * before blocking on {@link #mutex}, or 0 for the {@linkplain AdaptiveSpin#duration(int) initial duration}.
+     */
+    private int spinDuration;
+
+    /**
+     * Spin counters of all the monitors of this class.
+     */
+    private static final AdaptiveSpin SPIN = new AdaptiveSpin("inflated monitors");
+
     public StandardJavaMonitor() {
         mutex = MutexFactory.create();
     }
@@ -95,6 +106,9 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
             traceEndMonitorEnter(currentThread);
             return;
         }
+        if (ownerThread != null && AdaptiveSpin.MonitorSpinLimit > 0) {
+            spinWhileOwned();
+        }
         currentThread.setState(Thread.State.BLOCKED);
         mutex.lock();
         currentThread.setState(Thread.State.RUNNABLE);
@@ -104,6 +118,25 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
         traceEndMonitorEnter(currentThread);
     }
 
+    /**
+     * Spins until this monitor is released by its owner or the {@linkplain #spinDuration spin duration} expires,
+     * so that short critical sections do not cause the current thread to block on the native mutex.
+     */
+    private void spinWhileOwned() {
+        final int budget = AdaptiveSpin.duration(spinDuration);
+        int spun = 0;
+        int delay = 1;
+        while (spun < budget) {
+            spun += delay;
+            delay = AdaptiveSpin.backoff(delay);
+            if (ownerThread == null) {
+                spinDuration = SPIN.succeeded(budget, spun);
+                return;
+            }
+        }
+        spinDuration = SPIN.failed(budget);
+    }
+
     @Override
     public void monitorExit() {
         final VmThread currentThread = VmThread.current();
@@ -114,7 +147,8 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
         if (--recursionCount == 0) {
             ownerThread = null;
             if (waitingThreads == null && notifiedThreads == 0) {
-                setBindingProtection(BindingProtection.UNPROTECTED);
+                // A monitor entered after it was deflated by the MonitorDeflater is no longer bound
+                setBindingProtection(isBound() ? BindingProtection.UNPROTECTED : BindingProtection.PRE_ACQUIRE);
             } else {
                 // If there are waiting threads that have not yet been woken
                 // (or threads that have been notified but not yet resumed)
@@ -241,6 +275,37 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
         }
     }
 
+    public boolean acquireIfIdle() {
+        if (!isIdle() || !mutex.tryLock()) {
+            return false;
+        }
+        // A waiting thread releases the mutex, so the monitor must be checked again now that the mutex is held
+        if (!isIdle()) {
+            mutex.unlock();
+            return false;
+        }
+        ownerThread = VmThread.current();
+        setBindingProtection(BindingProtection.PROTECTED);
+        recursionCount = 1;
+        return true;
+    }
+
+    private boolean isIdle() {
+        return ownerThread == null && waitingThreads == null && notifiedThreads == 0;
+    }
+
+    public void releaseAfterDeflation(boolean deflated) {
+        if (!deflated) {
+            monitorExit();
+            return;
+        }
+        ownerThread = null;
+        recursionCount = 0;
+        setBoundObject(null);
+        setBindingProtection(BindingProtection.PRE_ACQUIRE);
+        mutex.unlock();
+    }
+
     @Override
     public void monitorPrivateAcquire(VmThread owner, int lockQty) {
         FatalError.unexpected("Cannot perform a private monitor acquire from a " + this.getClass().getName());
@@ -251,6 +316,12 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
         FatalError.unexpected("Cannot perform a private monitor release from a " + this.getClass().getName());
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        spinDuration = 0;
+    }
+
     @Override
     public void allocate() {
         mutex.init();
@@ -101,6 +101,11 @@ public final class NativeMutex extends Mutex {
         return OSMonitor.nativeMutexUnlock(nativeRef.mutex);
     }
 
+    @Override
+    public boolean tryLock() {
+        return OSMonitor.nativeMutexTryLock(nativeRef.mutex);
+    }
+
     /**
      * Returns a pointer to this {@code NativeMutex}'s native data structure.
      */
@@ -47,12 +47,22 @@ public class MethodInstrumentation {
 
     private static boolean enabled;
 
+    /**
+     * The counter value at or below which a backward branch triggers {@linkplain CompilationBroker#backedgeCounterOverflow
+     * on-stack replacement}. The default effectively disables it.
+     */
+    private static int osrCounterLimit = Integer.MIN_VALUE;
+
     public static void enable(int initialEntryCount) {
         enabled = true;
         MethodInstrumentation.initialEntryBackedgeCount = initialEntryCount;
         MethodInstrumentation.protectionThreshold = (int) (1 - PROTECTION_PERCENTAGE) * initialEntryCount;
     }
 
+    public static void enableOSR(int backedgeThreshold) {
+        MethodInstrumentation.osrCounterLimit = -backedgeThreshold;
+    }
+
     public static MethodProfile.Builder createMethodProfile(ClassMethodActor classMethodActor) {
         if (enabled) {
             return new MethodProfile.Builder();
@@ -88,8 +98,10 @@ public class MethodInstrumentation {
     }
 
     @INLINE
-    public static void recordBackwardBranch(MethodProfile mpo) {
-        mpo.entryBackedgeCount--;
+    public static void recordBackwardBranch(MethodProfile mpo, int targetBCI) {
+        if (--mpo.entryBackedgeCount <= osrCounterLimit) {
+            CompilationBroker.backedgeCounterOverflow(mpo, targetBCI);
+        }
     }
 
     @INLINE
@@ -132,6 +144,27 @@ public class MethodInstrumentation {
         incrementProfileCounterAtIndex(mpo, index + entries * 2 + 1);
     }
 
+    /**
+     * Entry probe of {@linkplain ProfilingProbes profiled optimized code}.
+     */
+    public static void profileEntry(MethodProfile mpo, Object receiver) {
+        recordEntrypoint(mpo, receiver);
+    }
+
+    /**
+     * Backward branch probe of {@linkplain ProfilingProbes profiled optimized code}.
+     */
+    public static void profileBackwardBranch(MethodProfile mpo, int targetBCI) {
+        recordBackwardBranch(mpo, targetBCI);
+    }
+
+    /**
+     * Receiver probe of {@linkplain ProfilingProbes profiled optimized code}.
+     */
+    public static void profileReceiver(MethodProfile mpo, Object receiver, int mpoIndex) {
+        recordType(mpo, receiver, mpoIndex, DEFAULT_RECEIVER_METHOD_PROFILE_ENTRIES);
+    }
+
     public static Hub computeMostFrequentHub(MethodProfile mpo, int bci, int threshold, float ratio) {
         if (mpo != null) {
             Integer[] typeProfile = mpo.getTypeProfile(bci);
@@ -25,6 +25,7 @@ package com.sun.max.vm.profile;
 
 import java.util.*;
 
+import com.sun.cri.ri.*;
 import com.sun.max.annotate.*;
 import com.sun.max.program.*;
 import com.sun.max.vm.actor.holder.ClassIDManager;
@@ -72,6 +73,12 @@ public class MethodProfile {
     public static final int DEOPTIMIZATION_REASONS_NUM           = 14;
     public static final int UNDEFINED_DEOPTIMIZATION_REASON_ID   = -1;
 
+    /**
+     * The reason recorded when optimized code is invalidated at an uncommon trap, e.g. because a receiver type it
+     * speculated on turned out to be wrong. Shares the identifier of Graal's {@code TypeCheckedInliningViolated}.
+     */
+    public static final int UNCOMMON_TRAP_DEOPTIMIZATION_REASON_ID = 6;
+
     public static final int UNDEFINED_TYPE_ID                    = ClassIDManager.NULL_CLASS_ID;
     public static final int UNDEFINED_METHOD_ID                  = -1;
 
@@ -109,6 +116,7 @@ public class MethodProfile {
      * When {@code true} re-compilation is disabled.
      * This is used by JVMTI to prevent methods with JVMTI instrumentation from
      * being recompiled with the optimizing compiler (and so removing the instrumentation).
+     * It is also set when a background recompilation of the method fails.
      */
     public boolean compilationDisabled;
 
@@ -309,6 +317,51 @@ public class MethodProfile {
         return typeProfile;
     }
 
+    /**
+     * Gets the type profile of the specified bytecode index in the form consumed by the optimizing compiler.
+     * Types that are no longer known to the {@link ClassIDManager} are accounted for in the
+     * {@linkplain RiTypeProfile#morphism morphism} but are not reported.
+     *
+     * @param bci the bytecode index for which to get the information
+     * @return the receiver types seen at {@code bci} and their estimated probabilities;
+     * {@code null} if this profile info does not have such an entry or no type has been seen yet
+     */
+    public RiTypeProfile typeProfile(int bci) {
+        Integer[] typeProfile = getTypeProfile(bci);
+        if (typeProfile == null) {
+            return null;
+        }
+        int pairs = typeProfile.length / 2;
+        int totalCount = 0;
+        int knownTypes = 0;
+        for (int i = 0; i < pairs; i++) {
+            totalCount += typeProfile[i * 2 + 1];
+            if (typeProfile[i * 2] != UNDEFINED_TYPE_ID && ClassIDManager.toClassActor(typeProfile[i * 2]) != null) {
+                knownTypes++;
+            }
+        }
+        if (totalCount <= 0) {
+            return null;
+        }
+        RiTypeProfile result = new RiTypeProfile();
+        result.count = totalCount;
+        result.morphism = pairs;
+        result.types = new RiResolvedType[knownTypes];
+        result.probabilities = new float[knownTypes];
+        int j = 0;
+        for (int i = 0; i < pairs && j < knownTypes; i++) {
+            if (typeProfile[i * 2] != UNDEFINED_TYPE_ID) {
+                RiResolvedType type = ClassIDManager.toClassActor(typeProfile[i * 2]);
+                if (type != null) {
+                    result.types[j] = type;
+                    result.probabilities[j] = typeProfile[i * 2 + 1] / (float) totalCount;
+                    j++;
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Gets the receiver method profile of the specified bytecode index, if it is available.
      * The data is formatted as an array of integers, in pairs. The first integer in
@@ -568,6 +621,67 @@ public class MethodProfile {
         return infoAt(index) >>> 16;
     }
 
+    /**
+     * Gets the index of the receiver type profile of a call site, for use with
+     * {@link MethodInstrumentation#recordType(MethodProfile, Object, int, int)}.
+     *
+     * @param bci the bytecode index of the call
+     * @return {@link #UNDEFINED_INDEX} if this profile has no type profile at {@code bci}
+     */
+    public int typeProfileIndex(int bci) {
+        return search(bci, TYPE_ID);
+    }
+
+    /**
+     * Determines if a slot of the {@linkplain #rawData() raw data} holds the {@linkplain ClassIDManager ID} of a
+     * receiver type. Such an ID only denotes the same type within the run that recorded it.
+     */
+    boolean isTypeIdSlot(int index) {
+        return typeAt(index) == TYPE_ID;
+    }
+
+    /**
+     * Determines if a slot of the {@linkplain #rawData() raw data} holds the approximate entrypoint of a receiver
+     * method. Such an entrypoint only denotes the same method within the run that recorded it.
+     */
+    boolean isMethodIdSlot(int index) {
+        return typeAt(index) == METHOD_ID;
+    }
+
+    /**
+     * Forgets the receiver type or method recorded in a slot of the {@linkplain #rawData() raw data}. Its count is
+     * added to the count of the receivers that have no slot of their own, so the morphism of the call site is kept.
+     *
+     * @param index a slot for which {@link #isTypeIdSlot(int)} or {@link #isMethodIdSlot(int)} holds
+     */
+    void forgetReceiver(int index) {
+        final boolean isType = isTypeIdSlot(index);
+        final byte endMarker = isType ? TYPE_NULL_SEEN_COUNT : METHOD_UNUSED_COUNT;
+        int end = index;
+        while (typeAt(end) != endMarker) {
+            end += 2;
+        }
+        data[end + 1] += data[index + 1];
+        data[index] = isType ? UNDEFINED_TYPE_ID : UNDEFINED_METHOD_ID;
+        data[index + 1] = 0;
+    }
+
+    /**
+     * Creates a profile for another compiled version of the method that updates the same counters as this profile,
+     * but has a separate {@linkplain #entryBackedgeCount invocation counter}. The {@link #method} of the new profile must
+     * be set by the compiler of that version.
+     *
+     * @param initialEntryBackedgeCount the initial value of the invocation counter of the new profile
+     */
+    public MethodProfile derive(int initialEntryBackedgeCount) {
+        MethodProfile mpo = new MethodProfile();
+        mpo.data = data;
+        mpo.info = info;
+        mpo.deoptimizationCounts = deoptimizationCounts;
+        mpo.entryBackedgeCount = initialEntryBackedgeCount;
+        return mpo;
+    }
+
     public boolean protectedEntryCount() {
         return entryBackedgeCount <= MethodInstrumentation.protectionThreshold;
     }
@@ -667,6 +781,7 @@ public class MethodProfile {
                 mpo.data = data;
             }
             mpo.deoptimizationCounts = new int [DEOPTIMIZATION_REASONS_NUM];
+            ProfileCache.seed(mpo);
             return mpo;
         }
 
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.profile;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * A cache of the profiles of the methods that were recompiled with the optimizing compiler, persisted in a file across
+ * VM runs. At shutdown the {@linkplain MethodProfile#rawData() profile data} of these methods is written to the file
+ * given by {@code -XX:ProfileCacheFile}. In the next run, the profile of a baseline method found in the file is
+ * pre-seeded with the saved data and its counter is set to overflow on the method's first invocation, so the method
+ * is recompiled right away (in the background if {@linkplain com.sun.max.vm.compiler.CompilationBroker background
+ * compilation} is enabled) instead of after a full profiling period.
+ * <p>
+ * Entries are keyed by method signature and only used if the {@linkplain ClassActor#classfileHash hash} of the class
+ * file of the method's holder is unchanged.
+ * <p>
+ * Receiver types are recorded in a profile by {@linkplain ClassIDManager class ID}, which only denotes the same class
+ * within one run. The cache therefore saves the names of the receiver types, and re-resolves them against the classes
+ * loaded when a profile is seeded. A receiver type that is not loaded yet, as well as a receiver method (recorded by
+ * its entrypoint), is {@linkplain MethodProfile#forgetReceiver(int) forgotten}: its count is kept, but the optimizing
+ * compiler cannot speculate on it.
+ */
+public final class ProfileCache {
+
+    private static String ProfileCacheFile;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "ProfileCacheFile", ProfileCache.class,
+            "File in which the profiles of hot methods are saved at exit and from which they are pre-seeded at startup.");
+    }
+
+    private static final int MAGIC = 0x4D585043;
+
+    private static final int VERSION = 2;
+
+    private ProfileCache() {
+    }
+
+    /**
+     * A saved profile.
+     */
+    private static final class Entry {
+        final int classfileHash;
+        final int[] data;
+
+        /**
+         * The names of the receiver types recorded in {@link #data}, indexed by slot.
+         */
+        final String[] typeNames;
+
+        /**
+         * The profile of the current run, if the method was recompiled in this run.
+         */
+        MethodProfile profile;
+
+        /**
+         * Set once a baseline profile was seeded from this entry so that a method recompiled with the baseline
+         * compiler (e.g. after deoptimization) is not eagerly recompiled again.
+         */
+        boolean seeded;
+
+        Entry(int classfileHash, int[] data, String[] typeNames) {
+            this.classfileHash = classfileHash;
+            this.data = data;
+            this.typeNames = typeNames;
+        }
+    }
+
+    /**
+     * The saved and recorded profiles, keyed by {@link #key(ClassMethodActor)}. This is {@code null} if the cache is
+     * disabled.
+     */
+    private static HashMap<String, Entry> entries;
+
+    /**
+     * Determines if class file hashes must be computed for the classes being defined.
+     */
+    public static boolean isEnabled() {
+        return ProfileCacheFile != null;
+    }
+
+    /**
+     * Loads the cache file, if it exists, and arranges for the cache to be saved at exit. Called once the VM is
+     * running and able to access the file system.
+     */
+    public static void initialize() {
+        if (ProfileCacheFile == null) {
+            return;
+        }
+        HashMap<String, Entry> map = new HashMap<String, Entry>();
+        File file = new File(ProfileCacheFile);
+        if (file.exists()) {
+            try {
+                load(file, map);
+            } catch (IOException e) {
+                Log.println("WARNING: ignoring unreadable profile cache " + ProfileCacheFile + ": " + e);
+                map.clear();
+            }
+        }
+        synchronized (ProfileCache.class) {
+            entries = map;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread("ProfileCacheWriter") {
+            @Override
+            public void run() {
+                try {
+                    save(new File(ProfileCacheFile));
+                } catch (IOException e) {
+                    Log.println("WARNING: could not write profile cache " + ProfileCacheFile + ": " + e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the hash identifying a class file (FNV-1a).
+     */
+    public static int classfileHash(byte[] bytes, int offset, int length) {
+        int hash = 0x811C9DC5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+        // 0 denotes a class without a hash
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static String key(ClassMethodActor cma) {
+        return cma.holder().name + "." + cma.name + cma.descriptor();
+    }
+
+    /**
+     * Records that the method a profile belongs to was recompiled with the optimizing compiler, so that its
+     * profile is saved at exit.
+     */
+    public static void recordOptimized(MethodProfile mpo) {
+        if (entries == null) {
+            return;
+        }
+        ClassMethodActor cma = mpo.method.classMethodActor;
+        int hash = cma.holder().classfileHash;
+        if (hash == 0) {
+            return;
+        }
+        String key = key(cma);
+        synchronized (ProfileCache.class) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.classfileHash != hash) {
+                entry = new Entry(hash, null, null);
+                entry.seeded = true;
+                entries.put(key, entry);
+            }
+            entry.profile = mpo;
+        }
+    }
+
+    /**
+     * Pre-seeds a new baseline profile from the saved profile of its method, if there is one for the current
+     * version of the method's class.
+     */
+    static void seed(MethodProfile mpo) {
+        if (entries == null) {
+            return;
+        }
+        ClassMethodActor cma = mpo.method.classMethodActor;
+        int hash = cma.holder().classfileHash;
+        if (hash == 0) {
+            return;
+        }
+        String key = key(cma);
+        synchronized (ProfileCache.class) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.seeded || entry.classfileHash != hash) {
+                return;
+            }
+            entry.seeded = true;
+            int[] data = mpo.rawData();
+            int length = data == null ? 0 : data.length;
+            if (entry.data == null || entry.data.length != length) {
+                // the profile layout differs, e.g. a different baseline compiler configuration
+                return;
+            }
+            System.arraycopy(entry.data, 0, data, 0, length);
+            for (int i = 0; i < length; i++) {
+                if (mpo.isTypeIdSlot(i)) {
+                    ClassActor type = resolve(cma.holder(), entry.typeNames[i]);
+                    if (type != null) {
+                        data[i] = type.id;
+                    } else {
+                        mpo.forgetReceiver(i);
+                    }
+                } else if (mpo.isMethodIdSlot(i)) {
+                    mpo.forgetReceiver(i);
+                }
+            }
+        }
+        // overflow on the first invocation
+        mpo.entryBackedgeCount = 1;
+    }
+
+    /**
+     * Gets a loaded receiver type by name, as seen from the holder of the profiled method.
+     *
+     * @return {@code null} if {@code name} is {@code null} or the type is not loaded
+     */
+    private static ClassActor resolve(ClassActor holder, String name) {
+        if (name == null) {
+            return null;
+        }
+        return ClassRegistry.get(holder.classLoader, JavaTypeDescriptor.parseTypeDescriptor(name), true);
+    }
+
+    /**
+     * Gets the names of the receiver types recorded in the raw data of a profile of this run, indexed by slot.
+     */
+    private static String[] typeNames(MethodProfile mpo) {
+        int[] data = mpo.rawData();
+        String[] names = new String[data.length];
+        for (int i = 0; i < data.length; i++) {
+            if (mpo.isTypeIdSlot(i) && data[i] != MethodProfile.UNDEFINED_TYPE_ID) {
+                ClassActor type = ClassIDManager.toClassActor(data[i]);
+                if (type != null) {
+                    names[i] = type.typeDescriptor.toString();
+                }
+            }
+        }
+        return names;
+    }
+
+    private static void load(File file, HashMap<String, Entry> map) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a profile cache");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                int hash = in.readInt();
+                int[] data = new int[in.readInt()];
+                String[] typeNames = new String[data.length];
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = in.readInt();
+                }
+                int namedTypes = in.readInt();
+                for (int j = 0; j < namedTypes; j++) {
+                    int slot = in.readInt();
+                    if (slot < 0 || slot >= data.length) {
+                        throw new IOException("receiver type of an invalid slot");
+                    }
+                    typeNames[slot] = in.readUTF();
+                }
+                map.put(key, new Entry(hash, data, typeNames));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the profiles recorded in this run as well as the saved profiles of methods not recompiled in this run.
+     */
+    private static synchronized void save(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                int[] data = entry.profile != null ? entry.profile.rawData() : entry.data;
+                String[] typeNames = entry.profile != null && data != null ? typeNames(entry.profile) : entry.typeNames;
+                out.writeUTF(e.getKey());
+                out.writeInt(entry.classfileHash);
+                if (data == null) {
+                    out.writeInt(0);
+                    out.writeInt(0);
+                } else {
+                    out.writeInt(data.length);
+                    for (int value : data) {
+                        out.writeInt(value);
+                    }
+                    int namedTypes = 0;
+                    for (String name : typeNames) {
+                        if (name != null) {
+                            namedTypes++;
+                        }
+                    }
+                    out.writeInt(namedTypes);
+                    for (int i = 0; i < typeNames.length; i++) {
+                        if (typeNames[i] != null) {
+                            out.writeInt(i);
+                            out.writeUTF(typeNames[i]);
+                        }
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018, APT Group, School of Computer Science,
+ * The University of Manchester. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.profile;
+
+import com.sun.cri.ri.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * The probes that make optimized code keep updating a {@link MethodProfile}. Optimized code compiled with these probes
+ * counts invocations and backward branches in the profile's {@linkplain MethodProfile#entryBackedgeCount invocation
+ * counter}, and records receiver types in the type profiles that the baseline compiler allocated in the profile.
+ */
+public final class ProfilingProbes implements RiProfilingProbes {
+
+    private static final CriticalMethod entryProbe = new CriticalMethod(MethodInstrumentation.class, "profileEntry", null);
+    private static final CriticalMethod backwardBranchProbe = new CriticalMethod(MethodInstrumentation.class, "profileBackwardBranch", null);
+    private static final CriticalMethod receiverProbe = new CriticalMethod(MethodInstrumentation.class, "profileReceiver", null);
+
+    private final MethodProfile profile;
+
+    public ProfilingProbes(MethodProfile profile) {
+        this.profile = profile;
+    }
+
+    public MethodProfile profile() {
+        return profile;
+    }
+
+    public RiResolvedMethod entryProbe() {
+        return entryProbe.classMethodActor;
+    }
+
+    public RiResolvedMethod backwardBranchProbe() {
+        return backwardBranchProbe.classMethodActor;
+    }
+
+    public RiResolvedMethod receiverProbe() {
+        return receiverProbe.classMethodActor;
+    }
+
+    public int receiverProfileIndex(int bci) {
+        return profile.typeProfileIndex(bci);
+    }
+}
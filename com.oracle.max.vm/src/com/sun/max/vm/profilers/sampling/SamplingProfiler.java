@@ -332,12 +332,12 @@ public abstract class SamplingProfiler extends Thread {
     public abstract void run();
 
     /**
-     * Encapsulates the basic logic of handling one thread after all threads are frozen at a safepoint.
+     * Encapsulates the basic logic of handling one thread while it is frozen at a safepoint by a handshake.
      */
     protected abstract class StackTraceGatherer extends VmOperation {
 
         StackTraceGatherer(String name) {
-            super(name, null, Mode.Safepoint);
+            super(name, null, Mode.Handshake);
         }
 
         @Override
@@ -32,9 +32,11 @@ import com.sun.max.vm.actor.member.MethodActor;
 import com.sun.max.vm.actor.member.StaticMethodActor;
 import com.sun.max.vm.compiler.deopt.Deoptimization;
 import com.sun.max.vm.heap.Heap;
+import com.sun.max.vm.heap.HeapUncommitter;
 import com.sun.max.vm.hosted.CompiledPrototype;
 import com.sun.max.vm.instrument.InstrumentationManager;
 import com.sun.max.vm.jni.JniFunctions;
+import com.sun.max.vm.monitor.modal.sync.MonitorDeflater;
 import com.sun.max.vm.log.VMLog;
 import com.sun.max.vm.profilers.sampling.*;
 import com.sun.max.vm.run.RunScheme;
@@ -274,6 +276,8 @@ public class JavaRunScheme extends AbstractVMScheme implements RunScheme {
             if (Heap.ExcessiveGCFrequency != 0) {
                 new ExcessiveGCDaemon(Heap.ExcessiveGCFrequency).start();
             }
+            HeapUncommitter.startIfEnabled();
+            MonitorDeflater.startIfEnabled();
             if (Deoptimization.DeoptimizeALot != 0 && Deoptimization.UseDeopt) {
                 new DeoptimizeALot(Deoptimization.DeoptimizeALot).start();
             }
@@ -109,6 +109,14 @@ public abstract class GCOperation extends VmOperation {
         }
     }
 
+    /**
+     * GC worker threads keep running during a garbage collection to assist the VM operation thread.
+     */
+    @Override
+    protected boolean operateOnThread(VmThread thread) {
+        return !thread.isGCWorkerThread();
+    }
+
     @Override
     protected void doBeforeThawingThread(VmThread thread) {
         // Indicates that the stack reference map for the thread is once-again unprepared.
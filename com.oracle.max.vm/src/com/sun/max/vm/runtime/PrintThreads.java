@@ -42,7 +42,7 @@ public class PrintThreads extends VmOperation implements SignalHandler {
     protected boolean internalFormat;
 
     public PrintThreads(boolean internalFormat) {
-        super("PrintThreads", null, Mode.Safepoint);
+        super("PrintThreads", null, Mode.Handshake);
         this.internalFormat = internalFormat;
     }
 
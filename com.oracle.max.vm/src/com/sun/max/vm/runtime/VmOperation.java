@@ -99,6 +99,11 @@ import com.sun.max.vm.thread.*;
  * except that {@link VmOperation}s can freeze a partial set of the running threads as Maxine implements
  * per-thread safepoints (HotSpot doesn't).</li>
  * <p>
+ * An operation in {@link Mode#Handshake} mode goes further and never has more than one of its targeted threads
+ * frozen at a time: each thread is frozen, operated on by {@link #doThread} and thawed before the next one
+ * is frozen. This suits operations such as sampling or gathering stack traces that look at each
+ * thread in isolation and do not need a consistent snapshot of all threads.
+ * <p>
  *
  * Implementation note:
  * It is simplest for a mutator thread to be blocked this way. Only under this condition can the
@@ -204,10 +209,18 @@ public class VmOperation {
          * and that the thread {@linkplain VmOperation#submit() submitting} the operation is
          * not blocked until the operation completes.
          */
-        AsyncSafepoint;
+        AsyncSafepoint,
+
+        /**
+         * Denotes that an operation is performed on its targeted threads one at a time, each thread
+         * being synchronized at a safepoint only while it is operated on, and that the thread
+         * {@linkplain VmOperation#submit() submitting} the operation is blocked until the operation completes.
+         */
+        Handshake;
 
         /**
-         * Determines if this mode denotes that an operation requires its targeted threads to be synchronized at a safepoint.
+         * Determines if this mode denotes that an operation requires all its targeted threads to be synchronized at a safepoint
+         * at the same time.
          */
         public boolean requiresSafepoint() {
             return this == Safepoint || this == AsyncSafepoint;
@@ -218,7 +231,7 @@ public class VmOperation {
          * blocked until the operation completes.
          */
         public boolean isBlocking() {
-            return this == Safepoint;
+            return this == Safepoint || this == Handshake;
         }
     }
 
@@ -425,9 +438,13 @@ public class VmOperation {
 
     /**
      * Traverses over all frozen threads, applying {@link #doThread(VmThread, Pointer, Pointer, Pointer)} to each one.
+     * For a {@link Mode#Handshake} operation, each targeted thread is frozen just before and thawed just after
+     * {@code doThread} is applied to it.
      */
     protected final void doAllThreads() {
-        if (singleThread == null) {
+        if (mode == Mode.Handshake) {
+            handshakeAllThreads();
+        } else if (singleThread == null) {
             VmThreadMap.ACTIVE.forAllThreadLocals(threadPredicate, doThreadAdapter);
         } else {
             Pointer tla = singleThread.tla();
@@ -473,6 +490,18 @@ public class VmOperation {
      */
     private static boolean atSafepoint;
 
+    /**
+     * The threads targeted by a {@link Mode#Handshake} operation that remain to be operated on.
+     */
+    private VmThread[] handshakeThreads = new VmThread[16];
+
+    private int handshakeThreadCount;
+
+    /**
+     * The thread currently frozen by a {@link Mode#Handshake} operation.
+     */
+    private VmThread handshakeThread;
+
     /**
      * Creates a VM operation.
      *
@@ -536,7 +565,11 @@ public class VmOperation {
         assert VmThread.current().isVmOperationThread();
         assert singleThread == null || !singleThread.isVmOperationThread();
 
-        if (mode.requiresSafepoint()) {
+        if (mode == Mode.Handshake) {
+            tracePhase("-- Begin --");
+            run0();
+            tracePhase("-- End --");
+        } else if (mode.requiresSafepoint()) {
             Throwable error = null;
             synchronized (VmThreadMap.THREAD_LOCK) {
 
@@ -602,6 +635,61 @@ public class VmOperation {
         doIt();
     }
 
+    private final Pointer.Procedure addHandshakeThreadProcedure = new Pointer.Procedure() {
+        @Override
+        public void run(Pointer tla) {
+            addHandshakeThread(VmThread.fromTLA(tla));
+        }
+    };
+
+    private void addHandshakeThread(VmThread thread) {
+        if (handshakeThreadCount == handshakeThreads.length) {
+            handshakeThreads = Arrays.copyOf(handshakeThreads, handshakeThreadCount * 2);
+        }
+        handshakeThreads[handshakeThreadCount++] = thread;
+    }
+
+    /**
+     * Freezes, operates on and thaws each thread targeted by this {@link Mode#Handshake} operation in turn. The
+     * thread lock is released between two threads so that a thread that trapped at its safepoint can return to
+     * Java code as soon as it has been thawed.
+     */
+    private void handshakeAllThreads() {
+        synchronized (VmThreadMap.THREAD_LOCK) {
+            handshakeThreadCount = 0;
+            if (singleThread == null) {
+                VmThreadMap.ACTIVE.forAllThreadLocals(threadPredicate, addHandshakeThreadProcedure);
+            } else {
+                addHandshakeThread(singleThread);
+            }
+        }
+        final int count = handshakeThreadCount;
+        for (int i = 0; i < count; i++) {
+            final VmThread thread = handshakeThreads[i];
+            handshakeThreads[i] = null;
+            synchronized (VmThreadMap.THREAD_LOCK) {
+                if (thread.tla().isZero()) {
+                    // The thread terminated since the targeted threads were collected.
+                    continue;
+                }
+                handshakeThread = thread;
+                freezeThread(thread);
+
+                // Ensures updates to safepoint-related control variables are visible to the thread
+                // before the VM operation thread reads its state
+                MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+
+                waitForThreadFreeze(thread);
+                try {
+                    callDoThread(thread.tla());
+                } finally {
+                    thawThread(thread);
+                    handshakeThread = null;
+                }
+            }
+        }
+    }
+
     private final Pointer.Procedure freezeThreadProcedure = new Pointer.Procedure() {
         @Override
         public void run(Pointer tla) {
@@ -710,13 +798,23 @@ public class VmOperation {
     protected void doAfterFrozen(VmThread thread) {
     }
 
+    /**
+     * Determines if this operation is the one that froze a given thread while it runs.
+     */
+    private boolean froze(VmThread thread) {
+        if (mode == Mode.Handshake) {
+            return thread == handshakeThread;
+        }
+        return operateOnThread(thread);
+    }
+
     /**
      * Determines if this is a nested operation whose enclosing operation already froze a given thread.
      *
      * @param thread a thread to test
      */
     private boolean frozenByEnclosing(VmThread thread) {
-        if (enclosing != null && enclosing.operateOnThread(thread)) {
+        if (enclosing != null && enclosing.froze(thread)) {
             Pointer etla = ETLA.load(thread.tla());
             // This is a nested operation that operates on 'thread' -> the enclosing operation must have 'thread'
             if (UseCASBasedThreadFreezing) {
@@ -295,6 +295,11 @@ public class VmThread {
      */
     private boolean jvmtiAgent;
 
+    /**
+     * Marks this as a GC worker thread. These are neither frozen by nor scanned for roots by a {@link GCOperation}.
+     */
+    private boolean gcWorker;
+
     /**
      * Holds the exception object for the exception currently being raised. This value will only be
      * non-null during the unwinding process between calls to {@link #storeExceptionForHandler(Throwable, TargetMethod, int)}
@@ -731,9 +736,7 @@ public class VmThread {
         FatalError.check(threadForAttach.get() == null, "thread-for-attach should be null");
         try {
             VmThread newThread = VmThreadFactory.create(null);
-            synchronized (VmThreadMap.THREAD_LOCK) {
-                VmThreadMap.addPreallocatedThread(newThread);
-            }
+            VmThreadMap.addPreallocatedThread(newThread);
             threadForAttach.set(newThread);
         } catch (OutOfMemoryError oome) {
         }
@@ -1131,6 +1134,14 @@ public class VmThread {
         jvmtiAgent = true;
     }
 
+    public final boolean isGCWorkerThread() {
+        return gcWorker;
+    }
+
+    public final void setAsGCWorkerThread() {
+        gcWorker = true;
+    }
+
     /**
      * Bind the given {@code Thread} to this VmThread.
      * @param javaThread thread to be bound
@@ -24,7 +24,9 @@ package com.sun.max.vm.thread;
 
 import java.util.*;
 
+import com.oracle.max.cri.intrinsics.*;
 import com.sun.max.annotate.*;
+import com.sun.max.atomic.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.hosted.BootImage.Header;
@@ -37,6 +39,14 @@ import com.sun.max.vm.runtime.*;
 
 /**
  * The {@code VmThreadMap} class contains all the active threads in the VM.
+ * <p>
+ * Thread IDs are {@linkplain IDMap allocated} and {@linkplain #getThreads(boolean) snapshots} of the running threads
+ * are taken without holding {@link #THREAD_LOCK}. The list of running thread locals is still only linked, unlinked
+ * and walked by {@link VmOperation}s while holding that lock: a thread adds itself to the list while holding the lock
+ * (see {@code thread_run()} and {@code thread_attach()} in threads.c), which is what keeps it from running Java code
+ * while a VM operation has the other threads frozen. The list can only be made lock-free once a starting thread has
+ * another way to find out that an operation in progress missed it and to block until the operation completes.
+ * TODO: make the thread locals list lock-free together with such a protocol.
  */
 public final class VmThreadMap {
 
@@ -95,13 +105,24 @@ public final class VmThreadMap {
      * the corresponding {@code VmThread} instance.
      * The id 0 is reserved and never used to aid the modal monitor scheme ({@link ThinLockword64}).
      *
-     * Note that callers of {@link #acquire(VmThread)} or {@link #release(int)} must synchronize explicitly on {@link VmThreadMap#THREAD_LOCK} to ensure that
-     * the TERMINATED state is not disturbed during thread tear down.
+     * IDs are acquired and released without locking. The free IDs form a stack linked through {@link #freeList}
+     * whose head is updated with a compare-and-swap. The head packs a tag that is incremented by every update
+     * with the first free ID, so that an ID that is popped and pushed back between the read and the update of the
+     * head by another thread does not go unnoticed.
+     *
+     * Growing the map installs the {@link #GROWING} marker as the head while the arrays are copied. No ID can be
+     * acquired or released while the marker is installed, and a thread that {@linkplain #setThread(int, VmThread) stores}
+     * into the thread array during a growth stores again into the new array. As releasing an ID happens while holding
+     * {@link VmThreadMap#THREAD_LOCK} during thread tear down, the new arrays are allocated before the marker is
+     * installed so that no GC (which needs that lock) is ever required to complete a growth.
      */
     private static final class IDMap {
-        private int nextID = 1;
-        private int[] freeList;
-        private VmThread[] threads;
+
+        private static final Word GROWING = Word.allOnes();
+
+        private final AtomicWord freeListHead;
+        private volatile int[] freeList;
+        private volatile VmThread[] threads;
 
         IDMap(int initialSize) {
             freeList = new int[initialSize];
@@ -109,13 +130,39 @@ public final class VmThreadMap {
             for (int i = 0; i < freeList.length; i++) {
                 freeList[i] = i + 1;
             }
+            freeListHead = new AtomicWord(head(0, 1));
+        }
+
+        @INLINE
+        private static Word head(int tag, int id) {
+            return Address.fromLong(((long) tag << 32) | (id & 0xFFFFFFFFL));
+        }
+
+        @INLINE
+        private static int tagOf(Word head) {
+            return (int) (head.asAddress().toLong() >>> 32);
+        }
+
+        @INLINE
+        private static int idOf(Word head) {
+            return (int) head.asAddress().toLong();
+        }
+
+        /**
+         * Gets the head of the free list, waiting for a concurrent growth of this map to complete.
+         */
+        private Word freeListHead() {
+            Word head = freeListHead.get();
+            while (head.equals(GROWING)) {
+                Intrinsics.pause();
+                head = freeListHead.get();
+            }
+            return head;
         }
 
         /**
          * Acquires an ID for a VmThread.
          *
-         * <b>NOTE: This method is not synchronized. It is required that the caller synchronizes on {@link #THREAD_LOCK}.</b>
-         *
          * @param thread the VmThread for which an ID should be assigned
          * @return the ID assigned to {@code thread}
          */
@@ -125,38 +172,77 @@ public final class VmThreadMap {
                 FatalError.check(get(id) == thread, "Thread's ID identifies another thread");
                 return id;
             }
-            final int length = freeList.length;
-            if (nextID >= length) {
-                // grow the free list and initialize the new part
-                final int[] newFreeList = Arrays.copyOf(freeList, length * 2);
-                for (int i = length; i < newFreeList.length; i++) {
-                    newFreeList[i] = i + 1;
-                }
-                freeList = newFreeList;
-
-                // grow the threads list and copy
-                final VmThread[] newVmThreads = new VmThread[length * 2];
-                for (int i = 0; i < length; i++) {
-                    newVmThreads[i] = threads[i];
+            while (true) {
+                final Word head = freeListHead();
+                id = idOf(head);
+                final int[] links = freeList;
+                if (id >= links.length) {
+                    grow(head, links.length);
+                } else if (freeListHead.compareAndSet(head, head(tagOf(head) + 1, links[id]))) {
+                    break;
                 }
-                threads = newVmThreads;
             }
-            id = nextID;
-            nextID = freeList[nextID];
-            threads[id] = thread;
+            setThread(id, thread);
             thread.setID(id);
             return id;
         }
 
         /**
-         * <b>NOTE: This method is not synchronized. It is required that the caller synchronizes on {@link #THREAD_LOCK}.</b>
+         * Releases the ID of a thread. This method performs no synchronization or heap allocation.
          *
-         * @param id
+         * @param id the ID to release
          */
         void release(int id) {
-            freeList[id] = nextID;
-            threads[id] = null;
-            nextID = id;
+            setThread(id, null);
+            while (true) {
+                final Word head = freeListHead();
+                final int[] links = freeList;
+                links[id] = idOf(head);
+                if (freeListHead.compareAndSet(head, head(tagOf(head) + 1, id))) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stores into the thread array, making sure the store is not lost by a concurrent growth of this map.
+         */
+        private void setThread(int id, VmThread thread) {
+            while (true) {
+                final VmThread[] currentThreads = threads;
+                currentThreads[id] = thread;
+                MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+                if (currentThreads == threads && !freeListHead.get().equals(GROWING)) {
+                    return;
+                }
+                freeListHead();
+            }
+        }
+
+        /**
+         * Doubles the size of this map, unless the free list was modified since {@code head} was read.
+         *
+         * @param head the head of the (empty) free list
+         * @param length the length of the arrays of this map
+         */
+        private void grow(Word head, int length) {
+            final int[] newFreeList = new int[length * 2];
+            final VmThread[] newVmThreads = new VmThread[length * 2];
+            for (int i = length; i < newFreeList.length; i++) {
+                newFreeList[i] = i + 1;
+            }
+            if (!freeListHead.compareAndSet(head, GROWING)) {
+                return;
+            }
+            final int[] oldFreeList = freeList;
+            final VmThread[] oldVmThreads = threads;
+            for (int i = 0; i < length; i++) {
+                newFreeList[i] = oldFreeList[i];
+                newVmThreads[i] = oldVmThreads[i];
+            }
+            freeList = newFreeList;
+            threads = newVmThreads;
+            freeListHead.set(head(tagOf(head) + 1, length));
         }
 
         @INLINE
@@ -164,6 +250,14 @@ public final class VmThreadMap {
             // this operation may be performance critical, so avoid the bounds check
             return UnsafeCast.asVmThread(ArrayAccess.getObject(threads, id));
         }
+
+        /**
+         * Gets a snapshot of the threads that currently have an ID. An element of the returned array is {@code null}
+         * if the corresponding ID is free. The array must not be modified.
+         */
+        VmThread[] threads() {
+            return threads;
+        }
     }
 
     /**
@@ -182,17 +276,44 @@ public final class VmThreadMap {
     /**
      * The number of live daemon and non-daemon threads.
      */
-    private volatile int liveThreads = 1;
+    private final AtomicInteger liveThreads = new AtomicInteger(1);
 
     /**
      * Total number of threads started since VM began.
      */
-    private volatile int totalStarted = 1;
+    private final AtomicInteger totalStarted = new AtomicInteger(1);
 
     /**
      * Peak live thread count.
      */
-    private volatile int peakThreadCount = 1;
+    private final AtomicInteger peakThreadCount = new AtomicInteger(1);
+
+    /**
+     * Incremented whenever thread locals are added to or removed from the list of running threads, to tell
+     * {@link #getThreads(boolean)} that its {@link #snapshot} is out of date.
+     */
+    private final AtomicInteger threadListVersion = new AtomicInteger();
+
+    /**
+     * An immutable snapshot of the running threads, shared by the callers of {@link #getThreads(boolean)} until the
+     * list of running threads changes.
+     */
+    private static final class Snapshot {
+        final int version;
+        final Thread[] threads;
+        final Thread[] threadsWithoutJVMTIAgents;
+
+        Snapshot(int version, Thread[] threads, Thread[] threadsWithoutJVMTIAgents) {
+            this.version = version;
+            this.threads = threads;
+            this.threadsWithoutJVMTIAgents = threadsWithoutJVMTIAgents;
+        }
+    }
+
+    /**
+     * The last snapshot taken by {@link #getThreads(boolean)}, or {@code null} if none has been taken yet.
+     */
+    private volatile Snapshot snapshot;
 
     /**
      * The number of currently running non-daemon threads running, excluding
@@ -201,7 +322,7 @@ public final class VmThreadMap {
     private volatile int nonDaemonThreads;
 
     /**
-     * The head of the VM thread locals list.
+     * The head of the VM thread locals list. Only modified while holding {@link #THREAD_LOCK}.
      *
      * The address of this field in {@link #ACTIVE} is exposed to native code via
      * {@link Header#tlaListHeadOffset}.
@@ -267,6 +388,7 @@ public final class VmThreadMap {
         setNext(tla, ACTIVE.tlaListHead);
         setPrev(ACTIVE.tlaListHead, tla);
         ACTIVE.tlaListHead = tla;
+        ACTIVE.threadListVersion.getAndAdd(1);
     }
 
     /**
@@ -330,12 +452,13 @@ public final class VmThreadMap {
         // set this vm thread locals' links to zero
         setPrev(tla, Pointer.zero());
         setNext(tla, Pointer.zero());
+        threadListVersion.getAndAdd(1);
         // release the ID for a later thread's use
         idMap.release(thread.id());
         if (!thread.daemon && thread != VmThread.mainThread) {
             decrementNonDaemonThreads();
         }
-        liveThreads--;
+        liveThreads.getAndAdd(-1);
     }
 
     private VmThreadMap() {
@@ -344,36 +467,50 @@ public final class VmThreadMap {
     /**
      * Creates the native thread for a VM thread and start it running.
      *
+     * Only the accounting of non-daemon threads is done while holding {@link #THREAD_LOCK}. In particular, the native
+     * thread is created without holding the lock. The new thread adds itself to the list of running threads while
+     * holding it, which is all that is needed for {@link VmOperation}s to see it.
+     *
      * @param thread the VM thread to create
      * @param stackSize the requested stack size
      * @param priority the initial priority of the thread
      */
     public void startThread(VmThread thread, Size stackSize, int priority) {
-        synchronized (THREAD_LOCK) {
-            final int id = idMap.acquire(thread);
-            thread.daemon = thread.javaThread().isDaemon();
-            if (!thread.daemon) {
+        final int id = idMap.acquire(thread);
+        thread.daemon = thread.javaThread().isDaemon();
+        if (!thread.daemon) {
+            synchronized (THREAD_LOCK) {
                 if (!incrementNonDaemonThreads()) {
+                    idMap.release(id);
                     throw new IllegalStateException("Cannot start " + thread.javaThread() + " after the main thread has exited");
                 }
             }
+        }
 
-            final Word nativeThread = VmThread.nativeThreadCreate(id, stackSize, priority);
-            if (nativeThread.isZero()) {
-                /* This means that we did not create the native thread at all so there is nothing to
-                 * terminate. Most likely we ran out of memory allocating the stack, so we throw
-                 * an out of memory exception. There is a small possibility that the failure was in the
-                 * actual OS thread creation but that would require a way to disambiguate.
-                 */
-                decrementNonDaemonThreads();
-                throw new OutOfMemoryError("Unable to create new native thread");
-            }
-            totalStarted++;
-            liveThreads++;
-            if (liveThreads > peakThreadCount) {
-                peakThreadCount = liveThreads;
-            }
+        // Account for the thread before it can possibly run and terminate
+        totalStarted.getAndAdd(1);
+        final int live = liveThreads.getAndAdd(1) + 1;
+        int peak = peakThreadCount.get();
+        while (live > peak && !peakThreadCount.compareAndSet(peak, live)) {
+            peak = peakThreadCount.get();
+        }
 
+        final Word nativeThread = VmThread.nativeThreadCreate(id, stackSize, priority);
+        if (nativeThread.isZero()) {
+            /* This means that we did not create the native thread at all so there is nothing to
+             * terminate. Most likely we ran out of memory allocating the stack, so we throw
+             * an out of memory exception. There is a small possibility that the failure was in the
+             * actual OS thread creation but that would require a way to disambiguate.
+             */
+            liveThreads.getAndAdd(-1);
+            totalStarted.getAndAdd(-1);
+            if (!thread.daemon) {
+                synchronized (THREAD_LOCK) {
+                    decrementNonDaemonThreads();
+                }
+            }
+            idMap.release(id);
+            throw new OutOfMemoryError("Unable to create new native thread");
         }
     }
 
@@ -408,6 +545,9 @@ public final class VmThreadMap {
     /**
      * Iterates over all the VM thread locals in this thread map and run the specified procedure.
      * <b>NOTE: It is recommended that the caller synchronizes on {@link #THREAD_LOCK}.</b>
+     * This list is meant for the {@link VmOperation}s freezing threads, for which holding the lock guarantees that
+     * no thread starts running Java code unseen. Callers that only need the {@code Thread} objects should use
+     * {@link #getThreads(boolean)} instead, which does not require the lock.
      *
      * @param predicate a predicate to check on the VM thread locals
      * @param procedure the procedure to apply to each VM thread locals
@@ -438,55 +578,75 @@ public final class VmThreadMap {
      * JVMTI agent threads can be included optionally.
      * The VMOperation thread is never included.
      *
+     * The snapshot is taken from the thread ID map without holding {@link #THREAD_LOCK}. It includes the
+     * threads that have thread locals and have not terminated when they are visited, so a thread that starts
+     * or terminates while the snapshot is taken may or may not be part of it. A snapshot is shared by all the
+     * callers until a thread is added to or removed from the list of running threads, each caller getting its own
+     * copy of the array.
      *
      * @param includeJVMTIAgentThreads specifies whether {@linkplain VmThread#isJVMTIAgentThread() JVMTI agent threads}
      *        are to be included in the snapshot
      * @return a snapshot of the currently executing threads
      */
-    public static Thread[] getThreads(final boolean includeJVMTIAgentThreads) {
+    public static Thread[] getThreads(boolean includeJVMTIAgentThreads) {
+        final int version = ACTIVE.threadListVersion.get();
+        Snapshot snapshot = ACTIVE.snapshot;
+        if (snapshot == null || snapshot.version != version) {
+            snapshot = takeSnapshot(version);
+            ACTIVE.snapshot = snapshot;
+        }
+        return (includeJVMTIAgentThreads ? snapshot.threads : snapshot.threadsWithoutJVMTIAgents).clone();
+    }
+
+    private static Snapshot takeSnapshot(int version) {
         final ArrayList<Thread> threads = new ArrayList<Thread>();
-        Pointer.Procedure proc = new Pointer.Procedure() {
-            public void run(Pointer tla) {
-                VmThread vmThread = VmThread.fromTLA(tla);
-                if (vmThread.javaThread() != null && !vmThread.isVmOperationThread() && (includeJVMTIAgentThreads || !vmThread.isJVMTIAgentThread())) {
-                    threads.add(vmThread.javaThread());
+        int jvmtiAgentThreads = 0;
+        for (VmThread vmThread : ACTIVE.idMap.threads()) {
+            if (vmThread == null || vmThread.tla().isZero() || vmThread.state() == Thread.State.TERMINATED) {
+                continue;
+            }
+            final Thread javaThread = vmThread.javaThread();
+            if (javaThread != null && !vmThread.isVmOperationThread()) {
+                threads.add(javaThread);
+                if (vmThread.isJVMTIAgentThread()) {
+                    jvmtiAgentThreads++;
                 }
             }
-        };
-        synchronized (THREAD_LOCK) {
-            VmThreadMap.ACTIVE.forAllThreadLocals(null, proc);
         }
-        return threads.toArray(new Thread[threads.size()]);
+        final Thread[] all = threads.toArray(new Thread[threads.size()]);
+        if (jvmtiAgentThreads == 0) {
+            return new Snapshot(version, all, all);
+        }
+        final Thread[] withoutAgents = new Thread[all.length - jvmtiAgentThreads];
+        int i = 0;
+        for (Thread javaThread : all) {
+            if (!VmThread.fromJava(javaThread).isJVMTIAgentThread()) {
+                withoutAgents[i++] = javaThread;
+            }
+        }
+        return new Snapshot(version, all, withoutAgents);
     }
 
     public static int getTotalStartedThreadCount() {
-        synchronized (THREAD_LOCK) {
-            return ACTIVE.totalStarted;
-        }
+        return ACTIVE.totalStarted.get();
     }
 
     public static int getPeakThreadCount() {
-        synchronized (THREAD_LOCK) {
-            return ACTIVE.peakThreadCount;
-        }
+        return ACTIVE.peakThreadCount.get();
     }
 
     public static void resetPeakThreadCount() {
-        synchronized (THREAD_LOCK) {
-            ACTIVE.peakThreadCount = ACTIVE.liveThreads;
-        }
+        ACTIVE.peakThreadCount.set(ACTIVE.liveThreads.get());
     }
 
     public static int getLiveTheadCount() {
-        synchronized (THREAD_LOCK) {
-            return ACTIVE.liveThreads;
-        }
+        return ACTIVE.liveThreads.get();
     }
 
     public static int getDaemonThreadCount() {
         synchronized (THREAD_LOCK) {
             // nonDaemonThreads does not include main but liveThreads does
-            return ACTIVE.liveThreads - (ACTIVE.nonDaemonThreads + 1);
+            return ACTIVE.liveThreads.get() - (ACTIVE.nonDaemonThreads + 1);
         }
     }
 
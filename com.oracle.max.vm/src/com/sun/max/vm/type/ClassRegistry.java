@@ -117,6 +117,7 @@ public final class ClassRegistry {
     public static final ArrayClassActor<DoubleValue> DOUBLE_ARRAY = createPrimitiveArrayClass(DOUBLE);
 
     public static final FieldActor ClassActor_javaClass = findField(ClassActor.class, "javaClass");
+    public static final FieldActor ClassActor_biasedLockRevocationHeuristics = findField(ClassActor.class, "biasedLockRevocationHeuristics");
     public static final FieldActor Buffer_address = findField(Buffer.class, "address");
     public static final FieldActor JLRReference_referent = findField(java.lang.ref.Reference.class, "referent");
 